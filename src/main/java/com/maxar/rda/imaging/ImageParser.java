@@ -196,6 +196,24 @@ public abstract class ImageParser extends BinaryFileParser {
         return getMetadata(new ByteSourceArray(bytes), params);
     }
 
+    /**
+     * Gets the source from which the methods that take a file read it.
+     * This default reads the file with a ByteSourceFile; parsers that
+     * read files in large random-access blocks may map them instead.
+     *
+     * @param file   A valid reference to a file.
+     * @param params Optional instructions for special-handling or
+     *               interpretation of the input data (null objects
+     *               are permitted and must be supported by implementations).
+     * @return The source of the file's content.
+     * @throws ImageReadException In the event of an invalid parameter.
+     * @throws IOException        In the event of unsuccessful file access.
+     */
+    protected ByteSource getByteSource(final File file, final Map<String, Object> params)
+            throws ImageReadException, IOException {
+        return new ByteSourceFile(file);
+    }
+
     /**
      * Get image metadata from the specified file.  Format-specific
      * ImageParser implementations are expected to return a valid
@@ -250,7 +268,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getMetadata(new ByteSourceFile(file), params);
+        return getMetadata(getByteSource(file, params), params);
     }
 
     /**
@@ -358,7 +376,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getImageInfo(new ByteSourceFile(file), params);
+        return getImageInfo(getByteSource(file, params), params);
     }
 
     /**
@@ -404,7 +422,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getFormatCompliance(new ByteSourceFile(file));
+        return getFormatCompliance(getByteSource(file, null));
     }
 
     /**
@@ -462,7 +480,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getAllBufferedImages(new ByteSourceFile(file));
+        return getAllBufferedImages(getByteSource(file, null));
     }
 
     /**
@@ -524,7 +542,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getBufferedImage(new ByteSourceFile(file), params);
+        return getBufferedImage(getByteSource(file, params), params);
     }
 
 
@@ -622,7 +640,7 @@ public abstract class ImageParser extends BinaryFileParser {
             return null;
         }
 
-        return getImageSize(new ByteSourceFile(file), params);
+        return getImageSize(getByteSource(file, params), params);
     }
 
     /**
@@ -735,7 +753,7 @@ public abstract class ImageParser extends BinaryFileParser {
             LOGGER.finest(getName() + ": " + file.getName());
         }
 
-        return getICCProfileBytes(new ByteSourceFile(file), params);
+        return getICCProfileBytes(getByteSource(file, params), params);
     }
 
     /**
@@ -791,7 +809,7 @@ public abstract class ImageParser extends BinaryFileParser {
             LOGGER.finest(getName() + ": " + file.getName());
         }
 
-        return dumpImageFile(new ByteSourceFile(file));
+        return dumpImageFile(getByteSource(file, null));
     }
 
     /**
@@ -431,7 +431,7 @@ public final class Imaging {
      */
     public static ICC_Profile getICCProfile(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getICCProfile(new ByteSourceFile(file), params);
+        return getICCProfile(getByteSource(file, params), params);
     }
 
     protected static ICC_Profile getICCProfile(final ByteSource byteSource, final Map<String, Object> params)
@@ -534,7 +534,7 @@ public final class Imaging {
      */
     public static byte[] getICCProfileBytes(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getICCProfileBytes(new ByteSourceFile(file), params);
+        return getICCProfileBytes(getByteSource(file, params), params);
     }
 
     private static byte[] getICCProfileBytes(final ByteSource byteSource, final Map<String, Object> params)
@@ -697,7 +697,7 @@ public final class Imaging {
      */
     public static ImageInfo getImageInfo(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getImageInfo(new ByteSourceFile(file), params);
+        return getImageInfo(getByteSource(file, params), params);
     }
 
     /**
@@ -725,6 +725,18 @@ public final class Imaging {
         return getImageParser(byteSource).getImageInfo(byteSource, params);
     }
 
+    /**
+     * Gets the source from which the parser of a file's format reads the
+     * file, which for TIFF files is a mapping of the file unless the
+     * parameters say otherwise.
+     */
+    private static ByteSource getByteSource(final File file, final Map<String, Object> params)
+            throws ImageReadException, IOException {
+        try (ByteSourceFile byteSource = new ByteSourceFile(file)) {
+            return getImageParser(byteSource).getByteSource(file, params);
+        }
+    }
+
     private static ImageParser getImageParser(final ByteSource byteSource)
             throws ImageReadException, IOException {
         final ImageFormat format = guessFormat(byteSource);
@@ -850,7 +862,7 @@ public final class Imaging {
      */
     public static Dimension getImageSize(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getImageSize(new ByteSourceFile(file), params);
+        return getImageSize(getByteSource(file, params), params);
     }
 
     public static Dimension getImageSize(final ByteSource byteSource, final Map<String, Object> params)
@@ -957,7 +969,7 @@ public final class Imaging {
      */
     public static String getXmpXml(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getXmpXml(new ByteSourceFile(file), params);
+        return getXmpXml(getByteSource(file, params), params);
     }
 
     /**
@@ -1136,7 +1148,7 @@ public final class Imaging {
      */
     public static ImageMetadata getMetadata(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getMetadata(new ByteSourceFile(file), params);
+        return getMetadata(getByteSource(file, params), params);
     }
 
     private static ImageMetadata getMetadata(final ByteSource byteSource, final Map<String, Object> params)
@@ -1175,7 +1187,7 @@ public final class Imaging {
      */
     public static String dumpImageFile(final File file) throws ImageReadException,
             IOException {
-        return dumpImageFile(new ByteSourceFile(file));
+        return dumpImageFile(getByteSource(file, null));
     }
 
     private static String dumpImageFile(final ByteSource byteSource)
@@ -1212,7 +1224,7 @@ public final class Imaging {
      */
     public static FormatCompliance getFormatCompliance(final File file)
             throws ImageReadException, IOException {
-        return getFormatCompliance(new ByteSourceFile(file));
+        return getFormatCompliance(getByteSource(file, null));
     }
 
     private static FormatCompliance getFormatCompliance(final ByteSource byteSource)
@@ -1268,7 +1280,7 @@ public final class Imaging {
      */
     public static List<BufferedImage> getAllBufferedImages(final File file)
             throws ImageReadException, IOException {
-        return getAllBufferedImages(new ByteSourceFile(file));
+        return getAllBufferedImages(getByteSource(file, null));
     }
 
 
@@ -1398,7 +1410,7 @@ public final class Imaging {
      */
     public static BufferedImage getBufferedImage(final File file)
             throws ImageReadException, IOException {
-        return getBufferedImage(new ByteSourceFile(file), null);
+        return getBufferedImage(getByteSource(file, null), null);
     }
 
 
@@ -1424,7 +1436,7 @@ public final class Imaging {
      */
     public static BufferedImage getBufferedImage(final File file, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        return getBufferedImage(new ByteSourceFile(file), params);
+        return getBufferedImage(getByteSource(file, params), params);
     }
 
 
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of scratch arrays, so that decoders which need a
+ * temporary array for every tile or strip can reuse arrays instead of
+ * allocating new ones.
+ *
+ * <p>Arrays are pooled in size classes of powers of two, each with its
+ * own lock, so threads borrowing arrays of different sizes do not
+ * contend.  An array borrowed with {@link #acquire} may be longer than
+ * requested and holds arbitrary data; it should be returned with
+ * {@link #release} once it is no longer referenced.  Arrays that are not
+ * returned are simply collected as garbage.  Released arrays are dropped
+ * rather than retained once the pool holds its maximum number of
+ * bytes.</p>
+ *
+ * <p>The pool is safe for use by concurrent threads.</p>
+ */
+public final class BufferPool {
+    private static final int MIN_CLASS = 10;
+    private static final int MAX_CLASS = 30;
+
+    private final long maxBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final ArrayDeque<byte[]>[] classes;
+
+    private final LongAdder reuses = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+
+    /**
+     * Constructs a pool.
+     *
+     * @param maxBytes the maximum number of bytes held in arrays waiting
+     * to be reused
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.classes = new ArrayDeque[MAX_CLASS + 1];
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            classes[i] = new ArrayDeque<>();
+        }
+    }
+
+    private static int sizeClass(final int length) {
+        return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(length - 1));
+    }
+
+    /**
+     * Borrows an array of at least the given length.
+     *
+     * @param minLength the minimum length of the array
+     * @return an array whose contents are undefined
+     */
+    public byte[] acquire(final int minLength) {
+        if (minLength < 0) {
+            throw new IllegalArgumentException("Invalid array length: " + minLength);
+        }
+        final int sizeClass = sizeClass(minLength);
+        if (sizeClass > MAX_CLASS) {
+            allocations.increment();
+            allocatedBytes.add(minLength);
+            return new byte[minLength];
+        }
+        final ArrayDeque<byte[]> pool = classes[sizeClass];
+        final byte[] array;
+        synchronized (pool) {
+            array = pool.pollLast();
+        }
+        if (array != null) {
+            retainedBytes.addAndGet(-array.length);
+            reuses.increment();
+            return array;
+        }
+        allocations.increment();
+        allocatedBytes.add(1L << sizeClass);
+        return new byte[1 << sizeClass];
+    }
+
+    /**
+     * Returns an array to the pool.  Arrays that were not borrowed from
+     * this pool are accepted if their length is a size class of the pool.
+     *
+     * @param array the array, which must no longer be referenced by the
+     * caller; null is ignored
+     */
+    public void release(final byte[] array) {
+        if (array == null) {
+            return;
+        }
+        final int length = array.length;
+        if (length < (1 << MIN_CLASS) || Integer.bitCount(length) != 1) {
+            return;
+        }
+        if (retainedBytes.addAndGet(length) > maxBytes) {
+            retainedBytes.addAndGet(-length);
+            return;
+        }
+        final ArrayDeque<byte[]> pool = classes[sizeClass(length)];
+        synchronized (pool) {
+            pool.addLast(array);
+        }
+    }
+
+    /**
+     * Drops all of the arrays waiting to be reused.
+     */
+    public void clear() {
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            final ArrayDeque<byte[]> pool = classes[i];
+            synchronized (pool) {
+                for (final byte[] array : pool) {
+                    retainedBytes.addAndGet(-array.length);
+                }
+                pool.clear();
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes held in arrays waiting to be reused.
+     *
+     * @return the number of bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Gets the number of arrays that have been allocated because no
+     * pooled array was available.
+     *
+     * @return the number of allocations
+     */
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    public long getReuseCount() {
+        return reuses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[retained=" + getRetainedBytes() + "/" + maxBytes
+                + ", reuses=" + getReuseCount() + ", allocations=" + getAllocationCount()
+                + ", allocatedBytes=" + getAllocatedBytes() + "]";
+    }
+}
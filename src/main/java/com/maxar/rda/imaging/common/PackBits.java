@@ -17,58 +17,97 @@
 package com.maxar.rda.imaging.common;
 
 import com.maxar.rda.imaging.ImageReadException;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class PackBits {
 
     public byte[] decompress(final byte[] bytes, final int expected)
             throws ImageReadException
     {
-        int total = 0;
+        return decompress(ByteBuffer.wrap(bytes), expected);
+    }
 
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    /**
+     * Unpacks data held in a buffer, which may be a view of a mapped file,
+     * without first copying it to an array.  The buffer's position is not
+     * changed.
+     *
+     * @param bytes the packed data, from the buffer's position to its limit
+     * @param expected the number of bytes to unpack
+     * @return the unpacked bytes
+     * @throws ImageReadException if the packed data is exhausted or invalid
+     */
+    public byte[] decompress(final ByteBuffer bytes, final int expected)
+            throws ImageReadException
+    {
+        final byte[] result = new byte[expected];
+        decompress(bytes, result, expected);
+        return result;
+    }
+
+    /**
+     * Unpacks data held in a buffer into the start of an existing array,
+     * such as one borrowed from a {@link BufferPool}.  A run that extends
+     * past the expected number of bytes is truncated.  The buffer's
+     * position is not changed.
+     *
+     * @param bytes the packed data, from the buffer's position to its limit
+     * @param output the array to receive the unpacked bytes
+     * @param expected the number of bytes to unpack, no greater than the
+     * length of the output
+     * @throws ImageReadException if the packed data is exhausted or invalid
+     */
+    public void decompress(final ByteBuffer bytes, final byte[] output, final int expected)
+            throws ImageReadException
+    {
+        int total = 0;
 
         // Loop until you get the number of unpacked bytes you are expecting:
-        int i = 0;
+        int i = bytes.position();
+        final int limit = bytes.limit();
         while (total < expected) {
             // Read the next source byte into n.
-            if (i >= bytes.length) {
+            if (i >= limit) {
                 throw new ImageReadException(
-                        "Tiff: Unpack bits source exhausted: " + i
+                        "Tiff: Unpack bits source exhausted: " + (i - bytes.position())
                                 + ", done + " + total + ", expected + "
                                 + expected);
             }
 
-            final int n = bytes[i++];
+            final int n = bytes.get(i++);
             if ((n >= 0) && (n <= 127)) {
                 // If n is between 0 and 127 inclusive, copy the next n+1 bytes
                 // literally.
                 final int count = n + 1;
+                if (i + count > limit) {
+                    throw new ImageReadException(
+                            "Tiff: Unpack bits source exhausted: " + (i - bytes.position())
+                                    + ", done + " + total + ", expected + "
+                                    + expected);
+                }
 
-                total += count;
-                for (int j = 0; j < count; j++) {
-                    baos.write(bytes[i++]);
+                final int copied = Math.min(count, expected - total);
+                for (int j = 0; j < copied; j++) {
+                    output[total + j] = bytes.get(i + j);
                 }
+                i += count;
+                total += copied;
             } else if ((n >= -127) && (n <= -1)) {
                 // Else if n is between -127 and -1 inclusive, copy the next byte
                 // -n+1 times.
 
-                final int b = bytes[i++];
-                final int count = -n + 1;
+                final byte b = bytes.get(i++);
+                final int count = Math.min(-n + 1, expected - total);
 
+                Arrays.fill(output, total, total + count, b);
                 total += count;
-                for (int j = 0; j < count; j++) {
-                    baos.write(b);
-                }
             } else if (n == -128) {
                 // Else if n is -128, noop.
                 throw new ImageReadException("Packbits: " + n);
             }
         }
-
-        return baos.toByteArray();
-
     }
 
     private int findNextDuplicate(final byte[] bytes, final int start) {
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.ImageWriteException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utilities for reading and writing zlib-wrapped Deflate data, as used by
+ * TIFF compression types 8 (Adobe Deflate) and 32946 (Deflate).
+ *
+ * <p>Creating an {@code Inflater} or {@code Deflater} allocates native
+ * memory, which is expensive relative to decoding a single tile.  Each
+ * thread therefore keeps its own instances, which are reset and reused
+ * for every call.</p>
+ */
+public final class ZlibDeflate {
+
+    private static final ThreadLocal<Inflater> INFLATER =
+            ThreadLocal.withInitial(Inflater::new);
+
+    // one deflater per compression level, indexed by level + 1
+    private static final ThreadLocal<Deflater[]> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater[11]);
+
+    private ZlibDeflate() {
+    }
+
+    /**
+     * Decompresses zlib-wrapped Deflate data into an array of the
+     * expected size.  If the data ends early, the remainder of the
+     * array is left as zeros.
+     *
+     * @param bytes the compressed data
+     * @param expectedSize the size of the uncompressed data
+     * @return an array of length expectedSize
+     * @throws ImageReadException if the data is not valid Deflate data
+     */
+    public static byte[] decompress(final byte[] bytes, final int expectedSize)
+            throws ImageReadException {
+        return decompress(ByteBuffer.wrap(bytes), expectedSize);
+    }
+
+    /**
+     * Decompresses zlib-wrapped Deflate data held in a buffer, which may
+     * be a view of a mapped file, without first copying it to an array.
+     * The buffer's position is not changed.
+     *
+     * @param bytes the compressed data, from the buffer's position to its limit
+     * @param expectedSize the size of the uncompressed data
+     * @return an array of length expectedSize
+     * @throws ImageReadException if the data is not valid Deflate data
+     */
+    public static byte[] decompress(final ByteBuffer bytes, final int expectedSize)
+            throws ImageReadException {
+        final byte[] result = new byte[expectedSize];
+        decompress(bytes, result, expectedSize);
+        return result;
+    }
+
+    /**
+     * Decompresses zlib-wrapped Deflate data held in a buffer into the
+     * start of an existing array, such as one borrowed from a
+     * {@link BufferPool}.  If the data ends early, the remainder of the
+     * expected bytes are set to zero.  The buffer's position is not changed.
+     *
+     * @param bytes the compressed data, from the buffer's position to its limit
+     * @param output the array to receive the uncompressed data
+     * @param expectedSize the size of the uncompressed data, no greater
+     * than the length of the output
+     * @throws ImageReadException if the data is not valid Deflate data
+     */
+    public static void decompress(final ByteBuffer bytes, final byte[] output,
+            final int expectedSize) throws ImageReadException {
+        final Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(bytes.duplicate());
+
+        int n = 0;
+        try {
+            while (n < expectedSize) {
+                final int count = inflater.inflate(output, n, expectedSize - n);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new ImageReadException(
+                                "Deflate: data requires a preset dictionary");
+                    }
+                    if (inflater.finished() || inflater.needsInput()) {
+                        break;
+                    }
+                }
+                n += count;
+            }
+        } catch (final DataFormatException dfe) {
+            throw new ImageReadException("Deflate: invalid compressed data", dfe);
+        } finally {
+            // release the reference to the caller's buffer
+            inflater.reset();
+        }
+        Arrays.fill(output, n, expectedSize, (byte) 0);
+    }
+
+    /**
+     * Compresses data with zlib-wrapped Deflate.
+     *
+     * @param bytes the data to be compressed
+     * @param level a compression level from 0 to 9, or
+     * {@code Deflater.DEFAULT_COMPRESSION}
+     * @return the compressed data
+     * @throws ImageWriteException if the compression level is invalid
+     */
+    public static byte[] compress(final byte[] bytes, final int level)
+            throws ImageWriteException {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new ImageWriteException("Invalid Deflate compression level: " + level);
+        }
+        final Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[level + 1];
+        if (deflater == null) {
+            deflater = new Deflater(level);
+            deflaters[level + 1] = deflater;
+        }
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        // the worst-case size given by zlib's deflateBound(), so that a
+        // single pass normally suffices
+        final int len = bytes.length;
+        byte[] result = new byte[len + (len >>> 12) + (len >>> 14) + (len >>> 25) + 19];
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == result.length) {
+                result = Arrays.copyOf(result, result.length * 2);
+            }
+            n += deflater.deflate(result, n, result.length - n);
+        }
+        deflater.reset();
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+}
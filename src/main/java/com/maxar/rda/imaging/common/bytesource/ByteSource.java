@@ -19,6 +19,8 @@ package com.maxar.rda.imaging.common.bytesource;
 import com.maxar.rda.imaging.common.BinaryFunctions;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class ByteSource {
     private final String fileName;
@@ -50,6 +52,64 @@ public abstract class ByteSource {
 
     public abstract byte[] getBlock(long start, int length) throws IOException;
 
+    /**
+     * Reads bytes into a buffer, filling it from its position to its
+     * limit.  Sources that can read directly into the buffer override
+     * this to avoid the intermediate array used here.
+     *
+     * @param position the offset in the source of the first byte to read
+     * @param dst the buffer to fill
+     * @throws IOException if the bytes lie outside the source
+     */
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        dst.put(getBlock(position, dst.remaining()));
+    }
+
+    /**
+     * Gets a read-only view of a block of the source, positioned at zero
+     * with the block's length as its limit.  Sources held in memory
+     * override this to return a view that shares their storage, so that
+     * no bytes are copied.
+     *
+     * @param start the offset of the block in the source
+     * @param length the length of the block in bytes
+     * @return a read-only buffer holding the block
+     * @throws IOException if the block lies outside the source
+     */
+    public ByteBuffer slice(final long start, final int length) throws IOException {
+        return ByteBuffer.wrap(getBlock(start, length)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Starts reading a block of the source, so that the caller may do
+     * other work while the read is in progress.  Sources that cannot read
+     * asynchronously, including this default, complete the read before
+     * returning.
+     *
+     * @param start the offset of the block in the source
+     * @param length the length of the block in bytes
+     * @return a future completed with the block, positioned at zero, or
+     * completed exceptionally with the IOException that ended the read
+     */
+    public CompletableFuture<ByteBuffer> readAsync(final long start, final int length) {
+        try {
+            return CompletableFuture.completedFuture(slice(start, length));
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Indicates whether {@link #slice} returns a view of storage the
+     * source already holds, rather than a copy.  Callers that would
+     * otherwise read into a reusable array use slices when this is true.
+     *
+     * @return true if slices are views of the source's own storage
+     */
+    public boolean hasSharedSlices() {
+        return false;
+    }
+
     public abstract byte[] getAll() throws IOException;
 
     /**
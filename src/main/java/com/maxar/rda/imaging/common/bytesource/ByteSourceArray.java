@@ -19,6 +19,7 @@ package com.maxar.rda.imaging.common.bytesource;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 public class ByteSourceArray extends ByteSource {
     private final byte[] bytes;
@@ -37,22 +38,42 @@ public class ByteSourceArray extends ByteSource {
         return new ByteArrayInputStream(bytes);
     }
 
-    @Override
-    public byte[] getBlock(final long startLong, final int length) throws IOException {
-        final int start = (int) startLong;
+    private int checkBlock(final long startLong, final int length) throws IOException {
         // We include a separate check for int overflow.
-        if ((start < 0) || (length < 0) || (start + length < 0)
-                || (start + length > bytes.length)) {
-            throw new IOException("Could not read block (block start: " + start
+        if ((startLong < 0) || (length < 0) || (startLong + length < 0)
+                || (startLong + length > bytes.length)) {
+            throw new IOException("Could not read block (block start: " + startLong
                     + ", block length: " + length + ", data length: "
                     + bytes.length + ").");
         }
+        return (int) startLong;
+    }
 
+    @Override
+    public byte[] getBlock(final long startLong, final int length) throws IOException {
+        final int start = checkBlock(startLong, length);
         final byte[] result = new byte[length];
         System.arraycopy(bytes, start, result, 0, length);
         return result;
     }
 
+    @Override
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        final int length = dst.remaining();
+        dst.put(bytes, checkBlock(position, length), length);
+    }
+
+    @Override
+    public ByteBuffer slice(final long startLong, final int length) throws IOException {
+        final int start = checkBlock(startLong, length);
+        return ByteBuffer.wrap(bytes, start, length).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean hasSharedSlices() {
+        return true;
+    }
+
     @Override
     public long getLength() {
         return bytes.length;
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common.bytesource;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A byte source that keeps a file open and reads blocks asynchronously.
+ *
+ * <p>Reads started with {@link #readAsync} are carried out by the
+ * channel's thread pool while the caller continues, so that a reader can
+ * request the next tiles or strips of an image while it decompresses the
+ * current one.  The synchronous methods wait for the same reads.  Reads
+ * do not share a position, so any number of threads may use the source
+ * at once.</p>
+ */
+public class ByteSourceAsyncFile extends ByteSource implements Closeable {
+    private final File file;
+    private final AsynchronousFileChannel channel;
+    private final long length;
+
+    public ByteSourceAsyncFile(final File file) throws IOException {
+        super(file.getName());
+        this.file = file;
+        this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.length = channel.size();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    private void checkBlock(final long start, final int blockLength) throws IOException {
+        // We include a separate check for int overflow.
+        if ((start < 0) || (blockLength < 0) || (start + blockLength < 0)
+                || (start + blockLength > length)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + blockLength
+                    + ", data length: " + length + ").");
+        }
+    }
+
+    @Override
+    public CompletableFuture<ByteBuffer> readAsync(final long start, final int blockLength) {
+        try {
+            checkBlock(start, blockLength);
+        } catch (final IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(blockLength);
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        readFully(buffer, start, future);
+        return future.thenApply(ByteBuffer::flip);
+    }
+
+    /**
+     * Reads until the buffer is full, issuing a further read from the
+     * completion handler whenever a read returns fewer bytes.
+     */
+    private void readFully(final ByteBuffer buffer, final long position,
+            final CompletableFuture<ByteBuffer> future) {
+        if (!buffer.hasRemaining()) {
+            future.complete(buffer);
+            return;
+        }
+        channel.read(buffer, position, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(final Integer count, final Void attachment) {
+                if (count < 0) {
+                    future.completeExceptionally(new EOFException(
+                            "Could not read block (position: " + position + ")."));
+                } else {
+                    readFully(buffer, position + count, future);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable exc, final Void attachment) {
+                future.completeExceptionally(exc);
+            }
+        });
+    }
+
+    private static ByteBuffer await(final CompletableFuture<ByteBuffer> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not read block", cause);
+        }
+    }
+
+    @Override
+    public byte[] getBlock(final long start, final int blockLength) throws IOException {
+        return await(readAsync(start, blockLength)).array();
+    }
+
+    @Override
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        checkBlock(position, dst.remaining());
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        readFully(dst, position, future);
+        await(future);
+    }
+
+    @Override
+    public byte[] getAll() throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to read into a single array: "
+                    + length + " bytes");
+        }
+        return getBlock(0, (int) length);
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Asynchronous file: '" + file.getAbsolutePath() + "'";
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common.bytesource;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A byte source that keeps a file open and reads blocks with positional
+ * reads.
+ *
+ * <p>Unlike {@link ByteSourceFile}, which opens the file for every block,
+ * a single channel is held open until the source is closed.  Blocks are
+ * read with {@link FileChannel#read(ByteBuffer, long)}, which does not
+ * use or move the channel's position, so any number of threads may call
+ * {@code getBlock} at once.  Note that interrupting a thread while it is
+ * reading closes the channel for all threads.</p>
+ */
+public class ByteSourceChannel extends ByteSource implements Closeable {
+    private final File file;
+    private final FileChannel channel;
+    private final long length;
+
+    public ByteSourceChannel(final File file) throws IOException {
+        super(file.getName());
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.length = channel.size();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        // the channel's position is not shared, so streams use their own handle
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    private void checkBlock(final long start, final int blockLength) throws IOException {
+        // We include a separate check for int overflow.
+        if ((start < 0) || (blockLength < 0) || (start + blockLength < 0)
+                || (start + blockLength > length)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + blockLength
+                    + ", data length: " + length + ").");
+        }
+    }
+
+    @Override
+    public byte[] getBlock(final long start, final int blockLength) throws IOException {
+        checkBlock(start, blockLength);
+        final ByteBuffer buffer = ByteBuffer.allocate(blockLength);
+        read(start, buffer);
+        return buffer.array();
+    }
+
+    @Override
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        final int blockLength = dst.remaining();
+        checkBlock(position, blockLength);
+
+        long p = position;
+        while (dst.hasRemaining()) {
+            final int read = channel.read(dst, p);
+            if (read < 0) {
+                throw new EOFException("Could not read block (block start: "
+                        + position + ", block length: " + blockLength + ").");
+            }
+            p += read;
+        }
+    }
+
+    @Override
+    public byte[] getAll() throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to read into a single array: "
+                    + length + " bytes");
+        }
+        return getBlock(0, (int) length);
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getDescription() {
+        return "File channel: '" + file.getAbsolutePath() + "'";
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
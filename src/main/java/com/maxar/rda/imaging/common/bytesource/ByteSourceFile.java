@@ -16,17 +16,30 @@
  */
 package com.maxar.rda.imaging.common.bytesource;
 
-import com.maxar.rda.imaging.common.BinaryFunctions;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
-public class ByteSourceFile extends ByteSource {
+/**
+ * A byte source that reads a file.
+ *
+ * <p>The file is opened by the first block read, and the channel is held
+ * for the reads that follow, which are positional and may be made by any
+ * number of threads at once.  The channel is released when the source is
+ * closed, or else when the source is garbage collected; a read after a
+ * close, or after an interrupted read closed the channel, opens it
+ * again.</p>
+ */
+public class ByteSourceFile extends ByteSource implements Closeable {
     private final File file;
+    private FileChannel channel;
 
     public ByteSourceFile(final File file) {
         super(file.getName());
@@ -38,19 +51,61 @@ public class ByteSourceFile extends ByteSource {
         return new BufferedInputStream(new FileInputStream(file));
     }
 
+    private synchronized FileChannel getChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
     @Override
     public byte[] getBlock(final long start, final int length) throws IOException {
-        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-            // We include a separate check for int overflow.
-            if ((start < 0) || (length < 0) || (start + length < 0)
-                    || (start + length > raf.length())) {
-                throw new IOException("Could not read block (block start: "
-                        + start + ", block length: " + length
-                        + ", data length: " + raf.length() + ").");
+        // We include a separate check for int overflow.
+        if (length < 0 || start + length < 0) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + length
+                    + ", data length: " + getLength() + ").");
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(start, buffer);
+        return buffer.array();
+    }
+
+    @Override
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        readFully(position, dst);
+    }
+
+    private void readFully(final long position, final ByteBuffer dst) throws IOException {
+        final int length = dst.remaining();
+        final FileChannel channel = getChannel();
+        // We include a separate check for int overflow.
+        if ((position < 0) || (position + length < 0)
+                || (position + length > channel.size())) {
+            throw new IOException("Could not read block (block start: "
+                    + position + ", block length: " + length
+                    + ", data length: " + channel.size() + ").");
+        }
+        long p = position;
+        while (dst.hasRemaining()) {
+            final int count = channel.read(dst, p);
+            if (count < 0) {
+                throw new IOException("Could not read value from file");
             }
+            p += count;
+        }
+    }
 
-            return BinaryFunctions.getRAFBytes(raf, start, length,
-                    "Could not read value from file");
+    /**
+     * Releases the channel opened by block reads, if any.
+     *
+     * @throws IOException in the event of an I/O error
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
         }
     }
 
@@ -73,6 +128,10 @@ public class ByteSourceFile extends ByteSource {
         }
     }
 
+    public File getFile() {
+        return file;
+    }
+
     @Override
     public String getDescription() {
         return "File: '" + file.getAbsolutePath() + "'";
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common.bytesource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A byte source that maps a file into memory.
+ *
+ * <p>A single {@code MappedByteBuffer} cannot address more than 2 GB, so
+ * the file is mapped as a sequence of fixed-size windows. Reads that fall
+ * inside one window are served straight from the mapping; reads that
+ * straddle a window boundary are stitched together from both windows.
+ * Once constructed no file handle is held open and {@code getBlock} does
+ * not issue any system calls.</p>
+ */
+public class ByteSourceMapped extends ByteSource {
+    /**
+     * The default size of each mapped window (1 GB).
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final File file;
+    private final long length;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+
+    public ByteSourceMapped(final File file) throws IOException {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public ByteSourceMapped(final File file, final int segmentSize) throws IOException {
+        super(file.getName());
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            length = channel.size();
+            final int segmentCount = (int) ((length + segmentSize - 1) / segmentSize);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                final long position = (long) i * segmentSize;
+                final long size = Math.min(segmentSize, length - position);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+        }
+    }
+
+    private void checkBlock(final long start, final int blockLength) throws IOException {
+        // We include a separate check for int overflow.
+        if ((start < 0) || (blockLength < 0) || (start + blockLength < 0)
+                || (start + blockLength > length)) {
+            throw new IOException("Could not read block (block start: "
+                    + start + ", block length: " + blockLength
+                    + ", data length: " + length + ").");
+        }
+    }
+
+    /**
+     * Copies bytes from the mapping into an array, crossing window
+     * boundaries as necessary.
+     */
+    private void copy(final long start, final byte[] dst, final int dstOffset, final int count) {
+        long position = start;
+        int offset = dstOffset;
+        int remaining = count;
+        while (remaining > 0) {
+            final int segment = (int) (position / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            final int chunk = Math.min(remaining, segments[segment].limit() - segmentOffset);
+            segments[segment].get(segmentOffset, dst, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new MappedInputStream();
+    }
+
+    @Override
+    public byte[] getBlock(final long start, final int blockLength) throws IOException {
+        checkBlock(start, blockLength);
+        final byte[] result = new byte[blockLength];
+        copy(start, result, 0, blockLength);
+        return result;
+    }
+
+    @Override
+    public void read(final long position, final ByteBuffer dst) throws IOException {
+        final int blockLength = dst.remaining();
+        checkBlock(position, blockLength);
+        long p = position;
+        int remaining = blockLength;
+        while (remaining > 0) {
+            final int segment = (int) (p / segmentSize);
+            final int segmentOffset = (int) (p % segmentSize);
+            final int chunk = Math.min(remaining, segments[segment].limit() - segmentOffset);
+            dst.put(segments[segment].slice(segmentOffset, chunk));
+            p += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    @Override
+    public ByteBuffer slice(final long start, final int blockLength) throws IOException {
+        return getBuffer(start, blockLength);
+    }
+
+    @Override
+    public boolean hasSharedSlices() {
+        return true;
+    }
+
+    /**
+     * Gets a read-only view of a block of the file.  If the block lies
+     * within a single mapped window, the returned buffer shares the
+     * mapping and no bytes are copied.  Otherwise the block is copied
+     * into a heap buffer.
+     *
+     * @param start the offset of the block in the file
+     * @param blockLength the length of the block in bytes
+     * @return a read-only buffer positioned at zero with the block's length
+     * @throws IOException if the block lies outside the file
+     */
+    public ByteBuffer getBuffer(final long start, final int blockLength) throws IOException {
+        checkBlock(start, blockLength);
+        final int segment = (int) (start / segmentSize);
+        final int segmentOffset = (int) (start % segmentSize);
+        if (blockLength == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        if (segmentOffset + (long) blockLength <= segments[segment].limit()) {
+            return segments[segment].slice(segmentOffset, blockLength).asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(getBlock(start, blockLength)).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getAll() throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File is too large to read into a single array: "
+                    + length + " bytes");
+        }
+        return getBlock(0, (int) length);
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Mapped file: '" + file.getAbsolutePath() + "'";
+    }
+
+    private class MappedInputStream extends InputStream {
+        private long position;
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            final int segment = (int) (position / segmentSize);
+            final int segmentOffset = (int) (position % segmentSize);
+            position++;
+            return 0xff & segments[segment].get(segmentOffset);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if ((off < 0) || (len < 0) || (len > b.length - off)) {
+                throw new IndexOutOfBoundsException();
+            } else if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            final int count = (int) Math.min(len, length - position);
+            copy(position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            final long skipped = Math.min(n, length - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+    }
+
+}
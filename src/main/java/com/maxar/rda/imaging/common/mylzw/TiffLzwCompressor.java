@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common.mylzw;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compressor for TIFF LZW data that uses a primitive hash table.
+ *
+ * <p>This produces the same output as a {@code MyLzwCompressor} with an
+ * initial code size of 8, big-endian bit order and the early limit set.
+ * Rather than keying the dictionary on the byte strings themselves, each
+ * entry is keyed on the code of its prefix string and its final byte,
+ * packed into a single int, and stored in an open-addressing table with
+ * linear probing.  No objects are allocated per input byte.</p>
+ *
+ * <p>An instance may be reused for any number of strips or tiles, but it
+ * is not thread-safe.</p>
+ */
+public final class TiffLzwCompressor {
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int INITIAL_CODE_SIZE = 8;
+    private static final int CLEAR_CODE = 1 << INITIAL_CODE_SIZE;
+    private static final int EOI_CODE = CLEAR_CODE + 1;
+
+    // at most 4096 - 258 entries are held, so a table of 8192 slots
+    // stays under half full
+    private static final int HASH_BITS = 13;
+    private static final int HASH_SIZE = 1 << HASH_BITS;
+    private static final int HASH_MASK = HASH_SIZE - 1;
+    private static final int EMPTY = -1;
+
+    private final int[] hashKeys = new int[HASH_SIZE];
+    private final short[] hashCodes = new short[HASH_SIZE];
+
+    private int codes;
+    private int codeSize;
+
+    // output state, valid for the duration of a call to compress
+    private byte[] output;
+    private int outputLength;
+    private long bitBuffer;
+    private int bitsInBuffer;
+
+    /**
+     * Compresses an array of data.
+     *
+     * @param bytes the data to be compressed
+     * @return the compressed data
+     * @throws IOException if the data is empty
+     */
+    public byte[] compress(final byte[] bytes) throws IOException {
+        return compress(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Compresses a range of an array of data.
+     *
+     * @param bytes the array holding the data to be compressed
+     * @param offset the start of the data within the array
+     * @param length the number of bytes to compress
+     * @return the compressed data
+     * @throws IOException if the length is zero
+     */
+    public byte[] compress(final byte[] bytes, final int offset, final int length)
+            throws IOException {
+        if (length == 0) {
+            // there is no string to emit; MyLzwCompressor also rejects this
+            throw new IOException("CodeFromString");
+        }
+
+        output = new byte[length / 2 + 16];
+        outputLength = 0;
+        bitBuffer = 0;
+        bitsInBuffer = 0;
+
+        clearTable();
+        writeCode(CLEAR_CODE);
+
+        final int end = offset + length;
+        int w = bytes[offset] & 0xff;
+        for (int i = offset + 1; i < end; i++) {
+            final int c = bytes[i] & 0xff;
+            final int key = (w << 8) | c;
+            int slot = hash(key);
+            int k;
+            while ((k = hashKeys[slot]) != EMPTY) {
+                if (k == key) {
+                    break;
+                }
+                slot = (slot + 1) & HASH_MASK;
+            }
+            if (k == key) {
+                w = hashCodes[slot];
+            } else {
+                writeCode(w);
+                addTableEntry(slot, key);
+                w = c;
+            }
+        }
+
+        writeCode(w);
+        writeCode(EOI_CODE);
+
+        if (bitsInBuffer > 0) {
+            // left-align the final fragment
+            ensureCapacity(1);
+            output[outputLength++] = (byte) (bitBuffer << (8 - bitsInBuffer));
+        }
+
+        final byte[] result = Arrays.copyOf(output, outputLength);
+        output = null;
+        return result;
+    }
+
+    private static int hash(final int key) {
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private void clearTable() {
+        Arrays.fill(hashKeys, EMPTY);
+        codes = CLEAR_CODE + 2;
+        codeSize = INITIAL_CODE_SIZE + 1;
+    }
+
+    private void addTableEntry(final int slot, final int key) {
+        // TIFF LZW switches to the next code size one code early
+        if (codes == (1 << codeSize) - 1) {
+            if (codeSize < MAX_CODE_SIZE) {
+                codeSize++;
+            } else {
+                writeCode(CLEAR_CODE);
+                clearTable();
+                return;
+            }
+        }
+        hashKeys[slot] = key;
+        hashCodes[slot] = (short) codes;
+        codes++;
+    }
+
+    private void writeCode(final int code) {
+        bitBuffer = (bitBuffer << codeSize) | code;
+        bitsInBuffer += codeSize;
+        if (bitsInBuffer >= 8) {
+            ensureCapacity(2);
+            do {
+                bitsInBuffer -= 8;
+                output[outputLength++] = (byte) (bitBuffer >>> bitsInBuffer);
+            } while (bitsInBuffer >= 8);
+        }
+    }
+
+    private void ensureCapacity(final int n) {
+        if (outputLength + n > output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common.mylzw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A table-driven decompressor for TIFF LZW data.
+ *
+ * <p>This produces the same output as a {@code MyLzwDecompressor} with an
+ * initial code size of 8, big-endian bit order and TIFF LZW mode, but
+ * without allocating anything per code.  The dictionary is held as flat
+ * prefix, suffix and length tables, in which each entry is the string for
+ * its prefix code followed by a single suffix byte.  Codes are read from a
+ * 64-bit buffer over the input array or ByteBuffer and strings are written
+ * directly into the caller's output array, back to front along the prefix
+ * chain.</p>
+ *
+ * <p>An instance holds about 40 KB of tables and may be reused for any
+ * number of tiles or strips, but it is not thread-safe.</p>
+ */
+public final class TiffLzwDecompressor {
+    private static final int MAX_TABLE_SIZE = 1 << 12;
+    private static final int MAX_CODE_SIZE = 12;
+    private static final int INITIAL_CODE_SIZE = 8;
+    private static final int CLEAR_CODE = 1 << INITIAL_CODE_SIZE;
+    private static final int EOI_CODE = CLEAR_CODE + 1;
+
+    private final int[] prefix = new int[MAX_TABLE_SIZE];
+    private final byte[] suffix = new byte[MAX_TABLE_SIZE];
+    private final byte[] first = new byte[MAX_TABLE_SIZE];
+    private final int[] length = new int[MAX_TABLE_SIZE];
+
+    // decoder state, valid for the duration of a call to decompress;
+    // the input is either an array or, for other buffers, a ByteBuffer
+    private byte[] input;
+    private ByteBuffer inputBuffer;
+    private int inputPosition;
+    private int inputLimit;
+    private long bitBuffer;
+    private int bitsInBuffer;
+    private int codes;
+    private int codeSize;
+
+    public TiffLzwDecompressor() {
+        // The clear and end-of-information codes never reach the table
+        // as codes, but a clear code that immediately follows another is
+        // decoded as a single byte, matching MyLzwDecompressor.
+        for (int i = 0; i < CLEAR_CODE + 2; i++) {
+            prefix[i] = -1;
+            suffix[i] = (byte) i;
+            first[i] = (byte) i;
+            length[i] = 1;
+        }
+    }
+
+    /**
+     * Decompresses an entire array of LZW data.
+     *
+     * @param compressed the compressed data
+     * @param output the array to receive the decompressed data; decoding
+     * stops once it has been filled
+     * @return the number of bytes written to the output
+     * @throws IOException if the data contains an invalid code
+     */
+    public int decompress(final byte[] compressed, final byte[] output) throws IOException {
+        return decompress(compressed, 0, compressed.length, output);
+    }
+
+    /**
+     * Decompresses a range of an array of LZW data.
+     *
+     * @param compressed the array holding the compressed data
+     * @param offset the start of the compressed data within the array
+     * @param count the number of bytes of compressed data
+     * @param output the array to receive the decompressed data; decoding
+     * stops once it has been filled
+     * @return the number of bytes written to the output
+     * @throws IOException if the data contains an invalid code
+     */
+    public int decompress(final byte[] compressed, final int offset, final int count,
+            final byte[] output) throws IOException {
+        return decompress(compressed, offset, count, output, output.length);
+    }
+
+    /**
+     * Decompresses a range of an array of LZW data into the start of an
+     * output array that may be longer than the data expected, such as
+     * one borrowed from a pool.
+     *
+     * @param compressed the array holding the compressed data
+     * @param offset the start of the compressed data within the array
+     * @param count the number of bytes of compressed data
+     * @param output the array to receive the decompressed data
+     * @param outputLength the number of bytes expected; decoding stops
+     * once this many have been written
+     * @return the number of bytes written to the output
+     * @throws IOException if the data contains an invalid code
+     */
+    public int decompress(final byte[] compressed, final int offset, final int count,
+            final byte[] output, final int outputLength) throws IOException {
+        input = compressed;
+        inputPosition = offset;
+        inputLimit = offset + count;
+        bitBuffer = 0;
+        bitsInBuffer = 0;
+        try {
+            return decode(output, outputLength);
+        } finally {
+            input = null;
+        }
+    }
+
+    /**
+     * Decompresses LZW data held in a buffer, which may be a view of a
+     * mapped file, without first copying it to an array.  The buffer's
+     * position is not changed.
+     *
+     * @param compressed the compressed data, from the buffer's position to
+     * its limit
+     * @param output the array to receive the decompressed data; decoding
+     * stops once it has been filled
+     * @return the number of bytes written to the output
+     * @throws IOException if the data contains an invalid code
+     */
+    public int decompress(final ByteBuffer compressed, final byte[] output) throws IOException {
+        return decompress(compressed, output, output.length);
+    }
+
+    /**
+     * Decompresses LZW data held in a buffer into the start of an output
+     * array that may be longer than the data expected.  The buffer's
+     * position is not changed.
+     *
+     * @param compressed the compressed data, from the buffer's position to
+     * its limit
+     * @param output the array to receive the decompressed data
+     * @param outputLength the number of bytes expected; decoding stops
+     * once this many have been written
+     * @return the number of bytes written to the output
+     * @throws IOException if the data contains an invalid code
+     */
+    public int decompress(final ByteBuffer compressed, final byte[] output,
+            final int outputLength) throws IOException {
+        if (compressed.hasArray()) {
+            return decompress(compressed.array(),
+                    compressed.arrayOffset() + compressed.position(),
+                    compressed.remaining(), output, outputLength);
+        }
+        inputBuffer = compressed;
+        inputPosition = compressed.position();
+        inputLimit = compressed.limit();
+        bitBuffer = 0;
+        bitsInBuffer = 0;
+        try {
+            return decode(output, outputLength);
+        } finally {
+            inputBuffer = null;
+        }
+    }
+
+    private int decode(final byte[] output, final int expectedLength) throws IOException {
+        int written = 0;
+        int oldCode = -1;
+        int code;
+
+        clearTable();
+
+        while ((code = nextCode()) != EOI_CODE) {
+            if (code == CLEAR_CODE) {
+                clearTable();
+
+                if (written >= expectedLength) {
+                    break;
+                }
+                code = nextCode();
+
+                if (code == EOI_CODE) {
+                    break;
+                }
+                checkCode(code);
+                written = writeString(code, output, written, expectedLength);
+
+                oldCode = code;
+            } else {
+                if (code < codes) {
+                    written = writeString(code, output, written, expectedLength);
+                    checkCode(oldCode);
+                    addString(oldCode, first[code]);
+                } else {
+                    // the code is the one about to be defined: the string
+                    // for the previous code followed by its first byte
+                    checkCode(oldCode);
+                    final byte b = first[oldCode];
+                    written = writeString(oldCode, output, written, expectedLength);
+                    if (written < expectedLength) {
+                        output[written] = b;
+                    }
+                    written++;
+                    addString(oldCode, b);
+                }
+                oldCode = code;
+            }
+
+            if (written >= expectedLength) {
+                break;
+            }
+        }
+
+        return Math.min(written, expectedLength);
+    }
+
+    private void clearTable() {
+        codes = CLEAR_CODE + 2;
+        codeSize = INITIAL_CODE_SIZE + 1;
+    }
+
+    private void checkCode(final int code) throws IOException {
+        if ((code >= codes) || (code < 0)) {
+            throw new IOException("Bad Code: " + code + " codes: " + codes
+                    + " code_size: " + codeSize + ", table: " + MAX_TABLE_SIZE);
+        }
+    }
+
+    /**
+     * Reads the next code, most significant bit first.  If the input is
+     * exhausted, the end-of-information code is returned.
+     */
+    private int nextCode() {
+        if (bitsInBuffer < codeSize) {
+            // top up the buffer with whole bytes, leaving room for a shift
+            if (input != null) {
+                while (bitsInBuffer <= 56 && inputPosition < inputLimit) {
+                    bitBuffer = (bitBuffer << 8) | (input[inputPosition++] & 0xff);
+                    bitsInBuffer += 8;
+                }
+            } else {
+                while (bitsInBuffer <= 56 && inputPosition < inputLimit) {
+                    bitBuffer = (bitBuffer << 8) | (inputBuffer.get(inputPosition++) & 0xff);
+                    bitsInBuffer += 8;
+                }
+            }
+            if (bitsInBuffer < codeSize) {
+                return EOI_CODE;
+            }
+        }
+        bitsInBuffer -= codeSize;
+        return (int) (bitBuffer >>> bitsInBuffer) & ((1 << codeSize) - 1);
+    }
+
+    private void addString(final int prefixCode, final byte b) {
+        if (codes < (1 << codeSize)) {
+            prefix[codes] = prefixCode;
+            suffix[codes] = b;
+            first[codes] = first[prefixCode];
+            length[codes] = length[prefixCode] + 1;
+            codes++;
+        }
+        // If the table is already full, the string is simply not added.
+
+        // TIFF LZW switches to the next code size one code early
+        if (codes == (1 << codeSize) - 1 && codeSize < MAX_CODE_SIZE) {
+            codeSize++;
+        }
+    }
+
+    /**
+     * Writes the string for a code at the given position, walking the
+     * prefix chain from the last byte to the first.  Bytes that would
+     * fall beyond the end of the output are dropped, but still counted.
+     *
+     * @return the position following the string
+     */
+    private int writeString(final int code, final byte[] output, final int position,
+            final int outputLength) {
+        final int n = length[code];
+        final int end = position + n;
+        int c = code;
+        int i = end - 1;
+        if (end > outputLength) {
+            for (; i >= outputLength; i--) {
+                c = prefix[c];
+            }
+        }
+        for (; i >= position; i--) {
+            output[i] = suffix[c];
+            c = prefix[c];
+        }
+        return end;
+    }
+}
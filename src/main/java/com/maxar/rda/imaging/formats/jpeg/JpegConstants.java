@@ -25,6 +25,28 @@ import java.util.List;
 public final class JpegConstants {
     public static final int MAX_SEGMENT_SIZE = 0xffff;
 
+    /**
+     * Parameter key. Used in read operations to supply an executor for
+     * decoding the restart intervals of a JPEG in parallel.  Only images
+     * with a restart interval (a DRI segment) are decoded in parallel;
+     * the decoded image is identical to the one produced by a serial
+     * read.  The executor is not shut down by the parser.
+     * <p>
+     * Valid values: any java.util.concurrent.ExecutorService, including
+     * a ForkJoinPool.
+     */
+    public static final String PARAM_KEY_EXECUTOR = "EXECUTOR";
+
+    /**
+     * Parameter key. Used in read operations to decode a reduced image,
+     * for thumbnails and overviews, at a fraction of the cost of decoding
+     * the full one.  The image is the size of the full image divided by
+     * the value, rounded up.
+     * <p>
+     * Valid values: the Integer 1, 2, 4 or 8.
+     */
+    public static final String PARAM_KEY_SCALE_DENOMINATOR = "SCALE_DENOMINATOR";
+
     public static final BinaryConstant JFIF0_SIGNATURE = new BinaryConstant(
             new byte[] { 0x4a, // J
                     0x46, // F
@@ -41,6 +41,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -101,6 +102,30 @@ public class JpegImageParser extends ImageParser
     public final BufferedImage getBufferedImage(final ByteSource byteSource,
             final Map<String, Object> params) throws ImageReadException, IOException {
         final JpegDecoder jpegDecoder = new JpegDecoder();
+        final Object executor = params == null ? null
+                : params.get(JpegConstants.PARAM_KEY_EXECUTOR);
+        if (executor != null) {
+            if (!(executor instanceof ExecutorService)) {
+                throw new ImageReadException("Non-ExecutorService parameter "
+                        + JpegConstants.PARAM_KEY_EXECUTOR);
+            }
+            jpegDecoder.setExecutor((ExecutorService) executor);
+        }
+        final Object scale = params == null ? null
+                : params.get(JpegConstants.PARAM_KEY_SCALE_DENOMINATOR);
+        if (scale != null) {
+            if (!(scale instanceof Integer)) {
+                throw new ImageReadException("Non-Integer parameter "
+                        + JpegConstants.PARAM_KEY_SCALE_DENOMINATOR);
+            }
+            final int denominator = (Integer) scale;
+            if (denominator != 1 && denominator != 2 && denominator != 4 && denominator != 8) {
+                throw new ImageReadException("Invalid "
+                        + JpegConstants.PARAM_KEY_SCALE_DENOMINATOR + " " + denominator
+                        + ", must be 1, 2, 4 or 8");
+            }
+            jpegDecoder.setScale(denominator);
+        }
         return jpegDecoder.decode(byteSource);
     }
 
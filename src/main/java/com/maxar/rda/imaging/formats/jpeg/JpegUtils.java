@@ -27,6 +27,7 @@ import com.maxar.rda.imaging.common.bytesource.ByteSource;
 import com.maxar.rda.imaging.internal.Debug;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class JpegUtils extends BinaryFileParser
@@ -41,6 +42,18 @@ public class JpegUtils extends BinaryFileParser
 
         void visitSOS(int marker, byte[] markerBytes, byte[] imageData);
 
+        /**
+         * Receives the image data as a range of the buffer being traversed,
+         * when traversing a buffer.  By default, the range is copied and
+         * passed to {@link #visitSOS(int, byte[], byte[])}.
+         */
+        default void visitSOS(final int marker, final byte[] markerBytes, final ByteBuffer data,
+                final int offset, final int length) {
+            final byte[] imageData = new byte[length];
+            data.get(offset, imageData);
+            visitSOS(marker, markerBytes, imageData);
+        }
+
         // return false to exit traversal.
         boolean visitSegment(int marker, byte[] markerBytes,
                 int segmentLength, byte[] segmentLengthBytes,
@@ -96,6 +109,72 @@ public class JpegUtils extends BinaryFileParser
         }
     }
 
+    /**
+     * Traverses a JPEG stream held in a buffer, from its position to its
+     * limit, which are left unchanged.  Unlike a traversal of a byte
+     * source, the image data is not copied: the visitor receives it as a
+     * range of the buffer, which may be read-only and need not be backed
+     * by an accessible array.
+     *
+     * @param data the buffer
+     * @param visitor the visitor
+     * @throws ImageReadException if the stream is not a valid JPEG stream
+     * @throws IOException if the stream ends early, or in the event of an
+     * error of the visitor
+     */
+    public void traverseJFIF(final ByteBuffer data, final Visitor visitor)
+            throws ImageReadException, IOException {
+        final int end = data.limit();
+        int pos = data.position();
+        final int soiSize = JpegConstants.SOI.size();
+        for (int i = 0; i < soiSize; i++) {
+            if (pos >= end || data.get(pos++) != JpegConstants.SOI.get(i)) {
+                throw new ImageReadException("Not a Valid JPEG File: doesn't begin with 0xffd8");
+            }
+        }
+
+        while (true) {
+            final byte[] markerBytes = new byte[2];
+            do {
+                if (pos >= end) {
+                    throw new IOException("Could not read marker");
+                }
+                markerBytes[0] = markerBytes[1];
+                markerBytes[1] = data.get(pos++);
+            } while ((0xff & markerBytes[0]) != 0xff
+                    || (0xff & markerBytes[1]) == 0xff);
+            final int marker = ((0xff & markerBytes[0]) << 8)
+                    | (0xff & markerBytes[1]);
+
+            if (marker == JpegConstants.EOI_MARKER || marker == JpegConstants.SOS_MARKER) {
+                if (visitor.beginSOS()) {
+                    visitor.visitSOS(marker, markerBytes, data, pos, end - pos);
+                }
+                return;
+            }
+
+            if (end - pos < 2) {
+                throw new IOException("segmentLengthBytes");
+            }
+            final byte[] segmentLengthBytes = new byte[2];
+            data.get(pos, segmentLengthBytes);
+            final int segmentLength = ByteConversions.toUInt16(segmentLengthBytes, getByteOrder());
+            if (segmentLength < 2) {
+                throw new ImageReadException("Invalid segment size");
+            }
+            if (end - pos < segmentLength) {
+                throw new IOException("Invalid Segment: insufficient data");
+            }
+            final byte[] segmentData = new byte[segmentLength - 2];
+            data.get(pos + 2, segmentData);
+            pos += segmentLength;
+
+            if (!visitor.visitSegment(marker, markerBytes, segmentLength, segmentLengthBytes, segmentData)) {
+                return;
+            }
+        }
+    }
+
     public static String getMarkerName(final int marker) {
         switch (marker) {
         case JpegConstants.SOS_MARKER:
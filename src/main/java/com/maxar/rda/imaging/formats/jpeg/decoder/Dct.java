@@ -96,9 +96,31 @@ final class Dct {
     private static final float Q = C2 - C6;
     private static final float R = C2 + C6;
 
+    /*
+     * The reduced inverse DCTs evaluate the 8-point basis functions of the
+     * lowest size frequencies at the centers of size samples, rather than
+     * of 8, which is the same as resampling the full block after removing
+     * the frequencies that the smaller block cannot represent.  Element
+     * size * x + u is C(u) / 2 * cos((2x + 1) * u * pi / (2 * size)).
+     */
+    private static final float[] REDUCED_IDCT_4 = reducedIdctBasis(4);
+    private static final float[] REDUCED_IDCT_2 = reducedIdctBasis(2);
+
     private Dct() {
     }
 
+    private static float[] reducedIdctBasis(final int size) {
+        final float[] basis = new float[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int u = 0; u < size; u++) {
+                final double c = u == 0 ? 0.5 / Math.sqrt(2.0) : 0.5;
+                basis[size * x + u] = (float) (c * Math.cos((2 * x + 1) * u * Math.PI
+                        / (2.0 * size)));
+            }
+        }
+        return basis;
+    }
+
     public static void scaleQuantizationVector(final float[] vector) {
         for (int x = 0; x < 8; x++) {
             vector[x] *= DCT_SCALING_FACTORS[x];
@@ -379,4 +401,38 @@ final class Dct {
             matrix[56 + i] = m4 - a7;
         }
     }
+
+    /**
+     * Transforms the lowest size by size frequencies of an 8x8 block of
+     * dequantized, but not scaled, coefficients into a size by size block
+     * of samples, each of which stands for 8 / size by 8 / size samples
+     * of the full block.
+     *
+     * @param matrix the coefficients, in rows of 8, which are replaced by
+     * the samples, also in rows of 8
+     * @param size 4 or 2
+     */
+    public static void inverseDCTReduced(final float[] matrix, final int size) {
+        final float[] basis = size == 4 ? REDUCED_IDCT_4 : REDUCED_IDCT_2;
+        // the rows are transformed into columns 4 to 7, which hold
+        // frequencies that are not used, then the columns back into 0 to 3
+        for (int v = 0; v < size; v++) {
+            for (int x = 0; x < size; x++) {
+                float sum = 0;
+                for (int u = 0; u < size; u++) {
+                    sum += basis[size * x + u] * matrix[8 * v + u];
+                }
+                matrix[8 * v + 4 + x] = sum;
+            }
+        }
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                float sum = 0;
+                for (int v = 0; v < size; v++) {
+                    sum += basis[size * y + v] * matrix[8 * v + 4 + x];
+                }
+                matrix[8 * y + x] = sum;
+            }
+        }
+    }
 }
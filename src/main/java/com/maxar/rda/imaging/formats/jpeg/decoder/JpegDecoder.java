@@ -17,7 +17,7 @@ package com.maxar.rda.imaging.formats.jpeg.decoder;
 
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.common.BinaryFileParser;
-import com.maxar.rda.imaging.common.BinaryFunctions;
+import com.maxar.rda.imaging.common.ByteConversions;
 import com.maxar.rda.imaging.common.bytesource.ByteSource;
 import com.maxar.rda.imaging.formats.jpeg.JpegConstants;
 import com.maxar.rda.imaging.formats.jpeg.JpegUtils;
@@ -27,20 +27,23 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DirectColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.maxar.rda.imaging.formats.jpeg.segments.DhtSegment;
 import com.maxar.rda.imaging.formats.jpeg.segments.DqtSegment;
 import com.maxar.rda.imaging.formats.jpeg.segments.SofnSegment;
 import com.maxar.rda.imaging.formats.jpeg.segments.SosSegment;
 
-import static com.maxar.rda.imaging.common.BinaryFunctions.readBytes;
-
 public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
 {
     /*
@@ -61,9 +64,109 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
     private BufferedImage image;
     private ImageReadException imageReadException;
     private IOException ioException;
-    private final int[] zz = new int[64];
-    private final int[] blockInt = new int[64];
-    private final float[] block = new float[64];
+    private ExecutorService executor;
+    /*
+     * The denominator of the scale of the decoded image, and the size of
+     * the blocks of samples that each 8x8 block of coefficients becomes.
+     * The dequantization matrices of a reduced decode are not scaled for
+     * the AA&N inverse DCT, and are set up for each scan.
+     */
+    private int scale = 1;
+    private int blockSize = 8;
+    private float[][] reducedQuantizationTables;
+
+    /*
+     * When decoding samples, the array that receives them and the size of
+     * its rows and columns; null when decoding an image.
+     */
+    private byte[] samples;
+    private int samplesWidth;
+    private int samplesHeight;
+    private int restartInterval;
+    private boolean scanDecoded;
+
+    /**
+     * Receives the samples of each MCU once they have been decoded and
+     * rescaled to the size of the MCU.
+     */
+    private interface McuWriter {
+        void write(Block[] mcu, int x1, int y1, int hSize, int vSize)
+                throws ImageReadException;
+    }
+
+    /**
+     * The memory used to decode one MCU after another, allocated once for
+     * a serial decode, or once for each task of a parallel one.
+     */
+    static final class McuScratch {
+        final Block[] mcu;
+        final Block[] scaledMCU;
+        final int[] preds;
+        final int[] zz = new int[64];
+        final int[] blockInt = new int[64];
+        final float[] block = new float[64];
+
+        McuScratch(final Block[] mcu, final int hSize, final int vSize,
+                final int nComponents) {
+            this.mcu = mcu;
+            scaledMCU = new Block[mcu.length];
+            for (int i = 0; i < scaledMCU.length; i++) {
+                scaledMCU[i] = new Block(hSize, vSize);
+            }
+            preds = new int[nComponents];
+        }
+    }
+
+    public JpegDecoder() {
+    }
+
+    /**
+     * Constructs a decoder for abbreviated streams, which rely on tables
+     * supplied separately rather than carrying their own.  Tables that a
+     * stream does carry replace the given ones for that decoder only.
+     *
+     * @param tables the tables, or null if the streams carry their own
+     */
+    public JpegDecoder(final JpegTables tables) {
+        if (tables != null) {
+            System.arraycopy(tables.quantizationTables, 0, quantizationTables, 0, 4);
+            System.arraycopy(tables.scaledQuantizationTables, 0, scaledQuantizationTables, 0, 4);
+            System.arraycopy(tables.huffmanDCTables, 0, huffmanDCTables, 0, 4);
+            System.arraycopy(tables.huffmanACTables, 0, huffmanACTables, 0, 4);
+        }
+    }
+
+    /**
+     * Sets an executor for decoding the restart intervals of a scan in
+     * parallel.  Restart intervals are independent entropy-coded streams
+     * covering known ranges of MCUs, so the decoded image is identical
+     * to that of a serial decode.  Scans without restart intervals are
+     * always decoded serially.
+     *
+     * @param executor the executor, or null to decode serially
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the scale of the decoded image.  Rather than decoding each
+     * 8x8 block of the image and discarding samples, a reduced decode
+     * transforms only the lowest frequencies of each block into 4x4 or
+     * 2x2 samples, or takes the average of the block from its DC
+     * coefficient alone, so that a reduced image costs little more than
+     * entropy decoding.  The decoded image is the size of the full image
+     * divided by the denominator, rounded up.
+     *
+     * @param denominator the denominator of the scale: 1, 2, 4 or 8
+     */
+    public void setScale(final int denominator) {
+        if (denominator != 1 && denominator != 2 && denominator != 4 && denominator != 8) {
+            throw new IllegalArgumentException("Invalid JPEG scale 1/" + denominator);
+        }
+        this.scale = denominator;
+        this.blockSize = 8 / denominator;
+    }
 
     @Override
     public boolean beginSOS() {
@@ -72,120 +175,43 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
 
     @Override
     public void visitSOS(final int marker, final byte[] markerBytes, final byte[] imageData) {
-        final ByteArrayInputStream is = new ByteArrayInputStream(imageData);
+        visitSOS(marker, markerBytes, ByteBuffer.wrap(imageData), 0, imageData.length);
+    }
+
+    @Override
+    public void visitSOS(final int marker, final byte[] markerBytes, final ByteBuffer data,
+            final int offset, final int length) {
+        if (marker != JpegConstants.SOS_MARKER) {
+            // an EOI marker ends a table-specification stream, which has no scan
+            return;
+        }
         try {
             // read the scan header
-            final int segmentLength = BinaryFunctions.read2Bytes("segmentLength", is,"Not a Valid JPEG File", getByteOrder());
-            final byte[] sosSegmentBytes = BinaryFunctions.readBytes("SosSegment", is, segmentLength - 2, "Not a Valid JPEG File");
-            sosSegment = new SosSegment(marker, sosSegmentBytes);
-
-            // read the payload of the scan, this is the remainder of image data after the header
-            // the payload contains the entropy-encoded segments (or ECS) divided by RST markers
-            // or only one ECS if the entropy-encoded data is not divided by RST markers
-            // length of payload = length of image data - length of data already read
-            final int[] scanPayload = new int[imageData.length - segmentLength];
-            int payloadReadCount = 0;
-            while (payloadReadCount < scanPayload.length) {
-                scanPayload[payloadReadCount] = is.read();
-                payloadReadCount++;
-            }
-
-            int hMax = 0;
-            int vMax = 0;
-            for (int i = 0; i < sofnSegment.numberOfComponents; i++) {
-                hMax = Math.max(hMax,
-                        sofnSegment.getComponents(i).horizontalSamplingFactor);
-                vMax = Math.max(vMax,
-                        sofnSegment.getComponents(i).verticalSamplingFactor);
-            }
-            final int hSize = 8 * hMax;
-            final int vSize = 8 * vMax;
-            final int xMCUs = (sofnSegment.width + hSize - 1) / hSize;
-            final int yMCUs = (sofnSegment.height + vSize - 1) / vSize;
-            final Block[] mcu = allocateMCUMemory();
-            final Block[] scaledMCU = new Block[mcu.length];
-            for (int i = 0; i < scaledMCU.length; i++) {
-                scaledMCU[i] = new Block(hSize, vSize);
+            if (length < 2) {
+                throw new ImageReadException("Not a Valid JPEG File");
             }
-            final int[] preds = new int[sofnSegment.numberOfComponents];
-            ColorModel colorModel;
-            WritableRaster raster;
-            if (sofnSegment.numberOfComponents == 3) {
-                colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
-                        0x000000ff);
-                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
-                        sofnSegment.width, sofnSegment.height, new int[] {
-                                0x00ff0000, 0x0000ff00, 0x000000ff }, null);
-            } else if (sofnSegment.numberOfComponents == 1) {
-                colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
-                        0x000000ff);
-                raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
-                        sofnSegment.width, sofnSegment.height, new int[] {
-                                0x00ff0000, 0x0000ff00, 0x000000ff }, null);
-                // FIXME: why do images come out too bright with CS_GRAY?
-                // colorModel = new ComponentColorModel(
-                // ColorSpace.getInstance(ColorSpace.CS_GRAY), false, true,
-                // Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                // raster = colorModel.createCompatibleWritableRaster(
-                // sofnSegment.width, sofnSegment.height);
-            } else {
-                throw new ImageReadException(sofnSegment.numberOfComponents
-                        + " components are invalid or unsupported");
+            final byte[] segmentLengthBytes = new byte[2];
+            data.get(offset, segmentLengthBytes);
+            final int segmentLength = ByteConversions.toUInt16(segmentLengthBytes, getByteOrder());
+            if (segmentLength < 2 || segmentLength > length) {
+                throw new ImageReadException("Not a Valid JPEG File");
             }
-            final DataBuffer dataBuffer = raster.getDataBuffer();
-
-            final JpegInputStream[] bitInputStreams = splitByRstMarkers(scanPayload);
-            int bitInputStreamCount = 0;
-            JpegInputStream bitInputStream = bitInputStreams[0];
-
-            for (int y1 = 0; y1 < vSize * yMCUs; y1 += vSize) {
-                for (int x1 = 0; x1 < hSize * xMCUs; x1 += hSize) {
-                    // Provide the next interval if an interval is read until it's end
-                    // as long there are unread intervals available
-                    if (!bitInputStream.hasNext()) {
-                        bitInputStreamCount++;
-                        if (bitInputStreamCount < bitInputStreams.length) {
-                            bitInputStream = bitInputStreams[bitInputStreamCount];
-                        }
-                    }
+            final byte[] sosSegmentBytes = new byte[segmentLength - 2];
+            data.get(offset + 2, sosSegmentBytes);
+            sosSegment = new SosSegment(marker, sosSegmentBytes);
 
-                    readMCU(bitInputStream, preds, mcu);
-                    rescaleMCU(mcu, hSize, vSize, scaledMCU);
-                    int srcRowOffset = 0;
-                    int dstRowOffset = y1 * sofnSegment.width + x1;
-                    for (int y2 = 0; y2 < vSize && y1 + y2 < sofnSegment.height; y2++) {
-                        for (int x2 = 0; x2 < hSize
-                                && x1 + x2 < sofnSegment.width; x2++) {
-                            if (scaledMCU.length == 3) {
-                                final int Y = scaledMCU[0].samples[srcRowOffset + x2];
-                                final int Cb = scaledMCU[1].samples[srcRowOffset + x2];
-                                final int Cr = scaledMCU[2].samples[srcRowOffset + x2];
-                                final int rgb = YCbCrConverter.convertYCbCrToRGB(Y,
-                                        Cb, Cr);
-                                dataBuffer.setElem(dstRowOffset + x2, rgb);
-                            } else if (mcu.length == 1) {
-                                final int Y = scaledMCU[0].samples[srcRowOffset + x2];
-                                dataBuffer.setElem(dstRowOffset + x2, (Y << 16)
-                                        | (Y << 8) | Y);
-                            } else {
-                                throw new ImageReadException(
-                                        "Unsupported JPEG with " + mcu.length
-                                                + " components");
-                            }
-                        }
-                        srcRowOffset += hSize;
-                        dstRowOffset += sofnSegment.width;
-                    }
-                }
+            // the payload of the scan is the remainder of the data after the header;
+            // it contains the entropy-encoded segments (or ECS) divided by RST markers
+            // or only one ECS if the entropy-encoded data is not divided by RST markers,
+            // and is decoded where it lies, without being copied
+            final JpegInputStream[] intervals = splitByRstMarkers(data,
+                    offset + segmentLength, length - segmentLength);
+            if (samples != null) {
+                decodeScan(intervals, createSampleWriter());
+            } else {
+                decodeImage(intervals);
             }
-            image = new BufferedImage(colorModel, raster,
-                    colorModel.isAlphaPremultiplied(), new Properties());
-            // byte[] remainder = super.getStreamBytes(is);
-            // for (int i = 0; i < remainder.length; i++)
-            // {
-            // System.out.println("" + i + " = " +
-            // Integer.toHexString(remainder[i]));
-            // }
+            scanDecoded = true;
         } catch (final ImageReadException imageReadEx) {
             imageReadException = imageReadEx;
         } catch (final IOException ioEx) {
@@ -196,6 +222,221 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
         }
     }
 
+    private void decodeImage(final JpegInputStream[] intervals)
+            throws IOException, ImageReadException {
+        final int width = getScaledWidth();
+        final int height = getScaledHeight();
+        ColorModel colorModel;
+        WritableRaster raster;
+        if (sofnSegment.numberOfComponents == 3) {
+            colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
+                    0x000000ff);
+            raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
+                    width, height, new int[] {
+                            0x00ff0000, 0x0000ff00, 0x000000ff }, null);
+        } else if (sofnSegment.numberOfComponents == 1) {
+            colorModel = new DirectColorModel(24, 0x00ff0000, 0x0000ff00,
+                    0x000000ff);
+            raster = Raster.createPackedRaster(DataBuffer.TYPE_INT,
+                    width, height, new int[] {
+                            0x00ff0000, 0x0000ff00, 0x000000ff }, null);
+            // FIXME: why do images come out too bright with CS_GRAY?
+            // colorModel = new ComponentColorModel(
+            // ColorSpace.getInstance(ColorSpace.CS_GRAY), false, true,
+            // Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            // raster = colorModel.createCompatibleWritableRaster(
+            // sofnSegment.width, sofnSegment.height);
+        } else {
+            throw new ImageReadException(sofnSegment.numberOfComponents
+                    + " components are invalid or unsupported");
+        }
+        final DataBuffer dataBuffer = raster.getDataBuffer();
+
+        decodeScan(intervals, (scaledMCU, x1, y1, hSize, vSize) -> {
+            int srcRowOffset = 0;
+            int dstRowOffset = y1 * width + x1;
+            for (int y2 = 0; y2 < vSize && y1 + y2 < height; y2++) {
+                for (int x2 = 0; x2 < hSize
+                        && x1 + x2 < width; x2++) {
+                    if (scaledMCU.length == 3) {
+                        final int Y = scaledMCU[0].samples[srcRowOffset + x2];
+                        final int Cb = scaledMCU[1].samples[srcRowOffset + x2];
+                        final int Cr = scaledMCU[2].samples[srcRowOffset + x2];
+                        final int rgb = YCbCrConverter.convertYCbCrToRGB(Y,
+                                Cb, Cr);
+                        dataBuffer.setElem(dstRowOffset + x2, rgb);
+                    } else if (scaledMCU.length == 1) {
+                        final int Y = scaledMCU[0].samples[srcRowOffset + x2];
+                        dataBuffer.setElem(dstRowOffset + x2, (Y << 16)
+                                | (Y << 8) | Y);
+                    } else {
+                        throw new ImageReadException(
+                                "Unsupported JPEG with " + scaledMCU.length
+                                        + " components");
+                    }
+                }
+                srcRowOffset += hSize;
+                dstRowOffset += width;
+            }
+        });
+        image = new BufferedImage(colorModel, raster,
+                colorModel.isAlphaPremultiplied(), new Properties());
+    }
+
+    /**
+     * Creates a writer that stores the samples of each pixel, in the order
+     * of the components of the scan, into the array of samples.
+     */
+    private McuWriter createSampleWriter() throws ImageReadException {
+        final int nComponents = sosSegment.numberOfComponents;
+        if (sofnSegment.precision != 8) {
+            throw new ImageReadException("Only 8-bit JPEG samples are supported, not "
+                    + sofnSegment.precision);
+        }
+        if ((long) nComponents * samplesWidth * samplesHeight > samples.length) {
+            throw new ImageReadException("JPEG with " + nComponents
+                    + " components does not fit in " + samples.length + " bytes");
+        }
+        final int width = Math.min(getScaledWidth(), samplesWidth);
+        final int height = Math.min(getScaledHeight(), samplesHeight);
+        if (width < samplesWidth || height < samplesHeight) {
+            Arrays.fill(samples, 0, nComponents * samplesWidth * samplesHeight, (byte) 0);
+        }
+        return (scaledMCU, x1, y1, hSize, vSize) -> {
+            int srcRowOffset = 0;
+            for (int y2 = 0; y2 < vSize && y1 + y2 < height; y2++) {
+                int dst = ((y1 + y2) * samplesWidth + x1) * nComponents;
+                for (int x2 = 0; x2 < hSize && x1 + x2 < width; x2++) {
+                    for (int c = 0; c < nComponents; c++) {
+                        samples[dst++] = (byte) scaledMCU[c].samples[srcRowOffset + x2];
+                    }
+                }
+                srcRowOffset += hSize;
+            }
+        };
+    }
+
+    private void decodeScan(final JpegInputStream[] bitInputStreams, final McuWriter writer)
+            throws IOException, ImageReadException {
+        int hMax = 0;
+        int vMax = 0;
+        for (int i = 0; i < sofnSegment.numberOfComponents; i++) {
+            hMax = Math.max(hMax,
+                    sofnSegment.getComponents(i).horizontalSamplingFactor);
+            vMax = Math.max(vMax,
+                    sofnSegment.getComponents(i).verticalSamplingFactor);
+        }
+        final int xMCUs = (sofnSegment.width + 8 * hMax - 1) / (8 * hMax);
+        final int yMCUs = (sofnSegment.height + 8 * vMax - 1) / (8 * vMax);
+        // the size of a decoded MCU
+        final int hSize = blockSize * hMax;
+        final int vSize = blockSize * vMax;
+        reducedQuantizationTables = blockSize == 8 ? null : getReducedQuantizationTables();
+
+        // each restart interval but the last covers restartInterval MCUs;
+        // if the scan was not split as the DRI segment says it would be,
+        // the serial decode reports the error
+        final int mcuCount = xMCUs * yMCUs;
+        if (executor != null && restartInterval > 0 && bitInputStreams.length > 1
+                && bitInputStreams.length
+                        == (mcuCount + restartInterval - 1) / restartInterval) {
+            decodeIntervals(bitInputStreams, writer, hSize, vSize, xMCUs, mcuCount);
+            return;
+        }
+
+        final McuScratch scratch = new McuScratch(allocateMCUMemory(), hSize, vSize,
+                sofnSegment.numberOfComponents);
+        int bitInputStreamCount = 0;
+        JpegInputStream bitInputStream = bitInputStreams[0];
+        int mcusInInterval = 0;
+
+        for (int y1 = 0; y1 < vSize * yMCUs; y1 += vSize) {
+            for (int x1 = 0; x1 < hSize * xMCUs; x1 += hSize) {
+                // Provide the next interval once the restart interval has been
+                // decoded, or if no restart interval is defined, once an interval
+                // is read until its end, as long as there are unread intervals
+                final boolean intervalDone = restartInterval > 0
+                        ? mcusInInterval == restartInterval
+                        : !bitInputStream.hasNext();
+                if (intervalDone) {
+                    bitInputStreamCount++;
+                    if (bitInputStreamCount < bitInputStreams.length) {
+                        bitInputStream = bitInputStreams[bitInputStreamCount];
+                        // the DC predictions restart with each interval
+                        Arrays.fill(scratch.preds, 0);
+                    }
+                    mcusInInterval = 0;
+                }
+
+                readMCU(bitInputStream, scratch);
+                rescaleMCU(scratch.mcu, hSize, vSize, scratch.scaledMCU);
+                writer.write(scratch.scaledMCU, x1, y1, hSize, vSize);
+                mcusInInterval++;
+            }
+        }
+    }
+
+    /**
+     * Decodes the restart intervals of a scan as tasks of the executor.
+     * Each task decodes a run of consecutive intervals with its own
+     * memory; since the intervals cover disjoint MCUs, the writes of the
+     * tasks never overlap.
+     */
+    private void decodeIntervals(final JpegInputStream[] intervals, final McuWriter writer,
+            final int hSize, final int vSize, final int xMCUs, final int mcuCount)
+            throws IOException, ImageReadException {
+        // a few tasks for each processor balance the load without making
+        // the tasks so small that their overhead shows
+        final int taskCount = Math.min(intervals.length,
+                4 * Runtime.getRuntime().availableProcessors());
+        final List<Callable<Void>> tasks = new ArrayList<>(taskCount);
+        for (int t = 0; t < taskCount; t++) {
+            final int first = (int) ((long) intervals.length * t / taskCount);
+            final int last = (int) ((long) intervals.length * (t + 1) / taskCount);
+            tasks.add(() -> {
+                final McuScratch scratch = new McuScratch(allocateMCUMemory(), hSize, vSize,
+                        sofnSegment.numberOfComponents);
+                for (int i = first; i < last; i++) {
+                    Arrays.fill(scratch.preds, 0);
+                    final int end = (int) Math.min(mcuCount, (long) (i + 1) * restartInterval);
+                    for (int m = i * restartInterval; m < end; m++) {
+                        readMCU(intervals[i], scratch);
+                        rescaleMCU(scratch.mcu, hSize, vSize, scratch.scaledMCU);
+                        writer.write(scratch.scaledMCU, (m % xMCUs) * hSize,
+                                (m / xMCUs) * vSize, hSize, vSize);
+                    }
+                }
+                return null;
+            });
+        }
+
+        try {
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding JPEG");
+        } catch (final ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            // a ForkJoinPool wraps the checked exceptions of its tasks
+            while (cause != null && cause.getClass() == RuntimeException.class
+                    && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof ImageReadException) {
+                throw (ImageReadException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ImageReadException("Failed to decode JPEG", cause);
+        }
+    }
+
     @Override
     public boolean visitSegment(final int marker, final byte[] markerBytes,
             final int segmentLength, final byte[] segmentLengthBytes, final byte[] segmentData)
@@ -242,6 +483,8 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
                 Dct.scaleDequantizationMatrix(quantizationMatrixFloat);
                 scaledQuantizationTables[table.destinationIdentifier] = quantizationMatrixFloat;
             }
+        } else if (marker == JpegConstants.DRI_MARKER) {
+            restartInterval = ByteConversions.toUInt16(segmentData, getByteOrder());
         } else if (marker == JpegConstants.DHT_MARKER) {
             final DhtSegment dhtSegment = new DhtSegment(marker, segmentData);
             for (int i = 0; i < dhtSegment.huffmanTables.size(); i++) {
@@ -318,15 +561,18 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
                 throw new ImageReadException("Invalid component");
             }
             final Block fullBlock = new Block(
-                    8 * frameComponent.horizontalSamplingFactor,
-                    8 * frameComponent.verticalSamplingFactor);
+                    blockSize * frameComponent.horizontalSamplingFactor,
+                    blockSize * frameComponent.verticalSamplingFactor);
             mcu[i] = fullBlock;
         }
         return mcu;
     }
 
-    private void readMCU(final JpegInputStream is, final int[] preds, final Block[] mcu)
+    private void readMCU(final JpegInputStream is, final McuScratch scratch)
             throws IOException, ImageReadException {
+        final Block[] mcu = scratch.mcu;
+        final int[] preds = scratch.preds;
+        final int[] zz = scratch.zz;
         for (int i = 0; i < sosSegment.numberOfComponents; i++) {
             final SosSegment.Component scanComponent = sosSegment.getComponents(i);
             SofnSegment.Component frameComponent = null;
@@ -344,23 +590,20 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
                 for (int x = 0; x < frameComponent.horizontalSamplingFactor; x++) {
                     Arrays.fill(zz, 0);
                     // page 104 of T.81
-                    final int t = decode(
+                    final int diff = decodeCoefficient(
                             is,
-                            huffmanDCTables[scanComponent.dcCodingTableSelector]);
-                    int diff = receive(t, is);
-                    diff = extend(diff, t);
+                            huffmanDCTables[scanComponent.dcCodingTableSelector]) >> 8;
                     zz[0] = preds[i] + diff;
                     preds[i] = zz[0];
 
                     // "Decode_AC_coefficients", figure F.13, page 106 of T.81
+                    final DhtSegment.HuffmanTable acTable =
+                            huffmanACTables[scanComponent.acCodingTableSelector];
                     int k = 1;
                     while (true) {
-                        final int rs = decode(
-                                is,
-                                huffmanACTables[scanComponent.acCodingTableSelector]);
-                        final int ssss = rs & 0xf;
-                        final int rrrr = rs >> 4;
-                        final int r = rrrr;
+                        final int coefficient = decodeCoefficient(is, acTable);
+                        final int ssss = coefficient & 0xf;
+                        final int r = (coefficient >> 4) & 0xf;
 
                         if (ssss == 0) {
                             if (r == 15) {
@@ -370,10 +613,12 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
                             }
                         } else {
                             k += r;
+                            if (k > 63) {
+                                throw new ImageReadException("Invalid AC coefficient run");
+                            }
 
                             // "Decode_ZZ(k)", figure F.14, page 107 of T.81
-                            zz[k] = receive(ssss, is);
-                            zz[k] = extend(zz[k], ssss);
+                            zz[k] = coefficient >> 8;
 
                             if (k == 63) {
                                 break;
@@ -383,94 +628,160 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
                         }
                     }
 
-                    final int shift = (1 << (sofnSegment.precision - 1));
-                    final int max = (1 << sofnSegment.precision) - 1;
+                    reconstructBlock(scratch, frameComponent, fullBlock, x, y);
+                }
+            }
+        }
+    }
 
-                    final float[] scaledQuantizationTable = scaledQuantizationTables[frameComponent.quantTabDestSelector];
-                    ZigZag.zigZagToBlock(zz, blockInt);
-                    for (int j = 0; j < 64; j++) {
-                        block[j] = blockInt[j] * scaledQuantizationTable[j];
-                    }
-                    Dct.inverseDCT8x8(block);
-
-                    int dstRowOffset = 8 * y * 8
-                            * frameComponent.horizontalSamplingFactor + 8 * x;
-                    int srcNext = 0;
-                    for (int yy = 0; yy < 8; yy++) {
-                        for (int xx = 0; xx < 8; xx++) {
-                            float sample = block[srcNext++];
-                            sample += shift;
-                            int result;
-                            if (sample < 0) {
-                                result = 0;
-                            } else if (sample > max) {
-                                result = max;
-                            } else {
-                                result = fastRound(sample);
-                            }
-                            fullBlock.samples[dstRowOffset + xx] = result;
-                        }
-                        dstRowOffset += 8 * frameComponent.horizontalSamplingFactor;
-                    }
+    /**
+     * Reconstructs the samples of a block from its coefficients, in
+     * zigzag order in the scratch memory: dequantizes them, takes their
+     * inverse DCT, and stores the samples at the block's place in the
+     * component's part of the MCU.
+     *
+     * @param x the column of the block within the component's part of the MCU
+     * @param y the row of the block within the component's part of the MCU
+     */
+    void reconstructBlock(final McuScratch scratch,
+            final SofnSegment.Component frameComponent, final Block fullBlock,
+            final int x, final int y) {
+        final int[] zz = scratch.zz;
+        final int[] blockInt = scratch.blockInt;
+        final float[] block = scratch.block;
+        final int shift = (1 << (sofnSegment.precision - 1));
+        final int max = (1 << sofnSegment.precision) - 1;
+
+        if (blockSize == 8) {
+            final float[] scaledQuantizationTable = scaledQuantizationTables[frameComponent.quantTabDestSelector];
+            ZigZag.zigZagToBlock(zz, blockInt);
+            for (int j = 0; j < 64; j++) {
+                block[j] = blockInt[j] * scaledQuantizationTable[j];
+            }
+            Dct.inverseDCT8x8(block);
+        } else if (blockSize == 1) {
+            // the average of the block is an eighth of its DC coefficient
+            block[0] = zz[0] * reducedQuantizationTables[
+                    frameComponent.quantTabDestSelector][0] * 0.125f;
+        } else {
+            final float[] reducedQuantizationTable = reducedQuantizationTables[frameComponent.quantTabDestSelector];
+            ZigZag.zigZagToBlock(zz, blockInt);
+            for (int v = 0; v < blockSize; v++) {
+                for (int u = 0; u < blockSize; u++) {
+                    block[8 * v + u] = blockInt[8 * v + u]
+                            * reducedQuantizationTable[8 * v + u];
+                }
+            }
+            Dct.inverseDCTReduced(block, blockSize);
+        }
+
+        int dstRowOffset = blockSize * y * blockSize
+                * frameComponent.horizontalSamplingFactor + blockSize * x;
+        for (int yy = 0; yy < blockSize; yy++) {
+            for (int xx = 0; xx < blockSize; xx++) {
+                float sample = block[8 * yy + xx];
+                sample += shift;
+                int result;
+                if (sample < 0) {
+                    result = 0;
+                } else if (sample > max) {
+                    result = max;
+                } else {
+                    result = fastRound(sample);
                 }
+                fullBlock.samples[dstRowOffset + xx] = result;
             }
+            dstRowOffset += blockSize * frameComponent.horizontalSamplingFactor;
         }
     }
 
+    private int getScaledWidth() {
+        return (sofnSegment.width + scale - 1) / scale;
+    }
+
+    private int getScaledHeight() {
+        return (sofnSegment.height + scale - 1) / scale;
+    }
+
+    /**
+     * Gets the dequantization matrices of a reduced decode, in natural
+     * order and not scaled for the AA&N inverse DCT.
+     */
+    private float[][] getReducedQuantizationTables() {
+        final float[][] tables = new float[quantizationTables.length][];
+        final int[] matrix = new int[64];
+        for (int i = 0; i < tables.length; i++) {
+            if (quantizationTables[i] != null) {
+                ZigZag.zigZagToBlock(quantizationTables[i].getElements(), matrix);
+                tables[i] = new float[64];
+                for (int j = 0; j < 64; j++) {
+                    tables[i][j] = matrix[j];
+                }
+            }
+        }
+        return tables;
+    }
+
     /**
      * Returns an array of JpegInputStream where each field contains the JpegInputStream
-     * for one interval.
-     * @param scanPayload array to read intervals from
+     * for one interval.  The streams read the intervals where they lie in the buffer.
+     * @param data buffer to read intervals from
+     * @param offset position of the scan payload in the buffer
+     * @param length length of the scan payload
      * @return JpegInputStreams for all intervals, at least one stream is always provided
      */
-    static JpegInputStream[] splitByRstMarkers(final int[] scanPayload) {
-        final List<Integer> intervalStarts = getIntervalStartPositions(scanPayload);
-        // get number of intervals in payload to init an array of approbiate length
-        final int intervalCount = intervalStarts.size();
-        JpegInputStream[] streams = new JpegInputStream[intervalCount];
+    static JpegInputStream[] splitByRstMarkers(final ByteBuffer data, final int offset,
+            final int length) {
+        final int[] intervalStarts = getIntervalStartPositions(data, offset, length);
+        final int intervalCount = intervalStarts.length;
+        final JpegInputStream[] streams = new JpegInputStream[intervalCount];
         for (int i = 0; i < intervalCount; i++) {
-            int from = intervalStarts.get(i);
+            final int from = intervalStarts[i];
             int to;
             if (i < intervalCount - 1) {
                 // because each restart marker needs two bytes the end of
                 // this interval is two bytes before the next interval starts
-                to = intervalStarts.get(i + 1) - 2;
-            } else { // the last interval ends with the array
-                to = scanPayload.length;
+                to = intervalStarts[i + 1] - 2;
+            } else { // the last interval ends with the payload
+                to = offset + length;
             }
-            int[] interval = Arrays.copyOfRange(scanPayload, from, to);
-            streams[i] = new JpegInputStream(interval);
+            streams[i] = new JpegInputStream(data, from, to);
         }
         return streams;
     }
 
     /**
-     * Returns the positions of where each interval in the provided array starts. The number
-     * of start positions is also the count of intervals while the number of restart markers
-     * found is equal to the number of start positions minus one (because restart markers
-     * are between intervals).
+     * Returns the positions in the buffer of where each interval of the payload starts.
+     * The number of start positions is also the count of intervals while the number of
+     * restart markers found is equal to the number of start positions minus one (because
+     * restart markers are between intervals).
      *
-     * @param scanPayload array to examine
+     * @param data buffer to examine
+     * @param offset position of the scan payload in the buffer
+     * @param length length of the scan payload
      * @return the start positions
      */
-    static List<Integer> getIntervalStartPositions(final int[] scanPayload) {
-        final List<Integer> intervalStarts = new ArrayList<Integer>();
-        intervalStarts.add(0);
+    static int[] getIntervalStartPositions(final ByteBuffer data, final int offset,
+            final int length) {
+        int[] intervalStarts = new int[16];
+        int intervalCount = 0;
+        intervalStarts[intervalCount++] = offset;
         boolean foundFF = false;
         boolean foundD0toD7 = false;
-        int pos = 0;
-        while (pos < scanPayload.length) {
+        final int end = offset + length;
+        for (int pos = offset; pos < end; pos++) {
+            final int b = 0xff & data.get(pos);
             if (foundFF) {
                 // found 0xFF D0 .. 0xFF D7 => RST marker
-                if (scanPayload[pos] >= (0xff & JpegConstants.RST0_MARKER) &&
-                    scanPayload[pos] <= (0xff & JpegConstants.RST7_MARKER)) {
+                if (b >= (0xff & JpegConstants.RST0_MARKER)
+                        && b <= (0xff & JpegConstants.RST7_MARKER)) {
                     foundD0toD7 = true;
                 } else { // found 0xFF followed by something else => no RST marker
                     foundFF = false;
                 }
             }
 
-            if (scanPayload[pos] == 0xFF) {
+            if (b == 0xFF) {
                 foundFF = true;
             }
 
@@ -478,48 +789,75 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
             if (foundFF && foundD0toD7) {
                 // we need to add the position after the current position because
                 // we had already read 0xFF and are now at 0xDn
-                intervalStarts.add(pos + 1);
+                if (intervalCount == intervalStarts.length) {
+                    intervalStarts = Arrays.copyOf(intervalStarts, 2 * intervalCount);
+                }
+                intervalStarts[intervalCount++] = pos + 1;
                 foundFF = foundD0toD7 = false;
             }
-
-            pos++;
         }
-        return intervalStarts;
+        return Arrays.copyOf(intervalStarts, intervalCount);
     }
 
     private static int fastRound(final float x) {
         return (int) (x + 0.5f);
     }
 
-    private int extend(int v, final int t) {
-        // "EXTEND", section F.2.2.1, figure F.12, page 105 of T.81
-        int vt = (1 << (t - 1));
-        if (v < vt) {
-            vt = (-1 << t) + 1;
-            v += vt;
+    int receiveExtend(final int ssss, final JpegInputStream is)
+            throws ImageReadException {
+        // "RECEIVE" and "EXTEND", sections F.2.2.4 and F.2.2.1, figures F.17
+        // and F.12, pages 110 and 105 of T.81, with all of the bits read at once
+        if (ssss == 0) {
+            return 0;
+        }
+        final int v = is.getBits(ssss);
+        if (v < (1 << (ssss - 1))) {
+            return v + (-1 << ssss) + 1;
         }
         return v;
     }
 
-    private int receive(final int ssss, final JpegInputStream is) throws IOException,
-            ImageReadException {
-        // "RECEIVE", section F.2.2.4, figure F.17, page 110 of T.81
-        int i = 0;
-        int v = 0;
-        while (i != ssss) {
-            i++;
-            v = (v << 1) + is.nextBit();
+    /**
+     * Decodes the Huffman code of a coefficient and the magnitude bits
+     * that follow it.
+     *
+     * @return the extended magnitude shifted left by 8, ORed with the
+     * value of the code
+     */
+    int decodeCoefficient(final JpegInputStream is,
+            final DhtSegment.HuffmanTable huffmanTable) throws ImageReadException {
+        // most codes are short enough to decode, with their magnitude
+        // bits, in one lookup
+        final int entry = huffmanTable.getCoefficientLookahead(
+                is.peekBits(DhtSegment.HuffmanTable.LOOKAHEAD_BITS));
+        if (entry != 0) {
+            is.skipBits(entry & 0xf);
+            return entry >> 4;
         }
-        return v;
+        final int value = decode(is, huffmanTable);
+        return (receiveExtend(value & 0xf, is) << 8) | value;
     }
 
-    private int decode(final JpegInputStream is, final DhtSegment.HuffmanTable huffmanTable)
-            throws IOException, ImageReadException {
-        // "DECODE", section F.2.2.3, figure F.16, page 109 of T.81
-        int i = 1;
-        int code = is.nextBit();
+    int decode(final JpegInputStream is, final DhtSegment.HuffmanTable huffmanTable)
+            throws ImageReadException {
+        // most codes are short enough to decode with one lookup
+        final int bits = is.peekBits(DhtSegment.HuffmanTable.LOOKAHEAD_BITS);
+        final int entry = huffmanTable.getLookahead(bits);
+        if (entry != 0) {
+            is.skipBits(entry >> 8);
+            return entry & 0xff;
+        }
+
+        // "DECODE", section F.2.2.3, figure F.16, page 109 of T.81,
+        // continuing from the bits already examined
+        is.skipBits(DhtSegment.HuffmanTable.LOOKAHEAD_BITS);
+        int i = DhtSegment.HuffmanTable.LOOKAHEAD_BITS;
+        int code = bits;
         while (code > huffmanTable.getMaxCode(i)) {
             i++;
+            if (i > 16) {
+                throw new ImageReadException("Invalid Huffman code");
+            }
             code = (code << 1) | is.nextBit();
         }
         int j = huffmanTable.getValPtr(i);
@@ -527,10 +865,86 @@ public class JpegDecoder extends BinaryFileParser implements JpegUtils.Visitor
         return huffmanTable.getHuffVal(j);
     }
 
+    /**
+     * Reads the quantization and Huffman tables of a table-specification
+     * stream, for the decoding of abbreviated streams.
+     */
+    void readTables(final byte[] bytes) throws ImageReadException, IOException {
+        new JpegUtils().traverseJFIF(ByteBuffer.wrap(bytes), this);
+        if (imageReadException != null) {
+            throw imageReadException;
+        }
+        if (ioException != null) {
+            throw ioException;
+        }
+    }
+
+    JpegTables getTables() {
+        return new JpegTables(quantizationTables.clone(), scaledQuantizationTables.clone(),
+                huffmanDCTables.clone(), huffmanACTables.clone());
+    }
+
+    /**
+     * Decodes a baseline JPEG stream into 8-bit samples, without any
+     * conversion of color.  The samples of each pixel are stored together,
+     * in the order of the components of the stream, and the pixels row by
+     * row.  Columns and rows of the image beyond the given size are
+     * dropped; if the image is smaller, the samples beyond it are zero.
+     * A decoder decodes a single stream.
+     *
+     * @param data the stream
+     * @param samples the array to receive the samples
+     * @param width the number of pixels in a row of samples
+     * @param height the number of rows of samples
+     * @return the number of samples in each pixel
+     * @throws ImageReadException if the stream is not valid or not supported,
+     * or if its samples would not fit in the array
+     * @throws IOException in the event of an I/O error
+     */
+    public int decodeSamples(final byte[] data, final byte[] samples, final int width,
+            final int height) throws ImageReadException, IOException {
+        return decodeSamples(ByteBuffer.wrap(data), samples, width, height);
+    }
+
+    /**
+     * Decodes a baseline JPEG stream into 8-bit samples, as
+     * {@link #decodeSamples(byte[], byte[], int, int)} does.  The stream
+     * is decoded where it lies, whether or not the buffer is read-only or
+     * backed by an accessible array; its position and limit are left
+     * unchanged.
+     *
+     * @param data the stream, from the position to the limit of the buffer
+     * @param samples the array to receive the samples
+     * @param width the number of pixels in a row of samples
+     * @param height the number of rows of samples
+     * @return the number of samples in each pixel
+     * @throws ImageReadException if the stream is not valid or not supported,
+     * or if its samples would not fit in the array
+     * @throws IOException in the event of an I/O error
+     */
+    public int decodeSamples(final ByteBuffer data, final byte[] samples, final int width,
+            final int height) throws ImageReadException, IOException {
+        this.samples = samples;
+        this.samplesWidth = width;
+        this.samplesHeight = height;
+        new JpegUtils().traverseJFIF(data, this);
+        if (imageReadException != null) {
+            throw imageReadException;
+        }
+        if (ioException != null) {
+            throw ioException;
+        }
+        if (!scanDecoded) {
+            throw new ImageReadException("JPEG stream has no image data");
+        }
+        return sosSegment.numberOfComponents;
+    }
+
     public BufferedImage decode(final ByteSource byteSource) throws IOException,
             ImageReadException {
-        final JpegUtils jpegUtils = new JpegUtils();
-        jpegUtils.traverseJFIF(byteSource, this);
+        // the whole stream is read once, and the scan decoded where it lies
+        final byte[] bytes = byteSource.getAll();
+        new JpegUtils().traverseJFIF(ByteBuffer.wrap(bytes), this);
         if (imageReadException != null) {
             throw imageReadException;
         }
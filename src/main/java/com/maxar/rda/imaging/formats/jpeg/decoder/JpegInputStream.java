@@ -17,69 +17,131 @@ package com.maxar.rda.imaging.formats.jpeg.decoder;
 
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.formats.jpeg.JpegConstants;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
+/**
+ * Reads the bits of an interval of entropy-coded data, where it lies in
+ * the buffer holding the JPEG stream.
+ *
+ * <p>Bytes are moved into a 64-bit reservoir several at a time, removing
+ * the zero bytes stuffed after each 0xFF byte as they go, so that most
+ * reads of one or more bits are a shift and a mask.  A marker ends the
+ * data; bits past the end read as zero when peeked, but reading them is
+ * an error.</p>
+ */
 class JpegInputStream {
     // Figure F.18, F.2.2.5, page 111 of ITU-T T.81
-    private final int[] interval;
-    // next position in the array to read
+    private final ByteBuffer data;
+    // the end of the interval in the buffer
+    private final int end;
+    // next position in the buffer to read
     private int nextPos;
-    private int cnt;
-    private int b;
+    // the unread bits, in the low bitCount bits of the reservoir
+    private long reservoir;
+    private int bitCount;
+    // the second byte of a marker that ended the data, or -1
+    private int marker = -1;
 
-    JpegInputStream(final int[] interval) {
-        this.interval = Arrays.copyOf(interval, interval.length);
-        this.nextPos = 0;
+    /**
+     * @param data the buffer holding the interval, which is read in place
+     * with absolute gets
+     * @param start the position of the interval in the buffer
+     * @param end the position just past the end of the interval
+     */
+    JpegInputStream(final ByteBuffer data, final int start, final int end) {
+        this.data = data;
+        this.end = end;
+        this.nextPos = start;
     }
 
     /**
-     * Returns {@code true} as long there are unread fields available, else {@code false}
+     * Returns {@code true} as long as whole bytes of data remain unread,
+     * else {@code false}; the bits that pad out the last byte do not count.
      * @return
      */
     public boolean hasNext() {
-        return nextPos < this.interval.length;
+        return bitCount >= 8 || (marker < 0 && nextPos < end);
     }
 
-    public int nextBit() throws ImageReadException
-    {
-        if (cnt == 0) {
-            b = this.read();
-            if (b < 0) {
-                throw new ImageReadException("Premature End of File");
-            }
-            cnt = 8;
+    private void fill() {
+        while (bitCount <= 56 && marker < 0 && nextPos < end) {
+            final int b = 0xff & data.get(nextPos);
             if (b == 0xff) {
-                final int b2 = this.read();
-                if (b2 < 0) {
-                    throw new ImageReadException("Premature End of File");
+                if (nextPos + 1 >= end) {
+                    // a lone 0xFF at the end of the data
+                    return;
                 }
+                final int b2 = 0xff & data.get(nextPos + 1);
                 if (b2 != 0) {
-                    if (b2 == (0xff & JpegConstants.DNL_MARKER)) {
-                        throw new ImageReadException("DNL not yet supported");
-                    }
-                    throw new ImageReadException("Invalid marker found "
-                        + "in entropy data: 0xFF " + Integer.toHexString(b2));
+                    marker = b2;
+                    return;
                 }
+                nextPos++;
             }
+            nextPos++;
+            reservoir = (reservoir << 8) | b;
+            bitCount += 8;
         }
-        final int bit = (b >> 7) & 0x1;
-        cnt--;
-        b <<= 1;
-        return bit;
     }
 
     /**
-     * Returns the value from current field (as {@code InputStream.read()} would do)
-     * and set the position of the pointer to the next field to read.
-     * @return
-     * @throws IllegalStateException if the stream hasn't any other value.
+     * Gets the next bits without reading them.
+     *
+     * @param n the number of bits, from 1 to 32
+     * @return the bits, most significant first; bits past the end of the
+     * data are zero
+     */
+    int peekBits(final int n) {
+        if (bitCount < n) {
+            fill();
+            if (bitCount < n) {
+                return (int) (reservoir << (n - bitCount)) & (int) ((1L << n) - 1);
+            }
+        }
+        return (int) (reservoir >>> (bitCount - n)) & (int) ((1L << n) - 1);
+    }
+
+    /**
+     * Reads bits that have been peeked, or skips bits.
+     *
+     * @param n the number of bits, from 0 to 32
+     * @throws ImageReadException if the data ends before the bits
      */
-    int read() {
-        if (!this.hasNext()) {
-            throw new IllegalStateException("This stream hasn't any other value, all values were already read.");
+    void skipBits(final int n) throws ImageReadException {
+        if (bitCount < n) {
+            fill();
+            if (bitCount < n) {
+                throw endOfData();
+            }
+        }
+        bitCount -= n;
+    }
+
+    /**
+     * Reads the next bits.
+     *
+     * @param n the number of bits, from 1 to 32
+     * @return the bits, most significant first
+     * @throws ImageReadException if the data ends before the bits
+     */
+    int getBits(final int n) throws ImageReadException {
+        final int bits = peekBits(n);
+        skipBits(n);
+        return bits;
+    }
+
+    public int nextBit() throws ImageReadException {
+        return getBits(1);
+    }
+
+    private ImageReadException endOfData() {
+        if (marker < 0) {
+            return new ImageReadException("Premature End of File");
+        }
+        if (marker == (0xff & JpegConstants.DNL_MARKER)) {
+            return new ImageReadException("DNL not yet supported");
         }
-        int value = this.interval[nextPos];
-        this.nextPos++;
-        return value;
+        return new ImageReadException("Invalid marker found "
+                + "in entropy data: 0xFF " + Integer.toHexString(marker));
     }
 }
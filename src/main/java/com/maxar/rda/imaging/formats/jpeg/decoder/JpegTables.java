@@ -0,0 +1,62 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+
+package com.maxar.rda.imaging.formats.jpeg.decoder;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.formats.jpeg.segments.DhtSegment;
+import com.maxar.rda.imaging.formats.jpeg.segments.DqtSegment;
+import java.io.IOException;
+
+/**
+ * The quantization and Huffman tables of a JPEG table-specification
+ * stream, which abbreviated JPEG streams rely on instead of carrying
+ * their own tables.  JPEG-compressed TIFF images store such a stream in
+ * their JPEGTables field, shared by all of their tiles or strips.
+ *
+ * <p>The tables are parsed once and are not modified afterwards, so one
+ * instance may be shared by any number of decoders and threads.</p>
+ */
+public final class JpegTables {
+    final DqtSegment.QuantizationTable[] quantizationTables;
+    final float[][] scaledQuantizationTables;
+    final DhtSegment.HuffmanTable[] huffmanDCTables;
+    final DhtSegment.HuffmanTable[] huffmanACTables;
+
+    JpegTables(final DqtSegment.QuantizationTable[] quantizationTables,
+            final float[][] scaledQuantizationTables,
+            final DhtSegment.HuffmanTable[] huffmanDCTables,
+            final DhtSegment.HuffmanTable[] huffmanACTables) {
+        this.quantizationTables = quantizationTables;
+        this.scaledQuantizationTables = scaledQuantizationTables;
+        this.huffmanDCTables = huffmanDCTables;
+        this.huffmanACTables = huffmanACTables;
+    }
+
+    /**
+     * Parses a table-specification stream, which consists of an SOI
+     * marker, DQT and DHT segments, and an EOI marker.
+     *
+     * @param bytes the stream
+     * @return the tables of the stream
+     * @throws ImageReadException if the stream is not valid
+     * @throws IOException in the event of an I/O error
+     */
+    public static JpegTables read(final byte[] bytes) throws ImageReadException, IOException {
+        final JpegDecoder decoder = new JpegDecoder();
+        decoder.readTables(bytes);
+        return decoder.getTables();
+    }
+}
@@ -20,6 +20,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,6 +28,12 @@ public class DhtSegment extends Segment {
     public final List<HuffmanTable> huffmanTables;
 
     public static class HuffmanTable {
+        /**
+         * The number of bits of the lookahead table, which decodes the
+         * codes of up to this length with a single lookup.
+         */
+        public static final int LOOKAHEAD_BITS = 9;
+
         // some arrays are better off one-based
         // to avoid subtractions by one later when indexing them
         public final int tableClass;
@@ -39,6 +46,12 @@ public class DhtSegment extends Segment {
         private final int[] minCode = new int[1 + 16]; // 1-based
         private final int[] maxCode = new int[1 + 16]; // 1-based
         private final int[] valPtr = new int[1 + 16]; // 1-based
+        // indexed by the next LOOKAHEAD_BITS bits: (code length << 8) | value,
+        // or 0 if the code is longer
+        private final int[] lookahead = new int[1 << LOOKAHEAD_BITS];
+        // indexed likewise: (((extended magnitude << 8) | value) << 4) | the
+        // length of the code and its magnitude bits, or 0 if they are longer
+        private final int[] coefficientLookahead = new int[1 << LOOKAHEAD_BITS];
 
         HuffmanTable(final int tableClass, final int destinationIdentifier,
                 final int[] bits, final int[] huffVal) {
@@ -114,6 +127,64 @@ public class DhtSegment extends Segment {
                 }
             }
 
+            // every sequence of LOOKAHEAD_BITS bits that starts with a short
+            // enough code decodes to that code
+            for (k = 0; k < huffCode.length && k < huffVal.length; k++) {
+                final int size = huffSize[k];
+                if (size > LOOKAHEAD_BITS) {
+                    break;
+                }
+                final int shift = LOOKAHEAD_BITS - size;
+                final int first = huffCode[k] << shift;
+                final int last = first + (1 << shift);
+                if (last > lookahead.length) {
+                    // a malformed table with more codes than fit in their length
+                    break;
+                }
+                Arrays.fill(lookahead, first, last, (size << 8) | huffVal[k]);
+
+                // and, if the magnitude bits that follow the code fit as
+                // well, decodes to the coefficient too; DC values are the
+                // magnitude sizes alone, which are below 16
+                final int ssss = huffVal[k] & 0xf;
+                if (size + ssss > LOOKAHEAD_BITS || (tableClass == 0 && huffVal[k] > 15)) {
+                    continue;
+                }
+                final int magnitudeShift = shift - ssss;
+                for (int m = 0; m < 1 << ssss; m++) {
+                    // "EXTEND", section F.2.2.1, figure F.12, page 105 of T.81
+                    final int extended = m < (1 << ssss) >> 1 ? m + (-1 << ssss) + 1 : m;
+                    Arrays.fill(coefficientLookahead, first + (m << magnitudeShift),
+                            first + ((m + 1) << magnitudeShift),
+                            (((extended << 8) | huffVal[k]) << 4) | (size + ssss));
+                }
+            }
+        }
+
+        /**
+         * Decodes a code of up to LOOKAHEAD_BITS bits.
+         *
+         * @param bits the next LOOKAHEAD_BITS bits of the data, most
+         * significant first
+         * @return the length of the code at the start of the bits shifted
+         * left by 8, ORed with its value, or 0 if the code is longer
+         */
+        public int getLookahead(final int bits) {
+            return lookahead[bits];
+        }
+
+        /**
+         * Decodes a code and the magnitude bits that follow it, if they
+         * take up to LOOKAHEAD_BITS bits together.
+         *
+         * @param bits the next LOOKAHEAD_BITS bits of the data, most
+         * significant first
+         * @return the extended magnitude shifted left by 12, ORed with the
+         * value of the code shifted left by 4, ORed with the number of bits
+         * taken; or 0 if the code and its magnitude bits are longer
+         */
+        public int getCoefficientLookahead(final int bits) {
+            return coefficientLookahead[bits];
         }
 
         public int getHuffVal(final int i) {
@@ -17,6 +17,9 @@
 
 package com.maxar.rda.imaging.formats.tiff;
 
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import java.io.IOException;
+
 public class JpegImageData extends TiffElement.DataElement {
     public JpegImageData(final long offset, final int length, final byte[] data) {
         super(offset, length, data);
@@ -27,4 +30,30 @@ public class JpegImageData extends TiffElement.DataElement {
         return "Jpeg image data: " + getDataLength() + " bytes";
     }
 
+    /**
+     * JPEG image data that is read from its source each time it is
+     * requested, rather than being held in memory.
+     */
+    public static class ByteSourceData extends JpegImageData {
+        final ByteSource byteSource;
+
+        public ByteSourceData(final long offset, final int length, final ByteSource byteSource) {
+            super(offset, length, new byte[0]);
+            this.byteSource = byteSource;
+        }
+
+        @Override
+        public byte[] getData() {
+            try {
+                return byteSource.getBlock(offset, length);
+            } catch (final IOException ioex) {
+                return new byte[0];
+            }
+        }
+
+        @Override
+        public int getDataLength() {
+            return length;
+        }
+    }
 }
@@ -19,6 +19,8 @@ package com.maxar.rda.imaging.formats.tiff;
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.common.ByteConversions;
 import com.maxar.rda.imaging.common.RationalNumber;
+import com.maxar.rda.imaging.formats.jpeg.decoder.JpegTables;
+import com.maxar.rda.imaging.formats.tiff.constants.AdobePhotoshopTagConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffDirectoryConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
@@ -58,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.maxar.rda.imaging.formats.tiff.taginfos.*;
 
@@ -67,6 +70,9 @@ public class TiffDirectory extends TiffElement {
     public final long nextDirectoryOffset;
     private TiffImageData tiffImageData;
     private JpegImageData jpegImageData;
+    // shared by the copies of a cached directory, so that each file's
+    // tables are parsed once however many reads it serves
+    private final AtomicReference<JpegTables> jpegTables;
 
     public TiffDirectory(final int type, final List<TiffField> entries, final long offset, final long nextDirectoryOffset) {
         super(offset, TiffConstants.TIFF_DIRECTORY_HEADER_LENGTH
@@ -76,6 +82,20 @@ public class TiffDirectory extends TiffElement {
         this.type = type;
         this.entries = Collections.unmodifiableList(entries);
         this.nextDirectoryOffset = nextDirectoryOffset;
+        this.jpegTables = new AtomicReference<>();
+    }
+
+    /**
+     * Constructs a copy of a directory, without its image data, that
+     * shares the tables parsed from its fields.
+     */
+    TiffDirectory(final TiffDirectory directory) {
+        super(directory.offset, directory.length);
+
+        this.type = directory.type;
+        this.entries = directory.entries;
+        this.nextDirectoryOffset = directory.nextDirectoryOffset;
+        this.jpegTables = directory.jpegTables;
     }
 
     public String description() {
@@ -776,8 +796,8 @@ public class TiffDirectory extends TiffElement {
     private List<ImageDataElement> getRawImageDataElements(
             final TiffField offsetsField, final TiffField byteCountsField)
             throws ImageReadException {
-        final int[] offsets = offsetsField.getIntArrayValue();
-        final int[] byteCounts = byteCountsField.getIntArrayValue();
+        final long[] offsets = offsetsField.getLongArrayValue();
+        final long[] byteCounts = byteCountsField.getLongArrayValue();
 
         if (offsets.length != byteCounts.length) {
             throw new ImageReadException("offsets.length(" + offsets.length
@@ -786,11 +806,18 @@ public class TiffDirectory extends TiffElement {
 
         final List<ImageDataElement> result = new ArrayList<>(offsets.length);
         for (int i = 0; i < offsets.length; i++) {
-            result.add(new ImageDataElement(offsets[i], byteCounts[i]));
+            result.add(new ImageDataElement(offsets[i], toLength(byteCounts[i])));
         }
         return result;
     }
 
+    private static int toLength(final long byteCount) throws ImageReadException {
+        if (byteCount < 0 || byteCount > Integer.MAX_VALUE) {
+            throw new ImageReadException("Unsupported image data length: " + byteCount);
+        }
+        return (int) byteCount;
+    }
+
     public List<ImageDataElement> getTiffRawImageDataElements()
             throws ImageReadException {
         final TiffField tileOffsets = findField(TiffTagConstants.TIFF_TAG_TILE_OFFSETS);
@@ -827,10 +854,10 @@ public class TiffDirectory extends TiffElement {
         final TiffField jpegInterchangeFormatLength = findField(TiffTagConstants.TIFF_TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
 
         if (jpegInterchangeFormat != null && jpegInterchangeFormatLength != null) {
-            final int offSet = jpegInterchangeFormat.getIntArrayValue()[0];
-            final int byteCount = jpegInterchangeFormatLength.getIntArrayValue()[0];
+            final long offSet = jpegInterchangeFormat.getLongArrayValue()[0];
+            final long byteCount = jpegInterchangeFormatLength.getLongArrayValue()[0];
 
-            return new ImageDataElement(offSet, byteCount);
+            return new ImageDataElement(offSet, toLength(byteCount));
         } else {
             throw new ImageReadException("Couldn't find image data.");
         }
@@ -852,4 +879,31 @@ public class TiffDirectory extends TiffElement {
         return jpegImageData;
     }
 
+    /**
+     * Gets the quantization and Huffman tables of the JPEGTables field,
+     * which the JPEG-compressed tiles or strips of the image share.  The
+     * field is parsed when the tables are first needed, and the tables
+     * are then kept for every later read of the image, including reads
+     * of the copies that a directory cache hands out.
+     *
+     * @return the tables, or null if the directory has no JPEGTables field
+     * @throws ImageReadException if the field is not a valid JPEG
+     * table-specification stream
+     * @throws IOException in the event of an I/O error
+     */
+    public JpegTables getJpegTables() throws ImageReadException, IOException {
+        JpegTables tables = jpegTables.get();
+        if (tables == null) {
+            final TiffField field = findField(AdobePhotoshopTagConstants.EXIF_TAG_JPEGTABLES);
+            if (field == null) {
+                return null;
+            }
+            // parsing is repeated if threads race, but all keep the first tables
+            tables = JpegTables.read(field.getByteArrayValue());
+            jpegTables.compareAndSet(null, tables);
+            tables = jpegTables.get();
+        }
+        return tables;
+    }
+
 }
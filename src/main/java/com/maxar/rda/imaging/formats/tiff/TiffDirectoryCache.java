@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of parsed TIFF headers and directories, bounded by the
+ * estimated number of bytes held and evicting the least recently used
+ * files first.
+ *
+ * <p>Files are keyed as in {@link TiffTileCache#getSourceKey}, by path,
+ * length and modification time, or by a key supplied with
+ * {@code TiffConstants.PARAM_KEY_DIRECTORY_CACHE_KEY}.  The cached
+ * directories hold only their entries; image data is bound to the
+ * ByteSource of each read when the directories are taken from the cache,
+ * so entries never refer to a source that may since have been closed.</p>
+ *
+ * <p>The cache is safe for use by concurrent readers.  A cache is supplied
+ * to a read with {@code TiffConstants.PARAM_KEY_DIRECTORY_CACHE}, or to a
+ * {@link TiffReader} with {@link TiffReader#setDirectoryCache}.</p>
+ */
+public final class TiffDirectoryCache {
+    // an estimate of the memory used by each field and directory, beyond
+    // the bytes of the field values
+    private static final int FIELD_OVERHEAD = 96;
+    private static final int DIRECTORY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Object, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The parsed structure of a file.
+     */
+    static final class Entry {
+        final TiffHeader header;
+        final List<TiffDirectory> directories;
+        final List<TiffField> fields;
+        // whether all directories were read, rather than just the root
+        final boolean complete;
+        final long weight;
+
+        Entry(final TiffHeader header, final List<TiffDirectory> directories,
+                final List<TiffField> fields, final boolean complete) {
+            this.header = header;
+            this.directories = Collections.unmodifiableList(directories);
+            this.fields = Collections.unmodifiableList(fields);
+            this.complete = complete;
+            long w = 0;
+            for (final TiffDirectory directory : directories) {
+                w += DIRECTORY_OVERHEAD;
+                for (final TiffField field : directory.entries) {
+                    w += FIELD_OVERHEAD + field.getBytesLength();
+                }
+            }
+            this.weight = w;
+        }
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param maxBytes the maximum estimated number of bytes to hold
+     */
+    public TiffDirectoryCache(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the entry of a source, if it is cached and holds the
+     * directories required.
+     */
+    synchronized Entry get(final Object key, final boolean complete) {
+        Entry entry = map.get(key);
+        if (entry != null && complete && !entry.complete) {
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    synchronized void put(final Object key, final Entry entry) {
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        final Entry previous = map.get(key);
+        if (previous != null) {
+            // a read of the root directory alone does not replace a
+            // complete entry
+            if (previous.complete && !entry.complete) {
+                return;
+            }
+            size -= previous.weight;
+        }
+        map.put(key, entry);
+        size += entry.weight;
+
+        final Iterator<Entry> it = map.values().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            size -= it.next().weight;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Removes the directories of a source.
+     *
+     * @param key the key of the source
+     */
+    public synchronized void invalidate(final Object key) {
+        final Entry entry = map.remove(key);
+        if (entry != null) {
+            size -= entry.weight;
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the estimated number of bytes held.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getFileCount() {
+        return map.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the fraction of lookups that found their file in the cache.
+     *
+     * @return the hit ratio, or zero if there have been no lookups
+     */
+    public double getHitRatio() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return "TiffDirectoryCache[size=" + getSize() + "/" + maxBytes
+                + ", files=" + getFileCount() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+}
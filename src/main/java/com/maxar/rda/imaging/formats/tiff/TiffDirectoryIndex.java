@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+/**
+ * The locations of the image file directories in a TIFF file, found by
+ * following the chain of next-directory offsets without parsing the
+ * entries of each directory.
+ *
+ * <p>An index is built by {@link TiffReader#readDirectoryIndex} and
+ * used with {@link TiffReader#readDirectory(com.maxar.rda.imaging.common.bytesource.ByteSource,
+ * TiffDirectoryIndex, int)} to parse individual directories on demand.
+ * EXIF, GPS and other sub-directories are not part of the chain and are
+ * not indexed.</p>
+ */
+public final class TiffDirectoryIndex {
+    public final TiffHeader header;
+    private final long[] offsets;
+    private final int[] entryCounts;
+
+    TiffDirectoryIndex(final TiffHeader header, final long[] offsets,
+            final int[] entryCounts) {
+        this.header = header;
+        this.offsets = offsets;
+        this.entryCounts = entryCounts;
+    }
+
+    /**
+     * Gets the number of directories in the chain.
+     *
+     * @return the number of directories
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Gets the file offset of a directory.
+     *
+     * @param index the index of the directory, with zero being the root
+     * @return the offset of the directory
+     */
+    public long getOffset(final int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Gets the number of entries in a directory.
+     *
+     * @param index the index of the directory, with zero being the root
+     * @return the number of entries
+     */
+    public int getEntryCount(final int index) {
+        return entryCounts[index];
+    }
+}
@@ -24,6 +24,7 @@ import com.maxar.rda.imaging.formats.tiff.fieldtypes.FieldType;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -155,6 +156,16 @@ public class TiffField {
         return BinaryFunctions.head(value, getBytesLength());
     }
 
+    /**
+     * Returns a read-only view of the raw value of the field, in the byte
+     * order of the field, without copying it.
+     * @return the value of the field
+     */
+    ByteBuffer getValueBuffer() {
+        return ByteBuffer.wrap(value, 0, getBytesLength()).slice()
+                .asReadOnlyBuffer().order(byteOrder);
+    }
+
     public final class OversizeValueElement extends TiffElement {
         public OversizeValueElement(final long offset, final int length) {
             super(offset, length);
@@ -461,6 +472,17 @@ public class TiffField {
             final int[] result = new int[numbers.length];
             System.arraycopy(numbers, 0, result, 0, numbers.length);
             return result;
+        } else if (o instanceof long[]) {
+            final long[] numbers = (long[]) o;
+            final int[] result = new int[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] < Integer.MIN_VALUE || numbers[i] > Integer.MAX_VALUE) {
+                    throw new ImageReadException("Value " + numbers[i]
+                            + " out of int range for: " + getTagInfo().getDescription());
+                }
+                result[i] = (int) numbers[i];
+            }
+            return result;
         }
 
         throw new ImageReadException("Unknown value: " + o + " for: "
@@ -468,6 +490,53 @@ public class TiffField {
         // return null;
     }
 
+    /**
+     * Gets the value of an unsigned integer field, such as a list of
+     * offsets or byte counts, as 64-bit values.  Unlike
+     * {@link #getIntArrayValue()}, LONG values of 2 GB and over and LONG8
+     * values of 4 GB and over are preserved.
+     *
+     * @return the values of the field
+     * @throws ImageReadException if the field does not hold integers
+     */
+    public long[] getLongArrayValue() throws ImageReadException {
+        final Object o = getValue();
+
+        if (o instanceof long[]) {
+            return ((long[]) o).clone();
+        } else if (o instanceof int[]) {
+            final int[] numbers = (int[]) o;
+            final long[] result = new long[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                result[i] = 0xFFFFffffL & numbers[i];
+            }
+            return result;
+        } else if (o instanceof short[]) {
+            final short[] numbers = (short[]) o;
+            final long[] result = new long[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                result[i] = 0xffff & numbers[i];
+            }
+            return result;
+        } else if (o instanceof Number[]) {
+            final Number[] numbers = (Number[]) o;
+            final long[] result = new long[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                result[i] = numbers[i].longValue();
+            }
+            return result;
+        } else if (o instanceof Integer) {
+            return new long[] { 0xFFFFffffL & (Integer) o };
+        } else if (o instanceof Short) {
+            return new long[] { 0xffff & (Short) o };
+        } else if (o instanceof Number) {
+            return new long[] { ((Number) o).longValue() };
+        }
+
+        throw new ImageReadException("Unknown value: " + o + " for: "
+                + getTagInfo().getDescription());
+    }
+
     public double[] getDoubleArrayValue() throws ImageReadException {
         final Object o = getValue();
         // if (o == null)
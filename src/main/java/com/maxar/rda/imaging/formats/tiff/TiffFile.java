@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImageParser;
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceChannel;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TIFF file whose header and directories are parsed once, and whose
+ * images may then be read by any number of threads at once.
+ *
+ * <p>The directories of the main chain are parsed when the file is
+ * opened, with their image data described but not read.  Each call to
+ * {@link #readRegion} or {@link #readRaster} creates its own decoders and
+ * reads only the tiles or strips covering the requested region, so a
+ * {@code TiffFile} holds no state that changes after construction.  It is
+ * safe for concurrent use provided that its byte source is; the sources
+ * in this library other than {@code ByteSourceInputStream} are.</p>
+ *
+ * <p>The parameters given when the file is opened, such as
+ * {@link TiffConstants#PARAM_KEY_TILE_CACHE},
+ * {@link TiffConstants#PARAM_KEY_BUFFER_POOL} and
+ * {@link TiffConstants#PARAM_KEY_EXECUTOR}, apply to every read.  With
+ * {@link TiffConstants#PARAM_KEY_DIRECTORY_CACHE}, opening a file whose
+ * directories are cached reads nothing from the file.</p>
+ */
+public final class TiffFile implements Closeable {
+    private final ByteSource byteSource;
+    private final TiffHeader header;
+    private final List<TiffDirectory> directories;
+    private final Map<String, Object> params;
+    private final Object sourceKey;
+    private final TiffImageParser parser = new TiffImageParser();
+
+    /**
+     * Opens a TIFF file, holding it open for positional reads until the
+     * file is closed.
+     *
+     * @param file the file to open
+     * @param params optional parameters applied to every read, or null
+     * @return the open file
+     * @throws ImageReadException in the event of an invalid format
+     * @throws IOException in the event of an I/O error
+     */
+    public static TiffFile open(final File file, final Map<String, Object> params)
+            throws ImageReadException, IOException {
+        final ByteSourceChannel byteSource = new ByteSourceChannel(file);
+        boolean succeeded = false;
+        try {
+            final TiffFile tiffFile = new TiffFile(byteSource, params);
+            succeeded = true;
+            return tiffFile;
+        } finally {
+            if (!succeeded) {
+                byteSource.close();
+            }
+        }
+    }
+
+    /**
+     * Parses the header and directories of a TIFF file.  If the source is
+     * {@link Closeable}, it is closed when this file is closed.
+     *
+     * @param byteSource the source of the TIFF file
+     * @param params optional parameters applied to every read, or null
+     * @throws ImageReadException in the event of an invalid format
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffFile(final ByteSource byteSource, final Map<String, Object> params)
+            throws ImageReadException, IOException {
+        this.byteSource = byteSource;
+        this.params = params == null
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(params));
+
+        final TiffReader reader = new TiffReader(ImageParser.isStrict(params));
+        final List<TiffDirectory> list = new ArrayList<>();
+        if (this.params.get(TiffConstants.PARAM_KEY_DIRECTORY_CACHE) != null) {
+            // take the main chain from the cached directories of the file
+            final TiffContents contents = reader.readDirectories(byteSource,
+                    this.params, FormatCompliance.getDefault());
+            for (final TiffDirectory directory : contents.directories) {
+                if (directory.type >= TiffDirectoryConstants.DIRECTORY_TYPE_ROOT) {
+                    list.add(directory);
+                }
+            }
+            this.header = contents.header;
+        } else {
+            final TiffDirectoryIndex index = reader.readDirectoryIndex(byteSource);
+            for (int i = 0; i < index.size(); i++) {
+                list.add(reader.readDirectory(byteSource, index, i));
+            }
+            this.header = index.header;
+        }
+        this.directories = Collections.unmodifiableList(list);
+        this.sourceKey = TiffTileCache.getSourceKey(byteSource);
+    }
+
+    public ByteSource getByteSource() {
+        return byteSource;
+    }
+
+    public TiffHeader getHeader() {
+        return header;
+    }
+
+    public ByteOrder getByteOrder() {
+        return header.byteOrder;
+    }
+
+    /**
+     * Gets the number of directories in the main chain.
+     *
+     * @return the number of directories
+     */
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+
+    /**
+     * Gets a directory of the main chain.
+     *
+     * @param ifd the index of the directory, with zero being the root
+     * @return the directory
+     */
+    public TiffDirectory getDirectory(final int ifd) {
+        return directories.get(ifd);
+    }
+
+    private TiffDirectory getImageDirectory(final int ifd) throws ImageReadException {
+        if (ifd < 0 || ifd >= directories.size()) {
+            throw new ImageReadException("TIFF directory " + ifd
+                    + " is outside range 0 to " + (directories.size() - 1));
+        }
+        final TiffDirectory directory = directories.get(ifd);
+        if (null == directory.getTiffImageData()) {
+            throw new ImageReadException("TIFF directory " + ifd + " does not contain an image.");
+        }
+        return directory;
+    }
+
+    /**
+     * Reads a region of the image in a directory.
+     *
+     * @param ifd the index of the directory, with zero being the root
+     * @param region the region to read, or null to read the entire image
+     * @return the image of the region
+     * @throws ImageReadException in the event of an invalid or unsupported format
+     * @throws IOException in the event of an I/O error
+     */
+    public BufferedImage readRegion(final int ifd, final Rectangle region)
+            throws ImageReadException, IOException {
+        final TiffDirectory directory = getImageDirectory(ifd);
+        final Map<String, Object> readParams = new HashMap<>(params);
+        if (region != null) {
+            readParams.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, region.x);
+            readParams.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, region.y);
+            readParams.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, region.width);
+            readParams.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, region.height);
+        }
+        return parser.getBufferedImage(directory, header.byteOrder, readParams, sourceKey);
+    }
+
+    /**
+     * Reads the samples of a region of the image in a directory at their
+     * native bit depth.
+     *
+     * @param ifd the index of the directory, with zero being the root
+     * @param region the region to read, or null to read the entire image
+     * @param bands the indices of the bands to read, or null to read all bands
+     * @return a valid raster
+     * @throws ImageReadException in the event of an invalid or unsupported format
+     * @throws IOException in the event of an I/O error
+     * @see TiffImageParser#readRaster(ByteSource, Rectangle, int[])
+     */
+    public TiffRaster readRaster(final int ifd, final Rectangle region, final int[] bands)
+            throws ImageReadException, IOException {
+        return parser.readRaster(getImageDirectory(ifd), header.byteOrder, region, bands);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (byteSource instanceof Closeable) {
+            ((Closeable) byteSource).close();
+        }
+    }
+}
@@ -17,31 +17,43 @@
 package com.maxar.rda.imaging.formats.tiff;
 
 import com.maxar.rda.imaging.ImageReadException;
-import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
 import com.maxar.rda.imaging.formats.tiff.datareaders.DataReaderStrips;
 import com.maxar.rda.imaging.formats.tiff.datareaders.DataReaderTiled;
 import com.maxar.rda.imaging.formats.tiff.datareaders.ImageDataReader;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public abstract class TiffImageData {
-    public static class Tiles extends TiffImageData {
-        public final TiffElement.DataElement[] tiles;
+    private final TiffElement.DataElement[] elements;
+    private final DataIndex index;
+
+    protected TiffImageData(final TiffElement.DataElement[] elements) {
+        this.elements = elements;
+        this.index = null;
+    }
+
+    protected TiffImageData(final DataIndex index) {
+        this.elements = null;
+        this.index = index;
+    }
 
-        // public final byte tiles[][];
+    public static class Tiles extends TiffImageData {
         private final int tileWidth;
         private final int tileLength;
 
         public Tiles(final TiffElement.DataElement[] tiles, final int tileWidth, final int tileLength) {
-            this.tiles = tiles;
+            super(tiles);
             this.tileWidth = tileWidth;
             this.tileLength = tileLength;
         }
 
-        @Override
-        public TiffElement.DataElement[] getImageData() {
-            return tiles;
+        public Tiles(final DataIndex tiles, final int tileWidth, final int tileLength) {
+            super(tiles);
+            this.tileWidth = tileWidth;
+            this.tileLength = tileLength;
         }
 
         @Override
@@ -81,34 +93,19 @@ public abstract class TiffImageData {
         public int getTileHeight() {
             return tileLength;
         }
-
-        // public TiffElement[] getElements()
-        // {
-        // return tiles;
-        // }
     }
 
     public static class Strips extends TiffImageData {
-        private final TiffElement.DataElement[] strips;
-        // public final byte strips[][];
         public final int rowsPerStrip;
 
         public Strips(final TiffElement.DataElement[] strips, final int rowsPerStrip) {
-            this.strips = strips;
+            super(strips);
             this.rowsPerStrip = rowsPerStrip;
         }
 
-        @Override
-        public TiffElement.DataElement[] getImageData() {
-            return strips;
-        }
-
-        public TiffElement.DataElement getImageData(final int offset) {
-            return strips[offset];
-        }
-
-        public int getImageDataLength() {
-            return strips.length;
+        public Strips(final DataIndex strips, final int rowsPerStrip) {
+            super(strips);
+            this.rowsPerStrip = rowsPerStrip;
         }
 
         @Override
@@ -129,9 +126,101 @@ public abstract class TiffImageData {
 
     }
 
-    // public abstract TiffElement[] getElements();
+    /**
+     * Gets the elements of all of the tiles or strips.  For image data
+     * backed by a {@link DataIndex}, an element is created for each tile
+     * or strip on every call; readers of individual tiles or strips should
+     * use {@link #getImageData(int)} or {@link #getImageDataBytes(int)}.
+     *
+     * @return the elements, in the order of the file's offsets
+     */
+    public TiffElement.DataElement[] getImageData() {
+        if (elements != null) {
+            return elements;
+        }
+        final TiffElement.DataElement[] result = new TiffElement.DataElement[index.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = index.getElement(i);
+        }
+        return result;
+    }
+
+    public TiffElement.DataElement getImageData(final int offset) {
+        return elements != null ? elements[offset] : index.getElement(offset);
+    }
+
+    /**
+     * Gets the offsets and byte counts of the tiles or strips, if they
+     * are read on demand from a source.
+     *
+     * @return the index, or null if the image data is held as elements
+     */
+    public DataIndex getDataIndex() {
+        return index;
+    }
+
+    public int getImageDataLength() {
+        return elements != null ? elements.length : index.size();
+    }
+
+    /**
+     * Gets the stored, possibly compressed, bytes of a tile or strip.
+     *
+     * @param offset the index of the tile or strip
+     * @return the bytes of the tile or strip
+     * @throws IOException in the event of an I/O error
+     */
+    public byte[] getImageDataBytes(final int offset) throws IOException {
+        return elements != null ? elements[offset].getData() : index.read(offset);
+    }
+
+    /**
+     * Gets a read-only view of the stored, possibly compressed, bytes of a
+     * tile or strip, positioned at zero.  For sources held in memory or
+     * mapped from a file, the view shares the source's storage and no
+     * bytes are copied.
+     *
+     * @param offset the index of the tile or strip
+     * @return the bytes of the tile or strip
+     * @throws IOException in the event of an I/O error
+     */
+    public ByteBuffer getImageDataBuffer(final int offset) throws IOException {
+        return elements != null
+                ? ByteBuffer.wrap(elements[offset].getData()).asReadOnlyBuffer()
+                : index.slice(offset);
+    }
+
+    /**
+     * Gets the number of stored bytes of a tile or strip.
+     *
+     * @param offset the index of the tile or strip
+     * @return the number of bytes
+     */
+    public int getImageDataByteCount(final int offset) {
+        return elements != null ? elements[offset].getDataLength() : index.getByteCount(offset);
+    }
 
-    public abstract TiffElement.DataElement[] getImageData();
+    /**
+     * Gets the stored bytes of a tile or strip as in
+     * {@link #getImageDataBuffer(int)}, but reads bytes that cannot be
+     * viewed in place into the given array rather than a new one.  The
+     * returned buffer is positioned at zero and is valid only until the
+     * array is reused.
+     *
+     * @param offset the index of the tile or strip
+     * @param scratch an array to receive the bytes, which is used only if
+     * it is at least {@link #getImageDataByteCount(int)} bytes long
+     * @return the bytes of the tile or strip
+     * @throws IOException in the event of an I/O error
+     */
+    public ByteBuffer getImageDataBuffer(final int offset, final byte[] scratch)
+            throws IOException {
+        if (elements != null || index.byteSource.hasSharedSlices()
+                || scratch.length < index.getByteCount(offset)) {
+            return getImageDataBuffer(offset);
+        }
+        return index.read(offset, scratch);
+    }
 
     public abstract boolean stripsNotTiles();
 
@@ -141,6 +230,96 @@ public abstract class TiffImageData {
             int height, int compression, ByteOrder byteOrder) throws IOException,
             ImageReadException;
 
+    /**
+     * The offsets and byte counts of the tiles or strips of an image, held
+     * as the raw values of their TIFF fields and decoded on demand.  An
+     * image with hundreds of thousands of tiles therefore needs no object
+     * per tile until a tile is actually read.
+     */
+    public static final class DataIndex {
+        private final ByteSource byteSource;
+        private final ByteBuffer offsets;
+        private final int offsetSize;
+        private final ByteBuffer byteCounts;
+        private final int byteCountSize;
+        private final int size;
+
+        public DataIndex(final ByteSource byteSource, final TiffField offsetsField,
+                final TiffField byteCountsField) throws ImageReadException {
+            if (offsetsField.getCount() != byteCountsField.getCount()) {
+                throw new ImageReadException("offsets.length(" + offsetsField.getCount()
+                        + ") != byteCounts.length(" + byteCountsField.getCount() + ")");
+            }
+            this.byteSource = byteSource;
+            this.offsets = offsetsField.getValueBuffer();
+            this.offsetSize = checkSize(offsetsField);
+            this.byteCounts = byteCountsField.getValueBuffer();
+            this.byteCountSize = checkSize(byteCountsField);
+            this.size = (int) offsetsField.getCount();
+            for (int i = 0; i < size; i++) {
+                final long byteCount = get(byteCounts, byteCountSize, i);
+                if (byteCount < 0 || byteCount > Integer.MAX_VALUE) {
+                    throw new ImageReadException("Unsupported image data length: " + byteCount);
+                }
+            }
+        }
+
+        private static int checkSize(final TiffField field) throws ImageReadException {
+            final int size = field.getFieldType().getSize();
+            if (size != 2 && size != 4 && size != 8) {
+                throw new ImageReadException("Unsupported type for "
+                        + field.getTagInfo().getDescription() + ": " + field.getFieldTypeName());
+            }
+            return size;
+        }
+
+        private static long get(final ByteBuffer buffer, final int size, final int i) {
+            switch (size) {
+                case 2:
+                    return 0xffff & buffer.getShort(2 * i);
+                case 4:
+                    return 0xFFFFffffL & buffer.getInt(4 * i);
+                default:
+                    return buffer.getLong(8 * i);
+            }
+        }
+
+        public ByteSource getByteSource() {
+            return byteSource;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getOffset(final int i) {
+            return get(offsets, offsetSize, i);
+        }
+
+        public int getByteCount(final int i) {
+            return (int) get(byteCounts, byteCountSize, i);
+        }
+
+        TiffElement.DataElement getElement(final int i) {
+            return new ByteSourceData(getOffset(i), getByteCount(i), byteSource);
+        }
+
+        byte[] read(final int i) throws IOException {
+            return byteSource.getBlock(getOffset(i), getByteCount(i));
+        }
+
+        ByteBuffer read(final int i, final byte[] scratch) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch, 0, getByteCount(i));
+            byteSource.read(getOffset(i), buffer);
+            buffer.flip();
+            return buffer;
+        }
+
+        ByteBuffer slice(final int i) throws IOException {
+            return byteSource.slice(getOffset(i), getByteCount(i));
+        }
+    }
+
     public static class Data extends TiffElement.DataElement {
         public Data(final long offset, final int length, final byte[] data) {
             super(offset, length, data);
@@ -153,12 +332,16 @@ public abstract class TiffImageData {
 
     }
 
+    /**
+     * Image data that is read from its byte source on demand rather than
+     * being held in memory.
+     */
     public static class ByteSourceData extends Data {
-        ByteSourceFile byteSourceFile;
+        final ByteSource byteSource;
 
-        public ByteSourceData(final long offset, final int length, final ByteSourceFile byteSource) {
+        public ByteSourceData(final long offset, final int length, final ByteSource byteSource) {
             super(offset, length, new byte[0]);
-            byteSourceFile = byteSource;
+            this.byteSource = byteSource;
         }
 
         @Override
@@ -169,10 +352,15 @@ public abstract class TiffImageData {
         @Override
         public byte[] getData() {
             try {
-                return byteSourceFile.getBlock(offset, length);
+                return byteSource.getBlock(offset, length);
             } catch (final IOException ioex) {
                 return new byte[0];
             }
         }
+
+        @Override
+        public int getDataLength() {
+            return length;
+        }
     }
 }
@@ -23,12 +23,15 @@ import com.maxar.rda.imaging.ImageInfo;
 import com.maxar.rda.imaging.ImageParser;
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.ImageWriteException;
+import com.maxar.rda.imaging.common.BufferPool;
 import com.maxar.rda.imaging.common.ImageBuilder;
 import com.maxar.rda.imaging.common.ImageMetadata;
 import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceMapped;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffEpTagConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.datareaders.DataReaderTiled;
 import com.maxar.rda.imaging.formats.tiff.datareaders.ImageDataReader;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreterBiLevel;
@@ -41,6 +44,7 @@ import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInt
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
@@ -49,6 +53,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import com.maxar.rda.imaging.formats.tiff.TiffDirectory.ImageDataElement;
 import com.maxar.rda.imaging.formats.tiff.write.TiffImageWriterLossy;
@@ -145,10 +150,11 @@ public class TiffImageParser extends ImageParser
     @Override
     public ImageInfo getImageInfo(final ByteSource byteSource, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        final FormatCompliance formatCompliance = FormatCompliance.getDefault();
-        final TiffContents contents = new TiffReader(isStrict(params)).readDirectories(
-                byteSource, false, formatCompliance);
-        final TiffDirectory directory = contents.directories.get(0);
+        // only the root directory is parsed; the others are just counted
+        final TiffReader tiffReader = new TiffReader(isStrict(params));
+        final TiffDirectoryIndex directoryIndex = tiffReader.readDirectoryIndex(byteSource);
+        final TiffDirectory directory = tiffReader.readDirectory(byteSource,
+                directoryIndex, 0, false);
 
         final TiffField widthField = directory.findField(
                 TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, true);
@@ -237,12 +243,12 @@ public class TiffImageParser extends ImageParser
         final ImageFormat format = ImageFormats.TIFF;
         final String formatName = "TIFF Tag-based Image File Format";
         final String mimeType = "image/tiff";
-        final int numberOfImages = contents.directories.size();
+        final int numberOfImages = directoryIndex.size();
         // not accurate ... only reflects first
         final boolean progressive = false;
         // is TIFF ever interlaced/progressive?
 
-        final String formatDetails = "Tiff v." + contents.header.tiffVersion;
+        final String formatDetails = "Tiff v." + directoryIndex.header.tiffVersion;
 
         final boolean transparent = false; // TODO: wrong
         boolean usesPalette = false;
@@ -279,6 +285,7 @@ public class TiffImageParser extends ImageParser
             compressionAlgorithm = ImageInfo.CompressionAlgorithm.LZW;
             break;
         case TiffConstants.TIFF_COMPRESSION_JPEG:
+        case TiffTagConstants.COMPRESSION_VALUE_JPEG:
             compressionAlgorithm = ImageInfo.CompressionAlgorithm.JPEG;
             break;
         case TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED_2:
@@ -304,10 +311,11 @@ public class TiffImageParser extends ImageParser
     @Override
     public String getXmpXml(final ByteSource byteSource, final Map<String, Object> params)
             throws ImageReadException, IOException {
-        final FormatCompliance formatCompliance = FormatCompliance.getDefault();
-        final TiffContents contents = new TiffReader(isStrict(params)).readDirectories(
-                byteSource, false, formatCompliance);
-        final TiffDirectory directory = contents.directories.get(0);
+        // only the root directory is parsed; the others are just counted
+        final TiffReader tiffReader = new TiffReader(isStrict(params));
+        final TiffDirectoryIndex directoryIndex = tiffReader.readDirectoryIndex(byteSource);
+        final TiffDirectory directory = tiffReader.readDirectory(byteSource,
+                directoryIndex, 0, false);
 
         final byte[] bytes = directory.getFieldValue(TiffTagConstants.TIFF_TAG_XMP,
                 false);
@@ -457,11 +465,106 @@ public class TiffImageParser extends ImageParser
                 true, formatCompliance);
         final ByteOrder byteOrder = reader.getByteOrder();
         final TiffDirectory directory = contents.directories.get(0);
-        final BufferedImage result = directory.getTiffImage(byteOrder, params);
-        if (null == result) {
+        if (null == directory.getTiffImageData()) {
             throw new ImageReadException("TIFF does not contain an image.");
         }
-        return result;
+        return getBufferedImage(directory, byteOrder, params,
+                TiffTileCache.getSourceKey(byteSource));
+    }
+
+    /**
+     * Reads the samples of the first image in a TIFF file at their native
+     * bit depth, without photometric interpretation.  This avoids the
+     * reduction to 8-bit ARGB performed by getBufferedImage, and is
+     * intended for data such as 16-bit panchromatic or multispectral
+     * imagery.
+     *
+     * @param byteSource the source of the TIFF file
+     * @param region the region to read, or null to read the entire image
+     * @param bands the indices of the bands to read, in the order in which
+     * they are to be stored, or null to read all bands
+     * @return a valid raster
+     * @throws ImageReadException in the event of an invalid or unsupported format
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffRaster readRaster(final ByteSource byteSource, final Rectangle region,
+            final int[] bands) throws ImageReadException, IOException {
+        final FormatCompliance formatCompliance = FormatCompliance.getDefault();
+        final TiffReader reader = new TiffReader(isStrict(null));
+        final TiffContents contents = reader.readFirstDirectory(byteSource, null,
+                true, formatCompliance);
+        return readRaster(contents.directories.get(0), reader.getByteOrder(), region, bands);
+    }
+
+    protected TiffRaster readRaster(final TiffDirectory directory, final ByteOrder byteOrder,
+            final Rectangle region, final int[] bands) throws ImageReadException, IOException {
+        final short compressionFieldValue;
+        if (directory.findField(TiffTagConstants.TIFF_TAG_COMPRESSION) != null) {
+            compressionFieldValue = directory.getFieldValue(TiffTagConstants.TIFF_TAG_COMPRESSION);
+        } else {
+            compressionFieldValue = TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED_1;
+        }
+        final int compression = 0xffff & compressionFieldValue;
+        final int width = directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH);
+        final int height = directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH);
+
+        int samplesPerPixel = 1;
+        final TiffField samplesPerPixelField = directory.findField(
+                TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL);
+        if (samplesPerPixelField != null) {
+            samplesPerPixel = samplesPerPixelField.getIntValue();
+        }
+        int[] bitsPerSample = { 1 };
+        int bitsPerPixel = samplesPerPixel;
+        final TiffField bitsPerSampleField = directory.findField(
+                TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE);
+        if (bitsPerSampleField != null) {
+            bitsPerSample = bitsPerSampleField.getIntArrayValue();
+            bitsPerPixel = bitsPerSampleField.getIntValueOrArraySum();
+        }
+        if (samplesPerPixel != bitsPerSample.length) {
+            throw new ImageReadException("Tiff: samplesPerPixel ("
+                    + samplesPerPixel + ")!=fBitsPerSample.length ("
+                    + bitsPerSample.length + ")");
+        }
+        int predictor = -1;
+        final TiffField predictorField = directory.findField(
+                TiffTagConstants.TIFF_TAG_PREDICTOR);
+        if (null != predictorField) {
+            predictor = predictorField.getIntValueOrArraySum();
+        }
+
+        final Rectangle r = region == null ? new Rectangle(0, 0, width, height) : region;
+        if (r.width <= 0 || r.height <= 0 || r.x < 0 || r.y < 0
+                || r.x + r.width > width || r.y + r.height > height) {
+            throw new ImageReadException("raster region is outside image: " + r);
+        }
+
+        int[] b = bands;
+        if (b == null) {
+            b = new int[samplesPerPixel];
+            for (int i = 0; i < samplesPerPixel; i++) {
+                b[i] = i;
+            }
+        }
+        if (b.length == 0) {
+            throw new ImageReadException("no bands specified for raster");
+        }
+        for (final int band : b) {
+            if (band < 0 || band >= samplesPerPixel) {
+                throw new ImageReadException("raster band " + band
+                        + " is outside range 0 to " + (samplesPerPixel - 1));
+            }
+        }
+
+        final TiffImageData imageData = directory.getTiffImageData();
+        if (imageData == null) {
+            throw new ImageReadException("TIFF does not contain an image.");
+        }
+        final ImageDataReader dataReader = imageData.getDataReader(directory,
+                null, bitsPerPixel, bitsPerSample, predictor,
+                samplesPerPixel, width, height, compression, byteOrder);
+        return dataReader.readRaster(r, b);
     }
 
     @Override
@@ -502,6 +605,91 @@ public class TiffImageParser extends ImageParser
         throw new ImageReadException("Non-Integer parameter " + key);
     }
 
+    private ExecutorService getExecutorParameter(final String key,
+            final Map<String, Object> params) throws ImageReadException {
+        if (params == null) {
+            return null;
+        }
+
+        final Object obj = params.get(key);
+        if (obj == null) {
+            return null;
+        }
+        if (obj instanceof ExecutorService) {
+            return (ExecutorService) obj;
+        }
+        throw new ImageReadException("Non-ExecutorService parameter " + key);
+    }
+
+    /**
+     * Maps regular files into memory unless PARAM_KEY_MEMORY_MAP is false,
+     * so that tiles and strips are fetched without system calls.
+     */
+    @Override
+    protected ByteSource getByteSource(final File file, final Map<String, Object> params)
+            throws ImageReadException, IOException {
+        final Object obj = params == null ? null : params.get(TiffConstants.PARAM_KEY_MEMORY_MAP);
+        if (obj != null && !(obj instanceof Boolean)) {
+            throw new ImageReadException("Non-Boolean parameter "
+                    + TiffConstants.PARAM_KEY_MEMORY_MAP);
+        }
+        if (Boolean.FALSE.equals(obj) || !file.isFile()) {
+            return super.getByteSource(file, params);
+        }
+        return new ByteSourceMapped(file);
+    }
+
+    private TiffTileCache getTileCacheParameter(final Map<String, Object> params)
+            throws ImageReadException {
+        if (params == null) {
+            return null;
+        }
+
+        final Object obj = params.get(TiffConstants.PARAM_KEY_TILE_CACHE);
+        if (obj == null) {
+            return null;
+        }
+        if (obj instanceof TiffTileCache) {
+            return (TiffTileCache) obj;
+        }
+        throw new ImageReadException("Non-TiffTileCache parameter "
+                + TiffConstants.PARAM_KEY_TILE_CACHE);
+    }
+
+    private BufferPool getBufferPoolParameter(final Map<String, Object> params)
+            throws ImageReadException {
+        if (params == null) {
+            return null;
+        }
+
+        final Object obj = params.get(TiffConstants.PARAM_KEY_BUFFER_POOL);
+        if (obj == null) {
+            return null;
+        }
+        if (obj instanceof BufferPool) {
+            return (BufferPool) obj;
+        }
+        throw new ImageReadException("Non-BufferPool parameter "
+                + TiffConstants.PARAM_KEY_BUFFER_POOL);
+    }
+
+    private TiffReadPlanner getReadPlannerParameter(final Map<String, Object> params)
+            throws ImageReadException {
+        if (params == null) {
+            return TiffReadPlanner.DEFAULT;
+        }
+
+        final Object obj = params.get(TiffConstants.PARAM_KEY_READ_PLANNER);
+        if (obj == null) {
+            return TiffReadPlanner.DEFAULT;
+        }
+        if (obj instanceof TiffReadPlanner) {
+            return (TiffReadPlanner) obj;
+        }
+        throw new ImageReadException("Non-TiffReadPlanner parameter "
+                + TiffConstants.PARAM_KEY_READ_PLANNER);
+    }
+
     private Rectangle checkForSubImage(
             final Map<String, Object> params)
             throws ImageReadException {
@@ -538,6 +726,18 @@ public class TiffImageParser extends ImageParser
     protected BufferedImage getBufferedImage(final TiffDirectory directory,
             final ByteOrder byteOrder, final Map<String, Object> params)
             throws ImageReadException, IOException {
+        return getBufferedImage(directory, byteOrder, params, null);
+    }
+
+    /**
+     * Reads the image of a directory.
+     *
+     * @param sourceKey the key of the directory's source in a tile cache,
+     * or null if the source is unknown, in which case no cache is used
+     */
+    BufferedImage getBufferedImage(final TiffDirectory directory,
+            final ByteOrder byteOrder, final Map<String, Object> params,
+            final Object sourceKey) throws ImageReadException, IOException {
         final List<TiffField> entries = directory.entries;
 
         if (entries == null) {
@@ -639,6 +839,23 @@ public class TiffImageParser extends ImageParser
         final ImageDataReader dataReader = imageData.getDataReader(directory,
                 photometricInterpreter, bitsPerPixel, bitsPerSample, predictor,
                 samplesPerPixel, width, height, compression, byteOrder);
+        dataReader.setExecutor(getExecutorParameter(TiffConstants.PARAM_KEY_EXECUTOR, params));
+        dataReader.setBufferPool(getBufferPoolParameter(params));
+        final Integer prefetchDepth = getIntegerParameter(
+                TiffConstants.PARAM_KEY_PREFETCH_DEPTH, params);
+        if (prefetchDepth != null) {
+            if (prefetchDepth < 0) {
+                throw new ImageReadException("Invalid prefetch depth: " + prefetchDepth);
+            }
+            dataReader.setPrefetchDepth(prefetchDepth);
+        }
+        final TiffTileCache tileCache = getTileCacheParameter(params);
+        if (tileCache != null && sourceKey != null && dataReader instanceof DataReaderTiled) {
+            ((DataReaderTiled) dataReader).setTileCache(tileCache, sourceKey, directory.type);
+        }
+        if (dataReader instanceof DataReaderTiled) {
+            ((DataReaderTiled) dataReader).setReadPlanner(getReadPlannerParameter(params));
+        }
 
         BufferedImage result = null;
         if (subImage != null) {
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+/**
+ * Sample values read from a TIFF image at their native bit depth.
+ *
+ * <p>Samples are stored band-interleaved by pixel in a single primitive
+ * array, so that the value of band {@code b} for the pixel at
+ * {@code (x, y)} is found at {@code getIndex(x, y, b)}.  The array type
+ * depends on the format of the source data:</p>
+ * <ul>
+ * <li>integer samples of up to 16 bits are stored in a {@code short[]}.
+ * Unsigned 16-bit values should be masked with {@code 0xffff};</li>
+ * <li>integer samples of 17 to 32 bits are stored in an {@code int[]};</li>
+ * <li>32-bit IEEE floating-point samples are stored in a
+ * {@code float[]}.</li>
+ * </ul>
+ * <p>Signed integer samples are sign-extended to the width of the array
+ * type.</p>
+ */
+public final class TiffRaster {
+
+    /**
+     * The type of the primitive array holding the samples.
+     */
+    public enum DataType {
+        SHORT, INT, FLOAT
+    }
+
+    private final int width;
+    private final int height;
+    private final int bandCount;
+    private final int bitsPerSample;
+    private final int sampleFormat;
+    private final DataType dataType;
+    private final short[] shortData;
+    private final int[] intData;
+    private final float[] floatData;
+
+    /**
+     * Constructs a raster with storage for the specified dimensions.
+     *
+     * @param width the width of the raster in pixels
+     * @param height the height of the raster in pixels
+     * @param bandCount the number of samples for each pixel
+     * @param bitsPerSample the bit depth of the source samples
+     * @param sampleFormat the TIFF SampleFormat of the source samples
+     * @param dataType the type of array used to store the samples
+     */
+    public TiffRaster(final int width, final int height, final int bandCount,
+            final int bitsPerSample, final int sampleFormat, final DataType dataType) {
+        this.width = width;
+        this.height = height;
+        this.bandCount = bandCount;
+        this.bitsPerSample = bitsPerSample;
+        this.sampleFormat = sampleFormat;
+        this.dataType = dataType;
+
+        final int n = width * height * bandCount;
+        shortData = dataType == DataType.SHORT ? new short[n] : null;
+        intData = dataType == DataType.INT ? new int[n] : null;
+        floatData = dataType == DataType.FLOAT ? new float[n] : null;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of bands (samples per pixel) held by the raster.
+     * This is the number of bands that were requested, which may be
+     * fewer than are present in the source image.
+     *
+     * @return a value of one or greater
+     */
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    /**
+     * Gets the TIFF SampleFormat of the source data, one of the
+     * SAMPLE_FORMAT_VALUE constants in TiffTagConstants.
+     *
+     * @return a valid sample format
+     */
+    public int getSampleFormat() {
+        return sampleFormat;
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    /**
+     * Gets the index within the data array of a sample.
+     *
+     * @param x the column of the pixel
+     * @param y the row of the pixel
+     * @param band the index of the band within this raster
+     * @return a valid array index
+     */
+    public int getIndex(final int x, final int y, final int band) {
+        return (y * width + x) * bandCount + band;
+    }
+
+    /**
+     * Gets the sample array for rasters of type SHORT.
+     *
+     * @return a valid array
+     * @throws IllegalStateException if the raster is of a different type
+     */
+    public short[] getShortData() {
+        checkDataType(DataType.SHORT);
+        return shortData;
+    }
+
+    /**
+     * Gets the sample array for rasters of type INT.
+     *
+     * @return a valid array
+     * @throws IllegalStateException if the raster is of a different type
+     */
+    public int[] getIntData() {
+        checkDataType(DataType.INT);
+        return intData;
+    }
+
+    /**
+     * Gets the sample array for rasters of type FLOAT.
+     *
+     * @return a valid array
+     * @throws IllegalStateException if the raster is of a different type
+     */
+    public float[] getFloatData() {
+        checkDataType(DataType.FLOAT);
+        return floatData;
+    }
+
+    private void checkDataType(final DataType expected) {
+        if (dataType != expected) {
+            throw new IllegalStateException("Raster data type is " + dataType
+                    + ", not " + expected);
+        }
+    }
+}
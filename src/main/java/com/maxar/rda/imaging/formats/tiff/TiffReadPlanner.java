@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans the reads of the stored bytes of a set of tiles or strips,
+ * merging blocks that are adjacent or nearly adjacent in the file into
+ * a single read.
+ *
+ * <p>The tiles of a row are normally stored one after another, so a read
+ * of a window of an image can usually fetch each row of tiles, or the
+ * whole window, with one read rather than one per tile.  This matters
+ * most for sources where each read is costly, such as files read with a
+ * system call per block or sources fetched over a network.  Blocks are
+ * merged if the gap between them is no more than the maximum gap, whose
+ * bytes are read and discarded, and if the merged read is no longer than
+ * the maximum read size.</p>
+ *
+ * <p>A planner holds no state beyond its limits and may be shared by any
+ * number of reads and threads.  A planner is supplied to a read with
+ * {@code TiffConstants.PARAM_KEY_READ_PLANNER}.</p>
+ */
+public final class TiffReadPlanner {
+    public static final int DEFAULT_MAX_GAP = 8 * 1024;
+    public static final int DEFAULT_MAX_READ_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * A planner with the default limits, used by reads for which no
+     * planner is supplied.
+     */
+    public static final TiffReadPlanner DEFAULT =
+            new TiffReadPlanner(DEFAULT_MAX_GAP, DEFAULT_MAX_READ_SIZE);
+
+    private final int maxGap;
+    private final int maxReadSize;
+
+    /**
+     * Constructs a planner.  A planner with a maximum read size of zero
+     * reads each block separately.
+     *
+     * @param maxGap the largest number of unneeded bytes to read between
+     * two blocks in order to merge their reads
+     * @param maxReadSize the largest number of bytes to read at once,
+     * unless a single block is larger
+     */
+    public TiffReadPlanner(final int maxGap, final int maxReadSize) {
+        if (maxGap < 0 || maxReadSize < 0) {
+            throw new IllegalArgumentException("Invalid read limits: gap " + maxGap
+                    + ", read size " + maxReadSize);
+        }
+        this.maxGap = maxGap;
+        this.maxReadSize = maxReadSize;
+    }
+
+    public int getMaxGap() {
+        return maxGap;
+    }
+
+    public int getMaxReadSize() {
+        return maxReadSize;
+    }
+
+    /**
+     * A single read covering the stored bytes of one or more blocks.
+     */
+    public static final class Range {
+        private final long offset;
+        private final int length;
+        // the positions of the blocks in the array given to plan(), and
+        // the location of their bytes within the range
+        private final int[] members;
+        private final int[] starts;
+        private final int[] counts;
+
+        Range(final long offset, final int length, final int[] members,
+                final int[] starts, final int[] counts) {
+            this.offset = offset;
+            this.length = length;
+            this.members = members;
+            this.starts = starts;
+            this.counts = counts;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the number of blocks read by the range.
+         *
+         * @return a value greater than zero
+         */
+        public int getBlockCount() {
+            return members.length;
+        }
+
+        /**
+         * Gets the position of a block of the range in the array of blocks
+         * from which the range was planned.
+         *
+         * @param i the index of the block within the range
+         * @return the position of the block
+         */
+        public int getMember(final int i) {
+            return members[i];
+        }
+
+        /**
+         * Reads the bytes of the range.
+         *
+         * @param byteSource the source of the image data
+         * @param scratch an array to receive the bytes, which is used if it is
+         * at least as long as the range, or null to allocate one
+         * @return the bytes of the range, positioned at zero
+         * @throws IOException in the event of an I/O error
+         */
+        public ByteBuffer read(final ByteSource byteSource, final byte[] scratch)
+                throws IOException {
+            if (scratch == null || scratch.length < length) {
+                return ByteBuffer.wrap(byteSource.getBlock(offset, length));
+            }
+            final ByteBuffer buffer = ByteBuffer.wrap(scratch, 0, length);
+            byteSource.read(offset, buffer);
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Gets a read-only view of the bytes of a block within the bytes
+         * read for the range.
+         *
+         * @param bytes the bytes of the range, as returned by read()
+         * @param i the index of the block within the range
+         * @return the bytes of the block, positioned at zero
+         */
+        public ByteBuffer slice(final ByteBuffer bytes, final int i) {
+            return bytes.slice(starts[i], counts[i]).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Plans the reads of a set of blocks.
+     *
+     * @param index the offsets and byte counts of the image data
+     * @param blocks the indices of the blocks to read
+     * @return the reads, in order of their offsets in the file
+     */
+    public List<Range> plan(final TiffImageData.DataIndex index, final int[] blocks) {
+        if (blocks.length == 0) {
+            return Collections.emptyList();
+        }
+        final long[] offsets = new long[blocks.length];
+        final Integer[] order = new Integer[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            offsets[i] = index.getOffset(blocks[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(offsets[a], offsets[b]));
+
+        final List<Range> ranges = new ArrayList<>();
+        int first = 0;
+        long start = offsets[order[0]];
+        long end = start + index.getByteCount(blocks[order[0]]);
+        for (int k = 1; k <= order.length; k++) {
+            if (k < order.length) {
+                final long offset = offsets[order[k]];
+                final long blockEnd = offset + index.getByteCount(blocks[order[k]]);
+                final long mergedEnd = Math.max(end, blockEnd);
+                if (offset - end <= maxGap && mergedEnd - start <= maxReadSize) {
+                    end = mergedEnd;
+                    continue;
+                }
+            }
+            ranges.add(createRange(index, blocks, offsets, order, first, k, start, end));
+            if (k < order.length) {
+                first = k;
+                start = offsets[order[k]];
+                end = start + index.getByteCount(blocks[order[k]]);
+            }
+        }
+        return ranges;
+    }
+
+    private static Range createRange(final TiffImageData.DataIndex index, final int[] blocks,
+            final long[] offsets, final Integer[] order, final int first, final int last,
+            final long start, final long end) {
+        final int n = last - first;
+        final int[] members = new int[n];
+        final int[] starts = new int[n];
+        final int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int member = order[first + i];
+            members[i] = member;
+            starts[i] = (int) (offsets[member] - start);
+            counts[i] = index.getByteCount(blocks[member]);
+        }
+        return new Range(start, (int) (end - start), members, starts, counts);
+    }
+}
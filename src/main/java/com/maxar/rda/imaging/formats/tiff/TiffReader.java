@@ -23,7 +23,6 @@ import com.maxar.rda.imaging.common.BinaryFileParser;
 import com.maxar.rda.imaging.common.BinaryFunctions;
 import com.maxar.rda.imaging.common.ByteConversions;
 import com.maxar.rda.imaging.common.bytesource.ByteSource;
-import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
 import com.maxar.rda.imaging.formats.jpeg.JpegConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.ExifTagConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
@@ -33,6 +32,7 @@ import com.maxar.rda.imaging.formats.tiff.fieldtypes.FieldType;
 import com.maxar.rda.imaging.formats.tiff.taginfos.TagInfoDirectory;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,18 +43,100 @@ import com.maxar.rda.imaging.formats.tiff.TiffDirectory.ImageDataElement;
 
 public class TiffReader extends BinaryFileParser
 {
+    // enough for a directory of about 200 BigTIFF entries
+    private static final int DIRECTORY_READ_AHEAD = 4096;
 
     private final boolean strict;
     private int tiffVersion;
+    private TiffDirectoryCache directoryCache;
+    private Object directoryCacheKey;
 
     public TiffReader(final boolean strict) {
         this.strict = strict;
     }
 
+    /**
+     * Sets a cache of parsed directories to be consulted by
+     * readFirstDirectory, readDirectories and readContents.
+     *
+     * @param directoryCache the cache, or null to read without a cache
+     * @param key the key identifying the source in the cache, or null to
+     * derive it from the source
+     */
+    public void setDirectoryCache(final TiffDirectoryCache directoryCache, final Object key) {
+        this.directoryCache = directoryCache;
+        this.directoryCacheKey = key;
+    }
+
+    private void setDirectoryCache(final Map<String, Object> params) throws ImageReadException {
+        if (params == null) {
+            return;
+        }
+        final Object cache = params.get(TiffConstants.PARAM_KEY_DIRECTORY_CACHE);
+        if (cache == null) {
+            return;
+        }
+        if (!(cache instanceof TiffDirectoryCache)) {
+            throw new ImageReadException("Non-TiffDirectoryCache parameter "
+                    + TiffConstants.PARAM_KEY_DIRECTORY_CACHE);
+        }
+        setDirectoryCache((TiffDirectoryCache) cache,
+                params.get(TiffConstants.PARAM_KEY_DIRECTORY_CACHE_KEY));
+    }
+
+    /**
+     * Reads the directories of a file through the directory cache, parsing
+     * them only if they are not cached.  The cached directories are copied
+     * so that the image data of this read can be bound to them.
+     *
+     * @param complete whether all directories are required, or just the root
+     */
+    private TiffContents readCachedContents(final ByteSource byteSource,
+            final boolean complete, final boolean readImageData,
+            final FormatCompliance formatCompliance) throws ImageReadException, IOException {
+        final Object key = directoryCacheKey != null
+                ? directoryCacheKey
+                : TiffTileCache.getSourceKey(byteSource);
+        TiffDirectoryCache.Entry entry = directoryCache.get(key, complete);
+        if (entry == null) {
+            final Collector collector = complete
+                    ? new Collector(Map.of(ImagingConstants.PARAM_KEY_READ_THUMBNAILS, false))
+                    : new FirstDirectoryCollector(false);
+            readDirectories(byteSource, formatCompliance, collector);
+            entry = new TiffDirectoryCache.Entry(collector.tiffHeader,
+                    collector.directories, collector.fields, complete);
+            directoryCache.put(key, entry);
+        } else {
+            setByteOrder(entry.header.byteOrder);
+            tiffVersion = entry.header.tiffVersion;
+        }
+
+        final int count = complete ? entry.directories.size()
+                : Math.min(1, entry.directories.size());
+        final List<TiffDirectory> directories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final TiffDirectory cached = entry.directories.get(i);
+            final TiffDirectory directory = new TiffDirectory(cached);
+            if (readImageData) {
+                readImageData(byteSource, directory);
+            }
+            directories.add(directory);
+        }
+        final List<TiffField> fields = complete || directories.isEmpty()
+                ? entry.fields
+                : directories.get(0).entries;
+        return new TiffContents(entry.header, directories, fields);
+    }
+
     private TiffHeader readTiffHeader(final ByteSource byteSource) throws ImageReadException, IOException {
+        final TiffHeader tiffHeader;
         try (InputStream is = byteSource.getInputStream()) {
-            return readTiffHeader(is);
+            tiffHeader = readTiffHeader(is);
         }
+        if (tiffHeader.offsetToFirstIFD > byteSource.getLength()) {
+            throw new IOException("Not a Valid TIFF File: couldn't find IFDs");
+        }
+        return tiffHeader;
     }
 
     private ByteOrder getTiffByteOrder(final int byteOrderByte) throws ImageReadException {
@@ -94,11 +176,12 @@ public class TiffReader extends BinaryFileParser
                 throw new ImageReadException("Custom rda-tiff only supports bigtiff: (0x002B)(43) with offset bytesize of 8" + byteSize);
             }
             offsetToFirstIFD =
-                    0xFFFFffffL & BinaryFunctions.read8Bytes("offsetToFirstIFD", is, "Not a Valid TIFF File", getByteOrder());
+                    BinaryFunctions.read8Bytes("offsetToFirstIFD", is, "Not a Valid TIFF File", getByteOrder());
+            if (offsetToFirstIFD < 0) {
+                throw new ImageReadException("Invalid offset to first IFD: " + offsetToFirstIFD);
+            }
         }
 
-        BinaryFunctions.skipBytes(is, offsetToFirstIFD - 8, "Not a Valid TIFF File: couldn't find IFDs");
-
         return new TiffHeader(byteOrder, tiffVersion, offsetToFirstIFD);
     }
 
@@ -113,13 +196,13 @@ public class TiffReader extends BinaryFileParser
         final long offset = tiffHeader.offsetToFirstIFD;
         final int dirType = TiffDirectoryConstants.DIRECTORY_TYPE_ROOT;
 
-        final List<Number> visited = new ArrayList<>();
+        final OffsetSet visited = new OffsetSet();
         readDirectory(byteSource, offset, dirType, formatCompliance, listener, visited);
     }
 
     private boolean readDirectory(final ByteSource byteSource, final long offset,
             final int dirType, final FormatCompliance formatCompliance, final Listener listener,
-            final List<Number> visited) throws ImageReadException, IOException {
+            final OffsetSet visited) throws ImageReadException, IOException {
         final boolean ignoreNextDirectory = false;
         return readDirectory(byteSource, offset, dirType, formatCompliance,
                 listener, ignoreNextDirectory, visited);
@@ -127,200 +210,216 @@ public class TiffReader extends BinaryFileParser
 
     private boolean readDirectory(final ByteSource byteSource, final long directoryOffset,
             final int dirType, final FormatCompliance formatCompliance, final Listener listener,
-            final boolean ignoreNextDirectory, final List<Number> visited)
+            final boolean ignoreNextDirectory, final OffsetSet visited)
             throws ImageReadException, IOException {
 
-        if (visited.contains(directoryOffset)) {
+        if (!visited.add(directoryOffset)) {
             return false;
         }
-        visited.add(directoryOffset);
-
-        try (InputStream is = byteSource.getInputStream()) {
-            if (directoryOffset >= byteSource.getLength()) {
-                return true;
-            }
 
-            BinaryFunctions.skipBytes(is, directoryOffset);
-
-            final List<TiffField> fields = new ArrayList<>();
+        final long length = byteSource.getLength();
+        if (directoryOffset >= length) {
+            return true;
+        }
 
-            int entryCount;
-            try {
-                if(tiffVersion == TiffConstants.TIFF_CLASSIC)
-                    entryCount = BinaryFunctions.read2Bytes("DirectoryEntryCount", is, "Not a Valid TIFF File", getByteOrder());
-                else
-                    entryCount = (int) BinaryFunctions.read8Bytes("DirectoryEntryCount", is, "Not a Valid TIFF File", getByteOrder());
-            } catch (final IOException e) {
-                if (strict) {
-                    throw e;
-                }
-                return true;
+        final boolean classic = tiffVersion == TiffConstants.TIFF_CLASSIC;
+        final int countLength = classic
+                ? TiffConstants.TIFF_DIRECTORY_HEADER_LENGTH
+                : TiffConstants.BIG_TIFF_DIRECTORY_HEADER_LENGTH;
+        final int entryLength = classic
+                ? TiffConstants.TIFF_ENTRY_LENGTH
+                : TiffConstants.BIG_TIFF_ENTRY_LENGTH;
+        final int offsetLength = classic ? 4 : 8;
+
+        // read ahead far enough that a typical directory arrives in a
+        // single read, and fetch the rest once the entry count is known
+        final long available = length - directoryOffset;
+        if (available < countLength) {
+            if (strict) {
+                throw new IOException("Not a Valid TIFF File");
             }
+            return true;
+        }
+        byte[] block = byteSource.getBlock(directoryOffset,
+                (int) Math.min(available, DIRECTORY_READ_AHEAD));
+        ByteBuffer buffer = ByteBuffer.wrap(block).order(getByteOrder());
+
+        final long entryCount = classic ? 0xffff & buffer.getShort() : buffer.getLong();
+        final long directoryLength = countLength + entryCount * entryLength + offsetLength;
+        if (entryCount < 0 || directoryLength > available) {
+            throw new IOException("Not a Valid TIFF File: directory at " + directoryOffset
+                    + " with " + entryCount + " entries extends beyond the end of the file");
+        }
+        if (directoryLength > block.length) {
+            block = byteSource.getBlock(directoryOffset, (int) directoryLength);
+            buffer = ByteBuffer.wrap(block).order(getByteOrder());
+            buffer.position(countLength);
+        }
 
-            for (int i = 0; i < entryCount; i++) {
-                final int tag;
-                int type;
-                final long count;
-                final byte[] offsetBytes;
-                if(tiffVersion == TiffConstants.TIFF_CLASSIC)
-                {
-                    tag = BinaryFunctions.read2Bytes("Tag", is, "Not a Valid TIFF File", getByteOrder());
-                    type = BinaryFunctions.read2Bytes("Type", is, "Not a Valid TIFF File", getByteOrder());
-                    count = 0xFFFFffffL & BinaryFunctions.read4Bytes("Count", is, "Not a Valid TIFF File", getByteOrder());
-                    offsetBytes = BinaryFunctions.readBytes("Offset", is, 4, "Not a Valid TIFF File");
-                }
-                else
-                {
-                    tag = BinaryFunctions.read2Bytes("Tag", is, "Not a Valid TIFF File", getByteOrder());
-                    type = BinaryFunctions.read2Bytes("Type", is, "Not a Valid TIFF File", getByteOrder());
-                    count = 0xFFFFffffL & BinaryFunctions.read8Bytes("Count", is, "Not a Valid TIFF File", getByteOrder());
-                    offsetBytes = BinaryFunctions.readBytes("Offset", is, 8, "Not a Valid TIFF File");
-                }
-
-
-                final long offset = 0xFFFFffffL & ByteConversions.toInt(offsetBytes, getByteOrder());
-
-                if (tag == 0) {
-                    // skip invalid fields.
-                    // These are seen very rarely, but can have invalid value
-                    // lengths,
-                    // which can cause OOM problems.
-                    continue;
-                }
-                //this is a hack to change the type to long if it needs to
-                if((tag == 256 || tag ==257) && type == 3)
+        final List<TiffField> fields = new ArrayList<>();
+
+        for (int i = 0; i < entryCount; i++) {
+            final int tag = 0xffff & buffer.getShort();
+            int type = 0xffff & buffer.getShort();
+            final long count = classic
+                    ? 0xFFFFffffL & buffer.getInt()
+                    : 0xFFFFffffL & buffer.getLong();
+
+            // BigTIFF value offsets are 64 bits wide; reading only the
+            // first 4 bytes would drop the high half of little-endian
+            // offsets and the whole of big-endian ones
+            final long offset = classic
+                    ? 0xFFFFffffL & buffer.getInt(buffer.position())
+                    : buffer.getLong(buffer.position());
+            final byte[] offsetBytes = new byte[offsetLength];
+            buffer.get(offsetBytes);
+
+            if (tag == 0) {
+                // skip invalid fields.
+                // These are seen very rarely, but can have invalid value
+                // lengths,
+                // which can cause OOM problems.
+                continue;
+            }
+            //this is a hack to change the type to long if it needs to
+            if((tag == 256 || tag ==257) && type == 3)
+            {
+                short test = ((Long)offset).shortValue();
+                if (test != offset)
                 {
-                    short test = ((Long)offset).shortValue();
-                    if (test != offset)
+                    //var b4 = offsetBytes;
+                    var b2 = Arrays.copyOfRange(offsetBytes, 0,2);
+                    var val2 = ByteConversions.toShort(b2, getByteOrder());
+                    if(val2 <= 0)
                     {
-                        //var b4 = offsetBytes;
-                        var b2 = Arrays.copyOfRange(offsetBytes, 0,2);
-                        var val2 = ByteConversions.toShort(b2, getByteOrder());
-                        if(val2 <= 0)
-                        {
-                            type = 4;
-                        }
-                        //var val4 = ByteConversions.toInt(b4, getByteOrder());
-                        //int xxx = 0;
-                        //type = 4;
+                        type = 4;
                     }
+                    //var val4 = ByteConversions.toInt(b4, getByteOrder());
+                    //int xxx = 0;
+                    //type = 4;
                 }
+            }
 
-                final FieldType fieldType;
-                try {
-                    fieldType = FieldType.getFieldType(type);
-                } catch (final ImageReadException imageReadEx) {
-                    // skip over unknown fields types, since we
-                    // can't calculate their size without
-                    // knowing their type
-                    continue;
-                }
-                final long valueLength = count * fieldType.getSize();
-                final byte[] value;
-                final int maxLength = tiffVersion == TiffConstants.TIFF_CLASSIC ? TiffConstants.TIFF_ENTRY_MAX_VALUE_LENGTH : TiffConstants.BIG_TIFF_ENTRY_MAX_VALUE_LENGTH;
-                if (valueLength > maxLength) {
-                    if ((offset < 0) || (offset + valueLength) > byteSource.getLength()) {
-                        if (strict) {
-                            throw new IOException(
-                                    "Attempt to read byte range starting from " + offset + " "
-                                            + "of length " + valueLength + " "
-                                            + "which is outside the file's size of "
-                                            + byteSource.getLength());
-                        } else {
-                            // corrupt field, ignore it
-                            continue;
-                        }
+            final FieldType fieldType;
+            try {
+                fieldType = FieldType.getFieldType(type);
+            } catch (final ImageReadException imageReadEx) {
+                // skip over unknown fields types, since we
+                // can't calculate their size without
+                // knowing their type
+                continue;
+            }
+            final long valueLength = count * fieldType.getSize();
+            final byte[] value;
+            final int maxLength = tiffVersion == TiffConstants.TIFF_CLASSIC ? TiffConstants.TIFF_ENTRY_MAX_VALUE_LENGTH : TiffConstants.BIG_TIFF_ENTRY_MAX_VALUE_LENGTH;
+            if (valueLength > maxLength) {
+                if ((offset < 0) || (offset + valueLength) > byteSource.getLength()) {
+                    if (strict) {
+                        throw new IOException(
+                                "Attempt to read byte range starting from " + offset + " "
+                                        + "of length " + valueLength + " "
+                                        + "which is outside the file's size of "
+                                        + byteSource.getLength());
+                    } else {
+                        // corrupt field, ignore it
+                        continue;
                     }
-                    value = byteSource.getBlock(offset, (int) valueLength);
+                }
+                if (offset >= directoryOffset
+                        && offset + valueLength <= directoryOffset + block.length) {
+                    // writers commonly place the values just after the
+                    // directory, within the block already read
+                    final int start = (int) (offset - directoryOffset);
+                    value = Arrays.copyOfRange(block, start, start + (int) valueLength);
                 } else {
-                    value = offsetBytes;
+                    value = byteSource.getBlock(offset, (int) valueLength);
                 }
+            } else {
+                value = offsetBytes;
+            }
 
-                final TiffField field = new TiffField(tag, dirType, fieldType, count,
-                        offset, value, getByteOrder(), i);
+            final TiffField field = new TiffField(tag, dirType, fieldType, count,
+                    offset, value, getByteOrder(), i);
 
-                fields.add(field);
+            fields.add(field);
 
-                if (!listener.addField(field)) {
-                    return true;
-                }
+            if (!listener.addField(field)) {
+                return true;
             }
+        }
 
-            final long nextDirectoryOffset;
-            if(tiffVersion == TiffConstants.TIFF_CLASSIC) {
-                nextDirectoryOffset = 0xFFFFffffL & BinaryFunctions.read4Bytes("nextDirectoryOffset", is,
-                        "Not a Valid TIFF File", getByteOrder());
-            }
-            else
-            {
-                nextDirectoryOffset = 0xFFFFffffL & BinaryFunctions.read8Bytes("nextDirectoryOffset", is,
-                        "Not a Valid TIFF File", getByteOrder());
-            }
+        final long nextDirectoryOffset = classic
+                ? 0xFFFFffffL & buffer.getInt()
+                : buffer.getLong();
 
-            final TiffDirectory directory = new TiffDirectory(dirType, fields,
-                    directoryOffset, nextDirectoryOffset);
+        final TiffDirectory directory = new TiffDirectory(dirType, fields,
+                directoryOffset, nextDirectoryOffset);
 
-            if (listener.readImageData()) {
-                if (directory.hasTiffImageData()) {
-                    final TiffImageData rawImageData = getTiffRawImageData(
-                            byteSource, directory);
-                    directory.setTiffImageData(rawImageData);
-                }
-                if (directory.hasJpegImageData()) {
-                    final JpegImageData rawJpegImageData = getJpegRawImageData(
-                            byteSource, directory);
-                    directory.setJpegImageData(rawJpegImageData);
-                }
-            }
+        if (listener.readImageData()) {
+            readImageData(byteSource, directory);
+        }
 
-            if (!listener.addDirectory(directory)) {
-                return true;
-            }
+        if (!listener.addDirectory(directory)) {
+            return true;
+        }
 
-            if (listener.readOffsetDirectories()) {
-                final TagInfoDirectory[] offsetFields = {
-                        ExifTagConstants.EXIF_TAG_EXIF_OFFSET,
-                        ExifTagConstants.EXIF_TAG_GPSINFO,
-                        ExifTagConstants.EXIF_TAG_INTEROP_OFFSET
-                };
-                final int[] directoryTypes = {
-                        TiffDirectoryConstants.DIRECTORY_TYPE_EXIF,
-                        TiffDirectoryConstants.DIRECTORY_TYPE_GPS,
-                        TiffDirectoryConstants.DIRECTORY_TYPE_INTEROPERABILITY
-                };
-                for (int i = 0; i < offsetFields.length; i++) {
-                    final TagInfoDirectory offsetField = offsetFields[i];
-                    final TiffField field = directory.findField(offsetField);
-                    if (field != null) {
-                        long subDirectoryOffset;
-                        int subDirectoryType;
-                        boolean subDirectoryRead = false;
-                        try {
-                            subDirectoryOffset = directory.getFieldValue(offsetField);
-                            subDirectoryType = directoryTypes[i];
-                            subDirectoryRead = readDirectory(byteSource,
-                                    subDirectoryOffset, subDirectoryType,
-                                    formatCompliance, listener, true, visited);
-
-                        } catch (final ImageReadException imageReadException) {
-                            if (strict) {
-                                throw imageReadException;
-                            }
-                        }
-                        if (!subDirectoryRead) {
-                            fields.remove(field);
+        if (listener.readOffsetDirectories()) {
+            final TagInfoDirectory[] offsetFields = {
+                    ExifTagConstants.EXIF_TAG_EXIF_OFFSET,
+                    ExifTagConstants.EXIF_TAG_GPSINFO,
+                    ExifTagConstants.EXIF_TAG_INTEROP_OFFSET
+            };
+            final int[] directoryTypes = {
+                    TiffDirectoryConstants.DIRECTORY_TYPE_EXIF,
+                    TiffDirectoryConstants.DIRECTORY_TYPE_GPS,
+                    TiffDirectoryConstants.DIRECTORY_TYPE_INTEROPERABILITY
+            };
+            for (int i = 0; i < offsetFields.length; i++) {
+                final TagInfoDirectory offsetField = offsetFields[i];
+                final TiffField field = directory.findField(offsetField);
+                if (field != null) {
+                    long subDirectoryOffset;
+                    int subDirectoryType;
+                    boolean subDirectoryRead = false;
+                    try {
+                        subDirectoryOffset = directory.getFieldValue(offsetField);
+                        subDirectoryType = directoryTypes[i];
+                        subDirectoryRead = readDirectory(byteSource,
+                                subDirectoryOffset, subDirectoryType,
+                                formatCompliance, listener, true, visited);
+
+                    } catch (final ImageReadException imageReadException) {
+                        if (strict) {
+                            throw imageReadException;
                         }
                     }
+                    if (!subDirectoryRead) {
+                        fields.remove(field);
+                    }
                 }
             }
+        }
 
-            if (!ignoreNextDirectory && directory.nextDirectoryOffset > 0) {
-                // Debug.debug("next dir", directory.nextDirectoryOffset );
-                readDirectory(byteSource, directory.nextDirectoryOffset,
-                        dirType + 1, formatCompliance, listener, visited);
-            }
+        if (!ignoreNextDirectory && directory.nextDirectoryOffset > 0) {
+            // Debug.debug("next dir", directory.nextDirectoryOffset );
+            readDirectory(byteSource, directory.nextDirectoryOffset,
+                    dirType + 1, formatCompliance, listener, visited);
+        }
 
-            return true;
+        return true;
+    }
+
+    private void readImageData(final ByteSource byteSource, final TiffDirectory directory)
+            throws ImageReadException, IOException {
+        if (directory.hasTiffImageData()) {
+            final TiffImageData rawImageData = getTiffRawImageData(
+                    byteSource, directory);
+            directory.setTiffImageData(rawImageData);
+        }
+        if (directory.hasJpegImageData()) {
+            final JpegImageData rawJpegImageData = getJpegRawImageData(
+                    byteSource, directory);
+            directory.setJpegImageData(rawJpegImageData);
         }
     }
 
@@ -429,9 +528,15 @@ public class TiffReader extends BinaryFileParser
     public TiffContents readFirstDirectory(final ByteSource byteSource, final Map<String, Object> params,
             final boolean readImageData, final FormatCompliance formatCompliance)
             throws ImageReadException, IOException {
-        final Collector collector = new FirstDirectoryCollector(readImageData);
-        read(byteSource, params, formatCompliance, collector);
-        final TiffContents contents = collector.getContents();
+        setDirectoryCache(params);
+        final TiffContents contents;
+        if (directoryCache != null) {
+            contents = readCachedContents(byteSource, false, readImageData, formatCompliance);
+        } else {
+            final Collector collector = new FirstDirectoryCollector(readImageData);
+            read(byteSource, params, formatCompliance, collector);
+            contents = collector.getContents();
+        }
         if (contents.directories.size() < 1) {
             throw new ImageReadException(
                     "Image did not contain any directories.");
@@ -443,6 +548,16 @@ public class TiffReader extends BinaryFileParser
             final boolean readImageData, final FormatCompliance formatCompliance)
             throws ImageReadException, IOException {
 
+        if (directoryCache != null) {
+            final TiffContents contents = readCachedContents(byteSource, true,
+                    readImageData, formatCompliance);
+            if (contents.directories.size() < 1) {
+                throw new ImageReadException(
+                        "Image did not contain any directories.");
+            }
+            return contents;
+        }
+
         final Collector collector;
         Map<String, Object> params;
         if(readImageData == true)
@@ -468,8 +583,15 @@ public class TiffReader extends BinaryFileParser
                                         final Map<String, Object> params, final FormatCompliance formatCompliance)
         throws ImageReadException, IOException {
         final Collector collector = new Collector(params);
-        readDirectories(byteSource, formatCompliance, collector);
-        final TiffContents contents = collector.getContents();
+        setDirectoryCache(params);
+        final TiffContents contents;
+        if (directoryCache != null) {
+            contents = readCachedContents(byteSource, true, collector.readImageData(),
+                    formatCompliance);
+        } else {
+            readDirectories(byteSource, formatCompliance, collector);
+            contents = collector.getContents();
+        }
         if (contents.directories.size() < 1) {
             throw new ImageReadException(
                 "Image did not contain any directories.");
@@ -477,11 +599,156 @@ public class TiffReader extends BinaryFileParser
         return contents;
     }
 
+    /**
+     * Builds an index of the directories of a file by following the chain
+     * of next-directory offsets.  Only the entry count and the next offset
+     * of each directory are read, so that files with many directories can
+     * be opened without parsing all of them.
+     *
+     * @param byteSource the source of the TIFF file
+     * @return the index of the directories
+     * @throws ImageReadException if the file contains no directories
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffDirectoryIndex readDirectoryIndex(final ByteSource byteSource)
+            throws ImageReadException, IOException {
+        return readDirectoryIndex(byteSource, Integer.MAX_VALUE);
+    }
+
+    private TiffDirectoryIndex readDirectoryIndex(final ByteSource byteSource,
+            final int maxCount) throws ImageReadException, IOException {
+        final TiffHeader tiffHeader = readTiffHeader(byteSource);
+        final boolean classic = tiffVersion == TiffConstants.TIFF_CLASSIC;
+        final int countLength = classic
+                ? TiffConstants.TIFF_DIRECTORY_HEADER_LENGTH
+                : TiffConstants.BIG_TIFF_DIRECTORY_HEADER_LENGTH;
+        final int entryLength = classic
+                ? TiffConstants.TIFF_ENTRY_LENGTH
+                : TiffConstants.BIG_TIFF_ENTRY_LENGTH;
+        final int offsetLength = classic ? 4 : 8;
+        final long length = byteSource.getLength();
+
+        long[] offsets = new long[16];
+        int[] entryCounts = new int[16];
+        int count = 0;
+        final OffsetSet visited = new OffsetSet();
+        long offset = tiffHeader.offsetToFirstIFD;
+        while (count < maxCount && offset > 0 && offset < length && visited.add(offset)) {
+            if (offset + countLength > length) {
+                if (strict) {
+                    throw new IOException("Not a Valid TIFF File");
+                }
+                break;
+            }
+            final ByteBuffer countBuffer = ByteBuffer.wrap(
+                    byteSource.getBlock(offset, countLength)).order(getByteOrder());
+            final long entryCount = classic ? 0xffff & countBuffer.getShort() : countBuffer.getLong();
+            final long nextOffsetPosition = offset + countLength + entryCount * entryLength;
+            if (entryCount < 0 || entryCount > Integer.MAX_VALUE
+                    || nextOffsetPosition + offsetLength > length) {
+                throw new IOException("Not a Valid TIFF File: directory at " + offset
+                        + " with " + entryCount + " entries extends beyond the end of the file");
+            }
+            final ByteBuffer nextBuffer = ByteBuffer.wrap(
+                    byteSource.getBlock(nextOffsetPosition, offsetLength)).order(getByteOrder());
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+                entryCounts = Arrays.copyOf(entryCounts, 2 * count);
+            }
+            offsets[count] = offset;
+            entryCounts[count] = (int) entryCount;
+            count++;
+            offset = classic ? 0xFFFFffffL & nextBuffer.getInt() : nextBuffer.getLong();
+        }
+
+        if (count == 0) {
+            throw new ImageReadException("Image did not contain any directories.");
+        }
+        return new TiffDirectoryIndex(tiffHeader, Arrays.copyOf(offsets, count),
+                Arrays.copyOf(entryCounts, count));
+    }
+
+    /**
+     * Reads a single directory, with its image data, without parsing the
+     * directories before it.  Only the chain of next-directory offsets up
+     * to the requested directory is followed.
+     *
+     * @param byteSource the source of the TIFF file
+     * @param index the index of the directory, with zero being the root
+     * @return the directory
+     * @throws ImageReadException if the file has no directory with the index
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffDirectory readDirectory(final ByteSource byteSource, final int index)
+            throws ImageReadException, IOException {
+        if (index < 0) {
+            throw new ImageReadException("Invalid directory index: " + index);
+        }
+        return readDirectory(byteSource, readDirectoryIndex(byteSource, index + 1), index);
+    }
+
+    /**
+     * Reads a single directory, with its image data, using a previously
+     * built index.  EXIF, GPS and other sub-directories referenced from the
+     * directory are not read.
+     *
+     * @param byteSource the source of the TIFF file
+     * @param directoryIndex the index of the file's directories
+     * @param index the index of the directory, with zero being the root
+     * @return the directory
+     * @throws ImageReadException if the index has no directory with the index
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffDirectory readDirectory(final ByteSource byteSource,
+            final TiffDirectoryIndex directoryIndex, final int index)
+            throws ImageReadException, IOException {
+        return readDirectory(byteSource, directoryIndex, index, true);
+    }
+
+    /**
+     * Reads a single directory using a previously built index, optionally
+     * without describing its image data.
+     *
+     * @param byteSource the source of the TIFF file
+     * @param directoryIndex the index of the file's directories
+     * @param index the index of the directory, with zero being the root
+     * @param readImageData whether to attach the directory's image data
+     * @return the directory
+     * @throws ImageReadException if the index has no directory with the index
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffDirectory readDirectory(final ByteSource byteSource,
+            final TiffDirectoryIndex directoryIndex, final int index,
+            final boolean readImageData) throws ImageReadException, IOException {
+        if (index < 0 || index >= directoryIndex.size()) {
+            throw new ImageReadException("Invalid directory index " + index
+                    + " for a file with " + directoryIndex.size() + " directories");
+        }
+        setByteOrder(directoryIndex.header.byteOrder);
+        tiffVersion = directoryIndex.header.tiffVersion;
+
+        final Collector collector = new FirstDirectoryCollector(readImageData);
+        collector.setTiffHeader(directoryIndex.header);
+        readDirectory(byteSource, directoryIndex.getOffset(index), index,
+                FormatCompliance.getDefault(), collector, true, new OffsetSet());
+        final TiffContents contents = collector.getContents();
+        if (contents.directories.isEmpty()) {
+            throw new ImageReadException("Could not read directory " + index);
+        }
+        return contents.directories.get(0);
+    }
+
     public TiffContents readContents(final ByteSource byteSource, final Map<String, Object> params,
             final FormatCompliance formatCompliance) throws ImageReadException,
             IOException {
 
         final Collector collector = new Collector(params);
+        setDirectoryCache(params);
+        if (directoryCache != null) {
+            return readCachedContents(byteSource, true, collector.readImageData(),
+                    formatCompliance);
+        }
         read(byteSource, params, formatCompliance, collector);
         return collector.getContents();
     }
@@ -496,25 +763,18 @@ public class TiffReader extends BinaryFileParser
     private TiffImageData getTiffRawImageData(final ByteSource byteSource,
             final TiffDirectory directory) throws ImageReadException, IOException {
 
-        final List<ImageDataElement> elements = directory.getTiffRawImageDataElements();
-        final TiffImageData.Data[] data = new TiffImageData.Data[elements.size()];
-
-        if (byteSource instanceof ByteSourceFile) {
-            final ByteSourceFile bsf = (ByteSourceFile) byteSource;
-            for (int i = 0; i < elements.size(); i++) {
-                final TiffDirectory.ImageDataElement element = elements.get(i);
-                data[i] = new TiffImageData.ByteSourceData(element.offset,
-                        element.length, bsf);
-            }
-        } else {
-            for (int i = 0; i < elements.size(); i++) {
-                final TiffDirectory.ImageDataElement element = elements.get(i);
-                final byte[] bytes = byteSource.getBlock(element.offset, element.length);
-                data[i] = new TiffImageData.Data(element.offset, element.length, bytes);
-            }
-        }
-
-        if (directory.imageDataInStrips()) {
+        // tiles and strips are read from the source only when requested,
+        // so that parsing a directory never copies its image data
+        final boolean strips = directory.imageDataInStrips();
+        final TiffImageData.DataIndex index = new TiffImageData.DataIndex(byteSource,
+                directory.findField(strips
+                        ? TiffTagConstants.TIFF_TAG_STRIP_OFFSETS
+                        : TiffTagConstants.TIFF_TAG_TILE_OFFSETS),
+                directory.findField(strips
+                        ? TiffTagConstants.TIFF_TAG_STRIP_BYTE_COUNTS
+                        : TiffTagConstants.TIFF_TAG_TILE_BYTE_COUNTS));
+
+        if (strips) {
             final TiffField rowsPerStripField = directory.findField(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP);
             /*
              * Default value of rowsperstrip is assumed to be infinity
@@ -536,7 +796,7 @@ public class TiffReader extends BinaryFileParser
 
             }
 
-            return new TiffImageData.Strips(data, rowsPerStrip);
+            return new TiffImageData.Strips(index, rowsPerStrip);
         } else {
             final TiffField tileWidthField = directory.findField(TiffTagConstants.TIFF_TAG_TILE_WIDTH);
             if (null == tileWidthField) {
@@ -550,7 +810,7 @@ public class TiffReader extends BinaryFileParser
             }
             final int tileLength = tileLengthField.getIntValue();
 
-            return new TiffImageData.Tiles(data, tileWidth, tileLength);
+            return new TiffImageData.Tiles(index, tileWidth, tileLength);
         }
     }
 
@@ -563,14 +823,69 @@ public class TiffReader extends BinaryFileParser
         if (offset + length > byteSource.getLength()) {
             length = (int) (byteSource.getLength() - offset);
         }
-        final byte[] data = byteSource.getBlock(offset, length);
-        // check if the last read byte is actually the end of the image data
-        if (strict &&
-                (length < 2 ||
-                (((data[data.length - 2] & 0xff) << 8) | (data[data.length - 1] & 0xff)) != JpegConstants.EOI_MARKER)) {
+        // check if the last two bytes are actually the end of the image data
+        if (strict && (length < 2 || ByteConversions.toShort(
+                byteSource.getBlock(offset + length - 2, 2), ByteOrder.BIG_ENDIAN)
+                        != (short) JpegConstants.EOI_MARKER)) {
             throw new ImageReadException("JPEG EOI marker could not be found at expected location");
         }
-        return new JpegImageData(offset, length, data);
+        return new JpegImageData.ByteSourceData(offset, length, byteSource);
+    }
+
+    /**
+     * An open-addressing hash set of directory offsets, used to detect
+     * cycles in the chain of directories without boxing each offset.
+     */
+    private static final class OffsetSet {
+        private long[] offsets = new long[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        /**
+         * Adds an offset to the set.
+         *
+         * @return true if the offset was not already present
+         */
+        boolean add(final long offset) {
+            if (2 * (size + 1) > offsets.length) {
+                grow();
+            }
+            final int mask = offsets.length - 1;
+            int i = hash(offset) & mask;
+            while (used[i]) {
+                if (offsets[i] == offset) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            offsets[i] = offset;
+            used[i] = true;
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            final long[] oldOffsets = offsets;
+            final boolean[] oldUsed = used;
+            offsets = new long[oldOffsets.length * 2];
+            used = new boolean[oldOffsets.length * 2];
+            final int mask = offsets.length - 1;
+            for (int j = 0; j < oldOffsets.length; j++) {
+                if (oldUsed[j]) {
+                    int i = hash(oldOffsets[j]) & mask;
+                    while (used[i]) {
+                        i = (i + 1) & mask;
+                    }
+                    offsets[i] = oldOffsets[j];
+                    used[i] = true;
+                }
+            }
+        }
+
+        private static int hash(final long offset) {
+            final long h = offset * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
     }
 
 }
@@ -0,0 +1,338 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceAsyncFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceChannel;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceMapped;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of decompressed TIFF tiles, bounded by the total number of
+ * bytes held and evicting the least recently used tiles first.
+ *
+ * <p>Tiles are keyed by the identity of their source, the index of the
+ * image file directory and the index of the tile within it.  For files,
+ * the identity is the path together with the length and modification
+ * time, so that separate reads of the same file share entries, and a
+ * rewritten file does not see the tiles of its predecessor.  Other
+ * sources are identified by the ByteSource instance itself.</p>
+ *
+ * <p>The cache is safe for use by concurrent readers.  It is divided into
+ * independently locked segments, each with an equal share of the byte
+ * budget, so that threads reading different tiles rarely contend.  The
+ * cached arrays are shared between readers and must not be modified.</p>
+ *
+ * <p>A cache is supplied to a read with
+ * {@code TiffConstants.PARAM_KEY_TILE_CACHE}.</p>
+ */
+public final class TiffTileCache {
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_BYTES = 4L * 1024 * 1024;
+
+    // an estimate of the memory used by a map entry, its key and the
+    // array header, beyond the tile bytes themselves
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a cache.
+     *
+     * @param maxBytes the maximum number of bytes of tiles to hold
+     */
+    public TiffTileCache(final long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        final int segmentCount = (int) Math.max(1,
+                Math.min(MAX_SEGMENTS, maxBytes / MIN_SEGMENT_BYTES));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxBytes / segmentCount);
+        }
+    }
+
+    /**
+     * Gets the key identifying a source in the cache.
+     *
+     * @param byteSource a source of TIFF data
+     * @return the key for the source
+     */
+    public static Object getSourceKey(final ByteSource byteSource) {
+        File file = null;
+        if (byteSource instanceof ByteSourceFile) {
+            file = ((ByteSourceFile) byteSource).getFile();
+        } else if (byteSource instanceof ByteSourceMapped) {
+            file = ((ByteSourceMapped) byteSource).getFile();
+        } else if (byteSource instanceof ByteSourceChannel) {
+            file = ((ByteSourceChannel) byteSource).getFile();
+        } else if (byteSource instanceof ByteSourceAsyncFile) {
+            file = ((ByteSourceAsyncFile) byteSource).getFile();
+        }
+        if (file == null) {
+            return byteSource;
+        }
+        return new FileKey(file.getAbsolutePath(), file.length(), file.lastModified());
+    }
+
+    /**
+     * Gets a tile from the cache.
+     *
+     * @param source the key of the source, from {@link #getSourceKey}
+     * @param directory the index of the image file directory
+     * @param tile the index of the tile
+     * @return the decompressed tile, or null if it is not cached
+     */
+    public byte[] get(final Object source, final int directory, final int tile) {
+        final TileKey key = new TileKey(source, directory, tile);
+        final byte[] bytes = segmentFor(key).get(key);
+        if (bytes == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds a tile to the cache, evicting the least recently used tiles as
+     * necessary.  A tile larger than a segment of the cache is not added.
+     *
+     * @param source the key of the source, from {@link #getSourceKey}
+     * @param directory the index of the image file directory
+     * @param tile the index of the tile
+     * @param bytes the decompressed tile, which must not be modified
+     * afterwards
+     */
+    public void put(final Object source, final int directory, final int tile,
+            final byte[] bytes) {
+        final TileKey key = new TileKey(source, directory, tile);
+        segmentFor(key).put(key, bytes);
+    }
+
+    /**
+     * Removes all tiles of a source.
+     *
+     * @param source the key of the source, from {@link #getSourceKey}
+     */
+    public void invalidate(final Object source) {
+        for (final Segment segment : segments) {
+            segment.removeSource(source);
+        }
+    }
+
+    /**
+     * Removes all tiles.
+     */
+    public void clear() {
+        for (final Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of bytes held, including an estimate of the
+     * overhead of each entry.
+     *
+     * @return the number of bytes
+     */
+    public long getSize() {
+        long size = 0;
+        for (final Segment segment : segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    public int getTileCount() {
+        int count = 0;
+        for (final Segment segment : segments) {
+            count += segment.getTileCount();
+        }
+        return count;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "TiffTileCache[size=" + getSize() + "/" + maxBytes
+                + ", tiles=" + getTileCount() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    private Segment segmentFor(final TileKey key) {
+        // spread the hash so that neighbouring tiles use different segments
+        final int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h >>> 16) % segments.length];
+    }
+
+    private static int weigh(final byte[] bytes) {
+        return bytes.length + ENTRY_OVERHEAD;
+    }
+
+    private final class Segment {
+        private final long capacity;
+        private final LinkedHashMap<TileKey, byte[]> map =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        Segment(final long capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(final TileKey key) {
+            return map.get(key);
+        }
+
+        synchronized void put(final TileKey key, final byte[] bytes) {
+            final long weight = weigh(bytes);
+            if (weight > capacity) {
+                return;
+            }
+            final byte[] previous = map.put(key, bytes);
+            if (previous != null) {
+                size -= weigh(previous);
+            }
+            size += weight;
+
+            final Iterator<Map.Entry<TileKey, byte[]>> it = map.entrySet().iterator();
+            while (size > capacity && it.hasNext()) {
+                final Map.Entry<TileKey, byte[]> eldest = it.next();
+                size -= weigh(eldest.getValue());
+                it.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void removeSource(final Object source) {
+            final Iterator<Map.Entry<TileKey, byte[]>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                final Map.Entry<TileKey, byte[]> entry = it.next();
+                if (entry.getKey().source.equals(source)) {
+                    size -= weigh(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            size = 0;
+        }
+
+        synchronized long getSize() {
+            return size;
+        }
+
+        synchronized int getTileCount() {
+            return map.size();
+        }
+    }
+
+    private static final class TileKey {
+        final Object source;
+        final int directory;
+        final int tile;
+        private final int hash;
+
+        TileKey(final Object source, final int directory, final int tile) {
+            this.source = source;
+            this.directory = directory;
+            this.tile = tile;
+            this.hash = (source.hashCode() * 31 + directory) * 31 + tile;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TileKey)) {
+                return false;
+            }
+            final TileKey other = (TileKey) obj;
+            return tile == other.tile && directory == other.directory
+                    && source.equals(other.source);
+        }
+    }
+
+    private static final class FileKey {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        FileKey(final String path, final long length, final long lastModified) {
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, length, lastModified);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof FileKey)) {
+                return false;
+            }
+            final FileKey other = (FileKey) obj;
+            return length == other.length && lastModified == other.lastModified
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+}
@@ -45,8 +45,10 @@ public final class TiffConstants {
     public static final int TIFF_COMPRESSION_CCITT_GROUP_4 = 4;
     public static final int TIFF_COMPRESSION_LZW = 5;
     public static final int TIFF_COMPRESSION_JPEG = 6;
+    public static final int TIFF_COMPRESSION_DEFLATE_ADOBE = 8;
     public static final int TIFF_COMPRESSION_UNCOMPRESSED_2 = 32771;
     public static final int TIFF_COMPRESSION_PACKBITS = 32773;
+    public static final int TIFF_COMPRESSION_DEFLATE_PKZIP = 32946;
 
     /**
      * Parameter key. Used in write operations to indicate the desired
@@ -78,6 +80,91 @@ public final class TiffConstants {
     public static final String PARAM_KEY_SUBIMAGE_WIDTH = "SUBIMAGE_WIDTH";
     public static final String PARAM_KEY_SUBIMAGE_HEIGHT = "SUBIMAGE_HEIGHT";
 
+    /**
+     * Parameter key. Used in read operations to supply an executor for
+     * decoding the tiles of a tiled image in parallel.  The decoded image
+     * is identical to the one produced by a serial read.  The executor
+     * is not shut down by the parser.
+     * <p>
+     * Valid values: any java.util.concurrent.ExecutorService, including
+     * a ForkJoinPool.
+     */
+    public static final String PARAM_KEY_EXECUTOR = "EXECUTOR";
+
+    /**
+     * Parameter key. Used in read operations to supply a cache of
+     * decompressed tiles, so that repeated reads of overlapping regions
+     * of a tiled image decompress each tile only once.  A cache may be
+     * shared by any number of reads, files and threads.
+     * <p>
+     * Valid values: a TiffTileCache.
+     */
+    public static final String PARAM_KEY_TILE_CACHE = "TILE_CACHE";
+
+    /**
+     * Parameter key. Used in read operations to supply a pool of scratch
+     * arrays, from which the arrays used to read and decompress each tile
+     * or strip are borrowed, so that reading a large image does not
+     * allocate new arrays for every block.  A pool may be shared by any
+     * number of reads, files and threads.
+     * <p>
+     * Valid values: a com.maxar.rda.imaging.common.BufferPool.
+     */
+    public static final String PARAM_KEY_BUFFER_POOL = "BUFFER_POOL";
+
+    /**
+     * Parameter key. Used in read operations to supply the planner that
+     * merges the reads of tiles lying close together in the file, so that
+     * a window of a tiled image is fetched with few reads.  When absent,
+     * TiffReadPlanner.DEFAULT is used.
+     * <p>
+     * Valid values: a TiffReadPlanner.
+     */
+    public static final String PARAM_KEY_READ_PLANNER = "READ_PLANNER";
+
+    /**
+     * Parameter key. Used in read operations to set the number of tiles or
+     * strips whose reads are kept in progress ahead of the one being
+     * decoded.  For tiled images, each planned read of the read planner
+     * counts as one.  Reading ahead overlaps I/O with decoding when the
+     * source reads asynchronously, as ByteSourceAsyncFile does.  The
+     * default is zero, for no reads ahead.
+     * <p>
+     * Valid values: a non-negative Integer.
+     */
+    public static final String PARAM_KEY_PREFETCH_DEPTH = "PREFETCH_DEPTH";
+
+    /**
+     * Parameter key. Used in read operations to supply a cache of parsed
+     * directories, so that repeated opens of the same file skip reading
+     * its header and directories.  A cache may be shared by any number of
+     * reads, files and threads.
+     * <p>
+     * Valid values: a TiffDirectoryCache.
+     */
+    public static final String PARAM_KEY_DIRECTORY_CACHE = "DIRECTORY_CACHE";
+
+    /**
+     * Parameter key. Used with PARAM_KEY_DIRECTORY_CACHE to identify the
+     * source in the cache, in place of the key derived from the file's
+     * path, length and modification time.
+     * <p>
+     * Valid values: any object with suitable equals and hashCode methods.
+     */
+    public static final String PARAM_KEY_DIRECTORY_CACHE_KEY = "DIRECTORY_CACHE_KEY";
+
+    /**
+     * Parameter key. Used in read operations given a File to choose
+     * whether a regular file is mapped into memory with ByteSourceMapped,
+     * so that its tiles and strips are read without system calls, or
+     * read with ByteSourceFile.  The default is to map.  A mapping lasts
+     * until it is garbage collected, which on some platforms keeps the
+     * file from being deleted or replaced until then.
+     * <p>
+     * Valid values: a Boolean.
+     */
+    public static final String PARAM_KEY_MEMORY_MAP = "MEMORY_MAP";
+
     /**
      * Specifies the amount of memory in bytes to be used for a strip
      * or tile size when employing LZW compression.  The default is
@@ -102,6 +189,17 @@ public final class TiffConstants {
      */
     public static final int TIFF_LZW_COMPRESSION_BLOCK_SIZE_LARGE = 65536;
 
+    /**
+     * Parameter key. Used in write operations to indicate the compression
+     * level to use with TIFF_COMPRESSION_DEFLATE_ADOBE or
+     * TIFF_COMPRESSION_DEFLATE_PKZIP.
+     * <p>
+     * Valid values: any Integer from 0 (no compression) to 9 (best
+     * compression), or -1 for the zlib default.
+     */
+    public static final String PARAM_KEY_DEFLATE_COMPRESSION_LEVEL =
+            "PARAM_KEY_DEFLATE_COMPRESSION_LEVEL";
+
     private TiffConstants() {
     }
 }
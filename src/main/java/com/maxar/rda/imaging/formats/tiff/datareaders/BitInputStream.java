@@ -18,6 +18,7 @@ package com.maxar.rda.imaging.formats.tiff.datareaders;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 /**
@@ -37,6 +38,14 @@ class BitInputStream extends InputStream {
         this.byteOrder = byteOrder;
     }
 
+    /**
+     * Reads the bytes of a buffer from its position to its limit, without
+     * changing the buffer's position.
+     */
+    BitInputStream(final ByteBuffer buffer, final ByteOrder byteOrder) {
+        this(new BufferInputStream(buffer), byteOrder);
+    }
+
     @Override
     public int read() throws IOException {
         if (cacheBitsRemaining > 0) {
@@ -137,4 +146,19 @@ class BitInputStream extends InputStream {
     public long getBytesRead() {
         return bytesRead;
     }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private int position;
+
+        BufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.position = buffer.position();
+        }
+
+        @Override
+        public int read() {
+            return position < buffer.limit() ? 0xff & buffer.get(position++) : -1;
+        }
+    }
 }
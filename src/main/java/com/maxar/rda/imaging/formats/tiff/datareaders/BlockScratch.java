@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.datareaders;
+
+import com.maxar.rda.imaging.common.BufferPool;
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import com.maxar.rda.imaging.formats.tiff.TiffImageData;
+import com.maxar.rda.imaging.formats.tiff.TiffReadPlanner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The arrays borrowed to read and decompress blocks of image data,
+ * returned to their pool when the blocks have been interpreted.  Each
+ * read or output replaces the array of the previous one.  Without a pool,
+ * blocks are read and decompressed into new arrays.
+ */
+final class BlockScratch implements AutoCloseable {
+    private final BufferPool pool;
+    private byte[] stored;
+    private byte[] output;
+
+    BlockScratch(final BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gets the stored bytes of a block, reading them into a borrowed array
+     * if they cannot be viewed in place.
+     */
+    ByteBuffer read(final TiffImageData imageData, final int index) throws IOException {
+        final TiffImageData.DataIndex dataIndex = imageData.getDataIndex();
+        if (pool == null || dataIndex == null
+                || dataIndex.getByteSource().hasSharedSlices()) {
+            return imageData.getImageDataBuffer(index);
+        }
+        pool.release(stored);
+        stored = pool.acquire(imageData.getImageDataByteCount(index));
+        return imageData.getImageDataBuffer(index, stored);
+    }
+
+    /**
+     * Reads the bytes of a planned range, into a borrowed array if there
+     * is a pool.
+     */
+    ByteBuffer read(final ByteSource byteSource, final TiffReadPlanner.Range range)
+            throws IOException {
+        if (pool == null) {
+            return range.read(byteSource, null);
+        }
+        pool.release(stored);
+        stored = pool.acquire(range.getLength());
+        return range.read(byteSource, stored);
+    }
+
+    /**
+     * Borrows an array to receive decompressed bytes, or returns null if
+     * there is no pool.
+     */
+    byte[] output(final int length) {
+        if (pool == null) {
+            return null;
+        }
+        pool.release(output);
+        output = pool.acquire(length);
+        return output;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.release(stored);
+            pool.release(output);
+            stored = null;
+            output = null;
+        }
+    }
+}
@@ -19,8 +19,8 @@ package com.maxar.rda.imaging.formats.tiff.datareaders;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import com.maxar.rda.imaging.ImageReadException;
@@ -56,7 +56,7 @@ public final class DataReaderStrips extends ImageDataReader {
 
     private void interpretStrip(
             final ImageBuilder imageBuilder,
-            final byte[] bytes,
+            final ByteBuffer bytes,
             final int pixelsPerStrip,
             final int yLimit) throws ImageReadException, IOException {
         if (y >= yLimit) {
@@ -120,7 +120,7 @@ public final class DataReaderStrips extends ImageDataReader {
             final int[] samples = new int[1];
             for (int i = i0; i < i1; i++) {
                 for (int j = 0; j < width; j++) {
-                    samples[0] = bytes[k++] & 0xff;
+                    samples[0] = bytes.get(k++) & 0xff;
                     photometricInterpreter.interpretPixel(imageBuilder,
                             samples, j, i);
                 }
@@ -140,8 +140,8 @@ public final class DataReaderStrips extends ImageDataReader {
                 for (int i = i0; i < i1; i++) {
                     for (int j = 0; j < width; j++, k += 3) {
                         final int rgb = 0xff000000
-                                | (((bytes[k] << 8) | (bytes[k + 1] & 0xff)) << 8)
-                                | (bytes[k + 2] & 0xff);
+                                | (((bytes.get(k) << 8) | (bytes.get(k + 1) & 0xff)) << 8)
+                                | (bytes.get(k + 2) & 0xff);
                         imageBuilder.setRGB(j, i, rgb);
                     }
                 }
@@ -149,9 +149,9 @@ public final class DataReaderStrips extends ImageDataReader {
                 final int[] samples = new int[3];
                 for (int i = i0; i < i1; i++) {
                     for (int j = 0; j < width; j++) {
-                        samples[0] = bytes[k++] & 0xff;
-                        samples[1] = bytes[k++] & 0xff;
-                        samples[2] = bytes[k++] & 0xff;
+                        samples[0] = bytes.get(k++) & 0xff;
+                        samples[1] = bytes.get(k++) & 0xff;
+                        samples[2] = bytes.get(k++) & 0xff;
                         photometricInterpreter.interpretPixel(imageBuilder,
                                 samples, j, i);
                     }
@@ -166,7 +166,7 @@ public final class DataReaderStrips extends ImageDataReader {
         // this logic will handle all cases not conforming to the
         // special case handled above
 
-        try (final BitInputStream bis = new BitInputStream(new ByteArrayInputStream(bytes), byteOrder)) {
+        try (final BitInputStream bis = new BitInputStream(bytes, byteOrder)) {
 
             int[] samples = new int[bitsPerSampleLength];
             resetPredictor();
@@ -196,25 +196,31 @@ public final class DataReaderStrips extends ImageDataReader {
     @Override
     public void readImageData(final ImageBuilder imageBuilder)
             throws ImageReadException, IOException {
-        for (int strip = 0; strip < imageData.getImageDataLength(); strip++) {
-            final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
-            final long rowsRemaining = height - (strip * rowsPerStripLong);
-            final long rowsInThisStrip = Math.min(rowsRemaining, rowsPerStripLong);
-            final long bytesPerRow = (bitsPerPixel * width + 7) / 8;
-            final long bytesPerStrip = rowsInThisStrip * bytesPerRow;
-            final long pixelsPerStrip = rowsInThisStrip * width;
-
-            final byte[] compressed = imageData.getImageData(strip).getData();
-
-            final byte[] decompressed = decompress(compressed, compression,
-                    (int) bytesPerStrip, width, (int) rowsInThisStrip);
-
-            interpretStrip(
-                    imageBuilder,
-                    decompressed,
-                    (int) pixelsPerStrip,
-                    height);
+        final int nStrips = imageData.getImageDataLength();
+        try (BlockScratch scratch = new BlockScratch(bufferPool);
+                Prefetcher prefetcher = createPrefetcher(0, nStrips - 1)) {
+            for (int strip = 0; strip < nStrips; strip++) {
+                final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
+                final long rowsRemaining = height - (strip * rowsPerStripLong);
+                final long rowsInThisStrip = Math.min(rowsRemaining, rowsPerStripLong);
+                final long bytesPerRow = (bitsPerPixel * width + 7) / 8;
+                final long bytesPerStrip = rowsInThisStrip * bytesPerRow;
+                final long pixelsPerStrip = rowsInThisStrip * width;
+
+                final ByteBuffer compressed = prefetcher != null
+                        ? prefetcher.next() : scratch.read(imageData, strip);
+
+                final ByteBuffer decompressed = decompress(compressed, compression,
+                        (int) bytesPerStrip, width, (int) rowsInThisStrip,
+                        scratch.output((int) bytesPerStrip));
+
+                interpretStrip(
+                        imageBuilder,
+                        decompressed,
+                        (int) pixelsPerStrip,
+                        height);
 
+            }
         }
     }
 
@@ -250,24 +256,29 @@ public final class DataReaderStrips extends ImageDataReader {
         final ImageBuilder workingBuilder =
                 new ImageBuilder(width, workingHeight, false);
 
-        for (int strip = strip0; strip <= strip1; strip++) {
-            final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
-            final long rowsRemaining = height - (strip * rowsPerStripLong);
-            final long rowsInThisStrip = Math.min(rowsRemaining, rowsPerStripLong);
-            final long bytesPerRow = (bitsPerPixel * width + 7) / 8;
-            final long bytesPerStrip = rowsInThisStrip * bytesPerRow;
-            final long pixelsPerStrip = rowsInThisStrip * width;
-
-            final byte[] compressed = imageData.getImageData(strip).getData();
-
-            final byte[] decompressed = decompress(compressed, compression,
-                    (int) bytesPerStrip, width, (int) rowsInThisStrip);
-
-            interpretStrip(
-                    workingBuilder,
-                    decompressed,
-                    (int) pixelsPerStrip,
-                    yLimit);
+        try (BlockScratch scratch = new BlockScratch(bufferPool);
+                Prefetcher prefetcher = createPrefetcher(strip0, strip1)) {
+            for (int strip = strip0; strip <= strip1; strip++) {
+                final long rowsPerStripLong = 0xFFFFffffL & rowsPerStrip;
+                final long rowsRemaining = height - (strip * rowsPerStripLong);
+                final long rowsInThisStrip = Math.min(rowsRemaining, rowsPerStripLong);
+                final long bytesPerRow = (bitsPerPixel * width + 7) / 8;
+                final long bytesPerStrip = rowsInThisStrip * bytesPerRow;
+                final long pixelsPerStrip = rowsInThisStrip * width;
+
+                final ByteBuffer compressed = prefetcher != null
+                        ? prefetcher.next() : scratch.read(imageData, strip);
+
+                final ByteBuffer decompressed = decompress(compressed, compression,
+                        (int) bytesPerStrip, width, (int) rowsInThisStrip,
+                        scratch.output((int) bytesPerStrip));
+
+                interpretStrip(
+                        workingBuilder,
+                        decompressed,
+                        (int) pixelsPerStrip,
+                        yLimit);
+            }
         }
 
 
@@ -285,4 +296,46 @@ public final class DataReaderStrips extends ImageDataReader {
                 subImage.height);
     }
 
+    /**
+     * Creates a prefetcher for a range of strips, or returns null if
+     * reads are not to be made ahead of time.
+     */
+    private Prefetcher createPrefetcher(final int first, final int last) {
+        final TiffImageData.DataIndex index = imageData.getDataIndex();
+        if (prefetchDepth == 0 || last <= first || index == null
+                || index.getByteSource().hasSharedSlices()) {
+            return null;
+        }
+        final long[] offsets = new long[last - first + 1];
+        final int[] lengths = new int[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = index.getOffset(first + i);
+            lengths[i] = index.getByteCount(first + i);
+        }
+        return new Prefetcher(index.getByteSource(), offsets, lengths, prefetchDepth);
+    }
+
+    @Override
+    protected int getBlockWidth() {
+        return width;
+    }
+
+    @Override
+    protected int getBlockLength() {
+        return Math.min(rowsPerStrip, height);
+    }
+
+    @Override
+    protected ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    @Override
+    protected ByteBuffer readRasterBlock(final int index, final int bytesPerRow,
+            final int rowsInBlock) throws ImageReadException, IOException {
+        final ByteBuffer compressed = imageData.getImageDataBuffer(index);
+        return decompress(compressed, compression, bytesPerRow * rowsInBlock,
+                width, rowsInBlock);
+    }
+
 }
@@ -18,15 +18,24 @@ package com.maxar.rda.imaging.formats.tiff.datareaders;
 
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.common.ImageBuilder;
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
 import com.maxar.rda.imaging.formats.tiff.TiffDirectory;
-import com.maxar.rda.imaging.formats.tiff.TiffElement.DataElement;
 import com.maxar.rda.imaging.formats.tiff.TiffImageData;
+import com.maxar.rda.imaging.formats.tiff.TiffReadPlanner;
+import com.maxar.rda.imaging.formats.tiff.TiffTileCache;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreterRgb;
 
@@ -42,6 +51,12 @@ public final class DataReaderTiled extends ImageDataReader {
 
     private final TiffImageData.Tiles imageData;
 
+    private TiffTileCache tileCache;
+    private Object cacheSource;
+    private int cacheDirectory;
+
+    private TiffReadPlanner readPlanner;
+
     public DataReaderTiled(final TiffDirectory directory,
             final PhotometricInterpreter photometricInterpreter, final int tileWidth,
             final int tileLength, final int bitsPerPixel, final int[] bitsPerSample,
@@ -60,7 +75,31 @@ public final class DataReaderTiled extends ImageDataReader {
         this.byteOrder = byteOrder;
     }
 
-    private void interpretTile(final ImageBuilder imageBuilder, final byte[] bytes,
+    /**
+     * Sets a cache for decompressed tiles.
+     *
+     * @param tileCache the cache, or null for none
+     * @param source the key identifying the source of the image in the cache
+     * @param directory the index of the image's directory within the source
+     */
+    public void setTileCache(final TiffTileCache tileCache, final Object source,
+            final int directory) {
+        this.tileCache = tileCache;
+        this.cacheSource = source;
+        this.cacheDirectory = directory;
+    }
+
+    /**
+     * Sets the planner used to coalesce the reads of tiles that lie close
+     * together in the file.
+     *
+     * @param readPlanner the planner, or null to read each tile on its own
+     */
+    public void setReadPlanner(final TiffReadPlanner readPlanner) {
+        this.readPlanner = readPlanner;
+    }
+
+    private void interpretTile(final ImageBuilder imageBuilder, final ByteBuffer bytes,
             final int startX, final int startY, final int xLimit, final int yLimit) throws ImageReadException, IOException {
         // changes introduced May 2012
         // The following block of code implements changes that
@@ -92,8 +131,8 @@ public final class DataReaderTiled extends ImageDataReader {
                     k = (i - i0) * tileWidth * 3;
                     for (int j = j0; j < j1; j++, k += 3) {
                         final int rgb = 0xff000000
-                                | (((bytes[k] << 8) | (bytes[k + 1] & 0xff)) << 8)
-                                | (bytes[k + 2] & 0xff);
+                                | (((bytes.get(k) << 8) | (bytes.get(k + 1) & 0xff)) << 8)
+                                | (bytes.get(k + 2) & 0xff);
                         imageBuilder.setRGB(j, i, rgb);
                     }
                 }
@@ -102,9 +141,9 @@ public final class DataReaderTiled extends ImageDataReader {
                 for (int i = i0; i < i1; i++) {
                     k = (i - i0) * tileWidth * 3;
                     for (int j = j0; j < j1; j++) {
-                        samples[0] = bytes[k++] & 0xff;
-                        samples[1] = bytes[k++] & 0xff;
-                        samples[2] = bytes[k++] & 0xff;
+                        samples[0] = bytes.get(k++) & 0xff;
+                        samples[1] = bytes.get(k++) & 0xff;
+                        samples[2] = bytes.get(k++) & 0xff;
                         photometricInterpreter.interpretPixel(imageBuilder,
                                 samples, j, i);
                     }
@@ -115,7 +154,7 @@ public final class DataReaderTiled extends ImageDataReader {
 
         // End of May 2012 changes
 
-        try (final BitInputStream bis = new BitInputStream(new ByteArrayInputStream(bytes), byteOrder)) {
+        try (final BitInputStream bis = new BitInputStream(bytes, byteOrder)) {
 
             final int pixelsPerTile = tileWidth * tileLength;
 
@@ -123,7 +162,8 @@ public final class DataReaderTiled extends ImageDataReader {
             int tileY = 0;
 
             int[] samples = new int[bitsPerSampleLength];
-            resetPredictor();
+            // predictor state is local so that tiles may be decoded concurrently
+            final int[] last = new int[bitsPerSampleLength];
             for (int i = 0; i < pixelsPerTile; i++) {
 
                 final int x = tileX + startX;
@@ -132,7 +172,7 @@ public final class DataReaderTiled extends ImageDataReader {
                 getSamplesAsBytes(bis, samples);
 
                 if ((x < xLimit) && (y < yLimit)) {
-                    samples = applyPredictor(samples);
+                    samples = applyPredictor(samples, last);
                     photometricInterpreter.interpretPixel(imageBuilder, samples, x, y);
                 }
 
@@ -140,7 +180,7 @@ public final class DataReaderTiled extends ImageDataReader {
 
                 if (tileX >= tileWidth) {
                     tileX = 0;
-                    resetPredictor();
+                    Arrays.fill(last, 0);
                     tileY++;
                     bis.flushCache();
                     if (tileY >= tileLength) {
@@ -152,44 +192,255 @@ public final class DataReaderTiled extends ImageDataReader {
         }
     }
 
-    @Override
-    public void readImageData(final ImageBuilder imageBuilder)
+    /**
+     * Decompresses and interprets a single tile.
+     *
+     * @param cached the decompressed tile from the tile cache, or null
+     * @param stored the stored bytes of the tile if they have already been
+     * read, or null to read them
+     */
+    private void readTile(final ImageBuilder imageBuilder, final int tile,
+            final byte[] cached, final ByteBuffer stored,
+            final int startX, final int startY, final int xLimit, final int yLimit)
             throws ImageReadException, IOException {
+        if (cached != null) {
+            interpretTile(imageBuilder, ByteBuffer.wrap(cached), startX, startY, xLimit, yLimit);
+            return;
+        }
+
         final int bitsPerRow = tileWidth * bitsPerPixel;
         final int bytesPerRow = (bitsPerRow + 7) / 8;
         final int bytesPerTile = bytesPerRow * tileLength;
-        int x = 0;
-        int y = 0;
 
-        for (final DataElement tile2 : imageData.tiles) {
-            final byte[] compressed = tile2.getData();
+        if (tileCache == null) {
+            try (BlockScratch scratch = new BlockScratch(bufferPool)) {
+                final ByteBuffer compressed = stored != null ? stored : scratch.read(imageData, tile);
+                interpretTile(imageBuilder, decompress(compressed, compression,
+                        bytesPerTile, tileWidth, tileLength, scratch.output(bytesPerTile)),
+                        startX, startY, xLimit, yLimit);
+            }
+            return;
+        }
 
-            final byte[] decompressed = decompress(compressed, compression,
-                    bytesPerTile, tileWidth, tileLength);
+        // the cache holds arrays, so uncompressed tiles are copied out of
+        // the source before they are cached
+        final ByteBuffer compressed = stored != null ? stored : imageData.getImageDataBuffer(tile);
+        final byte[] decompressed = toArray(decompress(compressed, compression,
+                bytesPerTile, tileWidth, tileLength));
+        tileCache.put(cacheSource, cacheDirectory, tile, decompressed);
+        interpretTile(imageBuilder, ByteBuffer.wrap(decompressed), startX, startY, xLimit, yLimit);
+    }
 
-            interpretTile(imageBuilder, decompressed, x, y, width, height);
+    /**
+     * Plans coalesced reads of the stored bytes of the tiles that are not
+     * in the tile cache.  Sources whose bytes can be viewed in place are
+     * not planned, since each tile is then read without any copy.
+     *
+     * @param positions receives the position in the array of tiles of
+     * each member of the planned reads
+     * @return the reads, or null if each tile is to be read on its own
+     */
+    private List<TiffReadPlanner.Range> planReads(final int[] tiles, final byte[][] cached,
+            final int[] positions) {
+        final TiffImageData.DataIndex index = imageData.getDataIndex();
+        if (readPlanner == null || tiles.length < 2 || index == null
+                || index.getByteSource().hasSharedSlices()) {
+            return null;
+        }
+        int n = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            if (cached == null || cached[i] == null) {
+                positions[n++] = i;
+            }
+        }
+        final int[] blocks = new int[n];
+        for (int k = 0; k < n; k++) {
+            blocks[k] = tiles[positions[k]];
+        }
+        return readPlanner.plan(index, blocks);
+    }
+
+    /**
+     * Reads the tiles in the specified range of rows and columns into
+     * the image builder, positioning the tile at (row0, col0) at the
+     * builder's origin.  The stored bytes of tiles that lie close together
+     * in the file are fetched with a single read, as planned by the read
+     * planner.  If an executor has been supplied, each planned read, and
+     * each tile read on its own, is a separate task that reads its bytes
+     * and then decodes its tiles, so that no more bytes are held than the
+     * tasks in progress need.  Since tiles cover disjoint areas of the
+     * builder, the result is identical to that of a serial read.
+     */
+    private void readTiles(final ImageBuilder imageBuilder,
+            final int row0, final int row1, final int col0, final int col1,
+            final int xLimit, final int yLimit) throws ImageReadException, IOException {
+        final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
 
-            x += tileWidth;
-            if (x >= width) {
-                x = 0;
-                y += tileLength;
-                if (y >= height) {
-                    break;
+        final int[] tiles = new int[(row1 - row0 + 1) * (col1 - col0 + 1)];
+        int n = 0;
+        for (int iRow = row0; iRow <= row1; iRow++) {
+            for (int iCol = col0; iCol <= col1; iCol++) {
+                final int tile = iRow * nColumnsOfTiles + iCol;
+                if (tile < imageData.getImageDataLength()) {
+                    tiles[n++] = tile;
                 }
             }
+        }
+        final int[] region = Arrays.copyOf(tiles, n);
+
+        byte[][] cached = null;
+        if (tileCache != null) {
+            cached = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                cached[i] = tileCache.get(cacheSource, cacheDirectory, region[i]);
+            }
+        }
+        final int[] positions = new int[n];
+        final List<TiffReadPlanner.Range> ranges = planReads(region, cached, positions);
+        final ByteSource byteSource = ranges == null ? null
+                : imageData.getDataIndex().getByteSource();
+
+        if (executor == null || n == 1) {
+            if (ranges != null) {
+                try (Prefetcher prefetcher = createPrefetcher(byteSource, ranges)) {
+                    for (final TiffReadPlanner.Range range : ranges) {
+                        try (BlockScratch scratch = new BlockScratch(bufferPool)) {
+                            final ByteBuffer bytes = prefetcher != null
+                                    ? prefetcher.next() : scratch.read(byteSource, range);
+                            readRange(imageBuilder, region, positions, range, bytes,
+                                    row0, col0, xLimit, yLimit);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                final byte[] cachedTile = cached == null ? null : cached[i];
+                if (ranges == null || cachedTile != null) {
+                    readTile(imageBuilder, region[i], cachedTile, null,
+                            getTileX(region[i], col0), getTileY(region[i], row0),
+                            xLimit, yLimit);
+                }
+            }
+            return;
+        }
+
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        try (Prefetcher prefetcher = ranges == null ? null
+                : createPrefetcher(byteSource, ranges)) {
+            if (ranges != null) {
+                // with a prefetcher, each task takes the next of the reads
+                // in order, as they complete
+                final int[] next = new int[1];
+                for (int r = 0; r < ranges.size(); r++) {
+                    final TiffReadPlanner.Range planned = ranges.get(r);
+                    tasks.add(() -> {
+                        try (BlockScratch scratch = new BlockScratch(bufferPool)) {
+                            final TiffReadPlanner.Range range;
+                            final ByteBuffer bytes;
+                            if (prefetcher == null) {
+                                range = planned;
+                                bytes = scratch.read(byteSource, range);
+                            } else {
+                                synchronized (prefetcher) {
+                                    range = ranges.get(next[0]++);
+                                    bytes = prefetcher.next();
+                                }
+                            }
+                            readRange(imageBuilder, region, positions, range, bytes,
+                                    row0, col0, xLimit, yLimit);
+                        }
+                        return null;
+                    });
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                final int tile = region[i];
+                final byte[] cachedTile = cached == null ? null : cached[i];
+                if (ranges == null || cachedTile != null) {
+                    final int x = getTileX(tile, col0);
+                    final int y = getTileY(tile, row0);
+                    tasks.add(() -> {
+                        readTile(imageBuilder, tile, cachedTile, null, x, y, xLimit, yLimit);
+                        return null;
+                    });
+                }
+            }
+
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading tiles");
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof ImageReadException) {
+                throw (ImageReadException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ImageReadException("Failed to read tile", cause);
+        }
+    }
 
+    /**
+     * Decodes the tiles of a planned read from the bytes read for it.
+     */
+    private void readRange(final ImageBuilder imageBuilder, final int[] region,
+            final int[] positions, final TiffReadPlanner.Range range, final ByteBuffer bytes,
+            final int row0, final int col0, final int xLimit, final int yLimit)
+            throws ImageReadException, IOException {
+        for (int j = 0; j < range.getBlockCount(); j++) {
+            final int i = positions[range.getMember(j)];
+            readTile(imageBuilder, region[i], null, range.slice(bytes, j),
+                    getTileX(region[i], col0), getTileY(region[i], row0), xLimit, yLimit);
         }
     }
 
+    /**
+     * Creates a prefetcher for the planned reads, or returns null if
+     * reads are not to be made ahead of time.
+     */
+    private Prefetcher createPrefetcher(final ByteSource byteSource,
+            final List<TiffReadPlanner.Range> ranges) {
+        if (prefetchDepth == 0 || ranges.size() < 2) {
+            return null;
+        }
+        final long[] offsets = new long[ranges.size()];
+        final int[] lengths = new int[ranges.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = ranges.get(i).getOffset();
+            lengths[i] = ranges.get(i).getLength();
+        }
+        return new Prefetcher(byteSource, offsets, lengths, prefetchDepth);
+    }
+
+    private int getTileX(final int tile, final int col0) {
+        final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
+        return (tile % nColumnsOfTiles - col0) * tileWidth;
+    }
+
+    private int getTileY(final int tile, final int row0) {
+        final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
+        return (tile / nColumnsOfTiles - row0) * tileLength;
+    }
+
     @Override
-    public BufferedImage readImageData(final Rectangle subImage)
+    public void readImageData(final ImageBuilder imageBuilder)
             throws ImageReadException, IOException {
-        final int bitsPerRow = tileWidth * bitsPerPixel;
-        final int bytesPerRow = (bitsPerRow + 7) / 8;
-        final int bytesPerTile = bytesPerRow * tileLength;
-        int x = 0;
-        int y = 0;
+        final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
+        final int nRowsOfTiles = (height + tileLength - 1) / tileLength;
+        readTiles(imageBuilder, 0, nRowsOfTiles - 1, 0, nColumnsOfTiles - 1,
+                width, height);
+    }
 
+    @Override
+    public BufferedImage readImageData(final Rectangle subImage)
+            throws ImageReadException, IOException {
         // tileWidth is the width of the tile
         // tileLength is the height of the tile
         final int col0 = subImage.x / tileWidth;
@@ -202,25 +453,13 @@ public final class DataReaderTiled extends ImageDataReader {
         final int workingWidth = nCol * tileWidth;
         final int workingHeight = nRow * tileLength;
 
-        final int nColumnsOfTiles = (width + tileWidth - 1) / tileWidth;
-
         final int x0 = col0 * tileWidth;
         final int y0 = row0 * tileLength;
 
         final ImageBuilder workingBuilder =
                 new ImageBuilder(workingWidth, workingHeight, false);
 
-        for (int iRow = row0; iRow <= row1; iRow++) {
-            for (int iCol = col0; iCol <= col1; iCol++) {
-                final int tile = iRow * nColumnsOfTiles + iCol;
-                final byte[] compressed = imageData.tiles[tile].getData();
-                final byte[] decompressed = decompress(compressed, compression,
-                        bytesPerTile, tileWidth, tileLength);
-                x = iCol * tileWidth - x0;
-                y = iRow * tileLength - y0;
-                interpretTile(workingBuilder, decompressed, x, y, workingWidth, workingHeight);
-            }
-        }
+        readTiles(workingBuilder, row0, row1, col0, col1, workingWidth, workingHeight);
 
         if (subImage.x == x0
                 && subImage.y == y0
@@ -235,4 +474,28 @@ public final class DataReaderTiled extends ImageDataReader {
             subImage.height);
     }
 
+    @Override
+    protected int getBlockWidth() {
+        return tileWidth;
+    }
+
+    @Override
+    protected int getBlockLength() {
+        return tileLength;
+    }
+
+    @Override
+    protected ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    @Override
+    protected ByteBuffer readRasterBlock(final int index, final int bytesPerRow,
+            final int rowsInBlock) throws ImageReadException, IOException {
+        // tiles are always stored at full size, even at the image edges
+        final ByteBuffer compressed = imageData.getImageDataBuffer(index);
+        return decompress(compressed, compression, bytesPerRow * tileLength,
+                tileWidth, tileLength);
+    }
+
 }
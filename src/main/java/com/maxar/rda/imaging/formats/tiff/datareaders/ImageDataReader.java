@@ -20,22 +20,31 @@ import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
 import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.BufferPool;
 import com.maxar.rda.imaging.common.ImageBuilder;
 import com.maxar.rda.imaging.common.PackBits;
+import com.maxar.rda.imaging.common.ZlibDeflate;
 import com.maxar.rda.imaging.common.itu_t4.T4AndT6Compression;
-import com.maxar.rda.imaging.common.mylzw.MyLzwDecompressor;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwDecompressor;
+import com.maxar.rda.imaging.formats.jpeg.decoder.JpegDecoder;
 import com.maxar.rda.imaging.formats.tiff.TiffDirectory;
 import com.maxar.rda.imaging.formats.tiff.TiffField;
+import com.maxar.rda.imaging.formats.tiff.TiffRaster;
 import com.maxar.rda.imaging.formats.tiff.photometricinterpreters.PhotometricInterpreter;
 
 public abstract class ImageDataReader {
+    // the LZW decoder tables are reused for every tile or strip read
+    // on a thread
+    private static final ThreadLocal<TiffLzwDecompressor> LZW_DECOMPRESSOR =
+            ThreadLocal.withInitial(TiffLzwDecompressor::new);
+
     protected final TiffDirectory directory;
     protected final PhotometricInterpreter photometricInterpreter;
     private final int[] bitsPerSample;
@@ -47,6 +56,27 @@ public abstract class ImageDataReader {
     protected final int width;
     protected final int height;
 
+    /**
+     * An optional executor used by readers that are able to decode
+     * independent blocks of image data concurrently.  When null, all
+     * data is decoded on the calling thread.
+     */
+    protected ExecutorService executor;
+
+    /**
+     * An optional pool from which readers borrow the arrays used to read
+     * and decompress each block of image data.  When null, new arrays are
+     * allocated for every block.
+     */
+    protected BufferPool bufferPool;
+
+    /**
+     * The number of blocks of image data whose reads are kept in progress
+     * ahead of the block being decoded, or zero to read each block only
+     * when it is needed.
+     */
+    protected int prefetchDepth;
+
     public ImageDataReader(final TiffDirectory directory,
             final PhotometricInterpreter photometricInterpreter, final int[] bitsPerSample,
             final int predictor, final int samplesPerPixel, final int width, final int height) {
@@ -70,6 +100,42 @@ public abstract class ImageDataReader {
     public abstract BufferedImage readImageData(Rectangle subImage)
             throws ImageReadException, IOException;
 
+    /**
+     * Sets the executor used to decode blocks of image data in parallel.
+     * Readers that cannot split their work ignore this setting.  The
+     * executor is not shut down by the reader.
+     *
+     * @param executor a valid executor, or null to decode serially
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the pool of scratch arrays used to read and decompress blocks
+     * of image data.
+     *
+     * @param bufferPool a valid pool, or null to allocate arrays as needed
+     */
+    public void setBufferPool(final BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sets the number of blocks of image data to read ahead of the block
+     * being decoded.  Reading ahead overlaps I/O with decoding when the
+     * source reads asynchronously, as does ByteSourceAsyncFile.  Sources
+     * that hold their bytes in memory are never read ahead.
+     *
+     * @param prefetchDepth the number of blocks, or zero for none
+     */
+    public void setPrefetchDepth(final int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Invalid prefetch depth: " + prefetchDepth);
+        }
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * Checks if all the bits per sample entries are the same size
      * @param size the size to check
@@ -116,6 +182,20 @@ public abstract class ImageDataReader {
     }
 
     protected int[] applyPredictor(final int[] samples) {
+        return applyPredictor(samples, last);
+    }
+
+    /**
+     * Applies the predictor using caller-supplied state rather than the
+     * state held by this instance, so that blocks may be decoded
+     * concurrently.
+     *
+     * @param samples the samples for the current pixel
+     * @param last the samples for the previous pixel in the row, updated
+     * in place; must be zero-filled at the start of each row
+     * @return the samples array
+     */
+    protected int[] applyPredictor(final int[] samples, final int[] last) {
         if (predictor == 2) {
             // Horizontal differencing.
             for (int i = 0; i < samples.length; i++) {
@@ -127,23 +207,339 @@ public abstract class ImageDataReader {
         return samples;
     }
 
-    protected byte[] decompress(final byte[] compressedInput, final int compression,
+    /**
+     * Gets the width of the blocks (tiles or strips) in which the image
+     * data is stored.
+     *
+     * @return a value greater than zero
+     */
+    protected abstract int getBlockWidth();
+
+    /**
+     * Gets the number of rows in each block (tile or strip) in which the
+     * image data is stored.
+     *
+     * @return a value greater than zero
+     */
+    protected abstract int getBlockLength();
+
+    protected abstract ByteOrder getByteOrder();
+
+    /**
+     * Reads and decompresses a single block of image data.
+     *
+     * @param index the index of the tile or strip
+     * @param bytesPerRow the number of bytes in each row of the block
+     * @param rowsInBlock the number of rows of the block that lie within
+     * the image
+     * @return the decompressed bytes, positioned at zero
+     * @throws ImageReadException in the event of an invalid format
+     * @throws IOException in the event of an I/O error
+     */
+    protected abstract ByteBuffer readRasterBlock(int index, int bytesPerRow, int rowsInBlock)
+            throws ImageReadException, IOException;
+
+    /**
+     * Reads the samples for a region of the image at their native bit depth.
+     * Unlike readImageData, no photometric interpretation is performed,
+     * and the samples are not scaled to 8 bits.
+     *
+     * @param region the region to read; must lie within the image
+     * @param bands the indices of the bands to read, in the order in which
+     * they are to be stored in the result
+     * @return a valid raster
+     * @throws ImageReadException if the data is in an unsupported format
+     * @throws IOException in the event of an I/O error
+     */
+    public TiffRaster readRaster(final Rectangle region, final int[] bands)
+            throws ImageReadException, IOException {
+        final int bits = bitsPerSample[0];
+        if (!isHomogenous(bits)) {
+            throw new ImageReadException(
+                    "Tiff: raster reads require the same bits per sample for all bands");
+        }
+
+        final int sampleFormat = getSampleFormat();
+        final TiffRaster.DataType dataType;
+        if (sampleFormat == TiffTagConstants.SAMPLE_FORMAT_VALUE_IEEE_FLOATING_POINT) {
+            if (bits != 32) {
+                throw new ImageReadException(
+                        "Tiff: unsupported floating-point bits per sample: " + bits);
+            }
+            dataType = TiffRaster.DataType.FLOAT;
+        } else if (sampleFormat == TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER
+                || sampleFormat == TiffTagConstants.SAMPLE_FORMAT_VALUE_TWOS_COMPLEMENT_SIGNED_INTEGER
+                || sampleFormat == TiffTagConstants.SAMPLE_FORMAT_VALUE_UNDEFINED) {
+            if (bits <= 16) {
+                dataType = TiffRaster.DataType.SHORT;
+            } else if (bits <= 32) {
+                dataType = TiffRaster.DataType.INT;
+            } else {
+                throw new ImageReadException(
+                        "Tiff: unsupported integer bits per sample: " + bits);
+            }
+        } else {
+            throw new ImageReadException("Tiff: unsupported sample format: " + sampleFormat);
+        }
+        final boolean differencing =
+                predictor == TiffTagConstants.PREDICTOR_VALUE_HORIZONTAL_DIFFERENCING;
+        if (predictor > TiffTagConstants.PREDICTOR_VALUE_HORIZONTAL_DIFFERENCING
+                || (differencing && dataType == TiffRaster.DataType.FLOAT)) {
+            throw new ImageReadException("Tiff: unsupported predictor for raster reads: "
+                    + predictor);
+        }
+
+        final TiffField planarField =
+                directory.findField(TiffTagConstants.TIFF_TAG_PLANAR_CONFIGURATION);
+        final boolean planar = planarField != null
+                && planarField.getIntValue() == TiffTagConstants.PLANAR_CONFIGURATION_VALUE_PLANAR;
+
+        final int blockWidth = getBlockWidth();
+        final int blockLength = getBlockLength();
+        final int blocksAcross = (width + blockWidth - 1) / blockWidth;
+        final int blocksDown = (height + blockLength - 1) / blockLength;
+        final int blocksPerPlane = blocksAcross * blocksDown;
+
+        // in planar images each block holds a single band
+        final int samplesPerBlockPixel = planar ? 1 : samplesPerPixel;
+        final int samplesPerRow = blockWidth * samplesPerBlockPixel;
+        final int bytesPerRow = (int) (((long) samplesPerRow * bits + 7) / 8);
+
+        final TiffRaster raster = new TiffRaster(region.width, region.height,
+                bands.length, bits, sampleFormat, dataType);
+        final RasterCopier copier = new RasterCopier(raster, region, bits,
+                sampleFormat == TiffTagConstants.SAMPLE_FORMAT_VALUE_TWOS_COMPLEMENT_SIGNED_INTEGER,
+                differencing, getByteOrder(), samplesPerRow, bytesPerRow, samplesPerBlockPixel);
+
+        final int col0 = region.x / blockWidth;
+        final int col1 = (region.x + region.width - 1) / blockWidth;
+        final int row0 = region.y / blockLength;
+        final int row1 = (region.y + region.height - 1) / blockLength;
+
+        for (int iRow = row0; iRow <= row1; iRow++) {
+            final int blockY = iRow * blockLength;
+            final int rowsInBlock = Math.min(blockLength, height - blockY);
+            for (int iCol = col0; iCol <= col1; iCol++) {
+                final int blockX = iCol * blockWidth;
+                final int block = iRow * blocksAcross + iCol;
+                if (planar) {
+                    for (int k = 0; k < bands.length; k++) {
+                        final ByteBuffer bytes = readRasterBlock(
+                                bands[k] * blocksPerPlane + block, bytesPerRow, rowsInBlock);
+                        copier.copy(bytes, blockX, blockY, rowsInBlock, 0, k);
+                    }
+                } else {
+                    final ByteBuffer bytes = readRasterBlock(block, bytesPerRow, rowsInBlock);
+                    for (int k = 0; k < bands.length; k++) {
+                        copier.copy(bytes, blockX, blockY, rowsInBlock, bands[k], k);
+                    }
+                }
+            }
+        }
+
+        return raster;
+    }
+
+    private int getSampleFormat() throws ImageReadException {
+        final TiffField sampleFormatField =
+                directory.findField(TiffTagConstants.TIFF_TAG_SAMPLE_FORMAT);
+        if (sampleFormatField == null) {
+            return TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER;
+        }
+        final int[] sampleFormats = sampleFormatField.getIntArrayValue();
+        for (final int sampleFormat : sampleFormats) {
+            if (sampleFormat != sampleFormats[0]) {
+                throw new ImageReadException(
+                        "Tiff: raster reads require the same sample format for all bands");
+            }
+        }
+        return sampleFormats[0];
+    }
+
+    /**
+     * Unpacks the rows of decoded blocks and copies one band at a time
+     * into a raster.  The format is resolved once, up front, so the
+     * inner loops are free of per-sample branching on the data type.
+     */
+    private static final class RasterCopier {
+        private final TiffRaster raster;
+        private final Rectangle region;
+        private final int bits;
+        private final int mask;
+        private final boolean signed;
+        private final boolean differencing;
+        private final boolean bigEndian;
+        private final int samplesPerRow;
+        private final int bytesPerRow;
+        private final int stride;
+        private final int[] row;
+
+        RasterCopier(final TiffRaster raster, final Rectangle region, final int bits,
+                final boolean signed, final boolean differencing, final ByteOrder byteOrder,
+                final int samplesPerRow, final int bytesPerRow, final int stride) {
+            this.raster = raster;
+            this.region = region;
+            this.bits = bits;
+            this.mask = bits == 32 ? -1 : (1 << bits) - 1;
+            this.signed = signed;
+            this.differencing = differencing;
+            this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+            this.samplesPerRow = samplesPerRow;
+            this.bytesPerRow = bytesPerRow;
+            this.stride = stride;
+            this.row = new int[samplesPerRow];
+        }
+
+        /**
+         * Copies one band from a block into the raster.
+         *
+         * @param bytes the decompressed block
+         * @param blockX the image column of the first pixel in the block
+         * @param blockY the image row of the first pixel in the block
+         * @param rowsInBlock the number of block rows within the image
+         * @param sample the index of the band within each pixel of the block
+         * @param band the index of the band within the raster
+         */
+        void copy(final ByteBuffer bytes, final int blockX, final int blockY,
+                final int rowsInBlock, final int sample, final int band)
+                throws ImageReadException {
+            final int yStart = Math.max(region.y, blockY);
+            final int yEnd = Math.min(region.y + region.height, blockY + rowsInBlock);
+            final int xStart = Math.max(region.x, blockX);
+            final int xEnd = Math.min(region.x + region.width, blockX + samplesPerRow / stride);
+            final int nBands = raster.getBandCount();
+
+            for (int y = yStart; y < yEnd; y++) {
+                unpackRow(bytes, (y - blockY) * bytesPerRow);
+                int src = (xStart - blockX) * stride + sample;
+                int dst = raster.getIndex(xStart - region.x, y - region.y, band);
+                switch (raster.getDataType()) {
+                case SHORT: {
+                    final short[] data = raster.getShortData();
+                    for (int x = xStart; x < xEnd; x++, src += stride, dst += nBands) {
+                        data[dst] = (short) row[src];
+                    }
+                    break;
+                }
+                case INT: {
+                    final int[] data = raster.getIntData();
+                    for (int x = xStart; x < xEnd; x++, src += stride, dst += nBands) {
+                        data[dst] = row[src];
+                    }
+                    break;
+                }
+                default: {
+                    final float[] data = raster.getFloatData();
+                    for (int x = xStart; x < xEnd; x++, src += stride, dst += nBands) {
+                        data[dst] = Float.intBitsToFloat(row[src]);
+                    }
+                    break;
+                }
+                }
+            }
+        }
+
+        /**
+         * Unpacks one row of samples into the row buffer, undoing
+         * horizontal differencing and extending the sign of signed
+         * samples.
+         */
+        private void unpackRow(final ByteBuffer bytes, final int offset) throws ImageReadException {
+            if (offset + bytesPerRow > bytes.limit()) {
+                throw new ImageReadException("Tiff: image data block is too short ("
+                        + bytes.limit() + " bytes)");
+            }
+
+            if (bits == 8) {
+                for (int i = 0; i < samplesPerRow; i++) {
+                    row[i] = bytes.get(offset + i) & 0xff;
+                }
+            } else if (bits == 16) {
+                for (int i = 0, k = offset; i < samplesPerRow; i++, k += 2) {
+                    row[i] = bigEndian
+                            ? ((bytes.get(k) & 0xff) << 8) | (bytes.get(k + 1) & 0xff)
+                            : ((bytes.get(k + 1) & 0xff) << 8) | (bytes.get(k) & 0xff);
+                }
+            } else if (bits == 32) {
+                for (int i = 0, k = offset; i < samplesPerRow; i++, k += 4) {
+                    row[i] = bigEndian
+                            ? (bytes.get(k) << 24) | ((bytes.get(k + 1) & 0xff) << 16)
+                                    | ((bytes.get(k + 2) & 0xff) << 8) | (bytes.get(k + 3) & 0xff)
+                            : (bytes.get(k + 3) << 24) | ((bytes.get(k + 2) & 0xff) << 16)
+                                    | ((bytes.get(k + 1) & 0xff) << 8) | (bytes.get(k) & 0xff);
+                }
+            } else {
+                // samples that are not a whole number of bytes are packed
+                // most-significant bit first, regardless of byte order
+                long buffer = 0;
+                int bufferBits = 0;
+                int k = offset;
+                for (int i = 0; i < samplesPerRow; i++) {
+                    while (bufferBits < bits) {
+                        buffer = (buffer << 8) | (bytes.get(k++) & 0xff);
+                        bufferBits += 8;
+                    }
+                    bufferBits -= bits;
+                    row[i] = (int) (buffer >>> bufferBits) & mask;
+                }
+            }
+
+            if (differencing) {
+                for (int i = stride; i < samplesPerRow; i++) {
+                    row[i] = (row[i] + row[i - stride]) & mask;
+                }
+            }
+            if (signed && bits < 32) {
+                final int shift = 32 - bits;
+                for (int i = 0; i < samplesPerRow; i++) {
+                    row[i] = (row[i] << shift) >> shift;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decompresses a tile or strip.  Uncompressed data is returned as the
+     * given buffer itself, so that data held in memory or mapped from a
+     * file is interpreted without being copied.
+     *
+     * @param compressedInput the stored bytes, positioned at zero
+     * @return the decompressed bytes, positioned at zero
+     */
+    protected ByteBuffer decompress(final ByteBuffer compressedInput, final int compression,
             final int expectedSize, final int tileWidth, final int tileHeight)
             throws ImageReadException, IOException {
+        return decompress(compressedInput, compression, expectedSize, tileWidth,
+                tileHeight, null);
+    }
+
+    /**
+     * Decompresses a tile or strip, writing LZW, PackBits and Deflate
+     * output to the start of the given array rather than a new one.
+     *
+     * @param compressedInput the stored bytes, positioned at zero
+     * @param output an array of at least expectedSize bytes, or null to
+     * allocate a new array
+     * @return the decompressed bytes, positioned at zero
+     */
+    protected ByteBuffer decompress(final ByteBuffer compressedInput, final int compression,
+            final int expectedSize, final int tileWidth, final int tileHeight,
+            final byte[] output) throws ImageReadException, IOException {
         final TiffField fillOrderField = directory.findField(TiffTagConstants.TIFF_TAG_FILL_ORDER);
         int fillOrder = TiffTagConstants.FILL_ORDER_VALUE_NORMAL;
         if (fillOrderField != null) {
             fillOrder = fillOrderField.getIntValue();
         }
-        final byte[] compressedOrdered; // re-ordered bytes (if necessary)
+        final ByteBuffer compressedOrdered; // re-ordered bytes (if necessary)
         if (fillOrder == TiffTagConstants.FILL_ORDER_VALUE_NORMAL) {
             compressedOrdered = compressedInput;
             // good
         } else if (fillOrder == TiffTagConstants.FILL_ORDER_VALUE_REVERSED) {
-            compressedOrdered = new byte[compressedInput.length];
-            for (int i = 0; i < compressedInput.length; i++) {
-                compressedOrdered[i] = (byte) (Integer.reverse(0xff & compressedInput[i]) >>> 24);
+            final byte[] reversed = new byte[compressedInput.remaining()];
+            for (int i = 0; i < reversed.length; i++) {
+                reversed[i] = (byte) (Integer.reverse(0xff & compressedInput.get(i)) >>> 24);
             }
+            compressedOrdered = ByteBuffer.wrap(reversed);
         } else {
             throw new ImageReadException("TIFF FillOrder=" + fillOrder
                     + " is invalid");
@@ -154,8 +550,8 @@ public abstract class ImageDataReader {
             return compressedOrdered;
         case TiffConstants.TIFF_COMPRESSION_CCITT_1D: // CCITT Group 3 1-Dimensional Modified
                                         // Huffman run-length encoding.
-            return T4AndT6Compression.decompressModifiedHuffman(compressedOrdered,
-                    tileWidth, tileHeight);
+            return ByteBuffer.wrap(T4AndT6Compression.decompressModifiedHuffman(
+                    toArray(compressedOrdered), tileWidth, tileHeight));
         case TiffConstants.TIFF_COMPRESSION_CCITT_GROUP_3: {
             int t4Options = 0;
             final TiffField field = directory.findField(TiffTagConstants.TIFF_TAG_T4_OPTIONS);
@@ -170,11 +566,11 @@ public abstract class ImageDataReader {
             }
             final boolean hasFillBitsBeforeEOL = (t4Options & TiffConstants.TIFF_FLAG_T4_OPTIONS_FILL) != 0;
             if (is2D) {
-                return T4AndT6Compression.decompressT4_2D(compressedOrdered,
-                        tileWidth, tileHeight, hasFillBitsBeforeEOL);
+                return ByteBuffer.wrap(T4AndT6Compression.decompressT4_2D(
+                        toArray(compressedOrdered), tileWidth, tileHeight, hasFillBitsBeforeEOL));
             }
-            return T4AndT6Compression.decompressT4_1D(compressedOrdered,
-                    tileWidth, tileHeight, hasFillBitsBeforeEOL);
+            return ByteBuffer.wrap(T4AndT6Compression.decompressT4_1D(
+                    toArray(compressedOrdered), tileWidth, tileHeight, hasFillBitsBeforeEOL));
         }
         case TiffConstants.TIFF_COMPRESSION_CCITT_GROUP_4: {
             int t6Options = 0;
@@ -187,30 +583,89 @@ public abstract class ImageDataReader {
                 throw new ImageReadException(
                         "T.6 compression with the uncompressed mode extension is not yet supported");
             }
-            return T4AndT6Compression.decompressT6(compressedOrdered, tileWidth,
-                    tileHeight);
+            return ByteBuffer.wrap(T4AndT6Compression.decompressT6(
+                    toArray(compressedOrdered), tileWidth, tileHeight));
         }
         case TiffConstants.TIFF_COMPRESSION_LZW: // LZW
         {
-            final InputStream is = new ByteArrayInputStream(compressedOrdered);
-
-            final int lzwMinimumCodeSize = 8;
-
-            final MyLzwDecompressor myLzwDecompressor = new MyLzwDecompressor(
-                    lzwMinimumCodeSize, ByteOrder.BIG_ENDIAN);
+            if (output != null) {
+                final int n = LZW_DECOMPRESSOR.get().decompress(compressedOrdered,
+                        output, expectedSize);
+                return ByteBuffer.wrap(output, 0, n);
+            }
+            final byte[] decompressed = new byte[expectedSize];
+            final int n = LZW_DECOMPRESSOR.get().decompress(compressedOrdered, decompressed);
+            return ByteBuffer.wrap(n == expectedSize ? decompressed : Arrays.copyOf(decompressed, n));
+        }
 
-            myLzwDecompressor.setTiffLZWMode();
+        case TiffConstants.TIFF_COMPRESSION_PACKBITS: // Packbits
+        {
+            if (output != null) {
+                new PackBits().decompress(compressedOrdered, output, expectedSize);
+                return ByteBuffer.wrap(output, 0, expectedSize);
+            }
+            return ByteBuffer.wrap(new PackBits().decompress(compressedOrdered, expectedSize));
+        }
 
-            return myLzwDecompressor.decompress(is, expectedSize);
+        case TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE: // Deflate
+        case TiffConstants.TIFF_COMPRESSION_DEFLATE_PKZIP:
+        {
+            if (output != null) {
+                ZlibDeflate.decompress(compressedOrdered, output, expectedSize);
+                return ByteBuffer.wrap(output, 0, expectedSize);
+            }
+            return ByteBuffer.wrap(ZlibDeflate.decompress(compressedOrdered, expectedSize));
         }
 
-        case TiffConstants.TIFF_COMPRESSION_PACKBITS: // Packbits
+        case TiffTagConstants.COMPRESSION_VALUE_JPEG:
         {
-            return new PackBits().decompress(compressedOrdered, expectedSize);
+            // the decoder produces 8-bit samples only, which would be
+            // misread as samples of any other size
+            for (final int bits : bitsPerSample) {
+                if (bits != 8) {
+                    throw new ImageReadException("Tiff: JPEG with " + bits
+                            + " bits per sample");
+                }
+            }
+            // the tables shared by all tiles or strips are parsed once per directory
+            final byte[] decoded = output != null ? output : new byte[expectedSize];
+            final int components = new JpegDecoder(directory.getJpegTables()).decodeSamples(
+                    compressedOrdered, decoded, tileWidth, tileHeight);
+            // a stream with fewer components would leave the rest of the
+            // block, perhaps stale bytes of a pooled array, to be read as pixels
+            final TiffField planarField =
+                    directory.findField(TiffTagConstants.TIFF_TAG_PLANAR_CONFIGURATION);
+            final int samplesPerBlockPixel = planarField != null
+                    && planarField.getIntValue() == TiffTagConstants.PLANAR_CONFIGURATION_VALUE_PLANAR
+                    ? 1 : bitsPerSampleLength;
+            if (components != samplesPerBlockPixel) {
+                throw new ImageReadException("Tiff: JPEG with " + components
+                        + " components in a block of " + samplesPerBlockPixel
+                        + " samples per pixel");
+            }
+            return ByteBuffer.wrap(decoded, 0, expectedSize);
         }
 
         default:
             throw new ImageReadException("Tiff: unknown/unsupported compression: " + compression);
         }
     }
+
+    /**
+     * Gets the bytes of a buffer, from its position to its limit, as an
+     * array.  The buffer's own array is returned if it holds exactly those
+     * bytes; otherwise they are copied.
+     *
+     * @param buffer the buffer
+     * @return the bytes of the buffer
+     */
+    protected static byte[] toArray(final ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), bytes);
+        return bytes;
+    }
 }
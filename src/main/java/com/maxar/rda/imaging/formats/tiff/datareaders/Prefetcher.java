@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.datareaders;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads a sequence of blocks in order, keeping the reads of up to a
+ * given number of the following blocks in progress while the caller
+ * decodes the current one.  With a source that reads asynchronously,
+ * this overlaps the I/O of the following blocks with the decoding of
+ * the current one.
+ */
+final class Prefetcher implements AutoCloseable {
+    private final ByteSource byteSource;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int depth;
+    private final ArrayDeque<CompletableFuture<ByteBuffer>> pending = new ArrayDeque<>();
+    private int issued;
+
+    /**
+     * @param depth the number of blocks to read ahead of the current one
+     */
+    Prefetcher(final ByteSource byteSource, final long[] offsets, final int[] lengths,
+            final int depth) {
+        this.byteSource = byteSource;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.depth = depth;
+    }
+
+    /**
+     * Gets the bytes of the next block, waiting for its read to complete.
+     *
+     * @return the bytes of the block, positioned at zero
+     */
+    ByteBuffer next() throws IOException {
+        while (issued < offsets.length && pending.size() <= depth) {
+            pending.add(byteSource.readAsync(offsets[issued], lengths[issued]));
+            issued++;
+        }
+        final CompletableFuture<ByteBuffer> future = pending.poll();
+        if (future == null) {
+            throw new NoSuchElementException("All blocks have been read");
+        }
+        try {
+            return future.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading image data");
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Could not read image data", cause);
+        }
+    }
+
+    /**
+     * Abandons the reads still in progress.
+     */
+    @Override
+    public void close() {
+        for (final CompletableFuture<ByteBuffer> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,437 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.write;
+
+import com.maxar.rda.imaging.ImageWriteException;
+import com.maxar.rda.imaging.common.ByteConversions;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.taginfos.TagInfo;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Writes Cloud-Optimized GeoTIFFs: tiled images with internal overviews,
+ * laid out so that a reader needs as few range requests as possible.
+ *
+ * <p>The file begins with a ghost area of GDAL structural metadata,
+ * followed by the IFD of the full-resolution image and then those of the
+ * overviews, each half the size of the one before, until an overview fits
+ * in a single tile.  Overviews are marked with a NewSubfileType of 1.
+ * Only then does image data follow, smallest overview first and the
+ * full-resolution tiles last, each level in row-major order.</p>
+ *
+ * <p>The pyramid is built in a single pass over the full-resolution
+ * tiles, each requested once and in row-major order.  Every tile is
+ * compressed into a temporary file for its level and reduced into its
+ * quarter of a tile of the next level, whose row of tiles is held in
+ * memory until complete and is then handled in the same way.  Memory use
+ * is therefore about one row of full-resolution tiles, and the temporary
+ * files grow to the size of the image data, which is copied into place
+ * once the size of every level is known.</p>
+ *
+ * <p>The output set decides between classic TIFF and BigTIFF; BigTIFF
+ * is required if the file may exceed 4 GB.</p>
+ */
+public class TiffCogWriter {
+
+    /**
+     * How the samples of each overview are computed from the four
+     * samples below them.
+     */
+    public enum Resampling {
+        /** The top-left sample, suitable for classified data. */
+        NEAREST,
+        /** The rounded mean of the samples within the image. */
+        AVERAGE
+    }
+
+    // the fields describing the samples that each overview shares with
+    // the full-resolution image
+    private static final TagInfo[] OVERVIEW_TAGS = {
+            TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+            TiffTagConstants.TIFF_TAG_PLANAR_CONFIGURATION,
+            TiffTagConstants.TIFF_TAG_EXTRA_SAMPLES,
+            TiffTagConstants.TIFF_TAG_SAMPLE_FORMAT,
+    };
+
+    private final ByteOrder byteOrder;
+    private final int tileSize;
+    private final Resampling resampling;
+    private final TiffTiledImageWriter tileWriter;
+
+    /**
+     * Constructs a writer.
+     *
+     * @param byteOrder the byte order of the output
+     * @param tileSize the width and length of the tiles, a multiple of 16
+     * @param resampling how overview samples are computed
+     * @param params optional compression parameters, as for
+     * {@link TiffTiledImageWriter}; may be null
+     * @throws ImageWriteException if the tile size or a parameter is invalid
+     */
+    public TiffCogWriter(final ByteOrder byteOrder, final int tileSize,
+            final Resampling resampling, final Map<String, Object> params)
+            throws ImageWriteException {
+        this.tileWriter = new TiffTiledImageWriter(byteOrder, tileSize, tileSize, params);
+        this.byteOrder = byteOrder;
+        this.tileSize = tileSize;
+        this.resampling = resampling;
+    }
+
+    /**
+     * Gets the number of overviews written for an image, which is the
+     * number of halvings needed before the image fits in one tile.
+     *
+     * @param width the image width
+     * @param height the image height
+     * @param tileSize the tile width and length
+     * @return the number of overviews
+     */
+    public static int getOverviewCount(int width, int height, final int tileSize) {
+        int count = 0;
+        while (width > tileSize || height > tileSize) {
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes an image and its overviews to a channel, starting at position
+     * zero.
+     *
+     * <p>The root directory of the output set describes the
+     * full-resolution image, and receives the image structure fields as
+     * for {@link TiffTiledImageWriter#write}.  The output set must not
+     * already hold directories for further images.</p>
+     *
+     * @param channel the destination; it is truncated to the size of the
+     * TIFF, but not closed
+     * @param outputSet the output set
+     * @param width the image width
+     * @param height the image height
+     * @param samplesPerPixel the number of samples per pixel
+     * @param bitsPerSample the number of bits in each sample: 8 or 16
+     * @param producer the source of the full-resolution tiles
+     * @throws IOException in the event of an I/O error
+     * @throws ImageWriteException if the image cannot be written
+     */
+    public void write(final SeekableByteChannel channel, final TiffOutputSet outputSet,
+            final int width, final int height, final int samplesPerPixel,
+            final int bitsPerSample, final TiffTiledImageWriter.TileProducer producer)
+            throws IOException, ImageWriteException {
+        if (bitsPerSample != 8 && bitsPerSample != 16) {
+            throw new ImageWriteException(
+                    "Overviews can only be made from 8 or 16-bit samples: " + bitsPerSample);
+        }
+        final TiffOutputDirectory root = outputSet.getOrCreateRootDirectory();
+        if (resampling == Resampling.AVERAGE) {
+            checkUnsigned(root);
+        }
+        root.removeField(TiffTagConstants.TIFF_TAG_NEW_SUBFILE_TYPE);
+        tileWriter.prepareDirectory(root, width, height, samplesPerPixel, bitsPerSample);
+
+        final int overviewCount = getOverviewCount(width, height, tileSize);
+        final TiffOutputDirectory[] directories = new TiffOutputDirectory[overviewCount + 1];
+        final int[] widths = new int[overviewCount + 1];
+        final int[] heights = new int[overviewCount + 1];
+        directories[0] = root;
+        widths[0] = width;
+        heights[0] = height;
+
+        for (int level = 1; level <= overviewCount; level++) {
+            widths[level] = (widths[level - 1] + 1) / 2;
+            heights[level] = (heights[level - 1] + 1) / 2;
+
+            final TiffOutputDirectory directory = new TiffOutputDirectory(
+                    level, outputSet.version(), byteOrder);
+            directory.add(TiffTagConstants.TIFF_TAG_NEW_SUBFILE_TYPE,
+                    TiffTagConstants.SUBFILE_TYPE_VALUE_REDUCED_RESOLUTION_IMAGE);
+            for (final TagInfo tagInfo : OVERVIEW_TAGS) {
+                final TiffOutputField field = root.findField(tagInfo);
+                if (field != null) {
+                    directory.add(new TiffOutputField(field.tag, field.tagInfo,
+                            field.fieldType, field.count, field.bytes.clone()));
+                }
+            }
+            tileWriter.prepareDirectory(directory, widths[level], heights[level],
+                    samplesPerPixel, bitsPerSample);
+            outputSet.addDirectory(directory);
+            directories[level] = directory;
+        }
+
+        final TiffOutputItem ghostArea = new TiffOutputItem.Value(
+                "GDAL structural metadata", getStructuralMetadata());
+        long position = tileWriter.writeDirectories(channel, outputSet, ghostArea);
+
+        try (Pyramid pyramid = new Pyramid(widths, heights, samplesPerPixel, bitsPerSample)) {
+            pyramid.build(producer);
+            final boolean classic = outputSet.version() == TiffConstants.TIFF_CLASSIC;
+            for (int level = overviewCount; level >= 0; level--) {
+                position = pyramid.copyLevel(level, channel, position, classic,
+                        directories[level]);
+            }
+        }
+        channel.truncate(position);
+    }
+
+    /**
+     * Gets the ghost area that GDAL reads to recognise the layout of a
+     * COG.  It is not referenced by any directory.
+     */
+    private static byte[] getStructuralMetadata() {
+        final String options = "LAYOUT=IFDS_BEFORE_DATA\n"
+                + "BLOCK_ORDER=ROW_MAJOR\n"
+                + "KNOWN_INCOMPATIBLE_EDITION=NO\n";
+        final String metadata = String.format("GDAL_STRUCTURAL_METADATA_SIZE=%06d bytes\n",
+                options.length()) + options;
+        return metadata.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void checkUnsigned(final TiffOutputDirectory root) throws ImageWriteException {
+        final TiffOutputField field = root.findField(TiffTagConstants.TIFF_TAG_SAMPLE_FORMAT);
+        if (field == null) {
+            return;
+        }
+        for (final int format : ByteConversions.toUInt16s(field.bytes, byteOrder)) {
+            if (format != TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER) {
+                throw new ImageWriteException(
+                        "Average resampling requires unsigned integer samples");
+            }
+        }
+    }
+
+    /**
+     * The levels of a pyramid, from the full-resolution image up, whose
+     * compressed tiles are spilled to a temporary file per level until
+     * they can be copied into place.
+     */
+    private final class Pyramid implements Closeable {
+        private final int[] widths;
+        private final int[] heights;
+        private final int[] tilesAcross;
+        private final int samplesPerPixel;
+        private final int bytesPerSample;
+        private final int tileLength;
+        private final int rowLength;
+        private final FileChannel[] spills;
+        // the offsets of the tiles of each level within its spill
+        private final long[][] offsets;
+        private final long[][] byteCounts;
+        // the row of tiles of each overview being reduced from the level
+        // below it; a tile is dropped once its last quarter is filled in
+        private final byte[][][] reduced;
+
+        Pyramid(final int[] widths, final int[] heights, final int samplesPerPixel,
+                final int bitsPerSample) throws ImageWriteException {
+            this.widths = widths;
+            this.heights = heights;
+            this.samplesPerPixel = samplesPerPixel;
+            this.bytesPerSample = bitsPerSample / 8;
+            this.tileLength = tileWriter.getTileSize(samplesPerPixel, bitsPerSample);
+            this.rowLength = tileSize * samplesPerPixel * bytesPerSample;
+            final int levelCount = widths.length;
+            this.tilesAcross = new int[levelCount];
+            this.spills = new FileChannel[levelCount];
+            this.offsets = new long[levelCount][];
+            this.byteCounts = new long[levelCount][];
+            this.reduced = new byte[levelCount][][];
+            for (int level = 0; level < levelCount; level++) {
+                tilesAcross[level] = tileWriter.getTilesAcross(widths[level]);
+                final int tileCount = tilesAcross[level]
+                        * tileWriter.getTilesDown(heights[level]);
+                offsets[level] = new long[tileCount];
+                byteCounts[level] = new long[tileCount];
+                reduced[level] = new byte[tilesAcross[level]][];
+            }
+        }
+
+        /**
+         * Requests every full-resolution tile, in row-major order, and
+         * spills the tiles of all levels.
+         */
+        void build(final TiffTiledImageWriter.TileProducer producer)
+                throws IOException, ImageWriteException {
+            for (int level = 0; level < spills.length; level++) {
+                spills[level] = FileChannel.open(Files.createTempFile("cog", ".tmp"),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            final int tilesDown = tileWriter.getTilesDown(heights[0]);
+            for (int row = 0; row < tilesDown; row++) {
+                for (int column = 0; column < tilesAcross[0]; column++) {
+                    final byte[] tile = producer.getTile(column, row);
+                    TiffTiledImageWriter.checkTile(tile, column, row, tileLength);
+                    add(0, column, row, tile);
+                }
+            }
+        }
+
+        /**
+         * Spills a tile and reduces it into the next level, adding the
+         * tile of that level once the 2 x 2 block of tiles below it is
+         * complete.  Tiles therefore reach every level in row-major order.
+         */
+        private void add(final int level, final int column, final int row,
+                final byte[] tile) throws IOException, ImageWriteException {
+            final byte[] compressed = tileWriter.compress(tile);
+            final FileChannel spill = spills[level];
+            final int index = row * tilesAcross[level] + column;
+            offsets[level][index] = spill.position();
+            byteCounts[level][index] = compressed.length;
+            TiffTiledImageWriter.writeFully(spill, spill.position(), compressed);
+
+            if (level + 1 == spills.length) {
+                return;
+            }
+            final byte[][] pending = reduced[level + 1];
+            final int target = column / 2;
+            if (pending[target] == null) {
+                pending[target] = new byte[tileLength];
+            }
+            // the part of the tile that lies within the image
+            final int validWidth = Math.min(tileSize, widths[level] - column * tileSize);
+            final int validHeight = Math.min(tileSize, heights[level] - row * tileSize);
+            final int half = tileSize / 2;
+            reduce(tile, validWidth, validHeight, rowLength, pending[target],
+                    (column % 2) * half, (row % 2) * half);
+
+            final boolean lastColumn = column % 2 == 1 || column == tilesAcross[level] - 1;
+            final boolean lastRow = row % 2 == 1
+                    || row == tileWriter.getTilesDown(heights[level]) - 1;
+            if (lastColumn && lastRow) {
+                final byte[] done = pending[target];
+                pending[target] = null;
+                add(level + 1, target, row / 2, done);
+            }
+        }
+
+        /**
+         * Copies the spilled tiles of a level to the channel and fills in
+         * the offsets and byte counts of its directory.
+         *
+         * @return the position following the last tile
+         */
+        long copyLevel(final int level, final SeekableByteChannel channel,
+                final long position, final boolean classic,
+                final TiffOutputDirectory directory) throws IOException, ImageWriteException {
+            final FileChannel spill = spills[level];
+            final long length = spill.size();
+            if (classic && position + length > 0xFFFFFFFFL) {
+                throw new ImageWriteException(
+                        "Image data exceeds 4 GB; a BigTIFF output set is required");
+            }
+            channel.position(position);
+            for (long copied = 0; copied < length;) {
+                copied += spill.transferTo(copied, length - copied, channel);
+            }
+
+            final long[] tileOffsets = offsets[level];
+            for (int i = 0; i < tileOffsets.length; i++) {
+                tileOffsets[i] += position;
+            }
+            tileWriter.patchTiles(channel, directory, tileOffsets, byteCounts[level]);
+            return position + length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (final FileChannel spill : spills) {
+                if (spill == null) {
+                    continue;
+                }
+                try {
+                    spill.close();
+                } catch (final IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void reduce(final byte[] sourceTile, final int validWidth,
+                final int validHeight, final int rowLength, final byte[] tile,
+                final int x0, final int y0) {
+            final int outWidth = (validWidth + 1) / 2;
+            final int outHeight = (validHeight + 1) / 2;
+            final int pixelLength = samplesPerPixel * bytesPerSample;
+            for (int y = 0; y < outHeight; y++) {
+                final int sy = y * 2;
+                final int rows = Math.min(2, validHeight - sy);
+                for (int x = 0; x < outWidth; x++) {
+                    final int sx = x * 2;
+                    final int columns = Math.min(2, validWidth - sx);
+                    for (int s = 0; s < samplesPerPixel; s++) {
+                        final int sourceIndex = sy * rowLength + sx * pixelLength
+                                + s * bytesPerSample;
+                        final int value;
+                        if (resampling == Resampling.NEAREST) {
+                            value = getSample(sourceTile, sourceIndex);
+                        } else {
+                            int sum = 0;
+                            for (int j = 0; j < rows; j++) {
+                                for (int i = 0; i < columns; i++) {
+                                    sum += getSample(sourceTile,
+                                            sourceIndex + j * rowLength + i * pixelLength);
+                                }
+                            }
+                            final int n = rows * columns;
+                            value = (sum + n / 2) / n;
+                        }
+                        setSample(tile, (y0 + y) * rowLength + (x0 + x) * pixelLength
+                                + s * bytesPerSample, value);
+                    }
+                }
+            }
+        }
+
+        private int getSample(final byte[] bytes, final int index) {
+            if (bytesPerSample == 1) {
+                return bytes[index] & 0xff;
+            }
+            return ByteConversions.toUInt16(bytes, index, byteOrder);
+        }
+
+        private void setSample(final byte[] bytes, final int index, final int value) {
+            if (bytesPerSample == 1) {
+                bytes[index] = (byte) value;
+            } else if (byteOrder == ByteOrder.BIG_ENDIAN) {
+                bytes[index] = (byte) (value >> 8);
+                bytes[index + 1] = (byte) value;
+            } else {
+                bytes[index] = (byte) value;
+                bytes[index + 1] = (byte) (value >> 8);
+            }
+        }
+    }
+}
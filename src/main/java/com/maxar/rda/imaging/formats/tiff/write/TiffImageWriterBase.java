@@ -22,8 +22,9 @@ import com.maxar.rda.imaging.PixelDensity;
 import com.maxar.rda.imaging.common.BinaryOutputStream;
 import com.maxar.rda.imaging.common.PackBits;
 import com.maxar.rda.imaging.common.RationalNumber;
+import com.maxar.rda.imaging.common.ZlibDeflate;
 import com.maxar.rda.imaging.common.itu_t4.T4AndT6Compression;
-import com.maxar.rda.imaging.common.mylzw.MyLzwCompressor;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwCompressor;
 import com.maxar.rda.imaging.formats.tiff.TiffElement;
 import com.maxar.rda.imaging.formats.tiff.TiffImageData;
 import com.maxar.rda.imaging.formats.tiff.constants.ExifTagConstants;
@@ -41,6 +42,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.Deflater;
 
 public abstract class TiffImageWriterBase {
 
@@ -343,6 +345,21 @@ public abstract class TiffImageWriterBase {
                 params.remove(TiffConstants.PARAM_KEY_LZW_COMPRESSION_BLOCK_SIZE);
             }
         }
+        int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+        if (params.containsKey(TiffConstants.PARAM_KEY_DEFLATE_COMPRESSION_LEVEL)) {
+            final Object value = params.remove(TiffConstants.PARAM_KEY_DEFLATE_COMPRESSION_LEVEL);
+            if (!(value instanceof Number)) {
+                throw new ImageWriteException(
+                        "Invalid Deflate compression level parameter: " + value);
+            }
+            deflateLevel = ((Number) value).intValue();
+            if (deflateLevel < Deflater.DEFAULT_COMPRESSION
+                    || deflateLevel > Deflater.BEST_COMPRESSION) {
+                throw new ImageWriteException(
+                        "Deflate compression level " + deflateLevel
+                        + " is not in the range -1 to 9");
+            }
+        }
         final HashMap<String, Object> rawParams = new HashMap<>(params);
         params.remove(TiffConstants.PARAM_KEY_T4_OPTIONS);
         params.remove(TiffConstants.PARAM_KEY_T6_OPTIONS);
@@ -428,22 +445,20 @@ public abstract class TiffImageWriterBase {
                 strips[i] = new PackBits().compress(strips[i]);
             }
         } else if (compression == TiffConstants.TIFF_COMPRESSION_LZW) {
+            final TiffLzwCompressor compressor = new TiffLzwCompressor();
             for (int i = 0; i < strips.length; i++) {
-                final byte[] uncompressed = strips[i];
-
-                final int LZW_MINIMUM_CODE_SIZE = 8;
-
-                final MyLzwCompressor compressor = new MyLzwCompressor(
-                        LZW_MINIMUM_CODE_SIZE, ByteOrder.BIG_ENDIAN, true);
-                final byte[] compressed = compressor.compress(uncompressed);
-
-                strips[i] = compressed;
+                strips[i] = compressor.compress(strips[i]);
+            }
+        } else if (compression == TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE
+                || compression == TiffConstants.TIFF_COMPRESSION_DEFLATE_PKZIP) {
+            for (int i = 0; i < strips.length; i++) {
+                strips[i] = ZlibDeflate.compress(strips[i], deflateLevel);
             }
         } else if (compression == TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED) {
             // do nothing.
         } else {
             throw new ImageWriteException(
-                    "Invalid compression parameter (Only CCITT 1D/Group 3/Group 4, LZW, Packbits and uncompressed supported).");
+                    "Invalid compression parameter (Only CCITT 1D/Group 3/Group 4, LZW, Packbits, Deflate and uncompressed supported).");
         }
 
         final TiffElement.DataElement[] imageData = new TiffElement.DataElement[strips.length];
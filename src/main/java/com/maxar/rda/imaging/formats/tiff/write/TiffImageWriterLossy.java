@@ -50,14 +50,27 @@ public class TiffImageWriterLossy extends TiffImageWriterBase {
         final BinaryOutputStream bos = new BinaryOutputStream(os, byteOrder);
 
         // NB: resource is intentionally left open
-        writeStep(bos, outputItems, outputSet.version(), true);
+        writeStep(bos, outputItems, outputSet.version(), true,
+                outputSummary.rootDirectory.getOffset());
     }
 
     public void write(final OutputStream os, final TiffOutputSet outputSet, boolean writeData)
             throws IOException, ImageWriteException {
+        write(os, outputSet, writeData, null);
+    }
+
+    /**
+     * Writes an output set with an extra item, such as a ghost area of
+     * structural metadata, between the file header and the first directory.
+     */
+    void write(final OutputStream os, final TiffOutputSet outputSet, boolean writeData,
+            final TiffOutputItem leadingItem) throws IOException, ImageWriteException {
         final TiffOutputSummary outputSummary = validateDirectories(outputSet);
 
         final List<TiffOutputItem> outputItems = outputSet.getOutputItems(outputSummary);
+        if (leadingItem != null) {
+            outputItems.add(0, leadingItem);
+        }
 
         updateOffsetsStep(outputItems, outputSet.version());
 
@@ -66,7 +79,8 @@ public class TiffImageWriterLossy extends TiffImageWriterBase {
         final BinaryOutputStream bos = new BinaryOutputStream(os, byteOrder);
 
         // NB: resource is intentionally left open
-        writeStep(bos, outputItems, outputSet.version(), writeData);
+        writeStep(bos, outputItems, outputSet.version(), writeData,
+                outputSummary.rootDirectory.getOffset());
     }
 
 
@@ -108,9 +122,9 @@ public class TiffImageWriterLossy extends TiffImageWriterBase {
     }
 
     private void writeStep(final BinaryOutputStream bos,
-            final List<TiffOutputItem> outputItems, int version, boolean writeData) throws IOException,
-            ImageWriteException {
-        writeImageFileHeader(bos, version);
+            final List<TiffOutputItem> outputItems, int version, boolean writeData,
+            final long offsetToFirstIFD) throws IOException, ImageWriteException {
+        writeImageFileHeader(bos, version, offsetToFirstIFD);
 
         for (final TiffOutputItem outputItem : outputItems) {
             if(outputItem.getItemDescription().equalsIgnoreCase("TIFF image data") && !writeData) continue;
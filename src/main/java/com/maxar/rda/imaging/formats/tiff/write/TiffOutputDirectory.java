@@ -748,6 +748,10 @@ public final class TiffOutputDirectory extends TiffOutputItem {
     @Override
     public String getItemDescription() {
         final TiffDirectoryType dirType = TiffDirectoryType.getExifDirectoryType(type);
+        if (dirType == null) {
+            // directories beyond the named ones, such as deep overview levels
+            return "Directory: (" + type + ")";
+        }
         return "Directory: " + dirType.name + " (" + type + ")";
     }
 
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.write;
+
+import com.maxar.rda.imaging.ImageWriteException;
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.PackBits;
+import com.maxar.rda.imaging.common.ZlibDeflate;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwCompressor;
+import com.maxar.rda.imaging.formats.tiff.TiffElement;
+import com.maxar.rda.imaging.formats.tiff.TiffImageData;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.fieldtypes.FieldType;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes tiled TIFF and BigTIFF images whose pixels are supplied one tile
+ * at a time.
+ *
+ * <p>The header and image file directories are written first, with the
+ * TileOffsets and TileByteCounts arrays sized for every tile but not yet
+ * filled in.  Each tile is then requested from a {@link TileProducer},
+ * compressed and written directly to the channel, and only its offset and
+ * byte count are retained.  Finally the two arrays are written back over
+ * their placeholders.  Memory use is therefore bounded by a single tile
+ * and 16 bytes per tile of bookkeeping, however large the image.</p>
+ *
+ * <p>Supported compressions are uncompressed, PackBits, LZW and Deflate,
+ * selected with the same parameters as the other TIFF writers.  An
+ * instance is not thread-safe.</p>
+ */
+public class TiffTiledImageWriter {
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Supplies the uncompressed samples for each tile of an image.
+     */
+    public interface TileProducer {
+        /**
+         * Gets the samples for a tile, as they would appear in an
+         * uncompressed TIFF: rows of {@code tileWidth} chunky pixels, each
+         * row padded to a whole byte.  Tiles on the right and bottom edges
+         * are full-size, with the area beyond the image padded.
+         *
+         * @param tileColumn the column of the tile, counting from the left
+         * @param tileRow the row of the tile, counting from the top
+         * @return the tile samples
+         * @throws IOException in the event of an I/O error
+         * @throws ImageWriteException if the tile cannot be produced
+         */
+        byte[] getTile(int tileColumn, int tileRow) throws IOException, ImageWriteException;
+    }
+
+    private final ByteOrder byteOrder;
+    private final int tileWidth;
+    private final int tileLength;
+    private final int compression;
+    private final int deflateLevel;
+    private final TiffLzwCompressor lzwCompressor = new TiffLzwCompressor();
+
+    /**
+     * Constructs a writer.
+     *
+     * @param byteOrder the byte order of the output
+     * @param tileWidth the tile width, a multiple of 16
+     * @param tileLength the tile length, a multiple of 16
+     * @param params optional compression parameters; may be null
+     * @throws ImageWriteException if the tile size or a parameter is invalid
+     */
+    public TiffTiledImageWriter(final ByteOrder byteOrder, final int tileWidth,
+            final int tileLength, Map<String, Object> params) throws ImageWriteException {
+        if (tileWidth <= 0 || tileLength <= 0 || tileWidth % 16 != 0 || tileLength % 16 != 0) {
+            throw new ImageWriteException("Tile dimensions must be positive multiples of 16: "
+                    + tileWidth + " x " + tileLength);
+        }
+        this.byteOrder = byteOrder;
+        this.tileWidth = tileWidth;
+        this.tileLength = tileLength;
+
+        params = params == null ? new HashMap<>() : new HashMap<>(params);
+
+        int compression = TiffConstants.TIFF_COMPRESSION_LZW; // LZW is default
+        if (params.containsKey(ImagingConstants.PARAM_KEY_COMPRESSION)) {
+            final Object value = params.remove(ImagingConstants.PARAM_KEY_COMPRESSION);
+            if (value != null) {
+                if (!(value instanceof Number)) {
+                    throw new ImageWriteException(
+                            "Invalid compression parameter, must be numeric: " + value);
+                }
+                compression = ((Number) value).intValue();
+            }
+        }
+        if (compression != TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED
+                && compression != TiffConstants.TIFF_COMPRESSION_PACKBITS
+                && compression != TiffConstants.TIFF_COMPRESSION_LZW
+                && compression != TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE
+                && compression != TiffConstants.TIFF_COMPRESSION_DEFLATE_PKZIP) {
+            throw new ImageWriteException(
+                    "Invalid compression parameter (Only LZW, Packbits, Deflate and uncompressed supported for tiles).");
+        }
+        this.compression = compression;
+
+        int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+        if (params.containsKey(TiffConstants.PARAM_KEY_DEFLATE_COMPRESSION_LEVEL)) {
+            final Object value = params.remove(TiffConstants.PARAM_KEY_DEFLATE_COMPRESSION_LEVEL);
+            if (!(value instanceof Number)) {
+                throw new ImageWriteException(
+                        "Invalid Deflate compression level parameter: " + value);
+            }
+            deflateLevel = ((Number) value).intValue();
+            if (deflateLevel < Deflater.DEFAULT_COMPRESSION
+                    || deflateLevel > Deflater.BEST_COMPRESSION) {
+                throw new ImageWriteException(
+                        "Deflate compression level " + deflateLevel
+                        + " is not in the range -1 to 9");
+            }
+        }
+        this.deflateLevel = deflateLevel;
+
+        if (!params.isEmpty()) {
+            final Object firstKey = params.keySet().iterator().next();
+            throw new ImageWriteException("Unknown parameter: " + firstKey);
+        }
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileLength() {
+        return tileLength;
+    }
+
+    /**
+     * Writes an image to a channel, starting at position zero.
+     *
+     * <p>The root directory of the output set receives the fields
+     * describing the image structure (ImageWidth, ImageLength,
+     * BitsPerSample, SamplesPerPixel, Compression and the tile fields),
+     * replacing any already present.  The caller supplies any others, such
+     * as PhotometricInterpretation, SampleFormat or GeoTIFF tags.</p>
+     *
+     * @param channel the destination; it is truncated to the size of the
+     * TIFF, but not closed
+     * @param outputSet the output set; BigTIFF is needed if the file may
+     * exceed 4 GB
+     * @param width the image width
+     * @param height the image height
+     * @param samplesPerPixel the number of samples per pixel
+     * @param bitsPerSample the number of bits in each sample
+     * @param producer the source of the tiles
+     * @throws IOException in the event of an I/O error
+     * @throws ImageWriteException if the image cannot be written
+     */
+    public void write(final SeekableByteChannel channel, final TiffOutputSet outputSet,
+            final int width, final int height, final int samplesPerPixel,
+            final int bitsPerSample, final TileProducer producer)
+            throws IOException, ImageWriteException {
+        final TiffOutputDirectory directory = outputSet.getOrCreateRootDirectory();
+        prepareDirectory(directory, width, height, samplesPerPixel, bitsPerSample);
+
+        long position = writeDirectories(channel, outputSet, null);
+        position = writeTiles(channel, position, directory, width, height,
+                samplesPerPixel, bitsPerSample, producer);
+        channel.truncate(position);
+    }
+
+    /**
+     * Adds the image structure fields to a directory, with placeholder
+     * tile data that reserves space for the offsets and byte counts.
+     */
+    void prepareDirectory(final TiffOutputDirectory directory,
+            final int width, final int height, final int samplesPerPixel,
+            final int bitsPerSample) throws ImageWriteException {
+        if (width <= 0 || height <= 0) {
+            throw new ImageWriteException("Invalid image size: " + width + " x " + height);
+        }
+        if (samplesPerPixel <= 0 || bitsPerSample <= 0 || bitsPerSample > 64) {
+            throw new ImageWriteException("Invalid sample layout: " + samplesPerPixel
+                    + " samples of " + bitsPerSample + " bits");
+        }
+
+        directory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH);
+        directory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH);
+        directory.removeField(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE);
+        directory.removeField(TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL);
+        directory.removeField(TiffTagConstants.TIFF_TAG_COMPRESSION);
+        directory.removeField(TiffTagConstants.TIFF_TAG_TILE_WIDTH);
+        directory.removeField(TiffTagConstants.TIFF_TAG_TILE_LENGTH);
+        directory.removeField(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP);
+
+        directory.add(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, width);
+        directory.add(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH, height);
+        final short[] bits = new short[samplesPerPixel];
+        Arrays.fill(bits, (short) bitsPerSample);
+        directory.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, bits);
+        directory.add(TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL, (short) samplesPerPixel);
+        directory.add(TiffTagConstants.TIFF_TAG_COMPRESSION, (short) compression);
+        directory.add(TiffTagConstants.TIFF_TAG_TILE_WIDTH, tileWidth);
+        directory.add(TiffTagConstants.TIFF_TAG_TILE_LENGTH, tileLength);
+
+        final long tileCount = (long) getTilesAcross(width) * getTilesDown(height);
+        if (tileCount > Integer.MAX_VALUE / 8) {
+            throw new ImageWriteException("Too many tiles: " + tileCount);
+        }
+
+        // Zero-length tiles lay out the directory and its offset and byte
+        // count arrays without any image data following them.
+        final TiffElement.DataElement[] placeholders = new TiffElement.DataElement[(int) tileCount];
+        final TiffImageData.Data empty = new TiffImageData.Data(0, 0, EMPTY);
+        Arrays.fill(placeholders, empty);
+        directory.setTiffImageData(new TiffImageData.Tiles(placeholders, tileWidth, tileLength));
+    }
+
+    /**
+     * Writes the header and all directories of an output set whose image
+     * data is made up of placeholders.
+     *
+     * @param leadingItem an item to place between the header and the first
+     * directory, or null
+     * @return the position following the directories
+     */
+    long writeDirectories(final SeekableByteChannel channel, final TiffOutputSet outputSet,
+            final TiffOutputItem leadingItem) throws IOException, ImageWriteException {
+        channel.position(0);
+        // NB: the stream is not closed, as that would close the channel
+        final OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel));
+        new TiffImageWriterLossy(byteOrder).write(os, outputSet, false, leadingItem);
+        os.flush();
+        return channel.position();
+    }
+
+    /**
+     * Streams the tiles of one image to the channel and then fills in the
+     * offsets and byte counts of its directory.
+     *
+     * @return the position following the last tile
+     */
+    long writeTiles(final SeekableByteChannel channel, long position,
+            final TiffOutputDirectory directory, final int width, final int height,
+            final int samplesPerPixel, final int bitsPerSample, final TileProducer producer)
+            throws IOException, ImageWriteException {
+        final int tilesAcross = getTilesAcross(width);
+        final int tilesDown = getTilesDown(height);
+        final int tileSize = getTileSize(samplesPerPixel, bitsPerSample);
+
+        final boolean classic = directory.getVersion() == TiffConstants.TIFF_CLASSIC;
+        final long[] offsets = new long[tilesAcross * tilesDown];
+        final long[] byteCounts = new long[offsets.length];
+        for (int row = 0, i = 0; row < tilesDown; row++) {
+            for (int column = 0; column < tilesAcross; column++, i++) {
+                final byte[] tile = producer.getTile(column, row);
+                checkTile(tile, column, row, tileSize);
+                final byte[] compressed = compress(tile);
+                if (classic && position + compressed.length > 0xFFFFFFFFL) {
+                    throw new ImageWriteException(
+                            "Image data exceeds 4 GB; a BigTIFF output set is required");
+                }
+                writeFully(channel, position, compressed);
+                offsets[i] = position;
+                byteCounts[i] = compressed.length;
+                position += compressed.length;
+            }
+        }
+
+        patchTiles(channel, directory, offsets, byteCounts);
+        return position;
+    }
+
+    /**
+     * Fills in the offsets and byte counts of a directory written by
+     * {@link #writeDirectories}.
+     */
+    void patchTiles(final SeekableByteChannel channel, final TiffOutputDirectory directory,
+            final long[] offsets, final long[] byteCounts)
+            throws IOException, ImageWriteException {
+        patchField(channel, directory, TiffTagConstants.TIFF_TAG_TILE_OFFSETS.tag, offsets);
+        patchField(channel, directory, TiffTagConstants.TIFF_TAG_TILE_BYTE_COUNTS.tag, byteCounts);
+    }
+
+    /**
+     * Gets the length of an uncompressed tile, in bytes.
+     */
+    int getTileSize(final int samplesPerPixel, final int bitsPerSample)
+            throws ImageWriteException {
+        final long tileSize = (((long) tileWidth * samplesPerPixel * bitsPerSample + 7) / 8)
+                * tileLength;
+        if (tileSize > Integer.MAX_VALUE) {
+            throw new ImageWriteException("Tile is too large: " + tileSize + " bytes");
+        }
+        return (int) tileSize;
+    }
+
+    static void checkTile(final byte[] tile, final int column, final int row,
+            final int tileSize) throws ImageWriteException {
+        if (tile == null || tile.length != tileSize) {
+            throw new ImageWriteException("Tile (" + column + ", " + row
+                    + ") has " + (tile == null ? "no data" : tile.length + " bytes")
+                    + ", expected " + tileSize);
+        }
+    }
+
+    int getTilesAcross(final int width) {
+        return (width + tileWidth - 1) / tileWidth;
+    }
+
+    int getTilesDown(final int height) {
+        return (height + tileLength - 1) / tileLength;
+    }
+
+    byte[] compress(final byte[] tile) throws IOException, ImageWriteException {
+        switch (compression) {
+        case TiffConstants.TIFF_COMPRESSION_PACKBITS:
+            return new PackBits().compress(tile);
+        case TiffConstants.TIFF_COMPRESSION_LZW:
+            return lzwCompressor.compress(tile);
+        case TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE:
+        case TiffConstants.TIFF_COMPRESSION_DEFLATE_PKZIP:
+            return ZlibDeflate.compress(tile, deflateLevel);
+        default:
+            return tile;
+        }
+    }
+
+    /**
+     * Overwrites the LONG or LONG8 value of a field written by
+     * {@link #writeDirectories}, which is either held in the directory
+     * entry or, if too large, at a separate offset.
+     */
+    private void patchField(final SeekableByteChannel channel,
+            final TiffOutputDirectory directory, final int tag, final long[] values)
+            throws IOException, ImageWriteException {
+        final TiffOutputField field = directory.findField(tag);
+        if (field == null || field.count != values.length) {
+            throw new ImageWriteException("Missing placeholder for tag " + tag);
+        }
+        final byte[] bytes;
+        if (field.fieldType == FieldType.LONG8) {
+            bytes = FieldType.LONG8.writeData(values, byteOrder);
+        } else if (field.fieldType == FieldType.LONG) {
+            final int[] ints = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ints[i] = (int) values[i];
+            }
+            bytes = FieldType.LONG.writeData(ints, byteOrder);
+        } else {
+            throw new ImageWriteException("Unexpected type for tag " + tag);
+        }
+
+        final boolean classic = directory.getVersion() == TiffConstants.TIFF_CLASSIC;
+        final long position;
+        if (classic ? field.isLocalValue() : field.isLocalValueLong8()) {
+            // the fields were sorted when the directory was written
+            final int index = directory.getFields().indexOf(field);
+            position = directory.getOffset() + (classic
+                    ? TiffConstants.TIFF_DIRECTORY_HEADER_LENGTH
+                            + (long) index * TiffConstants.TIFF_ENTRY_LENGTH
+                            + TiffConstants.TIFF_ENTRY_LENGTH
+                            - TiffConstants.TIFF_ENTRY_MAX_VALUE_LENGTH
+                    : TiffConstants.BIG_TIFF_DIRECTORY_HEADER_LENGTH
+                            + (long) index * TiffConstants.BIG_TIFF_ENTRY_LENGTH
+                            + TiffConstants.BIG_TIFF_ENTRY_LENGTH
+                            - TiffConstants.BIG_TIFF_ENTRY_MAX_VALUE_LENGTH);
+        } else {
+            position = field.getSeperateValue().getOffset();
+        }
+        writeFully(channel, position, bytes);
+    }
+
+    static void writeFully(final SeekableByteChannel channel, final long position,
+            final byte[] bytes) throws IOException {
+        channel.position(position);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        final BufferPool pool = new BufferPool(1 << 20);
+        assertEquals(1024, pool.acquire(1).length);
+        assertEquals(1024, pool.acquire(1024).length);
+        assertEquals(2048, pool.acquire(1025).length);
+        assertEquals(65536, pool.acquire(49152).length);
+        assertEquals(4, pool.getAllocationCount());
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testReuse() {
+        final BufferPool pool = new BufferPool(1 << 20);
+        final byte[] array = pool.acquire(5000);
+        pool.release(array);
+        assertEquals(8192, pool.getRetainedBytes());
+
+        assertSame(array, pool.acquire(6000));
+        assertEquals(1, pool.getReuseCount());
+        assertEquals(0, pool.getRetainedBytes());
+
+        // a different size class is not served by the pooled array
+        pool.release(array);
+        assertNotSame(array, pool.acquire(9000));
+        assertEquals(2, pool.getAllocationCount());
+
+        // arrays of other lengths are not accepted
+        pool.release(new byte[3000]);
+        pool.release(null);
+        assertEquals(8192, pool.getRetainedBytes());
+
+        pool.clear();
+        assertEquals(0, pool.getRetainedBytes());
+    }
+
+    @Test
+    public void testBound() {
+        final BufferPool pool = new BufferPool(3 * 4096);
+        final List<byte[]> arrays = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            arrays.add(pool.acquire(4096));
+        }
+        for (final byte[] array : arrays) {
+            pool.release(array);
+        }
+        assertEquals(3 * 4096, pool.getRetainedBytes());
+        assertTrue(pool.getRetainedBytes() <= pool.getMaxBytes());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final BufferPool pool = new BufferPool(1 << 20);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int id = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        final byte[] array = pool.acquire(2000 + (i % 3) * 3000);
+                        array[0] = (byte) id;
+                        array[1999] = (byte) id;
+                        Thread.yield();
+                        // no other thread holds the array while it is borrowed
+                        assertEquals(id, array[0]);
+                        assertEquals(id, array[1999]);
+                        pool.release(array);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // at most one array per thread in each size class was ever needed
+        assertTrue(pool.getAllocationCount() <= 4 * 3);
+        assertEquals(4 * 1000, pool.getAllocationCount() + pool.getReuseCount());
+    }
+}
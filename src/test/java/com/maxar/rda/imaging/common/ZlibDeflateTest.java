@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.ImageWriteException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+public class ZlibDeflateTest {
+
+    private static byte[] getTestData(final int length) {
+        final Random random = new Random(length);
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            // runs of repeated values with some noise, like image rows
+            bytes[i] = (byte) ((i / 7) % 50 + (random.nextInt(4) == 0 ? random.nextInt(3) : 0));
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testRoundtrip() throws Exception {
+        for (final int length : new int[] {0, 1, 100, 65536, 1 << 20}) {
+            final byte[] src = getTestData(length);
+            for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+                final byte[] compressed = ZlibDeflate.compress(src, level);
+                assertArrayEquals(src, ZlibDeflate.decompress(compressed, length));
+            }
+        }
+    }
+
+    @Test
+    public void testIncompressibleData() throws Exception {
+        final byte[] src = new byte[100000];
+        new Random(1).nextBytes(src);
+        final byte[] compressed = ZlibDeflate.compress(src, Deflater.BEST_COMPRESSION);
+        assertArrayEquals(src, ZlibDeflate.decompress(compressed, src.length));
+    }
+
+    @Test
+    public void testShortData() throws Exception {
+        final byte[] src = getTestData(1000);
+        final byte[] compressed = ZlibDeflate.compress(src, Deflater.DEFAULT_COMPRESSION);
+        final byte[] result = ZlibDeflate.decompress(compressed, 1200);
+        assertEquals(1200, result.length);
+        assertArrayEquals(src, Arrays.copyOf(result, 1000));
+        for (int i = 1000; i < result.length; i++) {
+            assertEquals(0, result[i]);
+        }
+    }
+
+    @Test
+    public void testLevelAffectsSize() throws Exception {
+        final byte[] src = getTestData(65536);
+        final byte[] stored = ZlibDeflate.compress(src, Deflater.NO_COMPRESSION);
+        final byte[] best = ZlibDeflate.compress(src, Deflater.BEST_COMPRESSION);
+        assertTrue(best.length < stored.length);
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testInvalidData() throws Exception {
+        ZlibDeflate.decompress(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, 100);
+    }
+
+    @Test(expected = ImageWriteException.class)
+    public void testInvalidLevel() throws Exception {
+        ZlibDeflate.compress(new byte[10], 10);
+    }
+}
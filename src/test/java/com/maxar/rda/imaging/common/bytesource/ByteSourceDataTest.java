@@ -18,6 +18,8 @@
 package com.maxar.rda.imaging.common.bytesource;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -25,6 +27,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collection;
 
@@ -63,6 +66,39 @@ public class ByteSourceDataTest extends ByteSourceTest {
         }
     }
 
+    private class ByteSourceMappedFactory implements ByteSourceFactory {
+        private final int segmentSize;
+
+        ByteSourceMappedFactory(final int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        @Override
+        public ByteSource getByteSource(final byte src[]) throws IOException {
+            final File file = createTempFile(src);
+
+            return new ByteSourceMapped(file, segmentSize);
+        }
+    }
+
+    private class ByteSourceChannelFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) throws IOException {
+            final File file = createTempFile(src);
+
+            return new ByteSourceChannel(file);
+        }
+    }
+
+    private class ByteSourceAsyncFileFactory implements ByteSourceFactory {
+        @Override
+        public ByteSource getByteSource(final byte src[]) throws IOException {
+            final File file = createTempFile(src);
+
+            return new ByteSourceAsyncFile(file);
+        }
+    }
+
     private class ByteSourceInputStreamFileFactory implements ByteSourceFactory {
         @Override
         public ByteSource getByteSource(final byte src[]) throws IOException {
@@ -132,12 +168,109 @@ public class ByteSourceDataTest extends ByteSourceTest {
             }
         }
 
+        // test positional reads into a direct buffer, and read-only slices
+        assertEquals(src.length, byteSource.getLength());
+        for (int start = 0; start < Math.min(src.length, 64); start += 5) {
+            final int length = Math.min(src.length - start, 23);
+            final byte[] expected = Arrays.copyOfRange(src, start, start + length);
+
+            final ByteBuffer dst = ByteBuffer.allocateDirect(length + 2);
+            dst.position(1);
+            dst.limit(1 + length);
+            byteSource.read(start, dst);
+            assertFalse(dst.hasRemaining());
+            final byte[] actual = new byte[length];
+            dst.position(1);
+            dst.get(actual);
+            assertArrayEquals(expected, actual);
+
+            final ByteBuffer slice = byteSource.slice(start, length);
+            assertTrue(slice.isReadOnly());
+            assertEquals(0, slice.position());
+            assertEquals(length, slice.remaining());
+            slice.get(actual);
+            assertArrayEquals(expected, actual);
+
+            final ByteBuffer async = byteSource.readAsync(start, length).join();
+            assertEquals(0, async.position());
+            assertEquals(length, async.remaining());
+            async.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+        assertTrue(byteSource.readAsync(src.length, 1).isCompletedExceptionally());
     }
 
     @Test
     public void testByteSourceFileFactory() throws Exception {
         writeAndReadBytes(new ByteSourceFileFactory(), testByteArray);
     }
+
+    @Test
+    public void testByteSourceFileReopensAfterClose() throws Exception {
+        try (ByteSourceFile byteSource = (ByteSourceFile) new ByteSourceFileFactory()
+                .getByteSource(testByteArray)) {
+            for (int start = 0; start < Math.min(testByteArray.length, 64); start++) {
+                final int length = Math.min(testByteArray.length - start, 23);
+                assertArrayEquals(Arrays.copyOfRange(testByteArray, start, start + length),
+                        byteSource.getBlock(start, length));
+                byteSource.close();
+            }
+        }
+    }
+
+    @Test
+    public void testByteSourceMappedFactory() throws Exception {
+        writeAndReadBytes(new ByteSourceMappedFactory(ByteSourceMapped.DEFAULT_SEGMENT_SIZE), testByteArray);
+    }
+
+    @Test
+    public void testByteSourceMappedSmallSegments() throws Exception {
+        // a tiny window size forces most blocks to straddle window boundaries
+        final ByteSourceMappedFactory factory = new ByteSourceMappedFactory(7);
+        writeAndReadBytes(factory, testByteArray);
+
+        final ByteSourceMapped byteSource = (ByteSourceMapped) factory.getByteSource(testByteArray);
+        for (int start = 0; start < Math.min(testByteArray.length, 64); start++) {
+            final int length = Math.min(testByteArray.length - start, 23);
+            final byte[] expected = Arrays.copyOfRange(testByteArray, start, start + length);
+            assertArrayEquals(expected, byteSource.getBlock(start, length));
+
+            final ByteBuffer buffer = byteSource.getBuffer(start, length);
+            assertTrue(buffer.isReadOnly());
+            final byte[] actual = new byte[buffer.remaining()];
+            buffer.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testByteSourceChannelFactory() throws Exception {
+        final ByteSourceChannelFactory factory = new ByteSourceChannelFactory();
+        writeAndReadBytes(factory, testByteArray);
+
+        try (ByteSourceChannel byteSource = (ByteSourceChannel) factory.getByteSource(testByteArray)) {
+            for (int start = 0; start < Math.min(testByteArray.length, 64); start++) {
+                final int length = Math.min(testByteArray.length - start, 23);
+                assertArrayEquals(Arrays.copyOfRange(testByteArray, start, start + length),
+                        byteSource.getBlock(start, length));
+            }
+        }
+    }
+
+    @Test
+    public void testByteSourceAsyncFileFactory() throws Exception {
+        final ByteSourceAsyncFileFactory factory = new ByteSourceAsyncFileFactory();
+        writeAndReadBytes(factory, testByteArray);
+
+        try (ByteSourceAsyncFile byteSource = (ByteSourceAsyncFile) factory.getByteSource(testByteArray)) {
+            for (int start = 0; start < Math.min(testByteArray.length, 64); start++) {
+                final int length = Math.min(testByteArray.length - start, 23);
+                assertArrayEquals(Arrays.copyOfRange(testByteArray, start, start + length),
+                        byteSource.getBlock(start, length));
+            }
+        }
+    }
+
     @Test
     public void testByteSourceInputStreamFileFactory() throws Exception {
         writeAndReadBytes(new ByteSourceInputStreamFileFactory(), testByteArray);
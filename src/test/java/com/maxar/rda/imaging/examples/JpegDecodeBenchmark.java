@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.examples;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.jpeg.decoder.BitSerialJpegDecoder;
+import com.maxar.rda.imaging.formats.jpeg.decoder.JpegDecoder;
+
+/**
+ * A "test stand" for measuring the speed of the baseline JPEG decoder.
+ * <p>
+ * The decoder is timed decoding to a BufferedImage, as the JPEG parser
+ * does, and to samples, as the TIFF readers do for JPEG-compressed
+ * tiles.  It is also timed decoding to images of 1/2, 1/4 and 1/8 scale,
+ * and to an image in parallel, with one task per few restart intervals.
+ * Finally the entropy decoding alone, the Huffman decoding and the
+ * extraction of coefficients without their inverse DCT, is timed with the
+ * lookahead tables and with the bit-serial DECODE procedure of T.81 that
+ * they replaced, and the speed-up is reported against the target of 3 to
+ * 5 times.  All rates count the pixels of the full image.  Given no file, a 2048
+ * by 2048 photograph-like image is synthesized and encoded at a high
+ * quality, so that entropy decoding takes a large share of the time,
+ * with a restart interval of one row of MCUs.  To measure a change to
+ * the decoder, run the benchmark before and after it.
+ */
+public class JpegDecodeBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optionally, the path to a baseline JPEG file
+     * @throws Exception in the event of an unrecoverable error
+     */
+    public static void main(final String[] args) throws Exception {
+        final byte[] jpeg = args.length > 0 ? Files.readAllBytes(new File(args[0]).toPath())
+                : synthesize(2048, 2048, 0.95f);
+        final BufferedImage image = new JpegDecoder().decode(new ByteSourceArray(jpeg));
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        System.out.format("JPEG: %d by %d, %d bytes%n%n", width, height, jpeg.length);
+
+        final byte[] samples = new byte[width * height * 3];
+        System.out.format("  decode to      time ms    MPixel/s%n");
+        double sum = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            final long time0 = System.nanoTime();
+            new JpegDecoder().decode(new ByteSourceArray(jpeg));
+            if (i >= WARMUP) {
+                sum += System.nanoTime() - time0;
+            }
+        }
+        report("image", sum, width, height);
+
+        sum = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            final long time0 = System.nanoTime();
+            new JpegDecoder(null).decodeSamples(jpeg, samples, width, height);
+            if (i >= WARMUP) {
+                sum += System.nanoTime() - time0;
+            }
+        }
+        report("samples", sum, width, height);
+
+        for (final int scale : new int[] {2, 4, 8}) {
+            sum = 0;
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                final long time0 = System.nanoTime();
+                final JpegDecoder decoder = new JpegDecoder();
+                decoder.setScale(scale);
+                decoder.decode(new ByteSourceArray(jpeg));
+                if (i >= WARMUP) {
+                    sum += System.nanoTime() - time0;
+                }
+            }
+            report("image 1/" + scale, sum, width, height);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool();
+        try {
+            sum = 0;
+            for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+                final long time0 = System.nanoTime();
+                final JpegDecoder decoder = new JpegDecoder();
+                decoder.setExecutor(pool);
+                decoder.decode(new ByteSourceArray(jpeg));
+                if (i >= WARMUP) {
+                    sum += System.nanoTime() - time0;
+                }
+            }
+            report("parallel", sum, width, height);
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.format("%n  entropy        time ms    MPixel/s%n");
+        final double bitSerial = timeEntropy(jpeg, true);
+        report("bit-serial", bitSerial, width, height);
+        final double lookahead = timeEntropy(jpeg, false);
+        report("lookahead", lookahead, width, height);
+        System.out.format("%n  entropy decoding speed-up: %.2fx (target 3-5x)%n",
+                bitSerial / lookahead);
+    }
+
+    private static double timeEntropy(final byte[] jpeg, final boolean bitSerial)
+            throws Exception {
+        double sum = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            final long time0 = System.nanoTime();
+            BitSerialJpegDecoder.decodeEntropy(jpeg, bitSerial);
+            if (i >= WARMUP) {
+                sum += System.nanoTime() - time0;
+            }
+        }
+        return sum;
+    }
+
+    private static void report(final String label, final double sumNanos, final int width,
+            final int height) {
+        final double ms = sumNanos / (ITERATIONS * 1000000.0);
+        System.out.format("  %-10s %9.3f %11.2f%n", label, ms, width * (double) height / (ms * 1000));
+    }
+
+    /**
+     * Encodes an image of smooth gradients with added noise, which
+     * compresses about as well as aerial photography, with a restart
+     * marker after each row of 16 by 16 MCUs.
+     */
+    private static byte[] synthesize(final int width, final int height, final float quality)
+            throws Exception {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        final Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int r = clamp((x * 255) / width + random.nextInt(32) - 16);
+                final int g = clamp((y * 255) / height + random.nextInt(32) - 16);
+                final int b = clamp(((x ^ y) & 0xff) / 2 + random.nextInt(32));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        final IIOMetadata metadata = writer.getDefaultImageMetadata(
+                new ImageTypeSpecifier(image), param);
+        final String format = "javax_imageio_jpeg_image_1.0";
+        final Node root = metadata.getAsTree(format);
+        final Node markers = ((Element) root).getElementsByTagName("markerSequence").item(0);
+        final IIOMetadataNode dri = new IIOMetadataNode("dri");
+        dri.setAttribute("interval", Integer.toString((width + 15) / 16));
+        markers.insertBefore(dri, markers.getFirstChild());
+        metadata.setFromTree(format, root);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    private static int clamp(final int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
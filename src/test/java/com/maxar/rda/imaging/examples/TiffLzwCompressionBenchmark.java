@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.examples;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.maxar.rda.imaging.common.mylzw.MyLzwCompressor;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwCompressor;
+
+/**
+ * A "test stand" comparing the throughput of MyLzwCompressor with
+ * TiffLzwCompressor, in megabytes of uncompressed input per second.
+ * <p>
+ * Two kinds of strip are compressed: 8-bit RGB, resembling a smooth
+ * photograph with sensor noise, and 16-bit single-band data, resembling
+ * 11-bit panchromatic imagery.  Each compressor is warmed up before
+ * timing, and the outputs are checked to be identical.
+ */
+public class TiffLzwCompressionBenchmark {
+
+    private static final int WIDTH = 2048;
+    private static final int ROWS_PER_STRIP = 64;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+
+    private interface Compressor {
+        byte[] compress(byte[] bytes) throws IOException;
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args not used
+     * @throws IOException in the event of an unexpected compression failure
+     */
+    public static void main(final String[] args) throws IOException {
+        final Random random = new Random(0);
+
+        final byte[] rgb = new byte[WIDTH * ROWS_PER_STRIP * 3];
+        for (int y = 0, k = 0; y < ROWS_PER_STRIP; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                rgb[k++] = (byte) (x / 8 + random.nextInt(3));
+                rgb[k++] = (byte) (y * 2 + random.nextInt(3));
+                rgb[k++] = (byte) ((x + y) / 16 + random.nextInt(3));
+            }
+        }
+
+        final byte[] pan16 = new byte[WIDTH * ROWS_PER_STRIP * 2];
+        for (int y = 0, k = 0; y < ROWS_PER_STRIP; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int v = (300 + x / 2 + y * 3 + random.nextInt(8)) & 0x7ff;
+                pan16[k++] = (byte) (v >> 8);
+                pan16[k++] = (byte) v;
+            }
+        }
+
+        final TiffLzwCompressor tableCompressor = new TiffLzwCompressor();
+        final Compressor original = bytes ->
+                new MyLzwCompressor(8, ByteOrder.BIG_ENDIAN, true).compress(bytes);
+        final Compressor table = tableCompressor::compress;
+
+        System.out.format("strip                 compressor     MB/s    ratio%n");
+        run("8-bit RGB", rgb, original, table);
+        run("16-bit single band", pan16, original, table);
+    }
+
+    private static void run(final String name, final byte[] strip,
+            final Compressor original, final Compressor table) throws IOException {
+        final byte[] a = original.compress(strip);
+        final byte[] b = table.compress(strip);
+        if (!Arrays.equals(a, b)) {
+            throw new IllegalStateException("Compressor outputs differ for " + name);
+        }
+        final double ratio = (double) strip.length / a.length;
+        System.out.format("%-20s  %-12s %8.1f %8.2f%n", name, "MyLzw",
+                throughput(strip, original), ratio);
+        System.out.format("%-20s  %-12s %8.1f %8.2f%n", name, "TiffLzw",
+                throughput(strip, table), ratio);
+    }
+
+    private static double throughput(final byte[] strip, final Compressor compressor)
+            throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            compressor.compress(strip);
+        }
+        final long time0 = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            compressor.compress(strip);
+        }
+        final double seconds = (System.nanoTime() - time0) / 1.0e9;
+        return (double) strip.length * ITERATIONS / (1024.0 * 1024.0) / seconds;
+    }
+}
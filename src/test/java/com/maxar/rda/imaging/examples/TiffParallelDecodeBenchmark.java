@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.examples;
+
+import static com.maxar.rda.imaging.examples.BenchmarkSupport.getPixels;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.TiffImageParser;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+
+/**
+ * A "test stand" for measuring how tiled TIFF decoding scales with the
+ * number of threads supplied through TiffConstants.PARAM_KEY_EXECUTOR.
+ * <p>
+ * The image is decoded once serially to establish a baseline, then with
+ * pools of 1, 2, 4, 8 and 16 threads.  Each configuration is warmed up
+ * before timing, and each parallel result is checked against the serial
+ * one.  For meaningful numbers use a large tiled image with a
+ * compression scheme (e.g. LZW) so that decoding dominates I/O.
+ */
+public class TiffParallelDecodeBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the path to a tiled TIFF file
+     * @throws Exception in the event of an unrecoverable error
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: TiffParallelDecodeBenchmark <tiled tiff file>");
+            System.exit(-1);
+        }
+        final File target = new File(args[0]);
+        final TiffImageParser parser = new TiffImageParser();
+
+        final BufferedImage reference = parser.getBufferedImage(
+                new ByteSourceFile(target), new HashMap<>());
+        final int[] expected = getPixels(reference);
+        System.out.format("Processing file: %s%n", target.getName());
+        System.out.format(" image size: %d by %d%n%n",
+                reference.getWidth(), reference.getHeight());
+
+        final double serialTime = time(parser, target, new HashMap<>(), expected);
+        System.out.format(" threads    time ms    speedup%n");
+        System.out.format("  serial  %9.3f %9.2f%n", serialTime, 1.0);
+
+        for (final int nThreads : THREAD_COUNTS) {
+            final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+            try {
+                final Map<String, Object> params = new HashMap<>();
+                params.put(TiffConstants.PARAM_KEY_EXECUTOR, executor);
+                final double t = time(parser, target, params, expected);
+                System.out.format("  %6d  %9.3f %9.2f%n", nThreads, t, serialTime / t);
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Decodes the image repeatedly and returns the mean time in
+     * milliseconds for the timed iterations.
+     */
+    private static double time(final TiffImageParser parser, final File target,
+            final Map<String, Object> params, final int[] expected) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            parser.getBufferedImage(new ByteSourceFile(target), params);
+        }
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long time0 = System.nanoTime();
+            final BufferedImage image = parser.getBufferedImage(
+                    new ByteSourceFile(target), params);
+            sum += System.nanoTime() - time0;
+            if (!Arrays.equals(expected, getPixels(image))) {
+                throw new IllegalStateException("Decoded image differs from serial result");
+            }
+        }
+        return sum / (ITERATIONS * 1000000.0);
+    }
+}
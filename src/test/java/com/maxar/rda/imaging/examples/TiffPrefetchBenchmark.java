@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.examples;
+
+import static com.maxar.rda.imaging.examples.BenchmarkSupport.getPixels;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSourceAsyncFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.TiffImageParser;
+import com.maxar.rda.imaging.formats.tiff.TiffReadPlanner;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+
+/**
+ * A "test stand" for measuring how reading ahead with
+ * TiffConstants.PARAM_KEY_PREFETCH_DEPTH overlaps I/O with decoding.
+ * <p>
+ * The image is read through a ByteSourceAsyncFile with prefetch depths
+ * of 0, 1, 2, 4 and 8, with each tile read on its own so that every tile
+ * is a separate read.  Each result is checked against a reference read.
+ * Reading ahead matters most when the file is not in the page cache, so
+ * an optional second argument gives a shell command that is run before
+ * every timed read to drop the cache, for example
+ * {@code "sync; echo 3 > /proc/sys/vm/drop_caches"} on Linux (which
+ * requires root).  Without it, the reads are warm and the numbers show
+ * the overhead of prefetching rather than its benefit.
+ */
+public class TiffPrefetchBenchmark {
+
+    private static final int[] DEPTHS = {0, 1, 2, 4, 8};
+    private static final int WARMUP = 2;
+    private static final int ITERATIONS = 5;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the path to a TIFF file, and optionally a command to
+     * drop the page cache
+     * @throws Exception in the event of an unrecoverable error
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println(
+                    "Usage: TiffPrefetchBenchmark <tiff file> [drop cache command]");
+            System.exit(-1);
+        }
+        final File target = new File(args[0]);
+        final String dropCache = args.length > 1 ? args[1] : null;
+        final TiffImageParser parser = new TiffImageParser();
+
+        final BufferedImage reference = parser.getBufferedImage(
+                new ByteSourceFile(target), new HashMap<>());
+        final int[] expected = getPixels(reference);
+        System.out.format("Processing file: %s%n", target.getName());
+        System.out.format(" image size: %d by %d%n", reference.getWidth(),
+                reference.getHeight());
+        System.out.format(" page cache: %s%n%n", dropCache == null ? "warm" : "cold");
+
+        double baseline = 0;
+        System.out.format("   depth    time ms    speedup%n");
+        for (final int depth : DEPTHS) {
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_PREFETCH_DEPTH, depth);
+            params.put(TiffConstants.PARAM_KEY_READ_PLANNER, new TiffReadPlanner(0, 0));
+            final double t = time(parser, target, params, expected, dropCache);
+            if (depth == 0) {
+                baseline = t;
+            }
+            System.out.format("  %6d  %9.3f %9.2f%n", depth, t, baseline / t);
+        }
+    }
+
+    /**
+     * Reads the image repeatedly and returns the mean time in
+     * milliseconds for the timed iterations.
+     */
+    private static double time(final TiffImageParser parser, final File target,
+            final Map<String, Object> params, final int[] expected, final String dropCache)
+            throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            try (ByteSourceAsyncFile byteSource = new ByteSourceAsyncFile(target)) {
+                parser.getBufferedImage(byteSource, params);
+            }
+        }
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (dropCache != null) {
+                final int status = new ProcessBuilder("sh", "-c", dropCache)
+                        .inheritIO().start().waitFor();
+                if (status != 0) {
+                    throw new IllegalStateException("Cache drop command failed: " + status);
+                }
+            }
+            try (ByteSourceAsyncFile byteSource = new ByteSourceAsyncFile(target)) {
+                final long time0 = System.nanoTime();
+                final BufferedImage image = parser.getBufferedImage(byteSource, params);
+                sum += System.nanoTime() - time0;
+                if (!Arrays.equals(expected, getPixels(image))) {
+                    throw new IllegalStateException("Decoded image differs from reference");
+                }
+            }
+        }
+        return sum / (ITERATIONS * 1000000.0);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+
+package com.maxar.rda.imaging.formats.jpeg.decoder;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.formats.jpeg.segments.DhtSegment;
+import com.maxar.rda.imaging.formats.jpeg.segments.SofnSegment;
+import java.io.IOException;
+
+/**
+ * A decoder that reads each Huffman code and each run of magnitude bits
+ * one bit at a time, with the DECODE and RECEIVE procedures of T.81, as
+ * the decoder did before its lookahead tables, which decode most codes
+ * together with their magnitude bits.  It decodes the same
+ * images as {@link JpegDecoder}, and is the reference against which the
+ * benchmarks measure the entropy decoder; since it reads through the
+ * same bit reservoir, it understates the gain over the original decoder.
+ */
+public class BitSerialJpegDecoder extends JpegDecoder {
+
+    /**
+     * Decodes only the entropy-coded data of a stream: the Huffman codes
+     * and magnitude bits of the coefficients of each block, which are
+     * then dropped without being dequantized or transformed.  The MCUs
+     * are still rescaled, but their samples are written to a single pixel.
+     *
+     * @param jpeg the stream
+     * @param bitSerial whether to decode bit by bit, rather than with the
+     * lookahead tables
+     * @throws ImageReadException if the stream is not valid or not supported
+     * @throws IOException in the event of an I/O error
+     */
+    public static void decodeEntropy(final byte[] jpeg, final boolean bitSerial)
+            throws ImageReadException, IOException {
+        final JpegDecoder decoder = bitSerial ? new BitSerialJpegDecoder() {
+            @Override
+            void reconstructBlock(final McuScratch scratch,
+                    final SofnSegment.Component frameComponent, final Block fullBlock,
+                    final int x, final int y) {
+            }
+        } : new JpegDecoder() {
+            @Override
+            void reconstructBlock(final McuScratch scratch,
+                    final SofnSegment.Component frameComponent, final Block fullBlock,
+                    final int x, final int y) {
+            }
+        };
+        decoder.decodeSamples(jpeg, new byte[4], 1, 1);
+    }
+
+    @Override
+    int decodeCoefficient(final JpegInputStream is,
+            final DhtSegment.HuffmanTable huffmanTable) throws ImageReadException {
+        final int value = decode(is, huffmanTable);
+        return (receiveExtend(value & 0xf, is) << 8) | value;
+    }
+
+    @Override
+    int receiveExtend(final int ssss, final JpegInputStream is) throws ImageReadException {
+        // "RECEIVE", section F.2.2.4, figure F.17, page 110 of T.81
+        int v = 0;
+        for (int i = 0; i < ssss; i++) {
+            v = (v << 1) + is.nextBit();
+        }
+        // "EXTEND", section F.2.2.1, figure F.12, page 105 of T.81
+        if (ssss > 0 && v < (1 << (ssss - 1))) {
+            v += (-1 << ssss) + 1;
+        }
+        return v;
+    }
+
+    @Override
+    int decode(final JpegInputStream is, final DhtSegment.HuffmanTable huffmanTable)
+            throws ImageReadException {
+        // "DECODE", section F.2.2.3, figure F.16, page 109 of T.81
+        int i = 1;
+        int code = is.nextBit();
+        while (code > huffmanTable.getMaxCode(i)) {
+            i++;
+            if (i > 16) {
+                throw new ImageReadException("Invalid Huffman code");
+            }
+            code = (code << 1) | is.nextBit();
+        }
+        int j = huffmanTable.getValPtr(i);
+        j += code - huffmanTable.getMinCode(i);
+        return huffmanTable.getHuffVal(j);
+    }
+}
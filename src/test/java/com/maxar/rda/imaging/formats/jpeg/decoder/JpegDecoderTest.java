@@ -0,0 +1,245 @@
+/*
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  under the License.
+ */
+
+package com.maxar.rda.imaging.formats.jpeg.decoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.jpeg.JpegConstants;
+import com.maxar.rda.imaging.formats.jpeg.JpegImageParser;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+public class JpegDecoderTest {
+    // not a multiple of the MCU size, so that the last MCUs are clipped
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 157;
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Encodes a noisy image with the given restart interval, in MCUs.
+     */
+    private static byte[] encode(final int type, final int restartInterval) throws Exception {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        final Random random = new Random(restartInterval);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+        final IIOMetadata metadata = writer.getDefaultImageMetadata(
+                new ImageTypeSpecifier(image), param);
+        final String format = "javax_imageio_jpeg_image_1.0";
+        final Node root = metadata.getAsTree(format);
+        final Node markers = ((Element) root).getElementsByTagName("markerSequence").item(0);
+        final IIOMetadataNode dri = new IIOMetadataNode("dri");
+        dri.setAttribute("interval", Integer.toString(restartInterval));
+        markers.insertBefore(dri, markers.getFirstChild());
+        metadata.setFromTree(format, root);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(baos)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+
+    private static int[] pixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+                image.getWidth());
+    }
+
+    @Test
+    public void testParallelImageIsIdentical() throws Exception {
+        for (final int restartInterval : new int[] {1, 3, 7, 1000}) {
+            final byte[] jpeg = encode(BufferedImage.TYPE_3BYTE_BGR, restartInterval);
+            final int[] serial = pixels(new JpegDecoder().decode(new ByteSourceArray(jpeg)));
+            final BufferedImage parallel = new JpegImageParser().getBufferedImage(
+                    new ByteSourceArray(jpeg),
+                    Collections.singletonMap(JpegConstants.PARAM_KEY_EXECUTOR, pool));
+            assertArrayEquals("interval " + restartInterval, serial, pixels(parallel));
+        }
+    }
+
+    @Test
+    public void testParallelSamplesAreIdentical() throws Exception {
+        for (final int type : new int[] {BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY}) {
+            final byte[] jpeg = encode(type, 2);
+            final byte[] serial = new byte[WIDTH * HEIGHT * 3];
+            final byte[] parallel = new byte[serial.length];
+            final int samplesPerPixel = new JpegDecoder().decodeSamples(
+                    jpeg, serial, WIDTH, HEIGHT);
+            final JpegDecoder decoder = new JpegDecoder();
+            decoder.setExecutor(pool);
+            assertEquals(samplesPerPixel, decoder.decodeSamples(jpeg, parallel, WIDTH, HEIGHT));
+            assertArrayEquals(serial, parallel);
+        }
+    }
+
+    @Test
+    public void testParallelErrorIsReported() throws Exception {
+        final byte[] jpeg = encode(BufferedImage.TYPE_3BYTE_BGR, 1);
+        // replace an interval in the middle of the scan with an invalid marker
+        int rst = 0;
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xf8) == 0xd0 && ++rst == 20) {
+                jpeg[i + 2] = (byte) 0xff;
+                jpeg[i + 3] = (byte) 0x01;
+                break;
+            }
+        }
+        final JpegDecoder decoder = new JpegDecoder();
+        decoder.setExecutor(pool);
+        try {
+            decoder.decode(new ByteSourceArray(jpeg));
+            fail();
+        } catch (final ImageReadException e) {
+            assertEquals("Invalid marker found in entropy data: 0xFF 1", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testBitSerialReferenceIsIdentical() throws Exception {
+        for (final int type : new int[] {BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY}) {
+            final byte[] jpeg = encode(type, 5);
+            assertArrayEquals(pixels(new JpegDecoder().decode(new ByteSourceArray(jpeg))),
+                    pixels(new BitSerialJpegDecoder().decode(new ByteSourceArray(jpeg))));
+            // only the entropy-coded data is decoded, all of it without error
+            BitSerialJpegDecoder.decodeEntropy(jpeg, false);
+            BitSerialJpegDecoder.decodeEntropy(jpeg, true);
+        }
+    }
+
+    /**
+     * Encodes an image of gradients that stay clear of black and white,
+     * whose box averages are close to the low frequencies that a reduced
+     * decode keeps, since no samples are clipped.
+     */
+    private static byte[] encodeSmooth() throws Exception {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int r = 64 + (x * 128) / WIDTH;
+                final int g = 64 + (y * 128) / HEIGHT;
+                final int b = 64 + ((x + y) * 128) / (WIDTH + HEIGHT);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpeg", baos));
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testReducedImageIsAverage() throws Exception {
+        final byte[] jpeg = encodeSmooth();
+        final BufferedImage full = new JpegDecoder().decode(new ByteSourceArray(jpeg));
+        for (final int scale : new int[] {2, 4, 8}) {
+            final BufferedImage reduced = new JpegImageParser().getBufferedImage(
+                    new ByteSourceArray(jpeg), Collections.singletonMap(
+                            JpegConstants.PARAM_KEY_SCALE_DENOMINATOR, scale));
+            assertEquals((WIDTH + scale - 1) / scale, reduced.getWidth());
+            assertEquals((HEIGHT + scale - 1) / scale, reduced.getHeight());
+
+            // compare with the averages of the whole boxes of the full image,
+            // which differ by the rounding of each of their samples
+            int maxError = 0;
+            long sumError = 0;
+            int n = 0;
+            for (int y = 0; y < HEIGHT / scale; y++) {
+                for (int x = 0; x < WIDTH / scale; x++) {
+                    final int rgb = reduced.getRGB(x, y);
+                    for (int shift = 0; shift < 24; shift += 8) {
+                        int sum = 0;
+                        for (int yy = 0; yy < scale; yy++) {
+                            for (int xx = 0; xx < scale; xx++) {
+                                sum += (full.getRGB(x * scale + xx, y * scale + yy) >> shift)
+                                        & 0xff;
+                            }
+                        }
+                        final int error = Math.abs(((rgb >> shift) & 0xff)
+                                - (sum + scale * scale / 2) / (scale * scale));
+                        maxError = Math.max(maxError, error);
+                        sumError += error;
+                        n++;
+                    }
+                }
+            }
+            assertTrue("1/" + scale + " maximum error " + maxError, maxError <= 8);
+            assertTrue("1/" + scale + " mean error " + (double) sumError / n,
+                    sumError <= 2L * n);
+        }
+    }
+
+    @Test
+    public void testReducedParallelIsIdentical() throws Exception {
+        final byte[] jpeg = encode(BufferedImage.TYPE_3BYTE_BGR, 3);
+        for (final int scale : new int[] {2, 4, 8}) {
+            final JpegDecoder serial = new JpegDecoder();
+            serial.setScale(scale);
+            final JpegDecoder parallel = new JpegDecoder();
+            parallel.setScale(scale);
+            parallel.setExecutor(pool);
+            assertArrayEquals(pixels(serial.decode(new ByteSourceArray(jpeg))),
+                    pixels(parallel.decode(new ByteSourceArray(jpeg))));
+        }
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testInvalidScale() throws Exception {
+        new JpegImageParser().getBufferedImage(new ByteSourceArray(encodeSmooth()),
+                Collections.singletonMap(JpegConstants.PARAM_KEY_SCALE_DENOMINATOR, 3));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.jpeg.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.maxar.rda.imaging.ImageReadException;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class JpegInputStreamTest {
+
+    @Test
+    public void testStuffedBytes() throws Exception {
+        // 0xFF 0x00 is a single 0xFF byte of data
+        final JpegInputStream is = stream(0xa5, 0xff, 0x00, 0x3c, 0xff, 0x00);
+        assertEquals(0xa, is.getBits(4));
+        assertEquals(0x5ff, is.peekBits(12));
+        assertEquals(0x5ff3, is.getBits(16));
+        assertTrue(is.hasNext());
+        assertEquals(1, is.nextBit());
+        assertEquals(0x4ff, is.getBits(11));
+        assertFalse(is.hasNext());
+    }
+
+    @Test
+    public void testEndOfData() throws Exception {
+        final JpegInputStream is = stream(0x81);
+        assertEquals(0x81 << 1, is.peekBits(9));
+        assertEquals(0x81, is.getBits(8));
+        try {
+            is.nextBit();
+            fail();
+        } catch (final ImageReadException e) {
+            assertEquals("Premature End of File", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMarkerEndsData() throws Exception {
+        final JpegInputStream is = stream(0x12, 0xff, 0xd9);
+        assertEquals(0x1200, is.peekBits(16));
+        assertEquals(0x12, is.getBits(8));
+        assertFalse(is.hasNext());
+        try {
+            is.nextBit();
+            fail();
+        } catch (final ImageReadException e) {
+            assertTrue(e.getMessage().startsWith("Invalid marker found"));
+        }
+    }
+
+    @Test
+    public void testIntervalsAreViews() throws Exception {
+        // two intervals divided by an RST0 marker, between unrelated bytes
+        final byte[] data = {0x55, (byte) 0xab, (byte) 0xff, (byte) 0xd0, (byte) 0xcd, 0x55};
+        final JpegInputStream[] intervals = JpegDecoder.splitByRstMarkers(
+                ByteBuffer.wrap(data).asReadOnlyBuffer(), 1, 4);
+        assertEquals(2, intervals.length);
+        assertEquals(0xab, intervals[0].getBits(8));
+        assertFalse(intervals[0].hasNext());
+        assertEquals(0xcd, intervals[1].getBits(8));
+        assertFalse(intervals[1].hasNext());
+    }
+
+    /**
+     * Places the bytes of an interval between other bytes, which
+     * the stream must not read.
+     */
+    private static JpegInputStream stream(final int... bytes) {
+        final byte[] data = new byte[bytes.length + 2];
+        data[0] = 0x55;
+        for (int i = 0; i < bytes.length; i++) {
+            data[i + 1] = (byte) bytes[i];
+        }
+        data[data.length - 1] = 0x55;
+        return new JpegInputStream(ByteBuffer.wrap(data).asReadOnlyBuffer(), 1, bytes.length + 1);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.createImage;
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.BufferPool;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import com.maxar.rda.imaging.formats.tiff.write.TiffTiledImageWriter;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffBufferPoolTest {
+    private static final int SIZE = 512;
+    private static final int TILE = 128;
+    private static final int TILES = (SIZE / TILE) * (SIZE / TILE);
+    private static final int BYTES_PER_TILE = TILE * TILE * 3;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("pooled", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void writeTiled(final int compression) throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN,
+                TiffConstants.TIFF_CLASSIC);
+        outputSet.addRootDirectory().add(
+                TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_RGB);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION, compression);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, TILE, TILE, params).write(
+                    channel, outputSet, SIZE, SIZE, 3, 8, (column, row) -> {
+                        final byte[] tile = new byte[BYTES_PER_TILE];
+                        for (int i = 0; i < tile.length; i++) {
+                            final int x = (i / 3) % TILE;
+                            final int y = i / (3 * TILE);
+                            tile[i] = (byte) ((column * TILE + x) / 3 + (row * TILE + y) / 5 + i % 3);
+                        }
+                        return tile;
+                    });
+        }
+    }
+
+
+    @Test
+    public void testPooledReadsMatch() throws Exception {
+        for (final int compression : new int[] {
+                TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED,
+                TiffConstants.TIFF_COMPRESSION_LZW,
+                TiffConstants.TIFF_COMPRESSION_PACKBITS,
+                TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE}) {
+            writeTiled(compression);
+            final int[] expected = read(new ByteSourceFile(file), null);
+
+            final BufferPool pool = new BufferPool(1 << 24);
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, pool);
+            assertArrayEquals(expected, read(new ByteSourceFile(file), params));
+            final long allocations = pool.getAllocationCount();
+            assertTrue(allocations > 0);
+
+            // in steady state every array is reused
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(expected, read(new ByteSourceFile(file), params));
+            }
+            assertEquals(allocations, pool.getAllocationCount());
+            assertTrue(pool.getReuseCount() >= 3 * TILES);
+        }
+    }
+
+    @Test
+    public void testSharedSlicesAreNotCopied() throws Exception {
+        writeTiled(TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED);
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final BufferPool pool = new BufferPool(1 << 24);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, pool);
+        assertArrayEquals(read(new ByteSourceArray(bytes), null),
+                read(new ByteSourceArray(bytes), params));
+        // the tiles are viewed in place, so only their output is borrowed
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(TILES - 1, pool.getReuseCount());
+    }
+
+    @Test
+    public void testPooledStrips() throws Exception {
+        final BufferedImage image = createImage(300, 200);
+        for (final int compression : new int[] {
+                TiffConstants.TIFF_COMPRESSION_LZW,
+                TiffConstants.TIFF_COMPRESSION_PACKBITS}) {
+            final Map<String, Object> writeParams = new HashMap<>();
+            writeParams.put(ImagingConstants.PARAM_KEY_COMPRESSION, compression);
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            new TiffImageParser().writeImage(image, baos, writeParams);
+            final byte[] bytes = baos.toByteArray();
+
+            final BufferPool pool = new BufferPool(1 << 24);
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, pool);
+            assertArrayEquals(read(new ByteSourceArray(bytes), null),
+                    read(new ByteSourceArray(bytes), params));
+            // the strips of one read share their arrays
+            assertTrue(pool.getAllocationCount() <= 3);
+            assertTrue(pool.getReuseCount() > 10);
+        }
+    }
+
+    @Test
+    public void testAllocationPerTile() throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+
+        writeTiled(TiffConstants.TIFF_COMPRESSION_LZW);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, new BufferPool(1 << 24));
+
+        final long id = Thread.currentThread().getId();
+        long unpooled = Long.MAX_VALUE;
+        long pooled = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = allocations.getThreadAllocatedBytes(id);
+            read(new ByteSourceFile(file), null);
+            unpooled = Math.min(unpooled, allocations.getThreadAllocatedBytes(id) - start);
+
+            start = allocations.getThreadAllocatedBytes(id);
+            read(new ByteSourceFile(file), params);
+            pooled = Math.min(pooled, allocations.getThreadAllocatedBytes(id) - start);
+        }
+
+        // each unpooled tile allocates at least its decompressed bytes and
+        // its compressed bytes, all of which the pool recovers
+        assertTrue("pooled " + pooled + " bytes, unpooled " + unpooled + " bytes",
+                unpooled - pooled >= (long) TILES * BYTES_PER_TILE);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.getPixels;
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.writeImage;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.tiff.TiffTestSupport.CountingByteSource;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TiffDirectoryCacheTest {
+
+    @Test
+    public void testRepeatedOpensSkipDirectoryReads() throws Exception {
+        final byte[] bytes = writeImage(40, 30, null);
+        final TiffDirectoryCache cache = new TiffDirectoryCache(1 << 20);
+
+        final CountingByteSource first = new CountingByteSource(new ByteSourceArray(bytes));
+        final TiffReader firstReader = new TiffReader(true);
+        firstReader.setDirectoryCache(cache, "image");
+        final TiffContents expected = firstReader.readDirectories(first, true,
+                FormatCompliance.getDefault());
+        assertTrue(first.reads > 0);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getFileCount());
+        assertTrue(cache.getSize() > 0);
+
+        final CountingByteSource second = new CountingByteSource(new ByteSourceArray(bytes));
+        final TiffReader secondReader = new TiffReader(true);
+        secondReader.setDirectoryCache(cache, "image");
+        final TiffContents contents = secondReader.readDirectories(second, true,
+                FormatCompliance.getDefault());
+        assertEquals(0, second.reads);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRatio(), 0.0);
+        assertEquals(expected.header.byteOrder, secondReader.getByteOrder());
+
+        // the image data of each read is bound to its own source
+        final TiffDirectory directory = contents.directories.get(0);
+        assertNotSame(expected.directories.get(0), directory);
+        assertEquals(expected.directories.get(0).entries, directory.entries);
+        directory.getTiffImageData().getImageDataBytes(0);
+        assertEquals(1, second.reads);
+    }
+
+    @Test
+    public void testParameters() throws Exception {
+        final byte[] bytes = writeImage(40, 30, null);
+        final TiffDirectoryCache cache = new TiffDirectoryCache(1 << 20);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_DIRECTORY_CACHE, cache);
+        params.put(TiffConstants.PARAM_KEY_DIRECTORY_CACHE_KEY, "image");
+
+        final TiffImageParser parser = new TiffImageParser();
+        final BufferedImage expected = parser.getBufferedImage(new ByteSourceArray(bytes), params);
+        assertEquals(1, cache.getMissCount());
+        final BufferedImage image = parser.getBufferedImage(new ByteSourceArray(bytes), params);
+        assertEquals(1, cache.getHitCount());
+        assertArrayEquals(getPixels(expected), getPixels(image));
+
+        // the root directory alone does not satisfy a read of all directories
+        params.put(ImagingConstants.PARAM_KEY_READ_THUMBNAILS, Boolean.FALSE);
+        final TiffImageMetadata metadata = (TiffImageMetadata) parser.getMetadata(
+                new ByteSourceArray(bytes), params);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(40, metadata.contents.directories.get(0).getSingleFieldValue(
+                TiffTagConstants.TIFF_TAG_IMAGE_WIDTH));
+        parser.getMetadata(new ByteSourceArray(bytes), params);
+        parser.getBufferedImage(new ByteSourceArray(bytes), params);
+        assertEquals(3, cache.getHitCount());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        final byte[] bytes = writeImage(8, 8, null);
+        final TiffDirectoryCache probe = new TiffDirectoryCache(1 << 20);
+        final TiffReader reader = new TiffReader(true);
+        reader.setDirectoryCache(probe, "probe");
+        reader.readDirectories(new ByteSourceArray(bytes), false, FormatCompliance.getDefault());
+        final long entrySize = probe.getSize();
+
+        final TiffDirectoryCache cache = new TiffDirectoryCache(3 * entrySize);
+        for (int i = 0; i < 5; i++) {
+            reader.setDirectoryCache(cache, "image " + i);
+            reader.readDirectories(new ByteSourceArray(bytes), false,
+                    FormatCompliance.getDefault());
+        }
+        assertEquals(3, cache.getFileCount());
+        assertEquals(2, cache.getEvictionCount());
+        assertTrue(cache.getSize() <= cache.getMaxBytes());
+
+        // the most recent files remain
+        reader.setDirectoryCache(cache, "image 4");
+        reader.readDirectories(new ByteSourceArray(bytes), false, FormatCompliance.getDefault());
+        assertEquals(1, cache.getHitCount());
+
+        cache.invalidate("image 4");
+        assertEquals(2, cache.getFileCount());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testFileKeys() throws Exception {
+        final File file = File.createTempFile("directories", ".tif");
+        try {
+            try (OutputStream os = new FileOutputStream(file)) {
+                os.write(writeImage(20, 10, null));
+            }
+            final TiffDirectoryCache cache = new TiffDirectoryCache(1 << 20);
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_DIRECTORY_CACHE, cache);
+
+            try (TiffFile tiffFile = TiffFile.open(file, params)) {
+                assertEquals(1, tiffFile.getDirectoryCount());
+            }
+            try (TiffFile tiffFile = TiffFile.open(file, params)) {
+                assertEquals(20, tiffFile.readRegion(0, null).getWidth());
+            }
+            assertEquals(1, cache.getHitCount());
+
+            // a modified file is not served from the cache
+            assertTrue(file.setLastModified(file.lastModified() - 10000));
+            try (TiffFile tiffFile = TiffFile.open(file, params)) {
+                assertEquals(10, tiffFile.readRegion(0, null).getHeight());
+            }
+            assertEquals(2, cache.getMissCount());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.tiff.TiffTestSupport.CountingByteSource;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffImageWriterLossy;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputDirectory;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class TiffDirectoryReadTest {
+
+    private static byte[] writeDirectories(final ByteOrder byteOrder, final int version,
+            final int count) throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet(byteOrder, version);
+        for (int i = 0; i < count; i++) {
+            final TiffOutputDirectory directory = new TiffOutputDirectory(i, version, byteOrder);
+            directory.add(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, i + 1);
+            directory.add(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH, 2 * i + 1);
+            directory.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE,
+                    (short) 8, (short) 8, (short) 8, (short) 8, (short) 8);
+            directory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION,
+                    "directory number " + i);
+            outputSet.addDirectory(directory);
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new TiffImageWriterLossy(byteOrder).write(baos, outputSet);
+        return baos.toByteArray();
+    }
+
+    private static void checkDirectories(final ByteOrder byteOrder, final int version)
+            throws Exception {
+        final int count = 300;
+        final CountingByteSource byteSource = new CountingByteSource(new ByteSourceArray(
+                writeDirectories(byteOrder, version, count)));
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                byteSource, false, FormatCompliance.getDefault());
+
+        assertEquals(count, contents.directories.size());
+        for (int i = 0; i < count; i++) {
+            final TiffDirectory directory = contents.directories.get(i);
+            assertEquals(i, directory.type);
+            assertEquals(i + 1, directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH));
+            assertEquals(2 * i + 1, directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH));
+            assertArrayEquals(new short[] {8, 8, 8, 8, 8},
+                    directory.getFieldValue(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, true));
+            assertEquals("directory number " + i,
+                    directory.findField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue());
+        }
+        // the header, then at most one read for each directory and its nearby values
+        assertTrue(byteSource.reads + " reads", byteSource.reads <= count + 1);
+    }
+
+    @Test
+    public void testClassicDirectories() throws Exception {
+        checkDirectories(ByteOrder.BIG_ENDIAN, TiffConstants.TIFF_CLASSIC);
+    }
+
+    @Test
+    public void testBigTiffDirectories() throws Exception {
+        checkDirectories(ByteOrder.LITTLE_ENDIAN, TiffConstants.TIFF_BIGTIFF);
+        checkDirectories(ByteOrder.BIG_ENDIAN, TiffConstants.TIFF_BIGTIFF);
+    }
+
+    @Test
+    public void testDirectoryIndex() throws Exception {
+        final int count = 300;
+        final CountingByteSource byteSource = new CountingByteSource(new ByteSourceArray(
+                writeDirectories(ByteOrder.LITTLE_ENDIAN, TiffConstants.TIFF_BIGTIFF, count)));
+        final TiffReader reader = new TiffReader(true);
+        final TiffDirectoryIndex index = reader.readDirectoryIndex(byteSource);
+        assertEquals(count, index.size());
+        assertEquals(2 * count + 1, byteSource.reads);
+
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                byteSource, false, FormatCompliance.getDefault());
+        for (int i = 0; i < count; i++) {
+            assertEquals(contents.directories.get(i).offset, index.getOffset(i));
+            assertEquals(contents.directories.get(i).entries.size(), index.getEntryCount(i));
+        }
+
+        byteSource.reads = 0;
+        final TiffDirectory directory = reader.readDirectory(byteSource, index, 250);
+        assertEquals(1, byteSource.reads);
+        assertEquals(250, directory.type);
+        assertEquals(index.getOffset(250), directory.offset);
+        assertEquals(251, directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH));
+        assertEquals("directory number 250",
+                directory.findField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION).getStringValue());
+    }
+
+    @Test
+    public void testReadDirectoryByIndex() throws Exception {
+        final CountingByteSource byteSource = new CountingByteSource(new ByteSourceArray(
+                writeDirectories(ByteOrder.BIG_ENDIAN, TiffConstants.TIFF_CLASSIC, 100)));
+        final TiffDirectory directory = new TiffReader(true).readDirectory(byteSource, 7);
+        // only the chain up to the directory is followed
+        assertTrue(byteSource.reads + " reads", byteSource.reads <= 2 * 8 + 2);
+        assertEquals(7, directory.type);
+        assertEquals(15, directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH));
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testReadDirectoryBeyondEnd() throws Exception {
+        new TiffReader(true).readDirectory(new ByteSourceArray(
+                writeDirectories(ByteOrder.LITTLE_ENDIAN, TiffConstants.TIFF_CLASSIC, 3)), 3);
+    }
+
+    @Test
+    public void testDirectoryCycle() throws Exception {
+        final byte[] bytes = writeDirectories(ByteOrder.LITTLE_ENDIAN,
+                TiffConstants.TIFF_BIGTIFF, 3);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        // point the last directory back to the first
+        final long first = buffer.getLong(8);
+        long offset = first;
+        long last = 0;
+        while (offset != 0) {
+            last = offset;
+            final long entries = buffer.getLong((int) offset);
+            offset = buffer.getLong((int) (offset + 8 + entries * 20));
+        }
+        final long entries = buffer.getLong((int) last);
+        buffer.putLong((int) (last + 8 + entries * 20), first);
+
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                new ByteSourceArray(bytes), false, FormatCompliance.getDefault());
+        assertEquals(3, contents.directories.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedDirectory() throws Exception {
+        final byte[] bytes = writeDirectories(ByteOrder.LITTLE_ENDIAN,
+                TiffConstants.TIFF_CLASSIC, 1);
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort(buffer.getInt(4), (short) 5000);
+        new TiffReader(true).readDirectories(
+                new ByteSourceArray(bytes), false, FormatCompliance.getDefault());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import com.maxar.rda.imaging.formats.tiff.write.TiffTiledImageWriter;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffFileTest {
+    private static final int SIZE = 300;
+    private static final int TILE = 32;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("handle", ".tif");
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.BIG_ENDIAN,
+                TiffConstants.TIFF_CLASSIC);
+        outputSet.addRootDirectory().add(
+                TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            new TiffTiledImageWriter(ByteOrder.BIG_ENDIAN, TILE, TILE, null).write(
+                    channel, outputSet, SIZE, SIZE, 1, 8, (column, row) -> {
+                        final byte[] tile = new byte[TILE * TILE];
+                        for (int i = 0; i < tile.length; i++) {
+                            tile[i] = (byte) (column * 37 + row * 11 + i / TILE + i % TILE);
+                        }
+                        return tile;
+                    });
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testConcurrentRegions() throws Exception {
+        final BufferedImage expected = new TiffImageParser().getBufferedImage(file, null);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (TiffFile tiffFile = TiffFile.open(file, null)) {
+            assertEquals(1, tiffFile.getDirectoryCount());
+            assertEquals(ByteOrder.BIG_ENDIAN, tiffFile.getByteOrder());
+
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        final int x = random.nextInt(SIZE - 1);
+                        final int y = random.nextInt(SIZE - 1);
+                        final int width = 1 + random.nextInt(SIZE - x);
+                        final int height = 1 + random.nextInt(SIZE - y);
+                        final BufferedImage region = tiffFile.readRegion(0,
+                                new Rectangle(x, y, width, height));
+                        assertArrayEquals(
+                                expected.getRGB(x, y, width, height, null, 0, width),
+                                region.getRGB(0, 0, width, height, null, 0, width));
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+
+            final BufferedImage whole = tiffFile.readRegion(0, null);
+            assertArrayEquals(expected.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE),
+                    whole.getRGB(0, 0, SIZE, SIZE, null, 0, SIZE));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedTileCache() throws Exception {
+        final TiffTileCache cache = new TiffTileCache(1 << 20);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_TILE_CACHE, cache);
+        try (TiffFile tiffFile = TiffFile.open(file, params)) {
+            tiffFile.readRegion(0, new Rectangle(10, 10, 40, 40));
+            tiffFile.readRegion(0, new Rectangle(10, 10, 40, 40));
+            // the region covers 2 x 2 tiles
+            assertEquals(4, cache.getMissCount());
+            assertEquals(4, cache.getHitCount());
+
+            final TiffRaster raster = tiffFile.readRaster(0, new Rectangle(32, 0, 8, 8), null);
+            assertEquals(8, raster.getWidth());
+        }
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testMissingDirectory() throws Exception {
+        try (TiffFile tiffFile = TiffFile.open(file, null)) {
+            tiffFile.readRegion(1, null);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertEquals;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffImageDataIndexTest {
+    private static final int SIZE = 200000;
+    private static final int TILE = 256;
+    private static final int ACROSS = (SIZE + TILE - 1) / TILE;
+    private static final int TILES = ACROSS * ACROSS;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("index", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static void putShortEntry(final ByteBuffer buffer, final int tag, final int value) {
+        buffer.putShort((short) tag).putShort((short) 3).putLong(1);
+        buffer.putShort((short) value).putShort((short) 0).putInt(0);
+    }
+
+    private static void putLongEntry(final ByteBuffer buffer, final int tag, final int value) {
+        buffer.putShort((short) tag).putShort((short) 4).putLong(1);
+        buffer.putInt(value).putInt(0);
+    }
+
+    /**
+     * Writes a 200000 x 200000 BigTIFF whose tiles each hold a distinct
+     * value in their first byte, and are otherwise shared.
+     */
+    private void writeLargeTiledTiff() throws IOException {
+        final long offsetsPosition = 1024;
+        final long countsPosition = offsetsPosition + 8L * TILES;
+        final long dataPosition = countsPosition + 8L * TILES;
+
+        final ByteBuffer header = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'I').put((byte) 'I').putShort((short) TiffConstants.TIFF_BIGTIFF);
+        header.putShort((short) 8).putShort((short) 0).putLong(16);
+        header.putLong(9);
+        putLongEntry(header, TiffTagConstants.TIFF_TAG_IMAGE_WIDTH.tag, SIZE);
+        putLongEntry(header, TiffTagConstants.TIFF_TAG_IMAGE_LENGTH.tag, SIZE);
+        putShortEntry(header, TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE.tag, 8);
+        putShortEntry(header, TiffTagConstants.TIFF_TAG_COMPRESSION.tag,
+                TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED);
+        putShortEntry(header, TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION.tag,
+                TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        putShortEntry(header, TiffTagConstants.TIFF_TAG_TILE_WIDTH.tag, TILE);
+        putShortEntry(header, TiffTagConstants.TIFF_TAG_TILE_LENGTH.tag, TILE);
+        header.putShort((short) TiffTagConstants.TIFF_TAG_TILE_OFFSETS.tag)
+                .putShort((short) 16).putLong(TILES).putLong(offsetsPosition);
+        header.putShort((short) TiffTagConstants.TIFF_TAG_TILE_BYTE_COUNTS.tag)
+                .putShort((short) 16).putLong(TILES).putLong(countsPosition);
+        header.putLong(0);
+
+        // tile i begins at dataPosition + (i % 256), so that its first byte
+        // is (i % 256), followed by the shared zero-filled body
+        final ByteBuffer values = ByteBuffer.allocate(16 * TILES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < TILES; i++) {
+            values.putLong(8 * i, dataPosition + (i % 256));
+            values.putLong(8 * (TILES + i), TILE * TILE);
+        }
+        final byte[] data = new byte[256 + TILE * TILE];
+        for (int i = 0; i < 256; i++) {
+            data[i] = (byte) i;
+        }
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(header.array());
+            os.write(values.array());
+            os.write(data);
+        }
+    }
+
+    @Test
+    public void testLargeTileIndex() throws Exception {
+        writeLargeTiledTiff();
+
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                new ByteSourceFile(file), true, FormatCompliance.getDefault());
+        final TiffImageData imageData = contents.directories.get(0).getTiffImageData();
+        assertEquals(TILES, imageData.getImageDataLength());
+        final int tile = TILES - 12345;
+        assertEquals(TILE * TILE, imageData.getImageData(tile).length);
+        assertEquals((byte) tile, imageData.getImageDataBytes(tile)[0]);
+
+        // read the first pixel of one tile
+        final int row = 500;
+        final int column = 300;
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, column * TILE);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, row * TILE);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, 2);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, 2);
+        final BufferedImage image = new TiffImageParser().getBufferedImage(
+                new ByteSourceFile(file), params);
+        assertEquals((row * ACROSS + column) % 256, image.getRGB(0, 0) & 0xff);
+        assertEquals(0, image.getRGB(1, 1) & 0xff);
+    }
+}
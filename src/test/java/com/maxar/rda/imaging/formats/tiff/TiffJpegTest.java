@@ -0,0 +1,419 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.BufferPool;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.jpeg.decoder.JpegDecoder;
+import com.maxar.rda.imaging.formats.tiff.constants.AdobePhotoshopTagConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffImageWriterLossy;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputDirectory;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class TiffJpegTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE = 64;
+    private static final int ROWS_PER_STRIP = 16;
+
+    /**
+     * A JPEG stream split into its tables and the abbreviated stream
+     * that remains without them.
+     */
+    private static final class SplitJpeg {
+        final ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        final ByteArrayOutputStream abbreviated = new ByteArrayOutputStream();
+
+        SplitJpeg(final byte[] jpeg) {
+            tables.write(jpeg, 0, 2);
+            abbreviated.write(jpeg, 0, 2);
+            int pos = 2;
+            while (true) {
+                final int marker = ((jpeg[pos] & 0xff) << 8) | (jpeg[pos + 1] & 0xff);
+                if (marker == 0xffda) {
+                    // the scan runs to the end of the stream
+                    abbreviated.write(jpeg, pos, jpeg.length - pos);
+                    break;
+                }
+                final int length = 2 + (((jpeg[pos + 2] & 0xff) << 8) | (jpeg[pos + 3] & 0xff));
+                if (marker == 0xffdb || marker == 0xffc4) {
+                    tables.write(jpeg, pos, length);
+                } else {
+                    abbreviated.write(jpeg, pos, length);
+                }
+                pos += length;
+            }
+            tables.write(0xff);
+            tables.write(0xd9);
+        }
+    }
+
+    private static BufferedImage createImage(final int type) {
+        final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                final int r = (x * 255) / WIDTH;
+                final int g = (y * 255) / HEIGHT;
+                final int b = ((x / 10 + y / 10) % 2) * 160 + 40;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encodes a block of an image, padded with black to the given size.
+     */
+    private static byte[] encode(final BufferedImage image, final int x0, final int y0,
+            final int width, final int height) throws Exception {
+        final BufferedImage block = new BufferedImage(width, height, image.getType());
+        block.getGraphics().drawImage(image.getSubimage(x0, y0,
+                Math.min(width, WIDTH - x0), Math.min(height, HEIGHT - y0)), 0, 0, null);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(block, "jpeg", baos));
+        return baos.toByteArray();
+    }
+
+    private static TiffOutputDirectory createDirectory(final TiffOutputSet set,
+            final int samplesPerPixel, final int photometric) throws Exception {
+        final TiffOutputDirectory dir = set.getOrCreateRootDirectory();
+        final short[] bitsPerSample = new short[samplesPerPixel];
+        for (int i = 0; i < samplesPerPixel; i++) {
+            bitsPerSample[i] = 8;
+        }
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, WIDTH);
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH, HEIGHT);
+        dir.add(TiffTagConstants.TIFF_TAG_COMPRESSION, (short) TiffTagConstants.COMPRESSION_VALUE_JPEG);
+        dir.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, bitsPerSample);
+        dir.add(TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL, (short) samplesPerPixel);
+        dir.add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION, (short) photometric);
+        return dir;
+    }
+
+    private static byte[] write(final TiffOutputSet set) throws Exception {
+        final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        new TiffImageWriterLossy().write(tiff, set);
+        return tiff.toByteArray();
+    }
+
+    /**
+     * Writes a tiled YCbCr image whose tiles share a JPEGTables field, and
+     * returns it with the image that decoding each complete tile gives.
+     */
+    private static byte[] writeTiled(final BufferedImage expected) throws Exception {
+        final BufferedImage image = createImage(BufferedImage.TYPE_3BYTE_BGR);
+        final TiffOutputSet set = new TiffOutputSet(TiffConstants.DEFAULT_TIFF_BYTE_ORDER,
+                TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, 3,
+                TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_YCB_CR);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_WIDTH, TILE);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_LENGTH, TILE);
+        dir.add(TiffTagConstants.TIFF_TAG_YCBCR_SUB_SAMPLING, (short) 2, (short) 2);
+
+        final int across = (WIDTH + TILE - 1) / TILE;
+        final int down = (HEIGHT + TILE - 1) / TILE;
+        final TiffImageData.Data[] tiles = new TiffImageData.Data[across * down];
+        byte[] tables = null;
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                final byte[] jpeg = encode(image, tx * TILE, ty * TILE, TILE, TILE);
+                final SplitJpeg split = new SplitJpeg(jpeg);
+                tables = split.tables.toByteArray();
+                final byte[] bytes = split.abbreviated.toByteArray();
+                tiles[ty * across + tx] = new TiffImageData.Data(0, bytes.length, bytes);
+
+                final BufferedImage tile = new JpegDecoder().decode(new ByteSourceArray(jpeg));
+                expected.getGraphics().drawImage(tile, tx * TILE, ty * TILE, null);
+            }
+        }
+        dir.add(AdobePhotoshopTagConstants.EXIF_TAG_JPEGTABLES, tables);
+        dir.setTiffImageData(new TiffImageData.Tiles(tiles, TILE, TILE));
+        return write(set);
+    }
+
+    private static void assertSimilar(final BufferedImage expected, final BufferedImage actual,
+            final int x0, final int y0) {
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                final int e = expected.getRGB(x0 + x, y0 + y);
+                final int a = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    // the TIFF and JPEG color conversions round differently
+                    final int difference = ((e >> shift) & 0xff) - ((a >> shift) & 0xff);
+                    assertTrue("pixel " + (x0 + x) + ", " + (y0 + y) + ": "
+                            + Integer.toHexString(e) + " != " + Integer.toHexString(a),
+                            Math.abs(difference) <= 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTiledWithSharedTables() throws Exception {
+        final BufferedImage expected = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        final byte[] bytes = writeTiled(expected);
+
+        final TiffImageParser parser = new TiffImageParser();
+        final BufferedImage whole = parser.getBufferedImage(new ByteSourceArray(bytes), null);
+        assertEquals(WIDTH, whole.getWidth());
+        assertEquals(HEIGHT, whole.getHeight());
+        assertSimilar(expected, whole, 0, 0);
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, 50);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, 40);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, 100);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, 70);
+        assertSimilar(expected, parser.getBufferedImage(new ByteSourceArray(bytes), params),
+                50, 40);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (TiffFile tiffFile = new TiffFile(new ByteSourceArray(bytes),
+                Collections.singletonMap(TiffConstants.PARAM_KEY_EXECUTOR, executor))) {
+            assertSimilar(expected, tiffFile.readRegion(0, new Rectangle(0, 0, WIDTH, HEIGHT)),
+                    0, 0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTablesAreParsedOnce() throws Exception {
+        final byte[] bytes = writeTiled(new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB));
+        final TiffReader reader = new TiffReader(true);
+        final ByteSourceArray byteSource = new ByteSourceArray(bytes);
+        final TiffDirectory directory = reader.readDirectory(byteSource,
+                reader.readDirectoryIndex(byteSource), 0);
+        assertNotNull(directory.getJpegTables());
+        assertSame(directory.getJpegTables(), directory.getJpegTables());
+    }
+
+    @Test
+    public void testCachedDirectoriesShareTables() throws Exception {
+        final byte[] bytes = writeTiled(new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB));
+        final TiffDirectoryCache cache = new TiffDirectoryCache(1 << 20);
+        final TiffDirectory[] directories = new TiffDirectory[2];
+        for (int i = 0; i < directories.length; i++) {
+            final TiffReader reader = new TiffReader(true);
+            reader.setDirectoryCache(cache, "image");
+            directories[i] = reader.readDirectories(new ByteSourceArray(bytes), true,
+                    FormatCompliance.getDefault()).directories.get(0);
+        }
+        assertEquals(1, cache.getHitCount());
+        assertNotSame(directories[0], directories[1]);
+        assertNotNull(directories[0].getJpegTables());
+        assertSame(directories[0].getJpegTables(), directories[1].getJpegTables());
+    }
+
+    @Test
+    public void testGrayStrips() throws Exception {
+        final BufferedImage image = createImage(BufferedImage.TYPE_BYTE_GRAY);
+        final TiffOutputSet set = new TiffOutputSet(TiffConstants.DEFAULT_TIFF_BYTE_ORDER,
+                TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, 1,
+                TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, ROWS_PER_STRIP);
+
+        final int nStrips = (HEIGHT + ROWS_PER_STRIP - 1) / ROWS_PER_STRIP;
+        final TiffImageData.Data[] strips = new TiffImageData.Data[nStrips];
+        final BufferedImage expected = new BufferedImage(WIDTH, HEIGHT,
+                BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < nStrips; i++) {
+            // each strip carries its own tables, and the last is short
+            final int rows = Math.min(ROWS_PER_STRIP, HEIGHT - i * ROWS_PER_STRIP);
+            final byte[] jpeg = encode(image, 0, i * ROWS_PER_STRIP, WIDTH, rows);
+            strips[i] = new TiffImageData.Data(0, jpeg.length, jpeg);
+            expected.getGraphics().drawImage(new JpegDecoder().decode(
+                    new ByteSourceArray(jpeg)), 0, i * ROWS_PER_STRIP, null);
+        }
+        dir.setTiffImageData(new TiffImageData.Strips(strips, ROWS_PER_STRIP));
+        final byte[] bytes = write(set);
+
+        final BufferedImage actual = new TiffImageParser().getBufferedImage(
+                new ByteSourceArray(bytes), null);
+        assertSimilar(expected, actual, 0, 0);
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testComponentCountMismatch() throws Exception {
+        // gray JPEG strips in a directory that declares three samples per pixel
+        final BufferedImage image = createImage(BufferedImage.TYPE_BYTE_GRAY);
+        final TiffOutputSet set = new TiffOutputSet(TiffConstants.DEFAULT_TIFF_BYTE_ORDER,
+                TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, 3,
+                TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_RGB);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, HEIGHT);
+        final byte[] jpeg = encode(image, 0, 0, WIDTH, HEIGHT);
+        dir.setTiffImageData(new TiffImageData.Strips(new TiffImageData.Data[] {
+                new TiffImageData.Data(0, jpeg.length, jpeg)}, HEIGHT));
+        new TiffImageParser().getBufferedImage(new ByteSourceArray(write(set)), null);
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testSampleSizeMismatch() throws Exception {
+        // 8-bit gray JPEG strips in a directory that declares 16-bit samples
+        final BufferedImage image = createImage(BufferedImage.TYPE_BYTE_GRAY);
+        final TiffOutputSet set = new TiffOutputSet(TiffConstants.DEFAULT_TIFF_BYTE_ORDER,
+                TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, 1,
+                TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        dir.removeField(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE);
+        dir.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, (short) 16);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, HEIGHT);
+        final byte[] jpeg = encode(image, 0, 0, WIDTH, HEIGHT);
+        dir.setTiffImageData(new TiffImageData.Strips(new TiffImageData.Data[] {
+                new TiffImageData.Data(0, jpeg.length, jpeg)}, HEIGHT));
+        new TiffImageParser().getBufferedImage(new ByteSourceArray(write(set)), null);
+    }
+
+    @Test
+    public void testScanIsDecodedInPlace() throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+
+        // noise, so that the scan is much larger than the decoder's own state
+        final int size = 512;
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        final Random random = new Random(1);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpeg", baos));
+        final byte[] jpeg = baos.toByteArray();
+        // a read-only buffer over a part of a larger array, as the slices of
+        // the tiles of a file are
+        final byte[] file = new byte[jpeg.length + 100];
+        System.arraycopy(jpeg, 0, file, 100, jpeg.length);
+        final byte[] samples = new byte[size * size * 3];
+
+        final long id = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            final long start = allocations.getThreadAllocatedBytes(id);
+            assertEquals(3, new JpegDecoder().decodeSamples(
+                    ByteBuffer.wrap(file, 100, jpeg.length).asReadOnlyBuffer(),
+                    samples, size, size));
+            allocated = Math.min(allocated, allocations.getThreadAllocatedBytes(id) - start);
+        }
+
+        // a copy of the scan alone would be about as large as the stream
+        assertTrue("allocated " + allocated + " bytes decoding " + jpeg.length,
+                allocated < jpeg.length);
+        final byte[] copied = new byte[samples.length];
+        new JpegDecoder().decodeSamples(jpeg, copied, size, size);
+        assertArrayEquals(samples, copied);
+    }
+
+    @Test
+    public void testTiffScanIsDecodedInPlace() throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported()
+                && allocations.isThreadAllocatedMemoryEnabled());
+
+        // a single tile of noise, so that the scan is much larger than the
+        // decoder's own state
+        final int size = 512;
+        final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        final Random random = new Random(1);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpeg", baos));
+        final byte[] jpeg = baos.toByteArray();
+        final TiffOutputSet set = new TiffOutputSet(TiffConstants.DEFAULT_TIFF_BYTE_ORDER,
+                TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = set.getOrCreateRootDirectory();
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, size);
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH, size);
+        dir.add(TiffTagConstants.TIFF_TAG_COMPRESSION, (short) TiffTagConstants.COMPRESSION_VALUE_JPEG);
+        dir.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, (short) 8, (short) 8, (short) 8);
+        dir.add(TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL, (short) 3);
+        dir.add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_YCB_CR);
+        dir.add(TiffTagConstants.TIFF_TAG_YCBCR_SUB_SAMPLING, (short) 2, (short) 2);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_WIDTH, size);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_LENGTH, size);
+        dir.setTiffImageData(new TiffImageData.Tiles(new TiffImageData.Data[] {
+                new TiffImageData.Data(0, jpeg.length, jpeg)}, size, size));
+        final byte[] bytes = write(set);
+
+        // the pool holds the decoded tile, and the small subimage keeps
+        // the output raster small, so that little more than the decoder's
+        // state and the tile-sized working raster of ARGB ints is allocated
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, new BufferPool(1 << 24));
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, 0);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, 0);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, 16);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, 16);
+        final long id = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            final long start = allocations.getThreadAllocatedBytes(id);
+            new TiffImageParser().getBufferedImage(new ByteSourceArray(bytes), params);
+            allocated = Math.min(allocated, allocations.getThreadAllocatedBytes(id) - start);
+        }
+
+        // a copy of the tile alone would be as large as the stream
+        final long decoding = allocated - 4L * size * size;
+        assertTrue("allocated " + decoding + " bytes decoding " + jpeg.length,
+                decoding < jpeg.length);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceMapped;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Reads sparse files whose directories and image data lie beyond the
+ * 2 GB and 4 GB boundaries.
+ */
+public class TiffLargeOffsetTest {
+    private static final long GB = 1L << 30;
+    private static final int SIZE = 32;
+    private static final int TILE = 16;
+    private static final int TILES = 4;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("large", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static int gray(final int x, final int y) {
+        return (x * 7 + y * 3) & 0xff;
+    }
+
+    private static void putShortEntry(final ByteBuffer buffer, final boolean bigTiff,
+            final int tag, final int value) {
+        buffer.putShort((short) tag);
+        buffer.putShort((short) 3);
+        if (bigTiff) {
+            buffer.putLong(1);
+            buffer.putShort((short) value).putShort((short) 0).putInt(0);
+        } else {
+            buffer.putInt(1);
+            buffer.putShort((short) value).putShort((short) 0);
+        }
+    }
+
+    private static void putOffsetEntry(final ByteBuffer buffer, final boolean bigTiff,
+            final int tag, final long offset) {
+        buffer.putShort((short) tag);
+        if (bigTiff) {
+            buffer.putShort((short) 16);
+            buffer.putLong(TILES);
+            buffer.putLong(offset);
+        } else {
+            buffer.putShort((short) 4);
+            buffer.putInt(TILES);
+            buffer.putInt((int) offset);
+        }
+    }
+
+    /**
+     * Writes an uncompressed, tiled, 8-bit gray image with its directory
+     * and tiles at the given position in an otherwise empty file.
+     */
+    private void writeSparseTiff(final ByteOrder byteOrder, final boolean bigTiff,
+            final long position) throws Exception {
+        final long valuesOffset = position + 512;
+        final long dataOffset = position + 1024;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(dataOffset + TILES * TILE * TILE);
+
+            final ByteBuffer header = ByteBuffer.allocate(16).order(byteOrder);
+            header.put((byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+            header.put(header.get(0));
+            if (bigTiff) {
+                header.putShort((short) TiffConstants.TIFF_BIGTIFF);
+                header.putShort((short) 8).putShort((short) 0);
+                header.putLong(position);
+            } else {
+                header.putShort((short) TiffConstants.TIFF_CLASSIC);
+                header.putInt((int) position);
+            }
+            raf.write(header.array(), 0, header.position());
+
+            final ByteBuffer ifd = ByteBuffer.allocate(512).order(byteOrder);
+            if (bigTiff) {
+                ifd.putLong(10);
+            } else {
+                ifd.putShort((short) 10);
+            }
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_IMAGE_WIDTH.tag, SIZE);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_IMAGE_LENGTH.tag, SIZE);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE.tag, 8);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_COMPRESSION.tag,
+                    TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION.tag,
+                    TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL.tag, 1);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_TILE_WIDTH.tag, TILE);
+            putShortEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_TILE_LENGTH.tag, TILE);
+            final int valueSize = bigTiff ? 8 : 4;
+            putOffsetEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_TILE_OFFSETS.tag, valuesOffset);
+            putOffsetEntry(ifd, bigTiff, TiffTagConstants.TIFF_TAG_TILE_BYTE_COUNTS.tag,
+                    valuesOffset + TILES * valueSize);
+            if (bigTiff) {
+                ifd.putLong(0);
+            } else {
+                ifd.putInt(0);
+            }
+            raf.seek(position);
+            raf.write(ifd.array(), 0, ifd.position());
+
+            final ByteBuffer values = ByteBuffer.allocate(2 * TILES * valueSize).order(byteOrder);
+            for (int i = 0; i < TILES; i++) {
+                // store the tiles in reverse order
+                final long offset = dataOffset + (TILES - 1 - i) * TILE * TILE;
+                if (bigTiff) {
+                    values.putLong(i * valueSize, offset);
+                    values.putLong((TILES + i) * valueSize, TILE * TILE);
+                } else {
+                    values.putInt(i * valueSize, (int) offset);
+                    values.putInt((TILES + i) * valueSize, TILE * TILE);
+                }
+            }
+            raf.seek(valuesOffset);
+            raf.write(values.array());
+
+            for (int i = 0; i < TILES; i++) {
+                final int column = i % 2;
+                final int row = i / 2;
+                final byte[] tile = new byte[TILE * TILE];
+                for (int y = 0, k = 0; y < TILE; y++) {
+                    for (int x = 0; x < TILE; x++) {
+                        tile[k++] = (byte) gray(column * TILE + x, row * TILE + y);
+                    }
+                }
+                raf.seek(dataOffset + (TILES - 1 - i) * TILE * TILE);
+                raf.write(tile);
+            }
+        }
+    }
+
+    private static void checkSource(final ByteSource byteSource, final long position)
+            throws Exception {
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                byteSource, true, FormatCompliance.getDefault());
+        assertEquals(1, contents.directories.size());
+        final TiffDirectory directory = contents.directories.get(0);
+        assertEquals(position, directory.offset);
+
+        final List<TiffDirectory.ImageDataElement> elements =
+                directory.getTiffRawImageDataElements();
+        assertEquals(TILES, elements.size());
+        for (final TiffDirectory.ImageDataElement element : elements) {
+            assertTrue(element.offset > position);
+            assertEquals(TILE * TILE, element.length);
+        }
+
+        final BufferedImage image = new TiffImageParser().getBufferedImage(
+                byteSource, new HashMap<>());
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(gray(x, y), image.getRGB(x, y) & 0xff);
+            }
+        }
+    }
+
+    private void check(final ByteOrder byteOrder, final boolean bigTiff, final long position)
+            throws Exception {
+        writeSparseTiff(byteOrder, bigTiff, position);
+        checkSource(new ByteSourceFile(file), position);
+        checkSource(new ByteSourceMapped(file), position);
+    }
+
+    @Test
+    public void testBigTiffLittleEndianBeyond4GB() throws Exception {
+        check(ByteOrder.LITTLE_ENDIAN, true, 5 * GB + 4096);
+    }
+
+    @Test
+    public void testBigTiffBigEndianBeyond4GB() throws Exception {
+        check(ByteOrder.BIG_ENDIAN, true, 5 * GB + 4096);
+    }
+
+    @Test
+    public void testClassicTiffBeyond2GB() throws Exception {
+        check(ByteOrder.BIG_ENDIAN, false, 3 * GB);
+    }
+}
@@ -17,23 +17,33 @@
 
 package com.maxar.rda.imaging.formats.tiff;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.maxar.rda.imaging.internal.Debug;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import com.maxar.rda.imaging.FormatCompliance;
 import com.maxar.rda.imaging.ImageReadException;
 import com.maxar.rda.imaging.common.bytesource.ByteSource;
 import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
 import com.maxar.rda.imaging.common.mylzw.MyLzwCompressor;
 import com.maxar.rda.imaging.common.mylzw.MyLzwDecompressor;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwCompressor;
+import com.maxar.rda.imaging.common.mylzw.TiffLzwDecompressor;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -76,6 +86,109 @@ public class TiffLzwTest extends TiffBaseTest {
         }
     }
 
+    @Test
+    public void testTableDecompressorMatchesSynthetic() throws Exception {
+        final Random random = new Random(1);
+        for (final int length : new int[] {1, 2, 100, 5000, 100000}) {
+            final byte[] runs = new byte[length];
+            final byte[] noise = new byte[length];
+            for (int i = 0; i < length; i++) {
+                runs[i] = (byte) ((i / 13) % 7);
+            }
+            random.nextBytes(noise);
+            for (final byte[] src : Arrays.asList(runs, noise)) {
+                final byte[] compressed = new MyLzwCompressor(8, ByteOrder.BIG_ENDIAN, true)
+                        .compress(src);
+                compareDecompressors(compressed, src.length);
+                compareDecompressors(compressed, src.length / 2 + 1);
+            }
+        }
+    }
+
+    @Test
+    public void testTableDecompressorMatchesTestImages() throws Exception {
+        final TiffLzwDecompressor decompressor = new TiffLzwDecompressor();
+        int nBlocks = 0;
+        for (final File image : getTiffImages()) {
+            final TiffContents contents;
+            try {
+                contents = new TiffReader(false).readDirectories(
+                        new ByteSourceFile(image), true, FormatCompliance.getDefault());
+            } catch (final ImageReadException | IOException ex) {
+                continue;
+            }
+            for (final TiffDirectory directory : contents.directories) {
+                final TiffField compressionField =
+                        directory.findField(TiffTagConstants.TIFF_TAG_COMPRESSION);
+                if (compressionField == null || directory.getTiffImageData() == null
+                        || compressionField.getIntValue() != TiffConstants.TIFF_COMPRESSION_LZW) {
+                    continue;
+                }
+                for (final TiffElement.DataElement element
+                        : directory.getTiffImageData().getImageData()) {
+                    final byte[] compressed = element.getData();
+                    final byte[] expected = decompressWithMyLzw(compressed, 1 << 20);
+                    final byte[] actual = new byte[expected.length];
+                    assertEquals(expected.length, decompressor.decompress(compressed, actual));
+                    assertArrayEquals(expected, actual);
+                    nBlocks++;
+                }
+            }
+        }
+        assertTrue(nBlocks > 0);
+    }
+
+    @Test
+    public void testTableCompressorMatchesMyLzwCompressor() throws Exception {
+        final Random random = new Random(2);
+        final TiffLzwCompressor compressor = new TiffLzwCompressor();
+        for (final int length : new int[] {1, 2, 3, 255, 4096, 70000, 300000}) {
+            final byte[] runs = new byte[length];
+            final byte[] noise = new byte[length];
+            final byte[] lowNoise = new byte[length];
+            for (int i = 0; i < length; i++) {
+                runs[i] = (byte) ((i / 13) % 7);
+                lowNoise[i] = (byte) (random.nextInt(4) + (i / 1000));
+            }
+            random.nextBytes(noise);
+            for (final byte[] src : Arrays.asList(runs, noise, lowNoise)) {
+                final byte[] expected = new MyLzwCompressor(8, ByteOrder.BIG_ENDIAN, true)
+                        .compress(src);
+                final byte[] actual = compressor.compress(src);
+                assertArrayEquals(expected, actual);
+
+                final byte[] decompressed = new byte[length];
+                assertEquals(length, new TiffLzwDecompressor().decompress(actual, decompressed));
+                assertArrayEquals(src, decompressed);
+            }
+        }
+    }
+
+    private static byte[] decompressWithMyLzw(final byte[] compressed, final int expectedLength)
+            throws IOException {
+        final MyLzwDecompressor decompressor = new MyLzwDecompressor(8, ByteOrder.BIG_ENDIAN);
+        decompressor.setTiffLZWMode();
+        return decompressor.decompress(new ByteArrayInputStream(compressed), expectedLength);
+    }
+
+    private static void compareDecompressors(final byte[] compressed, final int expectedLength)
+            throws IOException {
+        final byte[] expected = decompressWithMyLzw(compressed, expectedLength);
+        final byte[] actual = new byte[expectedLength];
+        final int n = new TiffLzwDecompressor().decompress(compressed, actual);
+        // MyLzwDecompressor finishes the string in progress, so it may
+        // return more than the expected length
+        assertEquals(Math.min(expected.length, expectedLength), n);
+        assertArrayEquals(Arrays.copyOf(expected, n), Arrays.copyOf(actual, n));
+
+        // input that is not backed by an array, such as a mapped file
+        final ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length);
+        direct.put(compressed).flip();
+        final byte[] fromBuffer = new byte[expectedLength];
+        assertEquals(n, new TiffLzwDecompressor().decompress(direct, fromBuffer));
+        assertArrayEquals(actual, fromBuffer);
+    }
+
     private void compressRoundtripAndValidate(final byte src[]) throws IOException {
         final boolean DEBUG = false;
 
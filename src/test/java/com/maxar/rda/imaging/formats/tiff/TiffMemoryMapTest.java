@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.getPixels;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.ImageFormats;
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.Imaging;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceMapped;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffMemoryMapTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("mapped", ".tif");
+        final BufferedImage image = new BufferedImage(97, 61, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, x * 0x020301 + y * 0x010305);
+            }
+        }
+        Imaging.writeImage(image, file, ImageFormats.TIFF, null);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+
+    @Test
+    public void testFilesAreMappedUnlessDisabled() throws Exception {
+        final Map<String, Object> unmapped =
+                Collections.singletonMap(TiffConstants.PARAM_KEY_MEMORY_MAP, false);
+        final TiffImageParser parser = new TiffImageParser();
+        assertTrue(parser.getByteSource(file, null) instanceof ByteSourceMapped);
+        assertTrue(parser.getByteSource(file, unmapped) instanceof ByteSourceFile);
+
+        assertArrayEquals(getPixels(Imaging.getBufferedImage(file, unmapped)),
+                getPixels(Imaging.getBufferedImage(file)));
+        assertArrayEquals(getPixels(Imaging.getBufferedImage(file, unmapped)),
+                getPixels(parser.getBufferedImage(file, null)));
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testInvalidMemoryMapParameter() throws Exception {
+        Imaging.getBufferedImage(file,
+                Collections.singletonMap(TiffConstants.PARAM_KEY_MEMORY_MAP, "no"));
+    }
+}
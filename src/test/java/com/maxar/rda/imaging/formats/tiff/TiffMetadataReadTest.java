@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImageInfo;
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Checks that reading metadata and image information does not read the
+ * image data of a file.
+ */
+public class TiffMetadataReadTest {
+
+    /**
+     * Counts the bytes of image data covered by block reads.
+     */
+    private static final class GuardedByteSource extends ByteSourceArray {
+        long dataStart = Long.MAX_VALUE;
+        long dataEnd = Long.MIN_VALUE;
+        long dataBytesRead;
+
+        GuardedByteSource(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public byte[] getBlock(final long start, final int length) throws IOException {
+            final long overlap = Math.min(start + length, dataEnd) - Math.max(start, dataStart);
+            if (overlap > 0) {
+                dataBytesRead += overlap;
+            }
+            return super.getBlock(start, length);
+        }
+    }
+
+    private static byte[] writeImage(final int width, final int height) throws Exception {
+        return TiffTestSupport.writeImage(width, height, Collections.singletonMap(
+                ImagingConstants.PARAM_KEY_COMPRESSION,
+                TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED));
+    }
+
+    private static GuardedByteSource guard(final byte[] bytes) throws Exception {
+        final GuardedByteSource byteSource = new GuardedByteSource(bytes);
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                byteSource, true, FormatCompliance.getDefault());
+        final List<TiffDirectory.ImageDataElement> elements =
+                contents.directories.get(0).getTiffRawImageDataElements();
+        for (final TiffDirectory.ImageDataElement element : elements) {
+            byteSource.dataStart = Math.min(byteSource.dataStart, element.offset);
+            byteSource.dataEnd = Math.max(byteSource.dataEnd, element.offset + element.length);
+        }
+        byteSource.dataBytesRead = 0;
+        return byteSource;
+    }
+
+    @Test
+    public void testMetadataSkipsImageData() throws Exception {
+        final GuardedByteSource byteSource = guard(writeImage(1000, 1000));
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_READ_THUMBNAILS, Boolean.TRUE);
+
+        final TiffImageMetadata metadata = (TiffImageMetadata) new TiffImageParser()
+                .getMetadata(byteSource, params);
+        final TiffDirectory directory = metadata.contents.directories.get(0);
+        assertEquals(1000, directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH));
+        assertNotNull(directory.getTiffImageData());
+        // at most the read-ahead of the directory touches the pixels
+        assertTrue(byteSource.dataBytesRead + " bytes", byteSource.dataBytesRead <= 4096);
+        byteSource.dataBytesRead = 0;
+
+        final ImageInfo imageInfo = new TiffImageParser().getImageInfo(byteSource, params);
+        assertEquals(1000, imageInfo.getWidth());
+        assertEquals(1000, imageInfo.getHeight());
+        assertEquals(1, imageInfo.getNumberOfImages());
+        assertTrue(byteSource.dataBytesRead + " bytes", byteSource.dataBytesRead <= 2 * 4096);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.getPixels;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.ImagingTestConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import org.junit.Test;
+
+public class TiffParallelReadTest extends TiffBaseTest {
+
+    private static File getTiledImage() {
+        return new File(ImagingTestConstants.TEST_IMAGE_FOLDER,
+                "tiff/5/Oregon Scientific DS6639 - DSC_0307 - small - LZW - tiled.tif");
+    }
+
+
+    private static void assertSameImage(final BufferedImage expected, final BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertArrayEquals(getPixels(expected), getPixels(actual));
+    }
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (final File file : getTiffImages()) {
+                final TiffImageParser parser = new TiffImageParser();
+                final BufferedImage serial;
+                try {
+                    serial = parser.getBufferedImage(new ByteSourceFile(file), new HashMap<>());
+                } catch (final ImageReadException ire) {
+                    // images the reader does not support are covered elsewhere
+                    continue;
+                }
+
+                final Map<String, Object> params = new HashMap<>();
+                params.put(TiffConstants.PARAM_KEY_EXECUTOR, executor);
+                final BufferedImage parallel = parser.getBufferedImage(new ByteSourceFile(file), params);
+                assertSameImage(serial, parallel);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelSubImage() throws Exception {
+        final File file = getTiledImage();
+        final TiffImageParser parser = new TiffImageParser();
+
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, 5);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, 7);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, 150);
+        params.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, 60);
+        final BufferedImage serial = parser.getBufferedImage(new ByteSourceFile(file), params);
+
+        params.put(TiffConstants.PARAM_KEY_EXECUTOR, ForkJoinPool.commonPool());
+        final BufferedImage parallel = parser.getBufferedImage(new ByteSourceFile(file), params);
+        assertSameImage(serial, parallel);
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testInvalidExecutorParameter() throws Exception {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_EXECUTOR, 4);
+        new TiffImageParser().getBufferedImage(new ByteSourceFile(getTiledImage()), params);
+    }
+}
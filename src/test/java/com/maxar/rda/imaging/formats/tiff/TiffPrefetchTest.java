@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.createImage;
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.read;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceAsyncFile;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import com.maxar.rda.imaging.formats.tiff.write.TiffTiledImageWriter;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffPrefetchTest {
+    private static final int SIZE = 256;
+    private static final int TILE = 32;
+    private static final int TILES = (SIZE / TILE) * (SIZE / TILE);
+
+    private File file;
+
+    /**
+     * Tracks the reads that have been issued but whose bytes have not yet
+     * been taken.
+     */
+    private static final class TrackingByteSource extends ByteSourceAsyncFile {
+        int issued;
+        int outstanding;
+        int maxOutstanding;
+
+        TrackingByteSource(final File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public synchronized CompletableFuture<ByteBuffer> readAsync(final long start,
+                final int length) {
+            issued++;
+            outstanding++;
+            maxOutstanding = Math.max(maxOutstanding, outstanding);
+            final CompletableFuture<ByteBuffer> tracked = new CompletableFuture<ByteBuffer>() {
+                @Override
+                public ByteBuffer get() throws InterruptedException, ExecutionException {
+                    taken();
+                    return super.get();
+                }
+            };
+            super.readAsync(start, length).whenComplete((bytes, exc) -> {
+                if (exc != null) {
+                    tracked.completeExceptionally(exc);
+                } else {
+                    tracked.complete(bytes);
+                }
+            });
+            return tracked;
+        }
+
+        private synchronized void taken() {
+            outstanding--;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("prefetch", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void writeTiled() throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN,
+                TiffConstants.TIFF_CLASSIC);
+        outputSet.addRootDirectory().add(
+                TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION, TiffConstants.TIFF_COMPRESSION_LZW);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, TILE, TILE, params).write(
+                    channel, outputSet, SIZE, SIZE, 1, 8, (column, row) -> {
+                        final byte[] tile = new byte[TILE * TILE];
+                        for (int i = 0; i < tile.length; i++) {
+                            tile[i] = (byte) (column * 31 + row * 17 + (i / TILE) * (i % TILE) / 7);
+                        }
+                        return tile;
+                    });
+        }
+    }
+
+
+    private static Map<String, Object> prefetchParams(final int depth) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_PREFETCH_DEPTH, depth);
+        // read each tile on its own, so each is prefetched separately
+        params.put(TiffConstants.PARAM_KEY_READ_PLANNER, new TiffReadPlanner(0, 0));
+        return params;
+    }
+
+    @Test
+    public void testPrefetchedTiles() throws Exception {
+        writeTiled();
+        final int[] expected = read(new ByteSourceFile(file), null);
+
+        for (final int depth : new int[] {1, 2, 5}) {
+            try (TrackingByteSource byteSource = new TrackingByteSource(file)) {
+                assertArrayEquals(expected, read(byteSource, prefetchParams(depth)));
+                // plus the reads of the header and directory
+                assertTrue(byteSource.issued > TILES);
+                assertEquals(0, byteSource.outstanding);
+                assertEquals(depth + 1, byteSource.maxOutstanding);
+            }
+        }
+
+        // without a depth, each read is waited for as it is issued
+        try (TrackingByteSource byteSource = new TrackingByteSource(file)) {
+            assertArrayEquals(expected, read(byteSource, prefetchParams(0)));
+            assertEquals(1, byteSource.maxOutstanding);
+        }
+    }
+
+    @Test
+    public void testPrefetchedTilesWithExecutor() throws Exception {
+        writeTiled();
+        final int[] expected = read(new ByteSourceFile(file), null);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (TrackingByteSource byteSource = new TrackingByteSource(file)) {
+            final Map<String, Object> params = prefetchParams(3);
+            params.put(TiffConstants.PARAM_KEY_EXECUTOR, executor);
+            assertArrayEquals(expected, read(byteSource, params));
+            assertTrue(byteSource.issued > TILES);
+            assertEquals(4, byteSource.maxOutstanding);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPrefetchedStrips() throws Exception {
+        final BufferedImage image = createImage(300, 200);
+        final Map<String, Object> writeParams = new HashMap<>();
+        writeParams.put(ImagingConstants.PARAM_KEY_COMPRESSION,
+                TiffConstants.TIFF_COMPRESSION_PACKBITS);
+        try (OutputStream os = new FileOutputStream(file)) {
+            new TiffImageParser().writeImage(image, os, writeParams);
+        }
+        final int[] expected = read(new ByteSourceFile(file), null);
+
+        try (TrackingByteSource byteSource = new TrackingByteSource(file)) {
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_PREFETCH_DEPTH, 2);
+            assertArrayEquals(expected, read(byteSource, params));
+            assertEquals(3, byteSource.maxOutstanding);
+            assertEquals(0, byteSource.outstanding);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertEquals;
+
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.Rectangle;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+
+import com.maxar.rda.imaging.ImageReadException;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.formats.tiff.write.TiffImageWriterLossy;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputDirectory;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import org.junit.Test;
+
+public class TiffRasterTest {
+
+    private interface SampleFunction {
+        int get(int x, int y, int band);
+    }
+
+    private static int sample16(final int x, final int y, final int band) {
+        return (x * 1000 + y * 37 + band * 20000) & 0xffff;
+    }
+
+    private static int sample12(final int x, final int y, final int band) {
+        return (x * 300 + y * 11) & 0xfff;
+    }
+
+    private static int sampleFloat(final int x, final int y, final int band) {
+        return Float.floatToIntBits(x * 0.5f - y * 0.25f + band);
+    }
+
+    /**
+     * Encodes one row of a block, optionally applying horizontal
+     * differencing.  Samples that are not a whole number of bytes
+     * are packed most-significant bit first.
+     */
+    private static void encodeRow(final ByteArrayOutputStream out, final int[] samples,
+            final int bits, final int stride, final boolean differencing, final ByteOrder byteOrder) {
+        final int mask = bits == 32 ? -1 : (1 << bits) - 1;
+        final int[] values = samples.clone();
+        if (differencing) {
+            for (int i = values.length - 1; i >= stride; i--) {
+                values[i] = (values[i] - values[i - stride]) & mask;
+            }
+        }
+        if (bits % 8 == 0) {
+            final int nBytes = bits / 8;
+            for (final int v : values) {
+                for (int k = 0; k < nBytes; k++) {
+                    final int shift = byteOrder == ByteOrder.BIG_ENDIAN
+                            ? (nBytes - 1 - k) * 8 : k * 8;
+                    out.write(v >>> shift);
+                }
+            }
+            return;
+        }
+        long buffer = 0;
+        int bufferBits = 0;
+        for (final int v : values) {
+            buffer = (buffer << bits) | (v & mask);
+            bufferBits += bits;
+            while (bufferBits >= 8) {
+                bufferBits -= 8;
+                out.write((int) (buffer >>> bufferBits));
+            }
+        }
+        if (bufferBits > 0) {
+            out.write((int) (buffer << (8 - bufferBits)));
+        }
+    }
+
+    /**
+     * Encodes a block of samples for the given bands, covering
+     * blockWidth by blockLength pixels starting at (x0, y0).
+     */
+    private static byte[] encodeBlock(final SampleFunction f, final int x0, final int y0,
+            final int blockWidth, final int blockLength, final int[] bands, final int bits,
+            final boolean differencing, final ByteOrder byteOrder) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int[] row = new int[blockWidth * bands.length];
+        for (int y = y0; y < y0 + blockLength; y++) {
+            int k = 0;
+            for (int x = x0; x < x0 + blockWidth; x++) {
+                for (final int band : bands) {
+                    row[k++] = f.get(x, y, band);
+                }
+            }
+            encodeRow(out, row, bits, bands.length, differencing, byteOrder);
+        }
+        return out.toByteArray();
+    }
+
+    private static TiffOutputDirectory createDirectory(final TiffOutputSet set, final int width,
+            final int height, final int samplesPerPixel, final int bits, final int sampleFormat)
+            throws Exception {
+        final TiffOutputDirectory dir = set.getOrCreateRootDirectory();
+        final short[] bitsPerSample = new short[samplesPerPixel];
+        final short[] sampleFormats = new short[samplesPerPixel];
+        for (int i = 0; i < samplesPerPixel; i++) {
+            bitsPerSample[i] = (short) bits;
+            sampleFormats[i] = (short) sampleFormat;
+        }
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH, width);
+        dir.add(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH, height);
+        dir.add(TiffTagConstants.TIFF_TAG_COMPRESSION, (short) TiffTagConstants.COMPRESSION_VALUE_UNCOMPRESSED);
+        dir.add(TiffTagConstants.TIFF_TAG_BITS_PER_SAMPLE, bitsPerSample);
+        dir.add(TiffTagConstants.TIFF_TAG_SAMPLE_FORMAT, sampleFormats);
+        dir.add(TiffTagConstants.TIFF_TAG_SAMPLES_PER_PIXEL, (short) samplesPerPixel);
+        dir.add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        return dir;
+    }
+
+    private static byte[] write(final TiffOutputSet set) throws Exception {
+        final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        new TiffImageWriterLossy().write(tiff, set);
+        return tiff.toByteArray();
+    }
+
+    private static void checkRaster(final TiffRaster raster, final SampleFunction f,
+            final Rectangle region, final int[] bands) {
+        assertEquals(region.width, raster.getWidth());
+        assertEquals(region.height, raster.getHeight());
+        assertEquals(bands.length, raster.getBandCount());
+        for (int y = 0; y < region.height; y++) {
+            for (int x = 0; x < region.width; x++) {
+                for (int k = 0; k < bands.length; k++) {
+                    final int expected = f.get(region.x + x, region.y + y, bands[k]);
+                    final int index = raster.getIndex(x, y, k);
+                    switch (raster.getDataType()) {
+                    case SHORT:
+                        assertEquals(expected, raster.getShortData()[index] & 0xffff);
+                        break;
+                    case INT:
+                        assertEquals(expected, raster.getIntData()[index]);
+                        break;
+                    default:
+                        assertEquals(Float.intBitsToFloat(expected), raster.getFloatData()[index], 0);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTiled16Bit() throws Exception {
+        final int width = 40;
+        final int height = 20;
+        final int tileSize = 16;
+        final ByteOrder byteOrder = TiffConstants.DEFAULT_TIFF_BYTE_ORDER;
+        final TiffOutputSet set = new TiffOutputSet(byteOrder, TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, width, height, 3, 16,
+                TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_WIDTH, tileSize);
+        dir.add(TiffTagConstants.TIFF_TAG_TILE_LENGTH, tileSize);
+
+        final int across = (width + tileSize - 1) / tileSize;
+        final int down = (height + tileSize - 1) / tileSize;
+        final TiffImageData.Data[] tiles = new TiffImageData.Data[across * down];
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                final byte[] bytes = encodeBlock(TiffRasterTest::sample16, tx * tileSize,
+                        ty * tileSize, tileSize, tileSize, new int[] {0, 1, 2}, 16, false, byteOrder);
+                tiles[ty * across + tx] = new TiffImageData.Data(0, bytes.length, bytes);
+            }
+        }
+        dir.setTiffImageData(new TiffImageData.Tiles(tiles, tileSize, tileSize));
+        final byte[] data = write(set);
+
+        final TiffImageParser parser = new TiffImageParser();
+        final TiffRaster full = parser.readRaster(new ByteSourceArray(data), null, null);
+        assertEquals(TiffRaster.DataType.SHORT, full.getDataType());
+        assertEquals(16, full.getBitsPerSample());
+        checkRaster(full, TiffRasterTest::sample16, new Rectangle(0, 0, width, height),
+                new int[] {0, 1, 2});
+
+        final Rectangle region = new Rectangle(5, 3, 30, 15);
+        final int[] bands = {2, 0};
+        final TiffRaster partial = parser.readRaster(new ByteSourceArray(data), region, bands);
+        checkRaster(partial, TiffRasterTest::sample16, region, bands);
+    }
+
+    @Test
+    public void testStrips12BitWithPredictor() throws Exception {
+        final int width = 13;
+        final int height = 20;
+        final int rowsPerStrip = 7;
+        final ByteOrder byteOrder = TiffConstants.DEFAULT_TIFF_BYTE_ORDER;
+        final TiffOutputSet set = new TiffOutputSet(byteOrder, TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, width, height, 1, 12,
+                TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, rowsPerStrip);
+        dir.add(TiffTagConstants.TIFF_TAG_PREDICTOR,
+                (short) TiffTagConstants.PREDICTOR_VALUE_HORIZONTAL_DIFFERENCING);
+
+        final int nStrips = (height + rowsPerStrip - 1) / rowsPerStrip;
+        final TiffImageData.Data[] strips = new TiffImageData.Data[nStrips];
+        for (int i = 0; i < nStrips; i++) {
+            final int rows = Math.min(rowsPerStrip, height - i * rowsPerStrip);
+            final byte[] bytes = encodeBlock(TiffRasterTest::sample12, 0, i * rowsPerStrip,
+                    width, rows, new int[] {0}, 12, true, byteOrder);
+            strips[i] = new TiffImageData.Data(0, bytes.length, bytes);
+        }
+        dir.setTiffImageData(new TiffImageData.Strips(strips, rowsPerStrip));
+        final byte[] data = write(set);
+
+        final Rectangle region = new Rectangle(2, 5, 9, 10);
+        final TiffRaster raster = new TiffImageParser().readRaster(
+                new ByteSourceArray(data), region, new int[] {0});
+        assertEquals(TiffRaster.DataType.SHORT, raster.getDataType());
+        checkRaster(raster, TiffRasterTest::sample12, region, new int[] {0});
+    }
+
+    @Test
+    public void testPlanarFloat() throws Exception {
+        final int width = 11;
+        final int height = 9;
+        final ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+        final TiffOutputSet set = new TiffOutputSet(byteOrder, TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, width, height, 2, 32,
+                TiffTagConstants.SAMPLE_FORMAT_VALUE_IEEE_FLOATING_POINT);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, height);
+        dir.add(TiffTagConstants.TIFF_TAG_PLANAR_CONFIGURATION,
+                (short) TiffTagConstants.PLANAR_CONFIGURATION_VALUE_PLANAR);
+
+        final TiffImageData.Data[] strips = new TiffImageData.Data[2];
+        for (int band = 0; band < 2; band++) {
+            final byte[] bytes = encodeBlock(TiffRasterTest::sampleFloat, 0, 0,
+                    width, height, new int[] {band}, 32, false, byteOrder);
+            strips[band] = new TiffImageData.Data(0, bytes.length, bytes);
+        }
+        dir.setTiffImageData(new TiffImageData.Strips(strips, height));
+        final byte[] data = write(set);
+
+        final TiffRaster raster = new TiffImageParser().readRaster(
+                new ByteSourceArray(data), null, new int[] {1});
+        assertEquals(TiffRaster.DataType.FLOAT, raster.getDataType());
+        checkRaster(raster, TiffRasterTest::sampleFloat,
+                new Rectangle(0, 0, width, height), new int[] {1});
+    }
+
+    @Test(expected = ImageReadException.class)
+    public void testInvalidBand() throws Exception {
+        final TiffOutputSet set = new TiffOutputSet(
+                TiffConstants.DEFAULT_TIFF_BYTE_ORDER, TiffConstants.TIFF_CLASSIC);
+        final TiffOutputDirectory dir = createDirectory(set, 4, 4, 1, 16,
+                TiffTagConstants.SAMPLE_FORMAT_VALUE_UNSIGNED_INTEGER);
+        dir.add(TiffTagConstants.TIFF_TAG_ROWS_PER_STRIP, 4);
+        final byte[] bytes = new byte[32];
+        dir.setTiffImageData(new TiffImageData.Strips(
+                new TiffImageData.Data[] {new TiffImageData.Data(0, bytes.length, bytes)}, 4));
+        new TiffImageParser().readRaster(new ByteSourceArray(write(set)), null, new int[] {1});
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static com.maxar.rda.imaging.formats.tiff.TiffTestSupport.getPixels;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.BufferPool;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.TiffTestSupport.CountingByteSource;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import com.maxar.rda.imaging.formats.tiff.write.TiffTiledImageWriter;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffReadPlannerTest {
+    private static final int TILE = 32;
+    private static final int SIZE = 10 * TILE;
+
+    private File file;
+    private ByteSourceFile fileSource;
+    private CountingByteSource byteSource;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("planned", ".tif");
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.BIG_ENDIAN,
+                TiffConstants.TIFF_CLASSIC);
+        outputSet.addRootDirectory().add(
+                TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION,
+                TiffConstants.TIFF_COMPRESSION_UNCOMPRESSED);
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            new TiffTiledImageWriter(ByteOrder.BIG_ENDIAN, TILE, TILE, params).write(
+                    channel, outputSet, SIZE, SIZE, 1, 8, (column, row) -> {
+                        final byte[] tile = new byte[TILE * TILE];
+                        for (int i = 0; i < tile.length; i++) {
+                            tile[i] = (byte) (column * 29 + row * 13 + i / TILE + i % TILE);
+                        }
+                        return tile;
+                    });
+        }
+        fileSource = new ByteSourceFile(file);
+        byteSource = new CountingByteSource(fileSource);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fileSource.close();
+        file.delete();
+    }
+
+    /**
+     * Reads a window of 3 x 3 tiles and returns the number of reads of
+     * the file that it took.
+     */
+    private int countReads(final Map<String, Object> params, final int[] expected)
+            throws Exception {
+        try (TiffFile tiffFile = new TiffFile(byteSource, params)) {
+            byteSource.reads = 0;
+            final BufferedImage image = tiffFile.readRegion(0,
+                    new Rectangle(TILE + 5, 2 * TILE + 7, 3 * TILE - 10, 3 * TILE - 14));
+            assertArrayEquals(expected, getPixels(image));
+            return byteSource.reads;
+        }
+    }
+
+    private static Map<String, Object> plannerParams(final TiffReadPlanner planner) {
+        final Map<String, Object> params = new HashMap<>();
+        params.put(TiffConstants.PARAM_KEY_READ_PLANNER, planner);
+        return params;
+    }
+
+    @Test
+    public void testCoalescedReads() throws Exception {
+        final BufferedImage whole = new TiffImageParser().getBufferedImage(file, null);
+        final int[] expected = whole.getRGB(TILE + 5, 2 * TILE + 7, 3 * TILE - 10,
+                3 * TILE - 14, null, 0, 3 * TILE - 10);
+
+        // each tile on its own
+        assertEquals(9, countReads(plannerParams(new TiffReadPlanner(0, 0)), expected));
+        // one read for each row of tiles in the window
+        assertEquals(3, countReads(plannerParams(new TiffReadPlanner(0, 1 << 20)), expected));
+        // the 7 tiles between the rows are within the default gap
+        assertEquals(1, countReads(null, expected));
+        // no read may exceed 2 tiles
+        assertEquals(6, countReads(plannerParams(
+                new TiffReadPlanner(0, 2 * TILE * TILE)), expected));
+
+        final BufferPool pool = new BufferPool(1 << 20);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Map<String, Object> params = plannerParams(new TiffReadPlanner(0, 1 << 20));
+            params.put(TiffConstants.PARAM_KEY_BUFFER_POOL, pool);
+            params.put(TiffConstants.PARAM_KEY_EXECUTOR, executor);
+            assertEquals(3, countReads(params, expected));
+            assertEquals(3, countReads(params, expected));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelReadsAreMadeByTasks() throws Exception {
+        final BufferedImage whole = new TiffImageParser().getBufferedImage(file, null);
+        final Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        final ByteSourceFile tracking = new ByteSourceFile(file) {
+            @Override
+            public byte[] getBlock(final long start, final int length) throws IOException {
+                readers.add(Thread.currentThread());
+                return super.getBlock(start, length);
+            }
+
+            @Override
+            public void read(final long position, final ByteBuffer dst) throws IOException {
+                readers.add(Thread.currentThread());
+                super.read(position, dst);
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final Map<String, Object> params = plannerParams(new TiffReadPlanner(0, 1 << 20));
+        params.put(TiffConstants.PARAM_KEY_EXECUTOR, executor);
+        try (TiffFile tiffFile = new TiffFile(tracking, params)) {
+            readers.clear();
+            final BufferedImage image = tiffFile.readRegion(0, null);
+            assertArrayEquals(getPixels(whole), getPixels(image));
+            // each planned read is made by the task that decodes its tiles,
+            // rather than by the caller ahead of the tasks
+            assertFalse(readers.isEmpty());
+            assertFalse(readers.contains(Thread.currentThread()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCachedTilesAreNotRead() throws Exception {
+        final BufferedImage whole = new TiffImageParser().getBufferedImage(file, null);
+        final int[] expected = whole.getRGB(TILE + 5, 2 * TILE + 7, 3 * TILE - 10,
+                3 * TILE - 14, null, 0, 3 * TILE - 10);
+
+        final Map<String, Object> params = plannerParams(new TiffReadPlanner(0, 1 << 20));
+        params.put(TiffConstants.PARAM_KEY_TILE_CACHE, new TiffTileCache(1 << 20));
+        assertEquals(3, countReads(params, expected));
+        assertEquals(0, countReads(params, expected));
+    }
+
+    @Test
+    public void testPlan() throws Exception {
+        final TiffReader reader = new TiffReader(true);
+        final TiffDirectory directory = reader.readDirectory(fileSource,
+                reader.readDirectoryIndex(fileSource), 0);
+        final TiffImageData.DataIndex index = directory.getTiffImageData().getDataIndex();
+
+        // blocks given out of order are read in order of their offsets
+        final int[] blocks = {12, 2, 11, 1, 40};
+        final List<TiffReadPlanner.Range> ranges =
+                new TiffReadPlanner(0, 1 << 20).plan(index, blocks);
+        assertEquals(3, ranges.size());
+        assertEquals(index.getOffset(1), ranges.get(0).getOffset());
+        assertEquals(2 * TILE * TILE, ranges.get(0).getLength());
+        assertEquals(3, ranges.get(0).getMember(0));
+        assertEquals(1, ranges.get(0).getMember(1));
+        assertEquals(2, ranges.get(1).getBlockCount());
+        assertEquals(4, ranges.get(2).getMember(0));
+
+        final ByteBuffer bytes = ranges.get(0).read(fileSource, null);
+        final ByteBuffer tile = ranges.get(0).slice(bytes, 1);
+        assertEquals(TILE * TILE, tile.remaining());
+        final byte[] actual = new byte[TILE * TILE];
+        tile.get(actual);
+        assertArrayEquals(directory.getTiffImageData().getImageDataBytes(2), actual);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maxar.rda.imaging.formats.tiff;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSource;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fixtures shared by the tests of reading TIFF files.
+ */
+final class TiffTestSupport {
+
+    /**
+     * Counts the reads made of another source: each stream opened, and
+     * each block read, copied or sliced.
+     */
+    static final class CountingByteSource extends ByteSource {
+        private final ByteSource source;
+        int reads;
+
+        CountingByteSource(final ByteSource source) {
+            super(source.getFileName());
+            this.source = source;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            reads++;
+            return source.getInputStream();
+        }
+
+        @Override
+        public byte[] getBlock(final long start, final int length) throws IOException {
+            reads++;
+            return source.getBlock(start, length);
+        }
+
+        @Override
+        public void read(final long position, final ByteBuffer dst) throws IOException {
+            reads++;
+            source.read(position, dst);
+        }
+
+        @Override
+        public ByteBuffer slice(final long start, final int length) throws IOException {
+            reads++;
+            return source.slice(start, length);
+        }
+
+        @Override
+        public boolean hasSharedSlices() {
+            return source.hasSharedSlices();
+        }
+
+        @Override
+        public byte[] getAll() throws IOException {
+            reads++;
+            return source.getAll();
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return source.getLength();
+        }
+
+        @Override
+        public String getDescription() {
+            return source.getDescription();
+        }
+    }
+
+    private TiffTestSupport() {
+    }
+
+    /**
+     * Creates an RGB image whose pixels vary with their position.
+     */
+    static BufferedImage createImage(final int width, final int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 7) << 16 | (y * 3) << 8 | (x ^ y));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes an image from {@link #createImage} as a TIFF file in strips.
+     */
+    static byte[] writeImage(final int width, final int height,
+            final Map<String, Object> params) throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new TiffImageParser().writeImage(createImage(width, height), baos,
+                params == null ? new HashMap<>() : new HashMap<>(params));
+        return baos.toByteArray();
+    }
+
+    static int[] getPixels(final BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    /**
+     * Reads the first image of a source and returns its pixels.
+     */
+    static int[] read(final ByteSource byteSource, final Map<String, Object> params)
+            throws Exception {
+        return getPixels(new TiffImageParser().getBufferedImage(byteSource, params));
+    }
+}
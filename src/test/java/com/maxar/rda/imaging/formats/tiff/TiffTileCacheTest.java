@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.common.bytesource.ByteSourceArray;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import com.maxar.rda.imaging.formats.tiff.write.TiffOutputSet;
+import com.maxar.rda.imaging.formats.tiff.write.TiffTiledImageWriter;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TiffTileCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        // a single segment holding three 1000-byte tiles
+        final TiffTileCache cache = new TiffTileCache(3 * 1100);
+        final Object source = new Object();
+        for (int i = 0; i < 3; i++) {
+            cache.put(source, 0, i, new byte[1000]);
+        }
+        assertEquals(3, cache.getTileCount());
+
+        // touch tile 0, so that tile 1 is the least recently used
+        final byte[] tile0 = cache.get(source, 0, 0);
+        cache.put(source, 0, 3, new byte[1000]);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(tile0, cache.get(source, 0, 0));
+        assertNull(cache.get(source, 0, 1));
+        assertTrue(cache.getSize() <= cache.getMaxBytes());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testKeysAndInvalidation() {
+        final TiffTileCache cache = new TiffTileCache(1 << 20);
+        final Object a = new Object();
+        final Object b = new Object();
+        cache.put(a, 0, 5, new byte[10]);
+        cache.put(a, 1, 5, new byte[20]);
+        cache.put(b, 0, 5, new byte[30]);
+        assertEquals(10, cache.get(a, 0, 5).length);
+        assertEquals(20, cache.get(a, 1, 5).length);
+        assertEquals(30, cache.get(b, 0, 5).length);
+
+        cache.invalidate(a);
+        assertNull(cache.get(a, 0, 5));
+        assertEquals(1, cache.getTileCount());
+
+        // oversized tiles are not held
+        cache.put(b, 0, 6, new byte[2 << 20]);
+        assertNull(cache.get(b, 0, 6));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testSourceKeys() throws Exception {
+        final File file = File.createTempFile("cache", ".tif");
+        try {
+            assertEquals(TiffTileCache.getSourceKey(new ByteSourceFile(file)),
+                    TiffTileCache.getSourceKey(new ByteSourceFile(file)));
+            final ByteSourceArray array = new ByteSourceArray(new byte[10]);
+            assertSame(array, TiffTileCache.getSourceKey(array));
+            assertNotEquals(TiffTileCache.getSourceKey(array),
+                    TiffTileCache.getSourceKey(new ByteSourceArray(new byte[10])));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final TiffTileCache cache = new TiffTileCache(64 * 1024 * 1024);
+        final Object source = new Object();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        final int tile = i % 5000;
+                        final byte[] bytes = cache.get(source, 0, tile);
+                        if (bytes == null) {
+                            cache.put(source, 0, tile, new byte[] {(byte) tile});
+                        } else if (bytes[0] != (byte) tile) {
+                            throw new IllegalStateException("Wrong tile " + tile);
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8 * 20000, cache.getHitCount() + cache.getMissCount());
+        assertTrue(cache.getSize() <= cache.getMaxBytes());
+    }
+
+    @Test
+    public void testRepeatedReadsShareTiles() throws Exception {
+        final File file = File.createTempFile("cache", ".tif");
+        try {
+            final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN,
+                    TiffConstants.TIFF_BIGTIFF);
+            outputSet.addRootDirectory().add(
+                    TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                    (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.WRITE)) {
+                new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, 32, 32, null).write(
+                        channel, outputSet, 100, 100, 1, 8, (column, row) -> {
+                            final byte[] tile = new byte[32 * 32];
+                            for (int i = 0; i < tile.length; i++) {
+                                tile[i] = (byte) (column * 50 + row * 7 + i);
+                            }
+                            return tile;
+                        });
+            }
+
+            final TiffTileCache cache = new TiffTileCache(1 << 20);
+            final Map<String, Object> params = new HashMap<>();
+            params.put(TiffConstants.PARAM_KEY_TILE_CACHE, cache);
+            params.put(TiffConstants.PARAM_KEY_SUBIMAGE_X, 20);
+            params.put(TiffConstants.PARAM_KEY_SUBIMAGE_Y, 20);
+            params.put(TiffConstants.PARAM_KEY_SUBIMAGE_WIDTH, 40);
+            params.put(TiffConstants.PARAM_KEY_SUBIMAGE_HEIGHT, 40);
+
+            final TiffImageParser parser = new TiffImageParser();
+            final BufferedImage first = parser.getBufferedImage(new ByteSourceFile(file), params);
+            // the region covers 2 x 2 tiles
+            assertEquals(0, cache.getHitCount());
+            assertEquals(4, cache.getMissCount());
+
+            final BufferedImage second = parser.getBufferedImage(new ByteSourceFile(file), params);
+            assertEquals(4, cache.getHitCount());
+            assertEquals(4, cache.getMissCount());
+            assertArrayEquals(first.getRGB(0, 0, 40, 40, null, 0, 40),
+                    second.getRGB(0, 0, 40, 40, null, 0, 40));
+
+            final BufferedImage uncached = parser.getBufferedImage(new ByteSourceFile(file),
+                    new HashMap<>());
+            assertArrayEquals(uncached.getRGB(20, 20, 40, 40, null, 0, 40),
+                    second.getRGB(0, 0, 40, 40, null, 0, 40));
+        } finally {
+            file.delete();
+        }
+    }
+}
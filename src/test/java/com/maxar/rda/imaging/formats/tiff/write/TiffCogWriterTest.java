@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.FormatCompliance;
+import com.maxar.rda.imaging.ImageWriteException;
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.TiffContents;
+import com.maxar.rda.imaging.formats.tiff.TiffDirectory;
+import com.maxar.rda.imaging.formats.tiff.TiffReader;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffCogWriterTest {
+    private static final int TILE_SIZE = 32;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("cog", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static int gray(final int x, final int y) {
+        return (x * 3 + y * 5 + (x * y) % 7) & 0xff;
+    }
+
+    private static int rgb(final int x, final int y) {
+        return ((x * 2) & 0xff) << 16 | ((y * 3) & 0xff) << 8 | ((x ^ y) & 0xff);
+    }
+
+    private static TiffTiledImageWriter.TileProducer grayTiles(final int[] counter) {
+        return (column, row) -> {
+            counter[0]++;
+            final byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
+            for (int y = 0, k = 0; y < TILE_SIZE; y++) {
+                for (int x = 0; x < TILE_SIZE; x++) {
+                    tile[k++] = (byte) gray(column * TILE_SIZE + x, row * TILE_SIZE + y);
+                }
+            }
+            return tile;
+        };
+    }
+
+    private void write(final TiffCogWriter writer, final int version, final int width,
+            final int height, final int samplesPerPixel,
+            final TiffTiledImageWriter.TileProducer producer) throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN, version);
+        final TiffOutputDirectory root = outputSet.addRootDirectory();
+        root.add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) (samplesPerPixel == 3
+                        ? TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_RGB
+                        : TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO));
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            writer.write(channel, outputSet, width, height, samplesPerPixel, 8, producer);
+        }
+    }
+
+    private List<TiffDirectory> readDirectories() throws Exception {
+        final TiffContents contents = new TiffReader(true).readDirectories(
+                new ByteSourceFile(file), true, FormatCompliance.getDefault());
+        return contents.directories;
+    }
+
+    @Test
+    public void testOverviewCount() {
+        assertEquals(0, TiffCogWriter.getOverviewCount(32, 32, 32));
+        assertEquals(1, TiffCogWriter.getOverviewCount(33, 10, 32));
+        assertEquals(3, TiffCogWriter.getOverviewCount(200, 150, 32));
+        assertEquals(9, TiffCogWriter.getOverviewCount(100000, 100000, 256));
+    }
+
+    @Test
+    public void testLayoutAndAverageOverviews() throws Exception {
+        final int width = 200;
+        final int height = 150;
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION, TiffConstants.TIFF_COMPRESSION_LZW);
+        final TiffCogWriter writer = new TiffCogWriter(ByteOrder.LITTLE_ENDIAN, TILE_SIZE,
+                TiffCogWriter.Resampling.AVERAGE, params);
+        final TiffTiledImageWriter.TileProducer tiles = grayTiles(new int[1]);
+        final List<Integer> requested = new ArrayList<>();
+        write(writer, TiffConstants.TIFF_BIGTIFF, width, height, 1, (column, row) -> {
+            requested.add(row * 7 + column);
+            return tiles.getTile(column, row);
+        });
+
+        // each of the 7 x 5 full-resolution tiles is read once, in
+        // row-major order, for all four levels
+        assertEquals(35, requested.size());
+        for (int i = 0; i < requested.size(); i++) {
+            assertEquals(i, (int) requested.get(i));
+        }
+
+        // the ghost area immediately follows the header
+        final String ghost = "GDAL_STRUCTURAL_METADATA_SIZE=000076 bytes\n"
+                + "LAYOUT=IFDS_BEFORE_DATA\n";
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(ghost, new String(bytes, TiffConstants.BIG_TIFF_HEADER_SIZE,
+                ghost.length(), StandardCharsets.US_ASCII));
+
+        final List<TiffDirectory> directories = readDirectories();
+        assertEquals(4, directories.size());
+
+        // every directory precedes all image data, and each level's tiles
+        // follow those of the level below it
+        long lastDirectory = 0;
+        for (final TiffDirectory directory : directories) {
+            lastDirectory = Math.max(lastDirectory, directory.offset);
+        }
+        long previousStart = Long.MAX_VALUE;
+        for (int level = 0; level < directories.size(); level++) {
+            final TiffDirectory directory = directories.get(level);
+            assertEquals((width + (1 << level) - 1) >> level,
+                    directory.getSingleFieldValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH));
+            if (level == 0) {
+                assertTrue(directory.findField(TiffTagConstants.TIFF_TAG_NEW_SUBFILE_TYPE) == null);
+            } else {
+                assertEquals(1, directory.getFieldValue(TiffTagConstants.TIFF_TAG_NEW_SUBFILE_TYPE));
+            }
+            long start = Long.MAX_VALUE;
+            long end = 0;
+            for (final TiffDirectory.ImageDataElement element
+                    : directory.getTiffRawImageDataElements()) {
+                start = Math.min(start, element.offset);
+                end = Math.max(end, element.offset + element.length);
+            }
+            assertTrue(start > lastDirectory);
+            assertTrue(end <= previousStart);
+            previousStart = start;
+        }
+
+        final BufferedImage full = directories.get(0).getTiffImage(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(gray(x, y), full.getRGB(x, y) & 0xff);
+            }
+        }
+
+        final BufferedImage overview = directories.get(1).getTiffImage(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(width / 2, overview.getWidth());
+        assertEquals(height / 2, overview.getHeight());
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                final int sum = gray(2 * x, 2 * y) + gray(2 * x + 1, 2 * y)
+                        + gray(2 * x, 2 * y + 1) + gray(2 * x + 1, 2 * y + 1);
+                assertEquals((sum + 2) / 4, overview.getRGB(x, y) & 0xff);
+            }
+        }
+
+        // a single level can be read without parsing the others
+        final BufferedImage level2 = directories.get(2).getTiffImage(ByteOrder.LITTLE_ENDIAN);
+        final BufferedImage direct = new TiffReader(true).readDirectory(
+                new ByteSourceFile(file), 2).getTiffImage(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(level2.getWidth(), direct.getWidth());
+        for (int y = 0; y < level2.getHeight(); y++) {
+            for (int x = 0; x < level2.getWidth(); x++) {
+                assertEquals(level2.getRGB(x, y), direct.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testClassicNearestRgb() throws Exception {
+        final int width = 90;
+        final int height = 70;
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION,
+                TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE);
+        final TiffCogWriter writer = new TiffCogWriter(ByteOrder.LITTLE_ENDIAN, TILE_SIZE,
+                TiffCogWriter.Resampling.NEAREST, params);
+        write(writer, TiffConstants.TIFF_CLASSIC, width, height, 3, (column, row) -> {
+            final byte[] tile = new byte[TILE_SIZE * TILE_SIZE * 3];
+            for (int y = 0, k = 0; y < TILE_SIZE; y++) {
+                for (int x = 0; x < TILE_SIZE; x++) {
+                    final int argb = rgb(column * TILE_SIZE + x, row * TILE_SIZE + y);
+                    tile[k++] = (byte) (argb >> 16);
+                    tile[k++] = (byte) (argb >> 8);
+                    tile[k++] = (byte) argb;
+                }
+            }
+            return tile;
+        });
+
+        final List<TiffDirectory> directories = readDirectories();
+        assertEquals(3, directories.size());
+        final BufferedImage overview = directories.get(2).getTiffImage(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(23, overview.getWidth());
+        assertEquals(18, overview.getHeight());
+        for (int y = 0; y < overview.getHeight(); y++) {
+            for (int x = 0; x < overview.getWidth(); x++) {
+                assertEquals(rgb(4 * x, 4 * y), overview.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void testSingleTileHasNoOverviews() throws Exception {
+        final TiffCogWriter writer = new TiffCogWriter(ByteOrder.LITTLE_ENDIAN, TILE_SIZE,
+                TiffCogWriter.Resampling.AVERAGE, null);
+        final int[] requested = new int[1];
+        write(writer, TiffConstants.TIFF_BIGTIFF, 20, 30, 1, grayTiles(requested));
+        assertEquals(1, requested[0]);
+        assertEquals(1, readDirectories().size());
+    }
+
+    @Test(expected = ImageWriteException.class)
+    public void testSignedSamplesRejectedForAverage() throws Exception {
+        final TiffCogWriter writer = new TiffCogWriter(ByteOrder.LITTLE_ENDIAN, TILE_SIZE,
+                TiffCogWriter.Resampling.AVERAGE, null);
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.LITTLE_ENDIAN,
+                TiffConstants.TIFF_BIGTIFF);
+        outputSet.addRootDirectory().add(TiffTagConstants.TIFF_TAG_SAMPLE_FORMAT,
+                (short) TiffTagConstants.SAMPLE_FORMAT_VALUE_TWOS_COMPLEMENT_SIGNED_INTEGER);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            writer.write(channel, outputSet, 100, 100, 1, 8, grayTiles(new int[1]));
+        }
+    }
+}
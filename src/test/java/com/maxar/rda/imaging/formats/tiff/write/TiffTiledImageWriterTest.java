@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.maxar.rda.imaging.formats.tiff.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.maxar.rda.imaging.ImageWriteException;
+import com.maxar.rda.imaging.ImagingConstants;
+import com.maxar.rda.imaging.common.bytesource.ByteSourceFile;
+import com.maxar.rda.imaging.formats.tiff.TiffImageParser;
+import com.maxar.rda.imaging.formats.tiff.TiffRaster;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffConstants;
+import com.maxar.rda.imaging.formats.tiff.constants.TiffTagConstants;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TiffTiledImageWriterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("tiled", ".tif");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static int sample16(final int x, final int y) {
+        return (x * 301 + y * 7) & 0xffff;
+    }
+
+    private static int rgb(final int x, final int y) {
+        return ((x * 3) & 0xff) << 16 | ((y * 5) & 0xff) << 8 | ((x + y) & 0xff);
+    }
+
+    private void write(final TiffTiledImageWriter writer, final ByteOrder byteOrder,
+            final int width, final int height, final int samplesPerPixel,
+            final int bitsPerSample, final TiffTiledImageWriter.TileProducer producer)
+            throws Exception {
+        final TiffOutputSet outputSet = new TiffOutputSet(byteOrder, TiffConstants.TIFF_BIGTIFF);
+        final TiffOutputDirectory directory = outputSet.addRootDirectory();
+        directory.add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) (samplesPerPixel == 3
+                        ? TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_RGB
+                        : TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO));
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            writer.write(channel, outputSet, width, height, samplesPerPixel,
+                    bitsPerSample, producer);
+        }
+    }
+
+    @Test
+    public void testSixteenBitTilesWithPartialEdges() throws Exception {
+        final int width = 100;
+        final int height = 70;
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION, TiffConstants.TIFF_COMPRESSION_LZW);
+        final TiffTiledImageWriter writer =
+                new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, 32, 32, params);
+        final int[] requested = new int[1];
+        write(writer, ByteOrder.LITTLE_ENDIAN, width, height, 1, 16, (column, row) -> {
+            requested[0]++;
+            final byte[] tile = new byte[32 * 32 * 2];
+            for (int y = 0, k = 0; y < 32; y++) {
+                for (int x = 0; x < 32; x++) {
+                    final int v = sample16(column * 32 + x, row * 32 + y);
+                    tile[k++] = (byte) v;
+                    tile[k++] = (byte) (v >> 8);
+                }
+            }
+            return tile;
+        });
+        assertEquals(4 * 3, requested[0]);
+
+        final TiffRaster raster = new TiffImageParser().readRaster(
+                new ByteSourceFile(file), null, null);
+        assertEquals(width, raster.getWidth());
+        assertEquals(height, raster.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(sample16(x, y), raster.getShortData()[raster.getIndex(x, y, 0)] & 0xffff);
+            }
+        }
+    }
+
+    @Test
+    public void testRgbDeflate() throws Exception {
+        final int width = 50;
+        final int height = 40;
+        final Map<String, Object> params = new HashMap<>();
+        params.put(ImagingConstants.PARAM_KEY_COMPRESSION,
+                TiffConstants.TIFF_COMPRESSION_DEFLATE_ADOBE);
+        final TiffTiledImageWriter writer =
+                new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, 16, 16, params);
+        write(writer, ByteOrder.LITTLE_ENDIAN, width, height, 3, 8, (column, row) -> {
+            final byte[] tile = new byte[16 * 16 * 3];
+            for (int y = 0, k = 0; y < 16; y++) {
+                for (int x = 0; x < 16; x++) {
+                    final int argb = rgb(column * 16 + x, row * 16 + y);
+                    tile[k++] = (byte) (argb >> 16);
+                    tile[k++] = (byte) (argb >> 8);
+                    tile[k++] = (byte) argb;
+                }
+            }
+            return tile;
+        });
+
+        final BufferedImage image = new TiffImageParser().getBufferedImage(
+                new ByteSourceFile(file), new HashMap<>());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(rgb(x, y), image.getRGB(x, y) & 0xffffff);
+            }
+        }
+    }
+
+    @Test
+    public void testSingleTileIsTruncated() throws Exception {
+        // a longer file left from before must not keep its tail
+        Files.write(file.toPath(), new byte[100000]);
+        final TiffTiledImageWriter writer = new TiffTiledImageWriter(
+                ByteOrder.LITTLE_ENDIAN, 16, 16, null);
+        write(writer, ByteOrder.LITTLE_ENDIAN, 10, 10, 1, 8, (column, row) -> {
+            final byte[] tile = new byte[16 * 16];
+            for (int i = 0; i < tile.length; i++) {
+                tile[i] = (byte) i;
+            }
+            return tile;
+        });
+        assertTrue(file.length() < 100000);
+
+        final TiffRaster raster = new TiffImageParser().readRaster(
+                new ByteSourceFile(file), null, null);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertEquals(y * 16 + x, raster.getShortData()[raster.getIndex(x, y, 0)]);
+            }
+        }
+    }
+
+    @Test(expected = ImageWriteException.class)
+    public void testWrongTileSize() throws Exception {
+        final TiffTiledImageWriter writer = new TiffTiledImageWriter(
+                ByteOrder.LITTLE_ENDIAN, 16, 16, null);
+        write(writer, ByteOrder.LITTLE_ENDIAN, 10, 10, 1, 8, (column, row) -> new byte[100]);
+    }
+
+    @Test(expected = ImageWriteException.class)
+    public void testInvalidTileDimensions() throws Exception {
+        new TiffTiledImageWriter(ByteOrder.LITTLE_ENDIAN, 20, 16, null);
+    }
+
+    @Test
+    public void testClassicTiff() throws Exception {
+        final TiffTiledImageWriter writer = new TiffTiledImageWriter(
+                ByteOrder.BIG_ENDIAN, 16, 16, null);
+        final TiffOutputSet outputSet = new TiffOutputSet(ByteOrder.BIG_ENDIAN);
+        outputSet.addRootDirectory().add(TiffTagConstants.TIFF_TAG_PHOTOMETRIC_INTERPRETATION,
+                (short) TiffTagConstants.PHOTOMETRIC_INTERPRETATION_VALUE_BLACK_IS_ZERO);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            writer.write(channel, outputSet, 40, 20, 1, 8, (column, row) -> {
+                final byte[] tile = new byte[256];
+                Arrays.fill(tile, (byte) (column * 10 + row));
+                return tile;
+            });
+        }
+
+        final TiffRaster raster = new TiffImageParser().readRaster(
+                new ByteSourceFile(file), null, null);
+        for (int y = 0; y < 20; y++) {
+            for (int x = 0; x < 40; x++) {
+                assertEquals((x / 16) * 10 + y / 16, raster.getShortData()[raster.getIndex(x, y, 0)]);
+            }
+        }
+    }
+}